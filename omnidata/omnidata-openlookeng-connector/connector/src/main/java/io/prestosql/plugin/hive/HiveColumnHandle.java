@@ -34,6 +34,7 @@ import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.DUMMY_OFFLOAD
 import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.PARTITION_KEY;
 import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.REGULAR;
 import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.SYNTHESIZED;
+import static io.prestosql.plugin.hive.HiveType.HIVE_BOOLEAN;
 import static io.prestosql.plugin.hive.HiveType.HIVE_INT;
 import static io.prestosql.plugin.hive.HiveType.HIVE_LONG;
 import static io.prestosql.plugin.hive.HiveType.HIVE_STRING;
@@ -55,6 +56,9 @@ public class HiveColumnHandle
     public static final int ROW_ID__COLUMN_INDEX = -13;
     public static final String UPDATE_ROW_ID_COLUMN_NAME = "$rowId";
 
+    public static final int OMNIDATA_FILTERED_COLUMN_INDEX = -10;
+    public static final String OMNIDATA_FILTERED_COLUMN_NAME = "$omnidata_filtered";
+
     public static final int DUMMY_OFFLOADED_COLUMN_INDEX = -20;
     public static final String DUMMY_OFFLOADED_COLUMN_NAME = "count_star";
 
@@ -251,6 +255,15 @@ public class HiveColumnHandle
         return new HiveColumnHandle(BUCKET_COLUMN_NAME, BUCKET_HIVE_TYPE, BUCKET_TYPE_SIGNATURE, BUCKET_COLUMN_INDEX, SYNTHESIZED, Optional.empty());
     }
 
+    /**
+     * The column telling whether OmniData has already filtered the rows of a split.
+     * It is not read from the file, the page source provider fills it once the split is routed.
+     */
+    public static HiveColumnHandle omniDataFilteredColumnHandle()
+    {
+        return new HiveColumnHandle(OMNIDATA_FILTERED_COLUMN_NAME, HIVE_BOOLEAN, HIVE_BOOLEAN.getTypeSignature(), OMNIDATA_FILTERED_COLUMN_INDEX, SYNTHESIZED, Optional.empty());
+    }
+
     public static boolean isPathColumnHandle(HiveColumnHandle column)
     {
         return column.getHiveColumnIndex() == PATH_COLUMN_INDEX;
@@ -265,4 +278,9 @@ public class HiveColumnHandle
     {
         return column.getHiveColumnIndex() == ROW_ID__COLUMN_INDEX;
     }
+
+    public static boolean isOmniDataFilteredColumnHandle(HiveColumnHandle column)
+    {
+        return column.getHiveColumnIndex() == OMNIDATA_FILTERED_COLUMN_INDEX;
+    }
 }
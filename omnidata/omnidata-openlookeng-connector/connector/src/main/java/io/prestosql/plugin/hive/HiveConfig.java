@@ -26,6 +26,7 @@ import io.airlift.units.MaxDataSize;
 import io.airlift.units.MinDataSize;
 import io.airlift.units.MinDuration;
 import io.prestosql.orc.OrcWriteValidation.OrcWriteValidationMode;
+import io.prestosql.plugin.hive.omnidata.OmniDataNodeSelectionPolicy;
 import io.prestosql.plugin.hive.s3.S3FileSystemType;
 import io.prestosql.spi.function.Mandatory;
 import io.prestosql.spi.queryeditorui.PropertyType;
@@ -219,6 +220,17 @@ public class HiveConfig
     private boolean aggregatorOffloadEnabled = true;
     private double aggregatorOffloadFactor = MAX_OFFLOAD_FACTOR;
     private long minOffloadRowNumber = MIN_OFFLOAD_ROW_NUM;
+    private int omniDataPrefetchPageCount = HivePushDownPageSource.DEFAULT_MAX_BUFFERED_PAGES;
+    private int omniDataPrefetchThreads = 100;
+    private OmniDataNodeSelectionPolicy omniDataNodeSelectionPolicy = OmniDataNodeSelectionPolicy.POWER_OF_TWO_CHOICES;
+    private boolean omniDataCostBasedOffloadEnabled;
+    private DataSize omniDataNetworkBandwidth = new DataSize(128, MEGABYTE);
+    private DataSize omniDataScanThroughput = new DataSize(512, MEGABYTE);
+    private boolean omniDataPartialOffloadEnabled;
+    private boolean omniDataHedgedReadEnabled;
+    private double omniDataHedgedReadPercentile = 0.95;
+    private int omniDataHedgedReadThreads = 100;
+    private DataSize omniDataPageSize = new DataSize(1, MEGABYTE);
 
     private int hmsWriteBatchSize = 8;
 
@@ -1987,4 +1999,160 @@ public class HiveConfig
     {
         return minOffloadRowNumber;
     }
+
+    @Config("hive.omnidata-prefetch-page-count")
+    @ConfigDescription("The maximum number of pages prefetched from OmniData for each offloaded split.")
+    public HiveConfig setOmniDataPrefetchPageCount(int omniDataPrefetchPageCount)
+    {
+        this.omniDataPrefetchPageCount = omniDataPrefetchPageCount;
+        return this;
+    }
+
+    @Min(1)
+    public int getOmniDataPrefetchPageCount()
+    {
+        return omniDataPrefetchPageCount;
+    }
+
+    @Config("hive.omnidata-prefetch-threads")
+    @ConfigDescription("The maximum number of threads prefetching pages from OmniData on a worker.")
+    public HiveConfig setOmniDataPrefetchThreads(int omniDataPrefetchThreads)
+    {
+        this.omniDataPrefetchThreads = omniDataPrefetchThreads;
+        return this;
+    }
+
+    @Min(1)
+    public int getOmniDataPrefetchThreads()
+    {
+        return omniDataPrefetchThreads;
+    }
+
+    @Config("hive.omnidata-node-selection-policy")
+    @ConfigDescription("Policy to choose among the OmniData nodes of a split: HASH, LEAST_LOADED or POWER_OF_TWO_CHOICES.")
+    public HiveConfig setOmniDataNodeSelectionPolicy(OmniDataNodeSelectionPolicy omniDataNodeSelectionPolicy)
+    {
+        this.omniDataNodeSelectionPolicy = omniDataNodeSelectionPolicy;
+        return this;
+    }
+
+    @NotNull
+    public OmniDataNodeSelectionPolicy getOmniDataNodeSelectionPolicy()
+    {
+        return omniDataNodeSelectionPolicy;
+    }
+
+    @Config("hive.omnidata-cost-based-offload-enabled")
+    @ConfigDescription("Decide operator offload by comparing the estimated transfer and scan cost instead of the offload factors.")
+    public HiveConfig setOmniDataCostBasedOffloadEnabled(boolean omniDataCostBasedOffloadEnabled)
+    {
+        this.omniDataCostBasedOffloadEnabled = omniDataCostBasedOffloadEnabled;
+        return this;
+    }
+
+    public boolean isOmniDataCostBasedOffloadEnabled()
+    {
+        return omniDataCostBasedOffloadEnabled;
+    }
+
+    @Config("hive.omnidata-network-bandwidth")
+    @ConfigDescription("Data size transferred per second between a storage node and a worker, used by the cost based offload.")
+    public HiveConfig setOmniDataNetworkBandwidth(DataSize omniDataNetworkBandwidth)
+    {
+        this.omniDataNetworkBandwidth = omniDataNetworkBandwidth;
+        return this;
+    }
+
+    @NotNull
+    @MinDataSize("1MB")
+    public DataSize getOmniDataNetworkBandwidth()
+    {
+        return omniDataNetworkBandwidth;
+    }
+
+    @Config("hive.omnidata-scan-throughput")
+    @ConfigDescription("Data size scanned per second by an idle OmniData node, used by the cost based offload.")
+    public HiveConfig setOmniDataScanThroughput(DataSize omniDataScanThroughput)
+    {
+        this.omniDataScanThroughput = omniDataScanThroughput;
+        return this;
+    }
+
+    @NotNull
+    @MinDataSize("1MB")
+    public DataSize getOmniDataScanThroughput()
+    {
+        return omniDataScanThroughput;
+    }
+
+    @Config("hive.omnidata-partial-offload-enabled")
+    @ConfigDescription("Offload only filters, and read their splits locally when their OmniData nodes are out of task slots.")
+    public HiveConfig setOmniDataPartialOffloadEnabled(boolean omniDataPartialOffloadEnabled)
+    {
+        this.omniDataPartialOffloadEnabled = omniDataPartialOffloadEnabled;
+        return this;
+    }
+
+    public boolean isOmniDataPartialOffloadEnabled()
+    {
+        return omniDataPartialOffloadEnabled;
+    }
+
+    @Config("hive.omnidata-hedged-read-enabled")
+    @ConfigDescription("Send an offloaded split to another OmniData replica when the first one is slow or fails.")
+    public HiveConfig setOmniDataHedgedReadEnabled(boolean omniDataHedgedReadEnabled)
+    {
+        this.omniDataHedgedReadEnabled = omniDataHedgedReadEnabled;
+        return this;
+    }
+
+    public boolean isOmniDataHedgedReadEnabled()
+    {
+        return omniDataHedgedReadEnabled;
+    }
+
+    @Config("hive.omnidata-hedged-read-percentile")
+    @ConfigDescription("Percentile of the OmniData first page latency after which a split is sent to another replica.")
+    public HiveConfig setOmniDataHedgedReadPercentile(double omniDataHedgedReadPercentile)
+    {
+        this.omniDataHedgedReadPercentile = omniDataHedgedReadPercentile;
+        return this;
+    }
+
+    @DecimalMin("0.5")
+    @DecimalMax("1.0")
+    public double getOmniDataHedgedReadPercentile()
+    {
+        return omniDataHedgedReadPercentile;
+    }
+
+    @Config("hive.omnidata-hedged-read-threads")
+    @ConfigDescription("The maximum number of threads reading the first pages of hedged OmniData reads on a worker.")
+    public HiveConfig setOmniDataHedgedReadThreads(int omniDataHedgedReadThreads)
+    {
+        this.omniDataHedgedReadThreads = omniDataHedgedReadThreads;
+        return this;
+    }
+
+    @Min(1)
+    public int getOmniDataHedgedReadThreads()
+    {
+        return omniDataHedgedReadThreads;
+    }
+
+    @Config("hive.omnidata-page-size")
+    @ConfigDescription("The maximum size of a page returned by OmniData.")
+    public HiveConfig setOmniDataPageSize(DataSize omniDataPageSize)
+    {
+        this.omniDataPageSize = omniDataPageSize;
+        return this;
+    }
+
+    @NotNull
+    @MinDataSize("64kB")
+    @MaxDataSize("64MB")
+    public DataSize getOmniDataPageSize()
+    {
+        return omniDataPageSize;
+    }
 }
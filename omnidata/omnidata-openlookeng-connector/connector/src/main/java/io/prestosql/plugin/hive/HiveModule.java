@@ -30,6 +30,7 @@ import io.prestosql.orc.RowIndexCacheStatsLister;
 import io.prestosql.orc.StripeFooterCacheStatsLister;
 import io.prestosql.plugin.hive.metastore.SemiTransactionalHiveMetastore;
 import io.prestosql.plugin.hive.omnidata.OmniDataNodeManager;
+import io.prestosql.plugin.hive.omnidata.OmniDataReadExecutors;
 import io.prestosql.plugin.hive.orc.OrcPageSourceFactory;
 import io.prestosql.plugin.hive.orc.OrcSelectivePageSourceFactory;
 import io.prestosql.plugin.hive.parquet.ParquetPageSourceFactory;
@@ -97,6 +98,7 @@ public class HiveModule
         newExporter(binder).export(HiveWriterStats.class).withGeneratedName();
 
         binder.bind(OmniDataNodeManager.class).in(Scopes.SINGLETON);
+        binder.bind(OmniDataReadExecutors.class).in(Scopes.SINGLETON);
 
         newSetBinder(binder, EventClient.class).addBinding().to(HiveEventClient.class).in(Scopes.SINGLETON);
         binder.bind(HivePartitionManager.class).in(Scopes.SINGLETON);
@@ -37,25 +37,38 @@ public class HiveOffloadExpression
     private final Optional<AggregationInfo> aggregations;
     private final OptionalLong limit;
     private final Map<Symbol, RowExpression> projections;
+    private final Optional<String> offloadReason; // Why the optimizer decided to offload, only used to explain the plan.
 
     public HiveOffloadExpression()
     {
         this(Collections.emptySet(), TRUE_CONSTANT, Optional.empty(), OptionalLong.empty(), Collections.emptyMap());
     }
 
+    public HiveOffloadExpression(
+            Set<HiveColumnHandle> offloadColumns,
+            RowExpression filterExpression,
+            Optional<AggregationInfo> aggregations,
+            OptionalLong limit,
+            Map<Symbol, RowExpression> projections)
+    {
+        this(offloadColumns, filterExpression, aggregations, limit, projections, Optional.empty());
+    }
+
     @JsonCreator
     public HiveOffloadExpression(
             @JsonProperty("offloadColumns") Set<HiveColumnHandle> offloadColumns,
             @JsonProperty("filterExpression") RowExpression filterExpression,
             @JsonProperty("aggregations") Optional<AggregationInfo> aggregations,
             @JsonProperty("limit") OptionalLong limit,
-            @JsonProperty("projections") Map<Symbol, RowExpression> projections)
+            @JsonProperty("projections") Map<Symbol, RowExpression> projections,
+            @JsonProperty("offloadReason") Optional<String> offloadReason)
     {
         this.offloadColumns = offloadColumns;
         this.filterExpression = filterExpression;
         this.aggregations = aggregations;
         this.limit = limit;
         this.projections = projections;
+        this.offloadReason = offloadReason;
     }
 
     @JsonProperty
@@ -88,6 +101,12 @@ public class HiveOffloadExpression
         return limit;
     }
 
+    @JsonProperty
+    public Optional<String> getOffloadReason()
+    {
+        return offloadReason;
+    }
+
     public HiveOffloadExpression updateFilter(RowExpression filterExpression, Set<HiveColumnHandle> offloadColumns)
     {
         /// todo : handle exception
@@ -95,7 +114,7 @@ public class HiveOffloadExpression
                 "Aggregations, limit or projection expression is not empty.");
         Set<HiveColumnHandle> newOffloadColumns = new HashSet<>(this.offloadColumns);
         newOffloadColumns.addAll(offloadColumns);
-        return new HiveOffloadExpression(newOffloadColumns, filterExpression, aggregations, limit, projections);
+        return new HiveOffloadExpression(newOffloadColumns, filterExpression, aggregations, limit, projections, offloadReason);
     }
 
     public HiveOffloadExpression updateAggregation(Optional<AggregationInfo> aggregations, Set<HiveColumnHandle> offloadColumns)
@@ -104,12 +123,12 @@ public class HiveOffloadExpression
                 "Limit or aggregations expression is not empty.");
         Set<HiveColumnHandle> newOffloadColumns = new HashSet<>(this.offloadColumns);
         newOffloadColumns.addAll(offloadColumns);
-        return new HiveOffloadExpression(newOffloadColumns, filterExpression, aggregations, limit, projections);
+        return new HiveOffloadExpression(newOffloadColumns, filterExpression, aggregations, limit, projections, offloadReason);
     }
 
     public HiveOffloadExpression updateLimit(OptionalLong limit)
     {
-        return new HiveOffloadExpression(offloadColumns, filterExpression, aggregations, limit, projections);
+        return new HiveOffloadExpression(offloadColumns, filterExpression, aggregations, limit, projections, offloadReason);
     }
 
     public HiveOffloadExpression updateProjections(Map<Symbol, RowExpression> projections, Set<HiveColumnHandle> offloadColumns)
@@ -118,7 +137,12 @@ public class HiveOffloadExpression
                 "Projections or aggregations expression is not empty.");
         Set<HiveColumnHandle> newOffloadColumns = new HashSet<>(this.offloadColumns);
         newOffloadColumns.addAll(offloadColumns);
-        return new HiveOffloadExpression(newOffloadColumns, filterExpression, aggregations, limit, projections);
+        return new HiveOffloadExpression(newOffloadColumns, filterExpression, aggregations, limit, projections, offloadReason);
+    }
+
+    public HiveOffloadExpression withOffloadReason(String offloadReason)
+    {
+        return new HiveOffloadExpression(offloadColumns, filterExpression, aggregations, limit, projections, Optional.of(offloadReason));
     }
 
     public boolean isPresent()
@@ -169,6 +193,8 @@ public class HiveOffloadExpression
                 builder.append(" aggregation=[").append(aggregationInfoToString(expression)).append("]"));
         limit.ifPresent(expression ->
                 builder.append(" limit=[").append(expression).append("]"));
+        offloadReason.ifPresent(reason ->
+                builder.append(" reason=[").append(reason).append("]"));
         builder.append("} ");
         return builder.toString();
     }
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive;
+
+import io.prestosql.spi.Page;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.RunLengthEncodedBlock;
+import io.prestosql.spi.connector.ConnectorPageSource;
+
+import java.io.IOException;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.prestosql.spi.type.BooleanType.BOOLEAN;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Adds the {@link HiveColumnHandle#OMNIDATA_FILTERED_COLUMN_NAME} column to the pages of a split. With partial offload
+ * the offloaded filter stays above the table scan for the splits read locally, and it skips the rows of the splits
+ * for which this column is true, since OmniData has already filtered them.
+ */
+public class HiveOmniDataFilteredPageSource
+        implements ConnectorPageSource
+{
+    private final ConnectorPageSource delegate;
+    private final int channel;
+    private final boolean filtered;
+
+    public HiveOmniDataFilteredPageSource(ConnectorPageSource delegate, int channel, boolean filtered)
+    {
+        checkArgument(channel >= 0, "channel is negative");
+        this.delegate = requireNonNull(delegate, "delegate is null");
+        this.channel = channel;
+        this.filtered = filtered;
+    }
+
+    @Override
+    public OptionalLong getCompletedPositionCount()
+    {
+        return delegate.getCompletedPositionCount();
+    }
+
+    @Override
+    public long getCompletedBytes()
+    {
+        return delegate.getCompletedBytes();
+    }
+
+    @Override
+    public long getReadTimeNanos()
+    {
+        return delegate.getReadTimeNanos();
+    }
+
+    @Override
+    public CompletableFuture<?> isBlocked()
+    {
+        return delegate.isBlocked();
+    }
+
+    @Override
+    public boolean isFinished()
+    {
+        return delegate.isFinished();
+    }
+
+    @Override
+    public Page getNextPage()
+    {
+        Page page = delegate.getNextPage();
+        if (page == null) {
+            return null;
+        }
+        checkArgument(channel <= page.getChannelCount(), "channel %s is beyond the %s channels of the page", channel, page.getChannelCount());
+        Block[] blocks = new Block[page.getChannelCount() + 1];
+        for (int i = 0; i < page.getChannelCount(); i++) {
+            blocks[i < channel ? i : i + 1] = page.getBlock(i);
+        }
+        blocks[channel] = RunLengthEncodedBlock.create(BOOLEAN, filtered, page.getPositionCount());
+        return new Page(page.getPositionCount(), blocks);
+    }
+
+    @Override
+    public long getSystemMemoryUsage()
+    {
+        return delegate.getSystemMemoryUsage();
+    }
+
+    @Override
+    public boolean needMergingForPages()
+    {
+        return delegate.needMergingForPages();
+    }
+
+    @Override
+    public void close()
+            throws IOException
+    {
+        delegate.close();
+    }
+}
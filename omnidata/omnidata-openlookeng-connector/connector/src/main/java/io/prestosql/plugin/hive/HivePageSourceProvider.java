@@ -16,13 +16,11 @@ package io.prestosql.plugin.hive;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.huawei.boostkit.omnidata.decode.impl.OpenLooKengDeserializer;
+import com.google.common.collect.Iterables;
 import com.huawei.boostkit.omnidata.model.Predicate;
-import com.huawei.boostkit.omnidata.model.TaskSource;
 import com.huawei.boostkit.omnidata.model.datasource.DataSource;
 import com.huawei.boostkit.omnidata.model.datasource.hdfs.HdfsRecordDataSource;
 import com.huawei.boostkit.omnidata.reader.DataReader;
-import com.huawei.boostkit.omnidata.reader.DataReaderFactory;
 import io.airlift.log.Logger;
 import io.airlift.slice.Slice;
 import io.airlift.slice.Slices;
@@ -30,9 +28,12 @@ import io.prestosql.memory.context.AggregatedMemoryContext;
 import io.prestosql.plugin.hive.HiveBucketing.BucketingVersion;
 import io.prestosql.plugin.hive.coercions.HiveCoercer;
 import io.prestosql.plugin.hive.omnidata.OmniDataNodeManager;
+import io.prestosql.plugin.hive.omnidata.OmniDataNodeSelector;
 import io.prestosql.plugin.hive.omnidata.OmniDataNodeStatus;
+import io.prestosql.plugin.hive.omnidata.OmniDataReadExecutors;
 import io.prestosql.plugin.hive.orc.OrcConcatPageSource;
 import io.prestosql.plugin.hive.util.IndexCache;
+import io.prestosql.spi.HostAddress;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.connector.ColumnHandle;
 import io.prestosql.spi.connector.ConnectorPageSource;
@@ -74,6 +75,7 @@ import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -89,15 +91,16 @@ import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.Maps.uniqueIndex;
 import static com.huawei.boostkit.omnidata.transfer.OmniDataProperty.HOSTADDRESS_DELIMITER;
-import static com.huawei.boostkit.omnidata.transfer.OmniDataProperty.OMNIDATA_CLIENT_TARGET_LIST;
 import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.DUMMY_OFFLOADED;
 import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.REGULAR;
 import static io.prestosql.plugin.hive.HiveColumnHandle.MAX_PARTITION_KEY_COLUMN_INDEX;
+import static io.prestosql.plugin.hive.HiveColumnHandle.isOmniDataFilteredColumnHandle;
 import static io.prestosql.plugin.hive.HivePageSourceProvider.ColumnMapping.toColumnHandles;
 import static io.prestosql.plugin.hive.HiveUtil.isPartitionFiltered;
 import static io.prestosql.plugin.hive.coercions.HiveCoercer.createCoercer;
 import static io.prestosql.plugin.hive.metastore.MetastoreUtil.META_PARTITION_COLUMNS;
 import static io.prestosql.plugin.hive.util.PageSourceUtil.buildPushdownContext;
+import static io.prestosql.plugin.hive.util.PageSourceUtil.createOmniDataReader;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toList;
 import static org.apache.hadoop.hive.metastore.api.hive_metastoreConstants.META_TABLE_COLUMNS;
@@ -117,10 +120,12 @@ public class HivePageSourceProvider
     private final IndexCache indexCache;
     private final Set<HiveSelectivePageSourceFactory> selectivePageSourceFactories;
     private final OmniDataNodeManager omniDataNodeManager;
+    private final OmniDataReadExecutors omniDataReadExecutors;
 
     @Inject
     public HivePageSourceProvider(
             OmniDataNodeManager omniDataNodeManager,
+            OmniDataReadExecutors omniDataReadExecutors,
             HiveConfig hiveConfig,
             HdfsEnvironment hdfsEnvironment,
             Set<HiveRecordCursorProvider> cursorProviders,
@@ -131,6 +136,7 @@ public class HivePageSourceProvider
     {
         requireNonNull(hiveConfig, "hiveConfig is null");
         this.omniDataNodeManager = omniDataNodeManager;
+        this.omniDataReadExecutors = requireNonNull(omniDataReadExecutors, "omniDataReadExecutors is null");
         this.hdfsEnvironment = requireNonNull(hdfsEnvironment, "hdfsEnvironment is null");
         this.cursorProviders = ImmutableSet.copyOf(requireNonNull(cursorProviders, "cursorProviders is null"));
         this.pageSourceFactories = ImmutableSet.copyOf(
@@ -158,6 +164,7 @@ public class HivePageSourceProvider
         this.indexCache = indexCache;
         this.selectivePageSourceFactories = selectivePageSourceFactories;
         this.omniDataNodeManager = null;
+        this.omniDataReadExecutors = new OmniDataReadExecutors(hiveConfig);
     }
 
     @Override
@@ -179,75 +186,99 @@ public class HivePageSourceProvider
 
         HiveTableHandle hiveTable = (HiveTableHandle) table;
 
+        // the marker of the splits filtered by OmniData is not read from the files, it is added once a split is routed
+        int filteredChannel = Iterables.indexOf(columns, column -> isOmniDataFilteredColumnHandle((HiveColumnHandle) column));
+        OptionalInt omniDataFilteredChannel = filteredChannel < 0 ? OptionalInt.empty() : OptionalInt.of(filteredChannel);
         List<HiveColumnHandle> hiveColumns = columns.stream()
                 .map(HiveColumnHandle.class::cast)
+                .filter(column -> !isOmniDataFilteredColumnHandle(column))
                 .collect(toList());
 
         List<HiveSplit> hiveSplits = (((HiveSplitWrapper) split).getSplits());
         if (hiveSplits.size() == 1) {
             HiveSplit hiveSplit = hiveSplits.get(0);
-            return createPageSourceInternal(session, dynamicFilterSupplier, dynamicFilters, hiveTable, hiveColumns, hiveSplit);
+            return createPageSourceInternal(session, dynamicFilterSupplier, dynamicFilters, hiveTable, hiveColumns, omniDataFilteredChannel, hiveSplit);
         }
         List<Map<ColumnHandle, DynamicFilter>> finalDynamicFilters = dynamicFilters;
         List<ConnectorPageSource> pageSources = hiveSplits.stream()
-                .map(hiveSplit -> createPageSourceInternal(session, dynamicFilterSupplier, finalDynamicFilters, hiveTable, hiveColumns, hiveSplit))
+                .map(hiveSplit -> createPageSourceInternal(session, dynamicFilterSupplier, finalDynamicFilters, hiveTable, hiveColumns, omniDataFilteredChannel, hiveSplit))
                 .collect(toList());
         return new OrcConcatPageSource(pageSources);
     }
 
-    private Optional<String> getSplitOmniDataAddrRandomly(HiveSplit hiveSplit)
+    private List<OmniDataNodeStatus> getSplitOmniDataNodesRandomly(HiveSplit hiveSplit, OmniDataNodeSelector nodeSelector)
     {
         List<OmniDataNodeStatus> omniDataNodeList = omniDataNodeManager.getAllNodes().values().stream().collect(toList());
         if (omniDataNodeList.isEmpty()) {
-            return Optional.empty();
+            return ImmutableList.of();
         }
 
-        int nodeNum = omniDataNodeList.size();
-        int seed = (int) ((hiveSplit.getStart() / Math.max(1, hiveSplit.getLength()) + hiveSplit.getFileSize() + hiveSplit.getPath().hashCode()) % nodeNum);
-        StringJoiner addressJoiner = new StringJoiner(HOSTADDRESS_DELIMITER);
-        for (int i = 0; i < nodeNum && i < DEFAULT_SPLIT_NUM; i++) {
-            int index = Math.abs(seed + i) % nodeNum;
-            addressJoiner.add(omniDataNodeList.get(index).getHostAddress());
-        }
-        return Optional.of(addressJoiner.toString());
+        long seed = hiveSplit.getStart() / Math.max(1, hiveSplit.getLength()) + hiveSplit.getFileSize() + hiveSplit.getPath().hashCode();
+        return nodeSelector.select(omniDataNodeList, omniDataNodeManager::getHeadroom, DEFAULT_SPLIT_NUM, seed);
     }
 
-    private Optional<String> getSplitOmniDataAddr(HiveOffloadExpression expression, HiveSplit hiveSplit)
+    private List<OmniDataNodeStatus> getSplitOmniDataNodes(HiveOffloadExpression expression, HiveSplit hiveSplit, OmniDataNodeSelector nodeSelector)
     {
         if (!expression.isPresent()) {
-            return Optional.empty();
+            return ImmutableList.of();
         }
 
         // for empty or ceph split
         if (hiveSplit.getAddresses().size() == 0) {
-            return getSplitOmniDataAddrRandomly(hiveSplit);
+            return getSplitOmniDataNodesRandomly(hiveSplit, nodeSelector);
         }
 
-        StringJoiner hostAddressJoiner = new StringJoiner(HOSTADDRESS_DELIMITER);
-        int copyNumber = Math.max(1, hiveSplit.getAddresses().size());
-        int seed = (int) ((hiveSplit.getStart() / Math.max(1, hiveSplit.getLength()) + hiveSplit.getFileSize()) % copyNumber);
-        int counter = 0;
-        for (int i = 0; i < hiveSplit.getAddresses().size(); i++) {
-            int copyIndex = Math.abs(i + seed) % copyNumber;
+        // Replica hosts are always preferred to remote nodes, the load only decides the order among them
+        Map<String, OmniDataNodeStatus> allNodes = omniDataNodeManager.getAllNodes();
+        Map<String, OmniDataNodeStatus> localNodes = new LinkedHashMap<>();
+        for (HostAddress address : hiveSplit.getAddresses()) {
             try {
-                String hostIp = InetAddress.getByName(hiveSplit.getAddresses().get(copyIndex).getHostText()).getHostAddress();
-                if (omniDataNodeManager.getAllNodes().containsKey(hostIp)) {
-                    hostAddressJoiner.add(omniDataNodeManager.getAllNodes().get(hostIp).getHostAddress());
-                    counter++;
+                String hostIp = InetAddress.getByName(address.getHostText()).getHostAddress();
+                OmniDataNodeStatus nodeStatus = allNodes.get(hostIp);
+                if (nodeStatus != null) {
+                    localNodes.putIfAbsent(nodeStatus.getHostAddress(), nodeStatus);
                 }
             }
             catch (UnknownHostException e) {
-                log.warn("Get host ip by host name %s fail.", hiveSplit.getAddresses().get(copyIndex).getHostText());
+                log.warn("Get host ip by host name %s fail.", address.getHostText());
             }
         }
 
-        if (counter == 0) {
+        if (localNodes.isEmpty()) {
             StringJoiner splitJoiner = new StringJoiner(", ");
             hiveSplit.getAddresses().stream().map(entry -> entry.toString()).forEach(splitJoiner::add);
-            log.warn("Get omniData ip for split[%s] fail, omniDataNodeManager size %d, get available address randomly", splitJoiner.toString(), omniDataNodeManager.getAllNodes().size());
-            return getSplitOmniDataAddrRandomly(hiveSplit);
+            log.warn("Get omniData ip for split[%s] fail, omniDataNodeManager size %d, get available address randomly", splitJoiner.toString(), allNodes.size());
+            return getSplitOmniDataNodesRandomly(hiveSplit, nodeSelector);
+        }
+
+        long seed = hiveSplit.getStart() / Math.max(1, hiveSplit.getLength()) + hiveSplit.getFileSize();
+        List<OmniDataNodeStatus> candidates = ImmutableList.copyOf(localNodes.values());
+        return nodeSelector.select(candidates, omniDataNodeManager::getHeadroom, candidates.size(), seed);
+    }
+
+    /**
+     * With partial offload only filters are offloaded, and they are kept above the table scan, so a split can be
+     * read by the local readers. The offload rules skip limits, aggregations and projections in this mode.
+     */
+    private boolean isReadLocally(ConnectorSession session, HiveOffloadExpression expression, List<OmniDataNodeStatus> selectedNodes)
+    {
+        if (!HiveSessionProperties.isOmniDataPartialOffloadEnabled(session)
+                || expression.getLimit().isPresent()
+                || expression.getAggregations().isPresent()
+                || !expression.getProjections().isEmpty()) {
+            return false;
         }
-        return Optional.of(hostAddressJoiner.toString());
+        // The best candidate comes first, keep OmniData busy as long as it has free task slots and leave the overflow to the workers
+        return selectedNodes.isEmpty() || omniDataNodeManager.getHeadroom(selectedNodes.get(0)) <= 0;
+    }
+
+    private String joinOmniDataAddress(List<OmniDataNodeStatus> selectedNodes)
+    {
+        // The first node serves the split, count it until the next refresh of the node states
+        omniDataNodeManager.recordSplitAssignment(selectedNodes.get(0).getHostAddress());
+        StringJoiner addressJoiner = new StringJoiner(HOSTADDRESS_DELIMITER);
+        selectedNodes.forEach(node -> addressJoiner.add(node.getHostAddress()));
+        return addressJoiner.toString();
     }
 
     private ConnectorPageSource createPageSourceInternal(ConnectorSession session,
@@ -255,6 +286,7 @@ public class HivePageSourceProvider
             List<Map<ColumnHandle, DynamicFilter>> dynamicFilters,
             HiveTableHandle hiveTable,
             List<HiveColumnHandle> hiveColumns,
+            OptionalInt omniDataFilteredChannel,
             HiveSplit hiveSplit)
     {
         Path path = new Path(hiveSplit.getPath());
@@ -316,12 +348,14 @@ public class HivePageSourceProvider
         TupleDomain<HiveColumnHandle> predicate = TupleDomain.all();
         if (dynamicFilterSupplier.isPresent() && dynamicFilters != null && !dynamicFilters.isEmpty()) {
             if (dynamicFilters.size() == 1) {
+                // Domains of every filtered column are intersected, so they reach OmniData as min/max ranges as well
                 List<HiveColumnHandle> filteredHiveColumnHandles = hiveColumns.stream().filter(column -> dynamicFilters.get(0).containsKey(column)).collect(toList());
-                HiveColumnHandle hiveColumnHandle = filteredHiveColumnHandles.get(0);
-                Type type = hiveColumnHandle.getColumnMetadata(typeManager).getType();
-                predicate = getPredicate(dynamicFilters.get(0).get(hiveColumnHandle), type, hiveColumnHandle);
-                if (predicate.isNone()) {
-                    predicate = TupleDomain.all();
+                for (HiveColumnHandle hiveColumnHandle : filteredHiveColumnHandles) {
+                    Type type = hiveColumnHandle.getColumnMetadata(typeManager).getType();
+                    TupleDomain<HiveColumnHandle> columnPredicate = getPredicate(dynamicFilters.get(0).get(hiveColumnHandle), type, hiveColumnHandle);
+                    if (!columnPredicate.isNone()) {
+                        predicate = predicate.intersect(columnPredicate);
+                    }
                 }
             }
         }
@@ -333,7 +367,7 @@ public class HivePageSourceProvider
          * (Refer HiveMetadata.checkIfSuitableToPush).
          */
         if (hiveTable.isSuitableToPush()) {
-            return createSelectivePageSource(selectivePageSourceFactories, configuration,
+            ConnectorPageSource selectivePageSource = createSelectivePageSource(selectivePageSourceFactories, configuration,
                     session, hiveSplit, assignUniqueIndicesToPartitionColumns(hiveColumns), typeManager,
                     dynamicFilterSupplier, hiveSplit.getDeleteDeltaLocations(),
                     hiveSplit.getStartRowOffsetOfFile(),
@@ -345,9 +379,18 @@ public class HivePageSourceProvider
                     hiveSplit.getBucketNumber(),
                     hiveSplit.getLastModifiedTime(),
                     missingColumns);
+            return addOmniDataFilteredColumn(selectivePageSource, omniDataFilteredChannel, false);
         }
 
-        Optional<String> omniDataAddress = getSplitOmniDataAddr(hiveTable.getOffloadExpression(), hiveSplit);
+        HiveOffloadExpression offloadExpression = hiveTable.getOffloadExpression();
+        List<OmniDataNodeStatus> omniDataNodes = getSplitOmniDataNodes(offloadExpression, hiveSplit, HiveSessionProperties.getOmniDataNodeSelectionPolicy(session));
+        Optional<String> omniDataAddress = Optional.empty();
+        if (offloadExpression.isPresent() && isReadLocally(session, offloadExpression, omniDataNodes)) {
+            offloadExpression = new HiveOffloadExpression();
+        }
+        else if (!omniDataNodes.isEmpty()) {
+            omniDataAddress = Optional.of(joinOmniDataAddress(omniDataNodes));
+        }
         Optional<ConnectorPageSource> pageSource = createHivePageSource(
                 cursorProviders,
                 pageSourceFactories,
@@ -376,13 +419,22 @@ public class HivePageSourceProvider
                 hiveSplit.getCustomSplitInfo(),
                 missingColumns,
                 omniDataAddress,
-                hiveTable.getOffloadExpression());
+                offloadExpression,
+                omniDataReadExecutors);
         if (pageSource.isPresent()) {
-            return pageSource.get();
+            return addOmniDataFilteredColumn(pageSource.get(), omniDataFilteredChannel, offloadExpression.isPresent());
         }
         throw new RuntimeException("Could not find a file reader for split " + hiveSplit);
     }
 
+    private static ConnectorPageSource addOmniDataFilteredColumn(ConnectorPageSource pageSource, OptionalInt omniDataFilteredChannel, boolean filtered)
+    {
+        if (!omniDataFilteredChannel.isPresent()) {
+            return pageSource;
+        }
+        return new HiveOmniDataFilteredPageSource(pageSource, omniDataFilteredChannel.getAsInt(), filtered);
+    }
+
     /**
      * All partition columns have index as -1, since we are making map of this, we need to assign an unique index.
      * @param columns List of partition columns
@@ -544,7 +596,8 @@ public class HivePageSourceProvider
             Map<String, String> customSplitInfo,
             List<String> missingColumns,
             Optional<String> omniDataAddress,
-            HiveOffloadExpression expression)
+            HiveOffloadExpression expression,
+            OmniDataReadExecutors omniDataReadExecutors)
     {
         List<ColumnMapping> columnMappings = ColumnMapping.buildColumnMappings(
                 partitionKeys,
@@ -600,14 +653,16 @@ public class HivePageSourceProvider
             checkArgument(omniDataAddress.isPresent(), "omniDataAddress is empty");
 
             Predicate predicate = buildPushdownContext(hiveColumns, expression, typeManager,
-                    effectivePredicate, partitionKeys, bucketNumber, path);
-            ConnectorPageSource pageSource = createPushDownPageSource(path,
+                    effectivePredicate, partitionKeys, bucketNumber, path, dynamicFilterSupplier);
+            ConnectorPageSource pageSource = createPushDownPageSource(session,
+                    path,
                     start,
                     length,
                     fileSize,
                     predicate,
                     omniDataAddress.get(),
-                    schema);
+                    schema,
+                    omniDataReadExecutors);
             return Optional.of(
                     new HivePageSource(
                             columnMappings,
@@ -675,27 +730,25 @@ public class HivePageSourceProvider
     }
 
     private static ConnectorPageSource createPushDownPageSource(
+            ConnectorSession session,
             Path path,
             long start,
             long length,
             long fileSize,
             Predicate predicate,
             String omniDataServerTarget,
-            Properties schema)
+            Properties schema,
+            OmniDataReadExecutors omniDataReadExecutors)
     {
         AggregatedMemoryContext systemMemoryUsage = AggregatedMemoryContext.newSimpleAggregatedMemoryContext();
-        Properties transProperties = new Properties();
-        transProperties.put(OMNIDATA_CLIENT_TARGET_LIST, omniDataServerTarget);
 
         DataSource pushDownDataSource = new HdfsRecordDataSource(path.toString(), start, length, fileSize, schema);
 
-        TaskSource readTaskInfo = new TaskSource(
-                pushDownDataSource,
-                predicate,
-                TaskSource.ONE_MEGABYTES);
-        DataReader<Page> dataReader = DataReaderFactory.create(transProperties, readTaskInfo, new OpenLooKengDeserializer());
+        DataReader<Page> dataReader = createOmniDataReader(session, omniDataServerTarget, pushDownDataSource, predicate,
+                omniDataReadExecutors.getHedgeExecutor());
 
-        return new HivePushDownPageSource(dataReader, systemMemoryUsage);
+        return new HivePushDownPageSource(dataReader, systemMemoryUsage, HiveSessionProperties.getOmniDataPrefetchPageCount(session),
+                omniDataReadExecutors.getPrefetchExecutor());
     }
 
     public static Optional<BucketAdaptation> toBucketAdaptation(Optional<HiveSplit.BucketConversion> bucketConversion,
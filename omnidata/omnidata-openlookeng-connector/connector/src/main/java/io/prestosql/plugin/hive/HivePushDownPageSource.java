@@ -15,32 +15,79 @@
 package io.prestosql.plugin.hive;
 
 import com.huawei.boostkit.omnidata.reader.DataReader;
+import io.airlift.log.Logger;
 import io.prestosql.memory.context.AggregatedMemoryContext;
-import io.prestosql.plugin.hive.util.PageSourceUtil;
+import io.prestosql.memory.context.LocalMemoryContext;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.PrestoException;
 import io.prestosql.spi.connector.ConnectorPageSource;
 
+import javax.annotation.concurrent.GuardedBy;
+
+import java.util.ArrayDeque;
 import java.util.OptionalLong;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_OPERATOR_OFFLOAD_FAIL;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Page source for the splits offloaded to OmniData.
+ * Pages are prefetched from the {@link DataReader} into a bounded buffer by a dedicated I/O executor,
+ * so the driver thread never waits for the network round trip and is notified through {@link #isBlocked()}.
+ * The executor is owned by the connector, see {@link io.prestosql.plugin.hive.omnidata.OmniDataReadExecutors}.
+ * <p>
+ * The connector SPI gives no access to the operator memory context, the retained size of the buffered pages
+ * is reported by {@link #getSystemMemoryUsage()} instead, which the scan operator charges to its system memory.
+ */
 public class HivePushDownPageSource
         implements ConnectorPageSource
 {
+    public static final int DEFAULT_MAX_BUFFERED_PAGES = 4;
+
+    private static final Logger log = Logger.get(HivePushDownPageSource.class);
+
     private final DataReader<Page> dataReader;
     private final AggregatedMemoryContext systemMemoryContext;
+    private final LocalMemoryContext bufferedMemoryContext;
+    private final int maxBufferedPages;
+    private final Executor executor;
+    private final AtomicLong readTimeNanos = new AtomicLong();
+
+    @GuardedBy("this")
+    private final Queue<Page> bufferedPages = new ArrayDeque<>();
+    @GuardedBy("this")
+    private long bufferedBytes;
+    @GuardedBy("this")
+    private CompletableFuture<?> pageAvailable = new CompletableFuture<>();
+    @GuardedBy("this")
+    private boolean fetching;
+    @GuardedBy("this")
+    private boolean readerFinished;
+    @GuardedBy("this")
+    private boolean readerClosed;
+    @GuardedBy("this")
+    private Throwable failure;
 
-    private boolean closed;
-    private long readTimeNanos;
+    private volatile boolean closed;
 
     public HivePushDownPageSource(
             DataReader<Page> dataReader,
-            AggregatedMemoryContext systemMemoryContext)
+            AggregatedMemoryContext systemMemoryContext,
+            int maxBufferedPages,
+            Executor executor)
     {
+        checkArgument(maxBufferedPages > 0, "maxBufferedPages must be positive");
         this.dataReader = requireNonNull(dataReader, "dataReader is null");
         this.systemMemoryContext = requireNonNull(systemMemoryContext, "systemMemoryContext is null");
+        this.bufferedMemoryContext = systemMemoryContext.newLocalMemoryContext(HivePushDownPageSource.class.getSimpleName());
+        this.maxBufferedPages = maxBufferedPages;
+        this.executor = requireNonNull(executor, "executor is null");
     }
 
     @Override
@@ -58,7 +105,7 @@ public class HivePushDownPageSource
     @Override
     public long getReadTimeNanos()
     {
-        return readTimeNanos;
+        return readTimeNanos.get();
     }
 
     @Override
@@ -68,26 +115,37 @@ public class HivePushDownPageSource
     }
 
     @Override
-    public Page getNextPage()
+    public synchronized CompletableFuture<?> isBlocked()
     {
-        long start = System.nanoTime();
-
-        if (dataReader.isFinished()) {
-            close();
-            return null;
+        scheduleFetchIfNecessary();
+        if (!bufferedPages.isEmpty() || readerFinished || failure != null || closed) {
+            return NOT_BLOCKED;
         }
-
-        Page page = null;
-        try {
-            page = dataReader.getNextPageBlocking();
+        if (pageAvailable.isDone()) {
+            pageAvailable = new CompletableFuture<>();
         }
-        catch (Exception exception) {
-            PageSourceUtil.closeWithSuppression(this, exception);
-            throw new PrestoException(HIVE_OPERATOR_OFFLOAD_FAIL, exception.getMessage());
-        }
-
-        readTimeNanos += System.nanoTime() - start;
+        return pageAvailable;
+    }
 
+    @Override
+    public Page getNextPage()
+    {
+        Page page;
+        synchronized (this) {
+            if (failure != null) {
+                throw new PrestoException(HIVE_OPERATOR_OFFLOAD_FAIL, failure.getMessage(), failure);
+            }
+            page = bufferedPages.poll();
+            if (page != null) {
+                bufferedBytes -= page.getRetainedSizeInBytes();
+                bufferedMemoryContext.setBytes(bufferedBytes);
+            }
+            else if (readerFinished) {
+                close();
+                return null;
+            }
+            scheduleFetchIfNecessary();
+        }
         return page;
     }
 
@@ -100,15 +158,109 @@ public class HivePushDownPageSource
     @Override
     public void close()
     {
-        if (closed) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            bufferedPages.clear();
+            bufferedBytes = 0;
+            bufferedMemoryContext.setBytes(0);
+            pageAvailable.complete(null);
+            // An in-flight fetch owns the reader, it closes the reader once the current request returns
+            if (fetching) {
+                return;
+            }
+        }
+        closeReader();
+    }
+
+    @GuardedBy("this")
+    private void scheduleFetchIfNecessary()
+    {
+        if (fetching || readerFinished || failure != null || closed || bufferedPages.size() >= maxBufferedPages) {
             return;
         }
-        closed = true;
+        fetching = true;
+        try {
+            executor.execute(this::fetchPages);
+        }
+        catch (RejectedExecutionException e) {
+            // the connector is shutting down
+            fetching = false;
+            failure = e;
+            pageAvailable.complete(null);
+        }
+    }
+
+    private void fetchPages()
+    {
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (closed || bufferedPages.size() >= maxBufferedPages) {
+                        break;
+                    }
+                }
+
+                long start = System.nanoTime();
+                Page page = dataReader.isFinished() ? null : dataReader.getNextPageBlocking();
+                boolean finished = dataReader.isFinished();
+                readTimeNanos.addAndGet(System.nanoTime() - start);
+
+                synchronized (this) {
+                    if (page != null && !closed) {
+                        bufferedPages.add(page);
+                        bufferedBytes += page.getRetainedSizeInBytes();
+                        bufferedMemoryContext.setBytes(bufferedBytes);
+                    }
+                    if (finished) {
+                        readerFinished = true;
+                    }
+                    if (page != null || finished) {
+                        pageAvailable.complete(null);
+                    }
+                    if (finished) {
+                        break;
+                    }
+                }
+            }
+        }
+        catch (Exception exception) {
+            synchronized (this) {
+                failure = exception;
+                pageAvailable.complete(null);
+            }
+        }
+        finally {
+            boolean closeReader;
+            synchronized (this) {
+                fetching = false;
+                closeReader = closed;
+                if (!closeReader) {
+                    // pages may have been consumed while the last request was in flight
+                    scheduleFetchIfNecessary();
+                }
+            }
+            if (closeReader) {
+                closeReader();
+            }
+        }
+    }
+
+    private void closeReader()
+    {
+        synchronized (this) {
+            if (readerClosed) {
+                return;
+            }
+            readerClosed = true;
+        }
         try {
             dataReader.close();
         }
         catch (Exception e) {
-            e.printStackTrace();
+            log.warn(e, "Close OmniData reader fail");
         }
     }
 }
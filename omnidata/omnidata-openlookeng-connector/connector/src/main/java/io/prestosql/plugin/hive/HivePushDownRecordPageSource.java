@@ -16,94 +16,42 @@ package io.prestosql.plugin.hive;
 
 import com.huawei.boostkit.omnidata.reader.DataReader;
 import io.prestosql.memory.context.AggregatedMemoryContext;
-import io.prestosql.plugin.hive.util.PageSourceUtil;
 import io.prestosql.spi.Page;
-import io.prestosql.spi.PrestoException;
-import io.prestosql.spi.connector.ConnectorPageSource;
 
-import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_OPERATOR_OFFLOAD_FAIL;
-import static java.util.Objects.requireNonNull;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Record oriented variant of {@link HivePushDownPageSource}, the completed bytes are counted from the returned pages.
+ */
 public class HivePushDownRecordPageSource
-        implements ConnectorPageSource
+        extends HivePushDownPageSource
 {
-    private final DataReader dataReader;
-    private boolean closed;
-    private final AggregatedMemoryContext systemMemoryContext;
-    private long readTimeNanos;
-    private long readBytes;
+    private final AtomicLong readBytes = new AtomicLong();
 
+    @SuppressWarnings("unchecked")
     public HivePushDownRecordPageSource(
             DataReader dataReader,
-            AggregatedMemoryContext systemMemoryContext)
+            AggregatedMemoryContext systemMemoryContext,
+            int maxBufferedPages,
+            Executor executor)
     {
-        this.dataReader = requireNonNull(dataReader, "dataReader is null");
-        this.systemMemoryContext = requireNonNull(systemMemoryContext, "systemMemoryContext is null");
+        super((DataReader<Page>) dataReader, systemMemoryContext, maxBufferedPages, executor);
     }
 
     @Override
     public long getCompletedBytes()
     {
-        return readBytes;
-    }
-
-    @Override
-    public long getReadTimeNanos()
-    {
-        return readTimeNanos;
-    }
-
-    @Override
-    public boolean isFinished()
-    {
-        return closed;
+        return readBytes.get();
     }
 
     @Override
     public Page getNextPage()
     {
-        long start = System.nanoTime();
-
-        if (dataReader.isFinished()) {
-            close();
-            return null;
-        }
-
-        Page page = null;
-        try {
-            page = (Page) dataReader.getNextPageBlocking();
-        }
-        catch (Exception exception) {
-            PageSourceUtil.closeWithSuppression(this, exception);
-            throw new PrestoException(HIVE_OPERATOR_OFFLOAD_FAIL, exception.getMessage());
-        }
-
-        readTimeNanos += System.nanoTime() - start;
+        Page page = super.getNextPage();
         if (page != null) {
-            readBytes += page.getSizeInBytes();
+            readBytes.addAndGet(page.getSizeInBytes());
         }
-
         return page;
     }
-
-    @Override
-    public long getSystemMemoryUsage()
-    {
-        return systemMemoryContext.getBytes();
-    }
-
-    @Override
-    public void close()
-    {
-        if (closed) {
-            return;
-        }
-        closed = true;
-        try {
-            dataReader.close();
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-        }
-    }
 }
@@ -16,6 +16,7 @@ package io.prestosql.plugin.hive;
 import com.google.common.collect.ImmutableList;
 import io.airlift.units.DataSize;
 import io.prestosql.orc.OrcWriteValidation.OrcWriteValidationMode;
+import io.prestosql.plugin.hive.omnidata.OmniDataNodeSelectionPolicy;
 import io.prestosql.spi.PrestoException;
 import io.prestosql.spi.connector.ConnectorSession;
 import io.prestosql.spi.session.PropertyMetadata;
@@ -26,16 +27,20 @@ import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static io.airlift.units.DataSize.Unit.KILOBYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
 import static io.prestosql.plugin.hive.HiveSessionProperties.InsertExistingPartitionsBehavior.APPEND;
 import static io.prestosql.plugin.hive.HiveSessionProperties.InsertExistingPartitionsBehavior.ERROR;
 import static io.prestosql.spi.StandardErrorCode.INVALID_SESSION_PROPERTY;
 import static io.prestosql.spi.session.PropertyMetadata.booleanProperty;
 import static io.prestosql.spi.session.PropertyMetadata.dataSizeProperty;
 import static io.prestosql.spi.session.PropertyMetadata.doubleProperty;
+import static io.prestosql.spi.session.PropertyMetadata.enumProperty;
 import static io.prestosql.spi.session.PropertyMetadata.integerProperty;
 import static io.prestosql.spi.session.PropertyMetadata.longProperty;
 import static io.prestosql.spi.session.PropertyMetadata.stringProperty;
 import static io.prestosql.spi.type.DoubleType.DOUBLE;
+import static io.prestosql.spi.type.IntegerType.INTEGER;
 import static io.prestosql.spi.type.VarcharType.VARCHAR;
 import static java.lang.String.format;
 import static java.util.Locale.ENGLISH;
@@ -98,7 +103,19 @@ public final class HiveSessionProperties
     private static final String AGGREGATOR_OFFLOAD_FACTOR = "aggregator_offload_factor";
     private static final String MIN_OFFLOAD_ROW_NUMBER = "min_offload_row_number";
     private static final String OMNIDATA_ENABLE = "omnidata_enabled";
+    private static final String OMNIDATA_PREFETCH_PAGE_COUNT = "omnidata_prefetch_page_count";
+    private static final String OMNIDATA_NODE_SELECTION_POLICY = "omnidata_node_selection_policy";
+    private static final String OMNIDATA_COST_BASED_OFFLOAD_ENABLED = "omnidata_cost_based_offload_enabled";
+    private static final String OMNIDATA_NETWORK_BANDWIDTH = "omnidata_network_bandwidth";
+    private static final String OMNIDATA_SCAN_THROUGHPUT = "omnidata_scan_throughput";
+    private static final String OMNIDATA_PARTIAL_OFFLOAD_ENABLED = "omnidata_partial_offload_enabled";
+    private static final String OMNIDATA_HEDGED_READ_ENABLED = "omnidata_hedged_read_enabled";
+    private static final String OMNIDATA_HEDGED_READ_PERCENTILE = "omnidata_hedged_read_percentile";
+    private static final String OMNIDATA_PAGE_SIZE = "omnidata_page_size";
     private static final String METASTORE_WRITE_BATCH_SIZE = "metastore_write_batch_size";
+    // the same bounds as hive.omnidata-page-size, a task page size must fit in an int
+    private static final DataSize MIN_OMNIDATA_PAGE_SIZE = new DataSize(64, KILOBYTE);
+    private static final DataSize MAX_OMNIDATA_PAGE_SIZE = new DataSize(64, MEGABYTE);
 
     private final List<PropertyMetadata<?>> sessionProperties;
 
@@ -429,7 +446,91 @@ public final class HiveSessionProperties
                         MIN_OFFLOAD_ROW_NUMBER,
                         "The minimum table size for operator offload.",
                         hiveConfig.getMinOffloadRowNumber(),
-                        false));
+                        false),
+                new PropertyMetadata<>(
+                        OMNIDATA_PREFETCH_PAGE_COUNT,
+                        "The maximum number of pages prefetched from OmniData for each offloaded split.",
+                        INTEGER,
+                        Integer.class,
+                        hiveConfig.getOmniDataPrefetchPageCount(),
+                        false,
+                        value -> {
+                            int intValue = ((Number) value).intValue();
+                            if (intValue < 1) {
+                                throw new PrestoException(
+                                        INVALID_SESSION_PROPERTY,
+                                        format("%s must be greater than 0: %s", OMNIDATA_PREFETCH_PAGE_COUNT, intValue));
+                            }
+                            return intValue;
+                        },
+                        value -> value),
+                enumProperty(
+                        OMNIDATA_NODE_SELECTION_POLICY,
+                        "Policy to choose among the OmniData nodes of a split: HASH, LEAST_LOADED or POWER_OF_TWO_CHOICES.",
+                        OmniDataNodeSelectionPolicy.class,
+                        hiveConfig.getOmniDataNodeSelectionPolicy(),
+                        false),
+                booleanProperty(
+                        OMNIDATA_COST_BASED_OFFLOAD_ENABLED,
+                        "Decide operator offload by comparing the estimated transfer and scan cost instead of the offload factors.",
+                        hiveConfig.isOmniDataCostBasedOffloadEnabled(),
+                        false),
+                dataSizeProperty(
+                        OMNIDATA_NETWORK_BANDWIDTH,
+                        "Data size transferred per second between a storage node and a worker, used by the cost based offload.",
+                        hiveConfig.getOmniDataNetworkBandwidth(),
+                        false),
+                dataSizeProperty(
+                        OMNIDATA_SCAN_THROUGHPUT,
+                        "Data size scanned per second by an idle OmniData node, used by the cost based offload.",
+                        hiveConfig.getOmniDataScanThroughput(),
+                        false),
+                booleanProperty(
+                        OMNIDATA_PARTIAL_OFFLOAD_ENABLED,
+                        "Offload only filters, and read their splits locally when their OmniData nodes are out of task slots.",
+                        hiveConfig.isOmniDataPartialOffloadEnabled(),
+                        false),
+                booleanProperty(
+                        OMNIDATA_HEDGED_READ_ENABLED,
+                        "Send an offloaded split to another OmniData replica when the first one is slow or fails.",
+                        hiveConfig.isOmniDataHedgedReadEnabled(),
+                        false),
+                new PropertyMetadata<>(
+                        OMNIDATA_HEDGED_READ_PERCENTILE,
+                        "Percentile of the OmniData first page latency after which a split is sent to another replica.",
+                        DOUBLE,
+                        Double.class,
+                        hiveConfig.getOmniDataHedgedReadPercentile(),
+                        false,
+                        value -> {
+                            double doubleValue = ((Number) value).doubleValue();
+                            if (doubleValue <= 0.0 || doubleValue > 1.0) {
+                                throw new PrestoException(
+                                        INVALID_SESSION_PROPERTY,
+                                        format("%s must be greater than 0.0 and at most 1.0: %s",
+                                                OMNIDATA_HEDGED_READ_PERCENTILE, doubleValue));
+                            }
+                            return doubleValue;
+                        },
+                        value -> value),
+                new PropertyMetadata<>(
+                        OMNIDATA_PAGE_SIZE,
+                        "The maximum size of a page returned by OmniData.",
+                        VARCHAR,
+                        DataSize.class,
+                        hiveConfig.getOmniDataPageSize(),
+                        false,
+                        value -> {
+                            DataSize dataSize = DataSize.valueOf((String) value);
+                            if (dataSize.compareTo(MIN_OMNIDATA_PAGE_SIZE) < 0 || dataSize.compareTo(MAX_OMNIDATA_PAGE_SIZE) > 0) {
+                                throw new PrestoException(
+                                        INVALID_SESSION_PROPERTY,
+                                        format("%s must be between %s and %s: %s",
+                                                OMNIDATA_PAGE_SIZE, MIN_OMNIDATA_PAGE_SIZE, MAX_OMNIDATA_PAGE_SIZE, dataSize));
+                            }
+                            return dataSize;
+                        },
+                        DataSize::toString));
     }
 
     public List<PropertyMetadata<?>> getSessionProperties()
@@ -728,4 +829,49 @@ public final class HiveSessionProperties
     {
         return session.getProperty(MIN_OFFLOAD_ROW_NUMBER, Long.class);
     }
+
+    public static int getOmniDataPrefetchPageCount(ConnectorSession session)
+    {
+        return session.getProperty(OMNIDATA_PREFETCH_PAGE_COUNT, Integer.class);
+    }
+
+    public static OmniDataNodeSelectionPolicy getOmniDataNodeSelectionPolicy(ConnectorSession session)
+    {
+        return session.getProperty(OMNIDATA_NODE_SELECTION_POLICY, OmniDataNodeSelectionPolicy.class);
+    }
+
+    public static boolean isOmniDataCostBasedOffloadEnabled(ConnectorSession session)
+    {
+        return session.getProperty(OMNIDATA_COST_BASED_OFFLOAD_ENABLED, Boolean.class);
+    }
+
+    public static DataSize getOmniDataNetworkBandwidth(ConnectorSession session)
+    {
+        return session.getProperty(OMNIDATA_NETWORK_BANDWIDTH, DataSize.class);
+    }
+
+    public static DataSize getOmniDataScanThroughput(ConnectorSession session)
+    {
+        return session.getProperty(OMNIDATA_SCAN_THROUGHPUT, DataSize.class);
+    }
+
+    public static boolean isOmniDataPartialOffloadEnabled(ConnectorSession session)
+    {
+        return session.getProperty(OMNIDATA_PARTIAL_OFFLOAD_ENABLED, Boolean.class);
+    }
+
+    public static boolean isOmniDataHedgedReadEnabled(ConnectorSession session)
+    {
+        return session.getProperty(OMNIDATA_HEDGED_READ_ENABLED, Boolean.class);
+    }
+
+    public static double getOmniDataHedgedReadPercentile(ConnectorSession session)
+    {
+        return session.getProperty(OMNIDATA_HEDGED_READ_PERCENTILE, Double.class);
+    }
+
+    public static DataSize getOmniDataPageSize(ConnectorSession session)
+    {
+        return session.getProperty(OMNIDATA_PAGE_SIZE, DataSize.class);
+    }
 }
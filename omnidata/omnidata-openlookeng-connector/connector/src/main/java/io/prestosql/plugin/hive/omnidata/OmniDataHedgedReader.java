@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive.omnidata;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
+import com.google.common.util.concurrent.SettableFuture;
+import com.huawei.boostkit.omnidata.reader.DataReader;
+import io.airlift.log.Logger;
+import io.prestosql.spi.Page;
+
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.util.concurrent.Futures.getDone;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static com.huawei.boostkit.omnidata.transfer.OmniDataProperty.HOSTADDRESS_DELIMITER;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Reads an offloaded split from the OmniData replicas of the split.
+ * <p>
+ * If the first page is not returned within the given percentile of the recent first page latencies, the same task
+ * is sent to the next replica and the first replica to answer serves the split. When a replica fails before any
+ * page is returned, the task is sent again to the next replica. Once a page is returned the split stays on its
+ * replica, since the replicas are not bound to return the rows in the same order.
+ */
+public class OmniDataHedgedReader
+        implements DataReader<Page>
+{
+    private static final Logger log = Logger.get(OmniDataHedgedReader.class);
+    private static final OmniDataLatencyTracker FIRST_PAGE_LATENCY = new OmniDataLatencyTracker(256, 20, MILLISECONDS.toNanos(1000));
+    // Do not hedge requests that are fast anyway, a hedge costs a task slot on another node
+    private static final long MIN_HEDGE_DELAY_NANOS = MILLISECONDS.toNanos(20);
+
+    private final List<String> hosts;
+    private final Function<String, DataReader<Page>> readerFactory;
+    private final double hedgePercentile;
+    private final OmniDataLatencyTracker firstPageLatency;
+    private final Executor executor;
+
+    private DataReader<Page> current;
+    private int nextHost;
+    private long deliveredPositions;
+    private int closedReadPositions;
+    private int closedReadBytes;
+    private boolean closed;
+
+    /**
+     * @param omniDataServerTarget the OmniData hosts of the split, joined by {@link com.huawei.boostkit.omnidata.transfer.OmniDataProperty#HOSTADDRESS_DELIMITER}
+     * @param readerFactory creates a reader for the task of the split, from a target list
+     * @param hedgePercentile percentile of the first page latency after which the read is hedged, in (0, 1]
+     * @param executor runs the first page reads while the hedge deadline is awaited
+     */
+    public OmniDataHedgedReader(String omniDataServerTarget, Function<String, DataReader<Page>> readerFactory, double hedgePercentile, Executor executor)
+    {
+        this(omniDataServerTarget, readerFactory, hedgePercentile, FIRST_PAGE_LATENCY, executor);
+    }
+
+    @VisibleForTesting
+    OmniDataHedgedReader(
+            String omniDataServerTarget,
+            Function<String, DataReader<Page>> readerFactory,
+            double hedgePercentile,
+            OmniDataLatencyTracker firstPageLatency,
+            Executor executor)
+    {
+        requireNonNull(omniDataServerTarget, "omniDataServerTarget is null");
+        this.hosts = ImmutableList.copyOf(omniDataServerTarget.split(HOSTADDRESS_DELIMITER));
+        checkArgument(!hosts.isEmpty(), "omniDataServerTarget is empty");
+        this.readerFactory = requireNonNull(readerFactory, "readerFactory is null");
+        checkArgument(hedgePercentile > 0 && hedgePercentile <= 1, "hedgePercentile must be in (0, 1]");
+        this.hedgePercentile = hedgePercentile;
+        this.firstPageLatency = requireNonNull(firstPageLatency, "firstPageLatency is null");
+        this.executor = requireNonNull(executor, "executor is null");
+    }
+
+    @Override
+    public Page getNextPage()
+            throws Exception
+    {
+        // hedging and failover need to wait for the replicas, the page source reads on its own thread anyway
+        return getNextPageBlocking();
+    }
+
+    @Override
+    public Page getNextPageBlocking()
+            throws Exception
+    {
+        while (true) {
+            if (isFinished()) {
+                return null;
+            }
+            Page page;
+            try {
+                page = current == null ? readFirstPage() : current.getNextPageBlocking();
+            }
+            catch (Exception e) {
+                if (!failover(e)) {
+                    throw e;
+                }
+                continue;
+            }
+
+            if (page != null) {
+                deliveredPositions += page.getPositionCount();
+            }
+            return page;
+        }
+    }
+
+    @Override
+    public boolean isFinished()
+    {
+        return current != null && current.isFinished();
+    }
+
+    @Override
+    public int getReadPositionCount()
+    {
+        return closedReadPositions + (current == null ? 0 : current.getReadPositionCount());
+    }
+
+    @Override
+    public int getReadSizeInBytes()
+    {
+        return closedReadBytes + (current == null ? 0 : current.getReadSizeInBytes());
+    }
+
+    @Override
+    public void close()
+            throws Exception
+    {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private Page readFirstPage()
+            throws Exception
+    {
+        long start = System.nanoTime();
+        DataReader<Page> primary = openNextReader();
+        if (nextHost >= hosts.size()) {
+            current = primary;
+            Page page = primary.getNextPageBlocking();
+            firstPageLatency.add(System.nanoTime() - start);
+            return page;
+        }
+
+        ListenableFuture<Page> primaryPage = readAsync(primary);
+        DataReader<Page> winner = primary;
+        ListenableFuture<Page> winnerPage = primaryPage;
+        long hedgeDelay = Math.max(firstPageLatency.getPercentile(hedgePercentile), MIN_HEDGE_DELAY_NANOS);
+        if (!awaitDone(primaryPage, hedgeDelay)) {
+            log.debug("No page from OmniData %s after %sms, hedge the read to %s", hosts.get(nextHost - 1), NANOSECONDS.toMillis(hedgeDelay), hosts.get(nextHost));
+            DataReader<Page> hedge = openNextReader();
+            ListenableFuture<Page> hedgePage = readAsync(hedge);
+            // the read of the reader that lost is cancelled, the reader is closed once the read has stopped
+            if (getPage(firstSuccessful(primaryPage, hedgePage)) == 0) {
+                cancel(hedgePage, hedge);
+            }
+            else {
+                cancel(primaryPage, primary);
+                winner = hedge;
+                winnerPage = hedgePage;
+            }
+        }
+
+        current = winner;
+        Page page = getPage(winnerPage);
+        firstPageLatency.add(System.nanoTime() - start);
+        return page;
+    }
+
+    private boolean failover(Exception failure)
+    {
+        // the rows of another replica may come in another order, so a split is never resumed after rows were returned
+        if (closed || nextHost >= hosts.size() || deliveredPositions > 0) {
+            return false;
+        }
+        log.warn(failure, "Read from OmniData failed, send the split to %s", hosts.get(nextHost));
+        if (current != null) {
+            closedReadPositions += current.getReadPositionCount();
+            closedReadBytes += current.getReadSizeInBytes();
+            closeQuietly(current);
+        }
+        current = openNextReader();
+        return true;
+    }
+
+    private DataReader<Page> openNextReader()
+    {
+        // keep the other hosts in the target list, so that the client is still able to fail over by itself
+        StringJoiner target = new StringJoiner(HOSTADDRESS_DELIMITER);
+        for (int i = 0; i < hosts.size(); i++) {
+            target.add(hosts.get((nextHost + i) % hosts.size()));
+        }
+        nextHost++;
+        return readerFactory.apply(target.toString());
+    }
+
+    private ListenableFuture<Page> readAsync(DataReader<Page> reader)
+    {
+        ListenableFutureTask<Page> page = ListenableFutureTask.create(reader::getNextPageBlocking);
+        executor.execute(() -> {
+            try {
+                page.run();
+            }
+            finally {
+                // a cancelled read returns here only once the reader is no longer used by the read
+                if (page.isCancelled()) {
+                    closeQuietly(reader);
+                }
+            }
+        });
+        return page;
+    }
+
+    private static void cancel(Future<Page> page, DataReader<Page> reader)
+    {
+        // a read that is already done is not cancelled, and its reader is closed here
+        if (!page.cancel(true)) {
+            closeQuietly(reader);
+        }
+    }
+
+    private static boolean awaitDone(Future<Page> page, long timeoutNanos)
+            throws InterruptedException
+    {
+        try {
+            page.get(timeoutNanos, NANOSECONDS);
+        }
+        catch (TimeoutException e) {
+            return false;
+        }
+        catch (ExecutionException e) {
+            // the failure is reported when the page is taken
+        }
+        return true;
+    }
+
+    /**
+     * Completes with the index of the first page to be returned, or of the last one to fail if none is returned.
+     */
+    private static ListenableFuture<Integer> firstSuccessful(ListenableFuture<Page> first, ListenableFuture<Page> second)
+    {
+        SettableFuture<Integer> result = SettableFuture.create();
+        first.addListener(() -> {
+            if (!isFailed(first) || isFailed(second)) {
+                result.set(0);
+            }
+        }, directExecutor());
+        second.addListener(() -> {
+            if (!isFailed(second) || isFailed(first)) {
+                result.set(1);
+            }
+        }, directExecutor());
+        return result;
+    }
+
+    private static boolean isFailed(Future<Page> page)
+    {
+        if (!page.isDone()) {
+            return false;
+        }
+        try {
+            getDone(page);
+            return false;
+        }
+        catch (ExecutionException | CancellationException e) {
+            return true;
+        }
+    }
+
+    private static <T> T getPage(Future<T> page)
+            throws Exception
+    {
+        try {
+            return page.get();
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(DataReader<Page> reader)
+    {
+        try {
+            reader.close();
+        }
+        catch (Exception e) {
+            log.warn(e, "Close OmniData reader fail");
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive.omnidata;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Keeps the most recent latencies of OmniData requests to derive percentile based deadlines.
+ */
+@ThreadSafe
+public class OmniDataLatencyTracker
+{
+    private final long[] samples;
+    private final int minSamples;
+    private final long defaultNanos;
+    private int count;
+    private int next;
+
+    public OmniDataLatencyTracker(int capacity, int minSamples, long defaultNanos)
+    {
+        checkArgument(capacity > 0, "capacity must be positive");
+        checkArgument(minSamples > 0 && minSamples <= capacity, "minSamples must be between 1 and capacity");
+        this.samples = new long[capacity];
+        this.minSamples = minSamples;
+        this.defaultNanos = defaultNanos;
+    }
+
+    public synchronized void add(long nanos)
+    {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        count = Math.min(count + 1, samples.length);
+    }
+
+    /**
+     * Returns the given percentile of the recent latencies, or the default value until enough latencies are known.
+     */
+    public long getPercentile(double percentile)
+    {
+        checkArgument(percentile > 0 && percentile <= 1, "percentile must be in (0, 1]");
+        long[] sorted;
+        synchronized (this) {
+            if (count < minSamples) {
+                return defaultNanos;
+            }
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+    }
+}
@@ -14,7 +14,9 @@
  */
 package io.prestosql.plugin.hive.omnidata;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteStreams;
 import com.google.common.net.HttpHeaders;
 import io.airlift.configuration.ConfigurationFactory;
@@ -38,7 +40,6 @@ import io.airlift.units.Duration;
 import io.prestosql.spi.PrestoException;
 
 import javax.annotation.PreDestroy;
-import javax.annotation.concurrent.GuardedBy;
 import javax.inject.Inject;
 
 import java.io.File;
@@ -46,15 +47,17 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.Optional;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static com.google.common.collect.ImmutableSet.toImmutableSet;
 import static io.airlift.concurrent.Threads.threadsNamed;
 import static io.airlift.configuration.ConfigurationLoader.loadPropertiesFrom;
 import static io.prestosql.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
@@ -65,9 +68,16 @@ public class OmniDataNodeManager
 {
     private static final Logger log = Logger.get(OmniDataNodeManager.class);
     public static final String CONFIG_PROPERTY = "config";
+    private static final JsonCodec<ServiceDescriptorsRepresentation> SERVICE_DESCRIPTORS_CODEC = JsonCodec.jsonCodec(ServiceDescriptorsRepresentation.class);
 
-    @GuardedBy("this")
-    private Map<String, OmniDataNodeStatus> allNodes = new ConcurrentHashMap<>();
+    // Weight of the latest sample in the moving average of the running task number
+    private static final double RUNNING_TASK_NUMBER_WEIGHT = 0.3;
+
+    // Immutable snapshot replaced as a whole on each refresh, so readers never see a partial node list
+    private volatile Map<String, OmniDataNodeStatus> allNodes = ImmutableMap.of();
+
+    // Splits assigned by this worker since the last refresh, they are not reflected in runningTaskNumber yet
+    private final Map<String, AtomicInteger> pendingSplits = new ConcurrentHashMap<>();
 
     private final ScheduledExecutorService nodeStateUpdateExecutor;
 
@@ -75,6 +85,11 @@ public class OmniDataNodeManager
     private HttpClientConfig httpClientConfig;
     private DiscoveryClientConfig discoveryClientConfig;
     private boolean httpsRequired;
+    private HttpClient httpClient;
+    // Only accessed by the node state poller thread
+    private String lastETag;
+    // Only accessed by the node state poller thread
+    private List<ServiceDescriptor> lastServices = ImmutableList.of();
     private AtomicBoolean started = new AtomicBoolean(false);
 
     @Inject
@@ -133,9 +148,10 @@ public class OmniDataNodeManager
         if (!initializeConfiguration()) {
             return;
         }
+        this.httpClient = new JettyHttpClient("omnidata-node-manager", httpClientConfig, kerberosConfig, ImmutableList.of());
         nodeStateUpdateExecutor.scheduleWithFixedDelay(() -> {
             try {
-                refreshNodes();
+                refreshNodes(getServices().map(ServiceDescriptors::getServiceDescriptors));
             }
             catch (Exception e) {
                 log.error(e, "Error polling state of omnidata nodes");
@@ -151,77 +167,102 @@ public class OmniDataNodeManager
         }
 
         nodeStateUpdateExecutor.shutdownNow();
+        if (httpClient != null) {
+            httpClient.close();
+        }
     }
 
-    private synchronized void refreshNodes()
+    /**
+     * Refresh the node states on every poll. When discovery reports the node list is not modified since the last poll,
+     * the last list is applied again, so that the pending splits are still reset and the average load keeps converging.
+     */
+    @VisibleForTesting
+    void refreshNodes(Optional<List<ServiceDescriptor>> modifiedServices)
     {
-        allNodes.clear();
+        modifiedServices.ifPresent(services -> lastServices = services);
+        updateNodes(lastServices);
+    }
 
-        Set<ServiceDescriptor> services = getServices().getServiceDescriptors().stream().collect(toImmutableSet());
+    @VisibleForTesting
+    void updateNodes(List<ServiceDescriptor> services)
+    {
+        Map<String, OmniDataNodeStatus> previousNodes = allNodes;
+        Map<String, OmniDataNodeStatus> nodes = new HashMap<>();
         for (ServiceDescriptor service : services) {
             URI uri = getHttpUri(service, httpsRequired);
             String localHdfsIpAddress = service.getProperties().get("local.hdfs.server.address");
             String runningTaskNumber = service.getProperties().get("runningTaskNumber");
             String maxTaskNumber = service.getProperties().get("maxTaskNumber");
-            if (uri.getHost() != null && localHdfsIpAddress != null) {
+            if (uri != null && uri.getHost() != null && localHdfsIpAddress != null) {
                 try {
+                    int runningTask = Integer.parseInt(runningTaskNumber);
+                    OmniDataNodeStatus previous = previousNodes.get(localHdfsIpAddress);
+                    double averageRunningTask = previous == null ? runningTask
+                            : RUNNING_TASK_NUMBER_WEIGHT * runningTask + (1 - RUNNING_TASK_NUMBER_WEIGHT) * previous.getAverageRunningTaskNumber();
                     OmniDataNodeStatus nodeStatus = new OmniDataNodeStatus(uri.getHost(),
-                            Integer.parseInt(runningTaskNumber), Integer.parseInt(maxTaskNumber));
-                    allNodes.put(localHdfsIpAddress, nodeStatus);
+                            runningTask, Integer.parseInt(maxTaskNumber), averageRunningTask);
+                    nodes.put(localHdfsIpAddress, nodeStatus);
                 }
                 catch (RuntimeException ignored) {
                     throw new PrestoException(GENERIC_INTERNAL_ERROR, "omnidata node manger receive wrong arguments");
                 }
             }
         }
+        allNodes = ImmutableMap.copyOf(nodes);
+        pendingSplits.clear();
     }
 
-    private ServiceDescriptors getServices()
+    private Optional<ServiceDescriptors> getServices()
     {
-        try (HttpClient httpClient = new JettyHttpClient("omnidata-node-manager", httpClientConfig, kerberosConfig, ImmutableList.of())) {
-            URI uri = discoveryClientConfig.getDiscoveryServiceURI();
-            if (uri == null) {
-                throw new DiscoveryException("No discovery servers are available");
-            }
+        URI uri = discoveryClientConfig.getDiscoveryServiceURI();
+        if (uri == null) {
+            throw new DiscoveryException("No discovery servers are available");
+        }
 
-            String type = "omnidata";
-            uri = URI.create(uri + "/v1/service/" + type + "/");
-
-            Request.Builder requestBuilder = Request.Builder.prepareGet()
-                    .setUri(uri)
-                    .setHeader("User-Agent", System.getProperty("node.id"));
-
-            return httpClient.execute(requestBuilder.build(), new OmniDataNodeManagerResponseHandler<ServiceDescriptors>(type, uri) {
-                @Override
-                public ServiceDescriptors handle(Request request, Response response)
-                {
-                    if (response.getStatusCode() != HttpStatus.OK.code()) {
-                        throw new DiscoveryException(String.format("Lookup of %s failed with status code %s", type, response.getStatusCode()));
-                    }
-
-                    byte[] json;
-                    try {
-                        json = ByteStreams.toByteArray(response.getInputStream());
-                    }
-                    catch (IOException e) {
-                        throw new DiscoveryException(format("Lookup of %s failed", type), e);
-                    }
-
-                    JsonCodec<ServiceDescriptorsRepresentation> serviceDescriptorsCodec = JsonCodec.jsonCodec(ServiceDescriptorsRepresentation.class);
-                    ServiceDescriptorsRepresentation serviceDescriptorsRepresentation = serviceDescriptorsCodec.fromJson(json);
-
-                    Duration maxAge = DiscoveryAnnouncementClient.DEFAULT_DELAY;
-                    String eTag = response.getHeader(HttpHeaders.ETAG);
-
-                    return new ServiceDescriptors(
-                            type,
-                            null,
-                            serviceDescriptorsRepresentation.getServiceDescriptors(),
-                            maxAge,
-                            eTag);
-                }
-            });
+        String type = "omnidata";
+        uri = URI.create(uri + "/v1/service/" + type + "/");
+
+        Request.Builder requestBuilder = Request.Builder.prepareGet()
+                .setUri(uri)
+                .setHeader("User-Agent", System.getProperty("node.id"));
+        if (lastETag != null) {
+            requestBuilder.setHeader(HttpHeaders.IF_NONE_MATCH, lastETag);
         }
+
+        Optional<ServiceDescriptors> services = httpClient.execute(requestBuilder.build(), new OmniDataNodeManagerResponseHandler<Optional<ServiceDescriptors>>(type, uri) {
+            @Override
+            public Optional<ServiceDescriptors> handle(Request request, Response response)
+            {
+                if (response.getStatusCode() == HttpStatus.NOT_MODIFIED.code()) {
+                    return Optional.empty();
+                }
+                if (response.getStatusCode() != HttpStatus.OK.code()) {
+                    throw new DiscoveryException(String.format("Lookup of %s failed with status code %s", type, response.getStatusCode()));
+                }
+
+                byte[] json;
+                try {
+                    json = ByteStreams.toByteArray(response.getInputStream());
+                }
+                catch (IOException e) {
+                    throw new DiscoveryException(format("Lookup of %s failed", type), e);
+                }
+
+                ServiceDescriptorsRepresentation serviceDescriptorsRepresentation = SERVICE_DESCRIPTORS_CODEC.fromJson(json);
+
+                Duration maxAge = DiscoveryAnnouncementClient.DEFAULT_DELAY;
+                String eTag = response.getHeader(HttpHeaders.ETAG);
+
+                return Optional.of(new ServiceDescriptors(
+                        type,
+                        null,
+                        serviceDescriptorsRepresentation.getServiceDescriptors(),
+                        maxAge,
+                        eTag));
+            }
+        });
+        services.ifPresent(descriptors -> lastETag = descriptors.getETag());
+        return services;
     }
 
     private static URI getHttpUri(ServiceDescriptor descriptor, boolean httpsRequired)
@@ -237,11 +278,25 @@ public class OmniDataNodeManager
         return null;
     }
 
-    public synchronized Map<String, OmniDataNodeStatus> getAllNodes()
+    public Map<String, OmniDataNodeStatus> getAllNodes()
     {
         return allNodes;
     }
 
+    /**
+     * The number of tasks the node is still able to accept, including the splits assigned since the last refresh.
+     */
+    public int getHeadroom(OmniDataNodeStatus node)
+    {
+        AtomicInteger pending = pendingSplits.get(node.getHostAddress());
+        return node.getMaxTaskNumber() - node.getRunningTaskNumber() - (pending == null ? 0 : pending.get());
+    }
+
+    public void recordSplitAssignment(String hostAddress)
+    {
+        pendingSplits.computeIfAbsent(hostAddress, key -> new AtomicInteger()).incrementAndGet();
+    }
+
     private class OmniDataNodeManagerResponseHandler<T>
             implements ResponseHandler<T, DiscoveryException>
     {
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive.omnidata;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Built-in policies to choose the OmniData nodes of a split.
+ */
+public enum OmniDataNodeSelectionPolicy
+        implements OmniDataNodeSelector
+{
+    /**
+     * Spread splits by hash of the split, ignoring the load of the nodes.
+     */
+    HASH {
+        @Override
+        public List<OmniDataNodeStatus> select(List<OmniDataNodeStatus> candidates, ToIntFunction<OmniDataNodeStatus> headroom, int count, long seed)
+        {
+            checkArgument(!candidates.isEmpty(), "candidates is empty");
+            int nodeNum = candidates.size();
+            int start = (int) Math.abs(seed % nodeNum);
+            ImmutableList.Builder<OmniDataNodeStatus> builder = ImmutableList.builder();
+            for (int i = 0; i < nodeNum && i < count; i++) {
+                builder.add(candidates.get((start + i) % nodeNum));
+            }
+            return builder.build();
+        }
+    },
+    /**
+     * Prefer the nodes with the most free task slots.
+     */
+    LEAST_LOADED {
+        @Override
+        public List<OmniDataNodeStatus> select(List<OmniDataNodeStatus> candidates, ToIntFunction<OmniDataNodeStatus> headroom, int count, long seed)
+        {
+            // rotate first, so that nodes with the same headroom are not always chosen in the same order
+            List<OmniDataNodeStatus> nodes = new ArrayList<>(HASH.select(candidates, headroom, candidates.size(), seed));
+            nodes.sort(Comparator.comparingInt(headroom).reversed());
+            return ImmutableList.copyOf(nodes.subList(0, Math.min(count, nodes.size())));
+        }
+    },
+    /**
+     * Sample two nodes and prefer the one with more free task slots, which avoids all workers
+     * herding to the same least loaded node between two refreshes of the node states.
+     */
+    POWER_OF_TWO_CHOICES {
+        @Override
+        public List<OmniDataNodeStatus> select(List<OmniDataNodeStatus> candidates, ToIntFunction<OmniDataNodeStatus> headroom, int count, long seed)
+        {
+            checkArgument(!candidates.isEmpty(), "candidates is empty");
+            List<OmniDataNodeStatus> nodes = new ArrayList<>(HASH.select(candidates, headroom, candidates.size(), seed));
+            if (nodes.size() > 1) {
+                Random random = new Random(seed);
+                int first = random.nextInt(nodes.size());
+                int second = (first + 1 + random.nextInt(nodes.size() - 1)) % nodes.size();
+                int chosen = headroom.applyAsInt(nodes.get(second)) > headroom.applyAsInt(nodes.get(first)) ? second : first;
+                nodes.add(0, nodes.remove(chosen));
+            }
+            return ImmutableList.copyOf(nodes.subList(0, Math.min(count, nodes.size())));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive.omnidata;
+
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * Chooses the OmniData nodes a split is sent to.
+ */
+public interface OmniDataNodeSelector
+{
+    /**
+     * Order the candidate nodes by preference, the first node is tried first and the others are used as fallback.
+     *
+     * @param candidates nodes that are allowed to serve the split, never empty
+     * @param headroom the number of tasks a node is still able to accept
+     * @param count the maximum number of nodes to return
+     * @param seed a stable value of the split, used to spread splits over nodes with the same load
+     * @return the selected nodes
+     */
+    List<OmniDataNodeStatus> select(List<OmniDataNodeStatus> candidates, ToIntFunction<OmniDataNodeStatus> headroom, int count, long seed);
+}
@@ -21,12 +21,19 @@ public class OmniDataNodeStatus
     private String hostAddress;
     private int runningTaskNumber;
     private int maxTaskNumber;
+    private double averageRunningTaskNumber;
 
     public OmniDataNodeStatus(String hostAddress, int runningTask, int maxTaskNumber)
+    {
+        this(hostAddress, runningTask, maxTaskNumber, runningTask);
+    }
+
+    public OmniDataNodeStatus(String hostAddress, int runningTask, int maxTaskNumber, double averageRunningTaskNumber)
     {
         this.hostAddress = requireNonNull(hostAddress, "hostAddress is null");
         this.runningTaskNumber = runningTask;
         this.maxTaskNumber = maxTaskNumber;
+        this.averageRunningTaskNumber = averageRunningTaskNumber;
     }
 
     public int getMaxTaskNumber()
@@ -43,4 +50,12 @@ public class OmniDataNodeStatus
     {
         return runningTaskNumber;
     }
+
+    /**
+     * Exponentially weighted moving average of the running task number over the past refreshes.
+     */
+    public double getAverageRunningTaskNumber()
+    {
+        return averageRunningTaskNumber;
+    }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive.omnidata;
+
+import io.airlift.concurrent.BoundedExecutor;
+import io.prestosql.plugin.hive.HiveConfig;
+
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+
+/**
+ * Executors of the OmniData readers, owned by the connector and shut down with it.
+ * A prefetch or a hedged first page read blocks its thread for the whole network round trip, so the number
+ * of threads is bounded and the reads of the other splits wait in the queue once the bound is reached.
+ */
+public class OmniDataReadExecutors
+{
+    private final ExecutorService prefetchExecutorService;
+    private final Executor prefetchExecutor;
+    private final ExecutorService hedgeExecutorService;
+    private final Executor hedgeExecutor;
+
+    @Inject
+    public OmniDataReadExecutors(HiveConfig hiveConfig)
+    {
+        // threads are only started on demand, so the executors are cheap when OmniData is not used
+        this.prefetchExecutorService = newCachedThreadPool(daemonThreadsNamed("omnidata-page-prefetch-%s"));
+        this.prefetchExecutor = new BoundedExecutor(prefetchExecutorService, hiveConfig.getOmniDataPrefetchThreads());
+        this.hedgeExecutorService = newCachedThreadPool(daemonThreadsNamed("omnidata-hedged-read-%s"));
+        this.hedgeExecutor = new BoundedExecutor(hedgeExecutorService, hiveConfig.getOmniDataHedgedReadThreads());
+    }
+
+    public Executor getPrefetchExecutor()
+    {
+        return prefetchExecutor;
+    }
+
+    public Executor getHedgeExecutor()
+    {
+        return hedgeExecutor;
+    }
+
+    @PreDestroy
+    public void stop()
+    {
+        prefetchExecutorService.shutdownNow();
+        hedgeExecutorService.shutdownNow();
+    }
+}
@@ -22,6 +22,7 @@ import io.prestosql.spi.connector.ConnectorPageSource;
 import java.io.IOException;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.collect.Iterators.concat;
@@ -95,10 +96,23 @@ public class OrcConcatPageSource
         return concatPageIterator.next();
     }
 
+    @Override
+    public CompletableFuture<?> isBlocked()
+    {
+        // Sources are consumed in order, so only the first unfinished one can be blocking
+        for (ConnectorPageSource pageSource : pageSources) {
+            if (!pageSource.isFinished()) {
+                return pageSource.isBlocked();
+            }
+        }
+        return NOT_BLOCKED;
+    }
+
     @Override
     public long getSystemMemoryUsage()
     {
-        return pageSources.get(0).getSystemMemoryUsage();
+        // every source may hold prefetched pages, not only the one being read
+        return pageSources.stream().mapToLong(ConnectorPageSource::getSystemMemoryUsage).sum();
     }
 
     @Override
@@ -17,12 +17,9 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
 import com.google.common.util.concurrent.UncheckedExecutionException;
-import com.huawei.boostkit.omnidata.decode.impl.OpenLooKengDeserializer;
 import com.huawei.boostkit.omnidata.model.Predicate;
-import com.huawei.boostkit.omnidata.model.TaskSource;
 import com.huawei.boostkit.omnidata.model.datasource.DataSource;
 import com.huawei.boostkit.omnidata.reader.DataReader;
-import com.huawei.boostkit.omnidata.reader.DataReaderFactory;
 import io.airlift.log.Logger;
 import io.airlift.units.DataSize;
 import io.prestosql.memory.context.AggregatedMemoryContext;
@@ -51,6 +48,7 @@ import io.prestosql.plugin.hive.HivePushDownPageSource;
 import io.prestosql.plugin.hive.HiveSessionProperties;
 import io.prestosql.plugin.hive.HiveType;
 import io.prestosql.plugin.hive.HiveUtil;
+import io.prestosql.plugin.hive.omnidata.OmniDataReadExecutors;
 import io.prestosql.plugin.hive.orc.OrcPageSource.ColumnAdaptation;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.PrestoException;
@@ -97,7 +95,6 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.nullToEmpty;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
 import static com.google.common.collect.Maps.uniqueIndex;
-import static com.huawei.boostkit.omnidata.transfer.OmniDataProperty.OMNIDATA_CLIENT_TARGET_LIST;
 import static io.prestosql.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
 import static io.prestosql.orc.OrcReader.INITIAL_BATCH_SIZE;
 import static io.prestosql.orc.OrcReader.handleCacheLoadException;
@@ -108,6 +105,7 @@ import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_BAD_DATA;
 import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_CANNOT_OPEN_SPLIT;
 import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_FILE_MISSING_COLUMN_NAMES;
 import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_MISSING_DATA;
+import static io.prestosql.plugin.hive.HiveSessionProperties.getOmniDataPrefetchPageCount;
 import static io.prestosql.plugin.hive.HiveSessionProperties.getOrcLazyReadSmallRanges;
 import static io.prestosql.plugin.hive.HiveSessionProperties.getOrcMaxBufferSize;
 import static io.prestosql.plugin.hive.HiveSessionProperties.getOrcMaxMergeDistance;
@@ -122,6 +120,7 @@ import static io.prestosql.plugin.hive.HiveSessionProperties.isOrcRowIndexCacheE
 import static io.prestosql.plugin.hive.HiveSessionProperties.isOrcStripeFooterCacheEnabled;
 import static io.prestosql.plugin.hive.orc.OrcPageSource.handleException;
 import static io.prestosql.plugin.hive.util.PageSourceUtil.buildPushdownContext;
+import static io.prestosql.plugin.hive.util.PageSourceUtil.createOmniDataReader;
 import static io.prestosql.spi.type.BigintType.BIGINT;
 import static io.prestosql.spi.type.IntegerType.INTEGER;
 import static java.lang.String.format;
@@ -154,10 +153,17 @@ public class OrcPageSourceFactory
     private final OrcCacheStore orcCacheStore;
     private final int domainCompactionThreshold;
     private final DateTimeZone legacyTimeZone;
+    private final OmniDataReadExecutors omniDataReadExecutors;
     private String omniDataServerTarget;
 
-    @Inject
     public OrcPageSourceFactory(TypeManager typeManager, HiveConfig config, HdfsEnvironment hdfsEnvironment, FileFormatDataSourceStats stats, OrcCacheStore orcCacheStore)
+    {
+        this(typeManager, config, hdfsEnvironment, stats, orcCacheStore, new OmniDataReadExecutors(config));
+    }
+
+    @Inject
+    public OrcPageSourceFactory(TypeManager typeManager, HiveConfig config, HdfsEnvironment hdfsEnvironment, FileFormatDataSourceStats stats, OrcCacheStore orcCacheStore,
+            OmniDataReadExecutors omniDataReadExecutors)
     {
         this.typeManager = requireNonNull(typeManager, "typeManager is null");
         requireNonNull(config, "config is null");
@@ -167,6 +173,7 @@ public class OrcPageSourceFactory
         this.orcCacheStore = orcCacheStore;
         this.domainCompactionThreshold = config.getDomainCompactionThreshold();
         this.legacyTimeZone = requireNonNull(config, "hiveConfig is null").getOrcLegacyDateTimeZone();
+        this.omniDataReadExecutors = requireNonNull(omniDataReadExecutors, "omniDataReadExecutors is null");
         this.omniDataServerTarget = null;
     }
 
@@ -214,8 +221,8 @@ public class OrcPageSourceFactory
                 && omniDataAddress.isPresent()
                 && expression.isPresent()) {
             Predicate predicate = buildPushdownContext(columns, expression, typeManager,
-                    effectivePredicate, partitionKeys, bucketNumber, path);
-            return Optional.of(createOrcPushDownPageSource(path, start, length, predicate));
+                    effectivePredicate, partitionKeys, bucketNumber, path, dynamicFilters);
+            return Optional.of(createOrcPushDownPageSource(session, path, start, length, predicate));
         }
 
         return createPageSource(
@@ -536,14 +543,13 @@ public class OrcPageSourceFactory
     }
 
     public HivePushDownPageSource createOrcPushDownPageSource(
+            ConnectorSession session,
             Path path,
             long start,
             long length,
             Predicate predicate)
     {
         AggregatedMemoryContext systemMemoryUsage = newSimpleAggregatedMemoryContext();
-        Properties transProperties = new Properties();
-        transProperties.put(OMNIDATA_CLIENT_TARGET_LIST, omniDataServerTarget);
 
         DataSource orcPushDownDataSource = new com.huawei.boostkit.omnidata.model.datasource.hdfs.HdfsOrcDataSource(
                 path.toString(),
@@ -551,13 +557,11 @@ public class OrcPageSourceFactory
                 length,
                 false);
 
-        TaskSource readTaskInfo = new TaskSource(
-                orcPushDownDataSource,
-                predicate,
-                TaskSource.ONE_MEGABYTES);
-        DataReader<Page> dataReader = DataReaderFactory.create(transProperties, readTaskInfo, new OpenLooKengDeserializer());
+        DataReader<Page> dataReader = createOmniDataReader(session, omniDataServerTarget, orcPushDownDataSource, predicate,
+                omniDataReadExecutors.getHedgeExecutor());
 
-        return new HivePushDownPageSource(dataReader, systemMemoryUsage);
+        return new HivePushDownPageSource(dataReader, systemMemoryUsage, getOmniDataPrefetchPageCount(session),
+                omniDataReadExecutors.getPrefetchExecutor());
     }
 
     interface FSDataInputStreamProvider
@@ -16,11 +16,8 @@ package io.prestosql.plugin.hive.parquet;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
-import com.huawei.boostkit.omnidata.decode.impl.OpenLooKengDeserializer;
-import com.huawei.boostkit.omnidata.model.TaskSource;
 import com.huawei.boostkit.omnidata.model.datasource.DataSource;
 import com.huawei.boostkit.omnidata.reader.DataReader;
-import com.huawei.boostkit.omnidata.reader.DataReaderFactory;
 import io.airlift.units.DataSize;
 import io.prestosql.memory.context.AggregatedMemoryContext;
 import io.prestosql.parquet.ParquetCorruptionException;
@@ -39,6 +36,7 @@ import io.prestosql.plugin.hive.HivePageSourceFactory;
 import io.prestosql.plugin.hive.HivePartitionKey;
 import io.prestosql.plugin.hive.HivePushDownPageSource;
 import io.prestosql.plugin.hive.HiveSessionProperties;
+import io.prestosql.plugin.hive.omnidata.OmniDataReadExecutors;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.PrestoException;
 import io.prestosql.spi.connector.ConnectorPageSource;
@@ -77,7 +75,6 @@ import java.util.Set;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Strings.nullToEmpty;
-import static com.huawei.boostkit.omnidata.transfer.OmniDataProperty.OMNIDATA_CLIENT_TARGET_LIST;
 import static io.prestosql.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
 import static io.prestosql.parquet.ParquetTypeUtils.getColumnIO;
 import static io.prestosql.parquet.ParquetTypeUtils.getDescriptors;
@@ -88,6 +85,7 @@ import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.REGULAR;
 import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_BAD_DATA;
 import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_CANNOT_OPEN_SPLIT;
 import static io.prestosql.plugin.hive.HiveErrorCode.HIVE_MISSING_DATA;
+import static io.prestosql.plugin.hive.HiveSessionProperties.getOmniDataPrefetchPageCount;
 import static io.prestosql.plugin.hive.HiveSessionProperties.getParquetMaxReadBlockSize;
 import static io.prestosql.plugin.hive.HiveSessionProperties.isFailOnCorruptedParquetStatistics;
 import static io.prestosql.plugin.hive.HiveSessionProperties.isUseParquetColumnNames;
@@ -95,6 +93,7 @@ import static io.prestosql.plugin.hive.HiveUtil.getDeserializerClassName;
 import static io.prestosql.plugin.hive.HiveUtil.shouldUseRecordReaderFromInputFormat;
 import static io.prestosql.plugin.hive.parquet.HdfsParquetDataSource.buildHdfsParquetDataSource;
 import static io.prestosql.plugin.hive.util.PageSourceUtil.buildPushdownContext;
+import static io.prestosql.plugin.hive.util.PageSourceUtil.createOmniDataReader;
 import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toList;
@@ -114,15 +113,23 @@ public class ParquetPageSourceFactory
     private final FileFormatDataSourceStats stats;
 
     private final DateTimeZone timeZone;
+    private final OmniDataReadExecutors omniDataReadExecutors;
     private String omniDataServerTarget;
 
-    @Inject
     public ParquetPageSourceFactory(TypeManager typeManager, HdfsEnvironment hdfsEnvironment, FileFormatDataSourceStats stats, HiveConfig hiveConfig)
+    {
+        this(typeManager, hdfsEnvironment, stats, hiveConfig, new OmniDataReadExecutors(hiveConfig));
+    }
+
+    @Inject
+    public ParquetPageSourceFactory(TypeManager typeManager, HdfsEnvironment hdfsEnvironment, FileFormatDataSourceStats stats, HiveConfig hiveConfig,
+            OmniDataReadExecutors omniDataReadExecutors)
     {
         this.typeManager = requireNonNull(typeManager, "typeManager is null");
         this.hdfsEnvironment = requireNonNull(hdfsEnvironment, "hdfsEnvironment is null");
         this.stats = requireNonNull(stats, "stats is null");
         this.timeZone = requireNonNull(hiveConfig, "hiveConfig is null").getParquetDateTimeZone();
+        this.omniDataReadExecutors = requireNonNull(omniDataReadExecutors, "omniDataReadExecutors is null");
     }
 
     @Override
@@ -164,8 +171,8 @@ public class ParquetPageSourceFactory
                 && offloadExpression.isPresent()) {
             com.huawei.boostkit.omnidata.model.Predicate predicate =
                     buildPushdownContext(columns, offloadExpression, typeManager,
-                            effectivePredicate, partitionKeys, bucketNumber, path);
-            return Optional.of(createParquetPushDownPageSource(path, start, length, predicate));
+                            effectivePredicate, partitionKeys, bucketNumber, path, dynamicFilter);
+            return Optional.of(createParquetPushDownPageSource(session, path, start, length, predicate));
         }
 
         return createPageSource(
@@ -338,24 +345,21 @@ public class ParquetPageSourceFactory
     }
 
     public HivePushDownPageSource createParquetPushDownPageSource(
+            ConnectorSession session,
             Path path,
             long start,
             long length,
             com.huawei.boostkit.omnidata.model.Predicate predicate)
     {
         AggregatedMemoryContext systemMemoryUsage = newSimpleAggregatedMemoryContext();
-        Properties transProperties = new Properties();
-        transProperties.put(OMNIDATA_CLIENT_TARGET_LIST, omniDataServerTarget);
 
         DataSource parquetPushDownDataSource = new com.huawei.boostkit.omnidata.model.datasource.hdfs.HdfsParquetDataSource(path.toString(), start, length, false);
 
-        TaskSource readTaskInfo = new TaskSource(
-                parquetPushDownDataSource,
-                predicate,
-                TaskSource.ONE_MEGABYTES);
-        DataReader<Page> dataReader = DataReaderFactory.create(transProperties, readTaskInfo, new OpenLooKengDeserializer());
+        DataReader<Page> dataReader = createOmniDataReader(session, omniDataServerTarget, parquetPushDownDataSource, predicate,
+                omniDataReadExecutors.getHedgeExecutor());
 
-        return new HivePushDownPageSource(dataReader, systemMemoryUsage);
+        return new HivePushDownPageSource(dataReader, systemMemoryUsage, getOmniDataPrefetchPageCount(session),
+                omniDataReadExecutors.getPrefetchExecutor());
     }
 
     public static TupleDomain<ColumnDescriptor> getParquetTupleDomain(Map<List<String>, RichColumnDescriptor> descriptorsByPath, TupleDomain<HiveColumnHandle> effectivePredicate)
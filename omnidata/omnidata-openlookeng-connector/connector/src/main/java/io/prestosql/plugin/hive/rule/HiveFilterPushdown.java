@@ -16,6 +16,7 @@ package io.prestosql.plugin.hive.rule;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.huawei.boostkit.omnidata.expression.OmniExpressionChecker;
 import io.airlift.log.Logger;
@@ -27,6 +28,7 @@ import io.prestosql.plugin.hive.HivePartitionManager;
 import io.prestosql.plugin.hive.HiveSessionProperties;
 import io.prestosql.plugin.hive.HiveTableHandle;
 import io.prestosql.plugin.hive.HiveTransactionManager;
+import io.prestosql.plugin.hive.rule.HiveOffloadCostModel.OffloadCost;
 import io.prestosql.spi.ConnectorPlanOptimizer;
 import io.prestosql.spi.SymbolAllocator;
 import io.prestosql.spi.connector.ColumnHandle;
@@ -38,11 +40,13 @@ import io.prestosql.spi.connector.Constraint;
 import io.prestosql.spi.function.FunctionMetadataManager;
 import io.prestosql.spi.function.StandardFunctionResolution;
 import io.prestosql.spi.metadata.TableHandle;
+import io.prestosql.spi.plan.Assignments;
 import io.prestosql.spi.plan.FilterNode;
 import io.prestosql.spi.plan.FilterStatsCalculatorService;
 import io.prestosql.spi.plan.PlanNode;
 import io.prestosql.spi.plan.PlanNodeIdAllocator;
 import io.prestosql.spi.plan.PlanVisitor;
+import io.prestosql.spi.plan.ProjectNode;
 import io.prestosql.spi.plan.Symbol;
 import io.prestosql.spi.plan.TableScanNode;
 import io.prestosql.spi.plan.ValuesNode;
@@ -53,6 +57,7 @@ import io.prestosql.spi.relation.ConstantExpression;
 import io.prestosql.spi.relation.DomainTranslator;
 import io.prestosql.spi.relation.RowExpression;
 import io.prestosql.spi.relation.RowExpressionService;
+import io.prestosql.spi.relation.SpecialForm;
 import io.prestosql.spi.relation.VariableReferenceExpression;
 import io.prestosql.spi.statistics.Estimate;
 import io.prestosql.spi.statistics.TableStatistics;
@@ -77,15 +82,22 @@ import static io.prestosql.expressions.LogicalRowExpressions.FALSE_CONSTANT;
 import static io.prestosql.expressions.LogicalRowExpressions.TRUE_CONSTANT;
 import static io.prestosql.expressions.LogicalRowExpressions.extractConjuncts;
 import static io.prestosql.expressions.RowExpressionNodeInliner.replaceExpression;
+import static io.prestosql.plugin.hive.HiveColumnHandle.isOmniDataFilteredColumnHandle;
+import static io.prestosql.plugin.hive.HiveColumnHandle.omniDataFilteredColumnHandle;
+import static io.prestosql.plugin.hive.rule.HiveOffloadCostModel.estimateRowWidth;
+import static io.prestosql.plugin.hive.rule.HiveOffloadCostModel.getScanColumnTypes;
 import static io.prestosql.plugin.hive.rule.HivePushdownUtil.checkStorageFormat;
 import static io.prestosql.plugin.hive.rule.HivePushdownUtil.isColumnsCanOffload;
 import static io.prestosql.spi.relation.DomainTranslator.BASIC_COLUMN_EXTRACTOR;
+import static io.prestosql.spi.relation.SpecialForm.Form.OR;
+import static io.prestosql.spi.type.BooleanType.BOOLEAN;
+import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
 public class HiveFilterPushdown
         implements ConnectorPlanOptimizer
 {
-    private static final String DYNAMIC_FILTER_FUNCTION_NAME = "$internal$dynamic_filter_function";
+    static final String DYNAMIC_FILTER_FUNCTION_NAME = "$internal$dynamic_filter_function";
     private static final Logger log = Logger.get(HiveFilterPushdown.class);
 
     private final HiveTransactionManager transactionManager;
@@ -166,7 +178,7 @@ public class HiveFilterPushdown
         return new ExpressionExtractResult(offloadExpression, remainingExpression);
     }
 
-    private static boolean determineOffloadExpression(
+    private static Optional<String> determineOffloadExpression(
             RowExpression offloadExpression,
             ConnectorTableHandle tableHandle,
             HiveMetadata metadata,
@@ -174,7 +186,8 @@ public class HiveFilterPushdown
             RowExpressionService rowExpressionService,
             Map<String, ColumnHandle> columnHandlesMap,
             FilterStatsCalculatorService filterCalculatorService,
-            Map<String, Type> typesMap)
+            Map<String, Type> typesMap,
+            Map<String, Type> scanColumnTypes)
     {
         // decompose expression
         DomainTranslator translator = rowExpressionService.getDomainTranslator();
@@ -190,7 +203,7 @@ public class HiveFilterPushdown
             ConstraintEvaluator evaluator = new ConstraintEvaluator(rowExpressionService, session, columnHandlesMap, decomposedFilter.getRemainingExpression());
             constraint = new Constraint(entireColumnDomain, evaluator::isCandidate);
         }
-        return evaluateFilterBenefit(tableHandle, columnHandlesMap, metadata, filterCalculatorService, offloadExpression, constraint, session, typesMap);
+        return evaluateFilterBenefit(tableHandle, columnHandlesMap, metadata, filterCalculatorService, offloadExpression, constraint, session, typesMap, scanColumnTypes);
     }
 
     private static ConnectorPushdownFilterResult pushdownFilter(
@@ -202,7 +215,8 @@ public class HiveFilterPushdown
             RowExpressionService rowExpressionService,
             StandardFunctionResolution functionResolution,
             FunctionMetadataManager functionMetadataManager,
-            FilterStatsCalculatorService filterCalculatorService)
+            FilterStatsCalculatorService filterCalculatorService,
+            Map<String, Type> scanColumnTypes)
     {
         checkArgument(!FALSE_CONSTANT.equals(predicate), "Cannot pushdown filter that is always false");
         checkArgument(tableHandle instanceof HiveTableHandle, "Only supports hive TableHandle");
@@ -220,14 +234,16 @@ public class HiveFilterPushdown
         RowExpression filterExpression = TRUE_CONSTANT.equals(oldOffloadExpression.getFilterExpression()) ?
                 expressionExtractResult.getOffloadExpression() : logicalRowExpressions.combineConjuncts(oldOffloadExpression.getFilterExpression(), expressionExtractResult.getOffloadExpression());
         RowExpression optimizedExpression = filterExpression;
-        if (true != determineOffloadExpression(optimizedExpression, tableHandle, metadata, session, rowExpressionService, columnHandlesMap, filterCalculatorService, typesMap)) {
+        Optional<String> offloadReason = determineOffloadExpression(optimizedExpression, tableHandle, metadata, session,
+                rowExpressionService, columnHandlesMap, filterCalculatorService, typesMap, scanColumnTypes);
+        if (!offloadReason.isPresent()) {
             return new ConnectorPushdownFilterResult(Optional.empty(), TRUE_CONSTANT);
         }
 
         Set<HiveColumnHandle> offloadColumns = HivePushdownUtil.extractAll(optimizedExpression).stream()
                 .map(entry -> (HiveColumnHandle) columnHandlesMap.get(entry.getName())).collect(Collectors.toSet());
         Optional<ConnectorTableHandle> newTableHandle =
-                Optional.of(hiveTableHandle.withOffloadExpression(oldOffloadExpression.updateFilter(optimizedExpression, offloadColumns)));
+                Optional.of(hiveTableHandle.withOffloadExpression(oldOffloadExpression.updateFilter(optimizedExpression, offloadColumns).withOffloadReason(offloadReason.get())));
         return new ConnectorPushdownFilterResult(newTableHandle, expressionExtractResult.getRemainingExpression());
     }
 
@@ -241,7 +257,7 @@ public class HiveFilterPushdown
         return layout;
     }
 
-    private static boolean evaluateFilterBenefit(
+    private static Optional<String> evaluateFilterBenefit(
             ConnectorTableHandle tableHandle,
             Map<String, ColumnHandle> columnHandlesMap,
             HiveMetadata metadata,
@@ -249,7 +265,8 @@ public class HiveFilterPushdown
             RowExpression predicate,
             Constraint constraint,
             ConnectorSession session,
-            Map<String, Type> typesMap)
+            Map<String, Type> typesMap,
+            Map<String, Type> scanColumnTypes)
     {
         TableStatistics statistics = metadata.getTableStatistics(session, tableHandle, constraint, true);
         if (statistics.getRowCount().isUnknown() || statistics.getRowCount().getValue() < HiveSessionProperties.getMinOffloadRowNumber(session)) {
@@ -258,7 +275,7 @@ public class HiveFilterPushdown
                     (long) statistics.getRowCount().getValue(),
                     HiveSessionProperties.getMinOffloadRowNumber(session),
                     predicate.toString());
-            return false;
+            return Optional.empty();
         }
 
         Set<String> predicateVariables = HivePushdownUtil.extractAll(predicate).stream()
@@ -278,18 +295,27 @@ public class HiveFilterPushdown
                 allColumns, allColumnTypes, symbolsMap, formSymbolsLayout(allColumns));
         Estimate filteredRowCount = filterStatistics.getRowCount().isUnknown() ? statistics.getRowCount() : filterStatistics.getRowCount();
         double filterFactor = filteredRowCount.getValue() / statistics.getRowCount().getValue();
+        if (HiveSessionProperties.isOmniDataCostBasedOffloadEnabled(session)) {
+            double rowWidth = estimateRowWidth(scanColumnTypes, statistics);
+            OffloadCost cost = HiveOffloadCostModel.estimate(session, statistics.getRowCount().getValue(), rowWidth,
+                    filteredRowCount.getValue(), rowWidth, HivePushdownUtil.getOmniDataClusterLoad());
+            String reason = format("filter factor %.2f%%, row width %.0fB, %s", filterFactor * 100, rowWidth, cost);
+            log.info("%s: table %s, size[%d], predicate[%s], %s.", cost.isOffloadBeneficial() ? "Offloading" : "No need to offload",
+                    tableHandle.getTableName(), (long) statistics.getRowCount().getValue(), predicate.toString(), reason);
+            return cost.isOffloadBeneficial() ? Optional.of(reason) : Optional.empty();
+        }
         if (filterFactor <= HiveSessionProperties.getFilterOffloadFactor(session)) {
             log.info("Offloading: table %s, size[%d], predicate[%s], filter factor[%.2f%%].",
                     tableHandle.getTableName(), (long) statistics.getRowCount().getValue(),
                     predicate.toString(), filterFactor * 100);
-            return true;
+            return Optional.of(format("filter factor %.2f%%", filterFactor * 100));
         }
         else {
             log.info("No need to offload: table %s, size[%d], predicate[%s], filter factor[%.2f%%].",
                     tableHandle.getTableName(), (long) statistics.getRowCount().getValue(),
                     predicate.toString(), filterFactor * 100);
         }
-        return false;
+        return Optional.empty();
     }
 
     private static class ConnectorPushdownFilterResult
@@ -376,8 +402,12 @@ public class HiveFilterPushdown
             if (!isOperatorOffloadSupported(session, tableScan.getTable())) {
                 return filterNode;
             }
+            if (tableScan.getAssignments().values().stream().anyMatch(column -> isOmniDataFilteredColumnHandle((HiveColumnHandle) column))) {
+                // the filter of this table scan has already been offloaded with partial offload
+                return filterNode;
+            }
 
-            if (!HivePushdownUtil.isOmniDataNodesNormal() || !isColumnsCanOffload(tableScan.getTable().getConnectorHandle(), tableScan.getOutputSymbols(), types)) {
+            if (!HivePushdownUtil.isOmniDataNodesNormal(session) || !isColumnsCanOffload(tableScan.getTable().getConnectorHandle(), tableScan.getOutputSymbols(), types)) {
                 return filterNode;
             }
 
@@ -398,7 +428,8 @@ public class HiveFilterPushdown
             }
 
             ConnectorPushdownFilterResult pushdownFilterResult = pushdownFilter(hiveMetadata, session, tableHandle.getConnectorHandle(),
-                    replacedExpression, types, rowExpressionService, functionResolution, functionMetadataManager, filterCalculatorService);
+                    replacedExpression, types, rowExpressionService, functionResolution, functionMetadataManager, filterCalculatorService,
+                    getScanColumnTypes(tableScan, types));
             if (!pushdownFilterResult.getTableHandle().isPresent()) {
                 return filterNode;
             }
@@ -422,6 +453,13 @@ public class HiveFilterPushdown
                             tableScan.getConsumerTableScanNodeCount(),
                             tableScan.isForDelete());
 
+            if (HiveSessionProperties.isOmniDataPartialOffloadEnabled(session)) {
+                HiveOffloadExpression offloadExpression = ((HiveTableHandle) pushdownFilterResult.getTableHandle().get()).getOffloadExpression();
+                return keepFilterForLocalSplits(
+                        newTableScan,
+                        replaceExpression(offloadExpression.getFilterExpression(), symbolToColumnMapping.inverse()),
+                        replaceExpression(pushdownFilterResult.getRemainingExpression(), symbolToColumnMapping.inverse()));
+            }
             if (!TRUE_CONSTANT.equals(pushdownFilterResult.getRemainingExpression())) {
                 return new FilterNode(
                         idAllocator.getNextId(), newTableScan,
@@ -429,6 +467,41 @@ public class HiveFilterPushdown
             }
             return newTableScan;
         }
+
+        /**
+         * Splits may be read locally, so the offloaded predicate stays above the table scan. The table scan also
+         * outputs the {@link HiveColumnHandle#OMNIDATA_FILTERED_COLUMN_NAME} column, which is true on the splits
+         * OmniData has read, so the offloaded predicate is only evaluated again on the splits read locally.
+         */
+        private PlanNode keepFilterForLocalSplits(TableScanNode tableScan, RowExpression offloadedPredicate, RowExpression remainingPredicate)
+        {
+            Symbol filteredSymbol = symbolAllocator.newSymbol("omnidata_filtered", BOOLEAN);
+            TableScanNode markedTableScan =
+                    new TableScanNode(
+                            tableScan.getId(),
+                            tableScan.getTable(),
+                            ImmutableList.<Symbol>builder().addAll(tableScan.getOutputSymbols()).add(filteredSymbol).build(),
+                            ImmutableMap.<Symbol, ColumnHandle>builder().putAll(tableScan.getAssignments()).put(filteredSymbol, omniDataFilteredColumnHandle()).build(),
+                            tableScan.getEnforcedConstraint(),
+                            tableScan.getPredicate(),
+                            tableScan.getStrategy(),
+                            tableScan.getReuseTableScanMappingId(),
+                            tableScan.getConsumerTableScanNodeCount(),
+                            tableScan.isForDelete());
+
+            LogicalRowExpressions logicalRowExpressions =
+                    new LogicalRowExpressions(rowExpressionService.getDeterminismEvaluator(), functionResolution, functionMetadataManager);
+            RowExpression predicate = logicalRowExpressions.combineConjuncts(
+                    new SpecialForm(OR, BOOLEAN, ImmutableList.of(new VariableReferenceExpression(filteredSymbol.getName(), BOOLEAN), offloadedPredicate)),
+                    remainingPredicate);
+            FilterNode filter = new FilterNode(idAllocator.getNextId(), markedTableScan, predicate);
+
+            Map<Symbol, RowExpression> outputs = new LinkedHashMap<>();
+            for (Symbol symbol : tableScan.getOutputSymbols()) {
+                outputs.put(symbol, new VariableReferenceExpression(symbol.getName(), types.get(symbol.getName())));
+            }
+            return new ProjectNode(idAllocator.getNextId(), filter, Assignments.copyOf(outputs));
+        }
     }
 
     private static class ConstraintEvaluator
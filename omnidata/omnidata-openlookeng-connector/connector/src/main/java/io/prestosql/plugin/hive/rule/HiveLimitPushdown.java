@@ -64,7 +64,8 @@ public class HiveLimitPushdown
         requireNonNull(symbolAllocator, "symbolAllocator is null");
         requireNonNull(idAllocator, "idAllocator is null");
 
-        if (!HiveSessionProperties.isOmniDataEnabled(session)) {
+        // the partial limit is taken off the plan, so splits of an offloaded limit can not be read locally
+        if (!HiveSessionProperties.isOmniDataEnabled(session) || HiveSessionProperties.isOmniDataPartialOffloadEnabled(session)) {
             return maxSubPlan;
         }
         return maxSubPlan.accept(new Visitor(types, session), null);
@@ -122,7 +123,7 @@ public class HiveLimitPushdown
                 return visitPlan(limitNode, context);
             }
 
-            if (!HivePushdownUtil.isOmniDataNodesNormal() || !isColumnsCanOffload(tableHandle.getConnectorHandle(), tableScan.getOutputSymbols(), types)) {
+            if (!HivePushdownUtil.isOmniDataNodesNormal(session) || !isColumnsCanOffload(tableHandle.getConnectorHandle(), tableScan.getOutputSymbols(), types)) {
                 return visitPlan(limitNode, context);
             }
 
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive.rule;
+
+import io.prestosql.spi.connector.ColumnHandle;
+import io.prestosql.spi.connector.ConnectorSession;
+import io.prestosql.spi.plan.Symbol;
+import io.prestosql.spi.plan.TableScanNode;
+import io.prestosql.spi.statistics.ColumnStatistics;
+import io.prestosql.spi.statistics.TableStatistics;
+import io.prestosql.spi.type.FixedWidthType;
+import io.prestosql.spi.type.Type;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static io.prestosql.plugin.hive.HiveSessionProperties.getOmniDataNetworkBandwidth;
+import static io.prestosql.plugin.hive.HiveSessionProperties.getOmniDataScanThroughput;
+import static java.lang.String.format;
+
+/**
+ * Compares reading the table data on the workers with offloading the operators to OmniData.
+ * <p>
+ * Without offload every scanned byte is sent to the worker over the network. With offload the storage node
+ * scans the same bytes, plus a fixed evaluation overhead per row, at a throughput reduced by the current load
+ * of the OmniData nodes, and only the operator output is sent over the network. So wide rows favour offload
+ * even for a poor selectivity, while narrow rows need a very selective operator to pay off.
+ */
+public final class HiveOffloadCostModel
+{
+    // Cost of evaluating the offloaded operators for one row, expressed in scanned bytes
+    private static final double ROW_EVALUATION_OVERHEAD_BYTES = 16;
+    private static final double DEFAULT_COLUMN_WIDTH = 32;
+    // Saturated clusters are rejected by the busy check, keep some capacity to avoid dividing by zero
+    private static final double MIN_AVAILABLE_CAPACITY = 0.1;
+
+    private HiveOffloadCostModel() {}
+
+    public static OffloadCost estimate(
+            ConnectorSession session,
+            double rowCount,
+            double inputRowWidth,
+            double outputRowCount,
+            double outputRowWidth,
+            double clusterLoad)
+    {
+        double networkBandwidth = getOmniDataNetworkBandwidth(session).toBytes();
+        double scanThroughput = getOmniDataScanThroughput(session).toBytes() * Math.max(1 - clusterLoad, MIN_AVAILABLE_CAPACITY);
+        double localCost = rowCount * inputRowWidth / networkBandwidth;
+        double offloadCost = rowCount * (inputRowWidth + ROW_EVALUATION_OVERHEAD_BYTES) / scanThroughput
+                + outputRowCount * outputRowWidth / networkBandwidth;
+        return new OffloadCost(localCost, offloadCost, clusterLoad);
+    }
+
+    /**
+     * Estimates the average size of a row made of the given columns, using the column statistics for variable width types.
+     */
+    public static double estimateRowWidth(Map<String, Type> columnTypes, TableStatistics statistics)
+    {
+        Map<String, ColumnStatistics> statisticsMap = new HashMap<>();
+        for (Map.Entry<ColumnHandle, ColumnStatistics> entry : statistics.getColumnStatistics().entrySet()) {
+            statisticsMap.put(entry.getKey().getColumnName(), entry.getValue());
+        }
+        double rowCount = statistics.getRowCount().isUnknown() ? 0 : statistics.getRowCount().getValue();
+
+        double rowWidth = 0;
+        for (Map.Entry<String, Type> entry : columnTypes.entrySet()) {
+            if (entry.getValue() instanceof FixedWidthType) {
+                rowWidth += ((FixedWidthType) entry.getValue()).getFixedSize();
+                continue;
+            }
+            ColumnStatistics columnStatistics = statisticsMap.get(entry.getKey());
+            if (columnStatistics != null && !columnStatistics.getDataSize().isUnknown() && rowCount > 0) {
+                rowWidth += columnStatistics.getDataSize().getValue() / rowCount;
+            }
+            else {
+                rowWidth += DEFAULT_COLUMN_WIDTH;
+            }
+        }
+        return rowWidth;
+    }
+
+    /**
+     * Returns the types of the table columns read by the scan, by column name.
+     */
+    public static Map<String, Type> getScanColumnTypes(TableScanNode tableScanNode, Map<String, Type> types)
+    {
+        Map<String, Type> columnTypes = new HashMap<>();
+        for (Map.Entry<Symbol, ColumnHandle> entry : tableScanNode.getAssignments().entrySet()) {
+            Type type = types.get(entry.getKey().getName());
+            if (type != null) {
+                columnTypes.put(entry.getValue().getColumnName(), type);
+            }
+        }
+        return columnTypes;
+    }
+
+    public static class OffloadCost
+    {
+        private final double localCost;
+        private final double offloadCost;
+        private final double clusterLoad;
+
+        public OffloadCost(double localCost, double offloadCost, double clusterLoad)
+        {
+            this.localCost = localCost;
+            this.offloadCost = offloadCost;
+            this.clusterLoad = clusterLoad;
+        }
+
+        public double getLocalCost()
+        {
+            return localCost;
+        }
+
+        public double getOffloadCost()
+        {
+            return offloadCost;
+        }
+
+        public boolean isOffloadBeneficial()
+        {
+            return offloadCost < localCost;
+        }
+
+        @Override
+        public String toString()
+        {
+            return format("local cost %.2fs, offload cost %.2fs, omnidata load %.0f%%", localCost, offloadCost, clusterLoad * 100);
+        }
+    }
+}
@@ -15,7 +15,9 @@
 package io.prestosql.plugin.hive.rule;
 
 import com.google.common.collect.BiMap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.huawei.boostkit.omnidata.expression.OmniExpressionChecker;
 import com.huawei.boostkit.omnidata.model.AggregationInfo;
 import io.airlift.log.Logger;
@@ -28,6 +30,7 @@ import io.prestosql.plugin.hive.HiveTransactionManager;
 import io.prestosql.plugin.hive.HiveType;
 import io.prestosql.plugin.hive.HiveTypeTranslator;
 import io.prestosql.plugin.hive.TransactionalMetadata;
+import io.prestosql.plugin.hive.rule.HiveOffloadCostModel.OffloadCost;
 import io.prestosql.spi.ConnectorPlanOptimizer;
 import io.prestosql.spi.PrestoException;
 import io.prestosql.spi.SymbolAllocator;
@@ -40,6 +43,8 @@ import io.prestosql.spi.function.FunctionMetadataManager;
 import io.prestosql.spi.function.StandardFunctionResolution;
 import io.prestosql.spi.metadata.TableHandle;
 import io.prestosql.spi.plan.AggregationNode;
+import io.prestosql.spi.plan.Assignments;
+import io.prestosql.spi.plan.FilterNode;
 import io.prestosql.spi.plan.PlanNode;
 import io.prestosql.spi.plan.PlanNodeIdAllocator;
 import io.prestosql.spi.plan.PlanVisitor;
@@ -47,7 +52,9 @@ import io.prestosql.spi.plan.ProjectNode;
 import io.prestosql.spi.plan.Symbol;
 import io.prestosql.spi.plan.TableScanNode;
 import io.prestosql.spi.relation.CallExpression;
+import io.prestosql.spi.relation.ConstantExpression;
 import io.prestosql.spi.relation.RowExpression;
+import io.prestosql.spi.relation.SpecialForm;
 import io.prestosql.spi.relation.VariableReferenceExpression;
 import io.prestosql.spi.statistics.ColumnStatistics;
 import io.prestosql.spi.statistics.TableStatistics;
@@ -58,25 +65,37 @@ import io.prestosql.spi.type.TypeSignature;
 import javax.inject.Inject;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.ImmutableBiMap.toImmutableBiMap;
 import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.prestosql.expressions.LogicalRowExpressions.TRUE_CONSTANT;
+import static io.prestosql.expressions.LogicalRowExpressions.extractConjuncts;
 import static io.prestosql.expressions.RowExpressionNodeInliner.replaceExpression;
 import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.DUMMY_OFFLOADED;
 import static io.prestosql.plugin.hive.HiveColumnHandle.DUMMY_OFFLOADED_COLUMN_INDEX;
 import static io.prestosql.plugin.hive.HiveColumnHandle.DUMMY_OFFLOADED_COLUMN_NAME;
+import static io.prestosql.plugin.hive.rule.HiveFilterPushdown.DYNAMIC_FILTER_FUNCTION_NAME;
+import static io.prestosql.plugin.hive.rule.HiveOffloadCostModel.estimateRowWidth;
+import static io.prestosql.plugin.hive.rule.HiveOffloadCostModel.getScanColumnTypes;
 import static io.prestosql.plugin.hive.rule.HivePushdownUtil.checkTableCanOffload;
+import static io.prestosql.plugin.hive.rule.HivePushdownUtil.extractAll;
 import static io.prestosql.plugin.hive.rule.HivePushdownUtil.getDataSourceColumns;
 import static io.prestosql.plugin.hive.rule.HivePushdownUtil.isColumnsCanOffload;
 import static io.prestosql.spi.StandardErrorCode.NOT_FOUND;
 import static io.prestosql.spi.connector.Constraint.alwaysTrue;
 import static io.prestosql.spi.plan.AggregationNode.Step.PARTIAL;
+import static io.prestosql.spi.relation.SpecialForm.Form.AND;
+import static io.prestosql.spi.relation.SpecialForm.Form.IF;
+import static io.prestosql.spi.type.BooleanType.BOOLEAN;
+import static java.lang.String.format;
 import static java.util.Objects.requireNonNull;
 
 public class HivePartialAggregationPushdown
@@ -85,6 +104,8 @@ public class HivePartialAggregationPushdown
     private static final Logger log = Logger.get(HivePartialAggregationPushdown.class);
     private static final double AGGREGATION_FACTOR_MAX = 1.0;
     private static final double AGGREGATION_FACTOR_MIN = 0.0;
+    // Aggregations that skip null inputs, a filtered aggregation is the aggregation of IF(filter, argument, NULL)
+    private static final Set<String> NULL_IGNORING_AGGREGATIONS = ImmutableSet.of("count", "sum", "min", "max", "avg");
     private final FunctionMetadataManager functionMetadataManager;
     private final StandardFunctionResolution standardFunctionResolution;
     private final Supplier<TransactionalMetadata> metadataFactory;
@@ -134,7 +155,9 @@ public class HivePartialAggregationPushdown
         requireNonNull(symbolAllocator, "symbolAllocator is null");
         requireNonNull(idAllocator, "idAllocator is null");
 
-        if (!HiveSessionProperties.isOmniDataEnabled(session) || !HiveSessionProperties.isAggregatorOffloadEnabled(session)) {
+        // splits of an offloaded aggregation can not be read locally, so partial offload only offloads filters
+        if (!HiveSessionProperties.isOmniDataEnabled(session) || !HiveSessionProperties.isAggregatorOffloadEnabled(session)
+                || HiveSessionProperties.isOmniDataPartialOffloadEnabled(session)) {
             return maxSubPlan;
         }
         return maxSubPlan.accept(new Visitor(session, idAllocator, types, symbolAllocator), null);
@@ -157,39 +180,26 @@ public class HivePartialAggregationPushdown
             this.session = requireNonNull(session, "session is null");
             this.idAllocator = requireNonNull(idAllocator, "idAllocator is null");
             this.symbolAllocator = requireNonNull(symbolAllocator, "symbolAllocator is null");
-            this.types = requireNonNull(types, "types is null");
+            // the symbols of the filtered aggregation arguments are added while rewriting
+            this.types = new HashMap<>(requireNonNull(types, "types is null"));
         }
 
         private boolean isAggregationPushdownSupported(AggregationNode partialAggregationNode)
         {
-            if (!partialAggregationNode.getPreGroupedSymbols().isEmpty()
-                    || partialAggregationNode.getHashSymbol().isPresent()
-                    || partialAggregationNode.getGroupIdSymbol().isPresent()) {
-                return false;
-            }
+            return partialAggregationNode.getPreGroupedSymbols().isEmpty()
+                    && !partialAggregationNode.getHashSymbol().isPresent()
+                    && !partialAggregationNode.getGroupIdSymbol().isPresent();
+        }
 
-            for (Map.Entry<Symbol, AggregationNode.Aggregation> entry : partialAggregationNode.getAggregations().entrySet()) {
-                AggregationNode.Aggregation aggregation = entry.getValue();
-                if (aggregation.isDistinct() || aggregation.getFilter().isPresent()
-                        || aggregation.getMask().isPresent() || aggregation.getOrderingScheme().isPresent()) {
-                    return false;
-                }
-                if (!OmniExpressionChecker.checkAggregateFunction(aggregation.getFunctionCall())) {
+        private boolean isAggregationPushdownSupported(AggregationSource aggregationSource)
+        {
+            for (Map.Entry<Symbol, AggregationNode.Aggregation> entry : aggregationSource.getAggregations().entrySet()) {
+                if (!OmniExpressionChecker.checkAggregateFunction(entry.getValue().getFunctionCall())) {
                     return false;
                 }
             }
 
-            TableScanNode tableScanNode;
-            if (partialAggregationNode.getSource() instanceof TableScanNode) {
-                tableScanNode = (TableScanNode) partialAggregationNode.getSource();
-            }
-            else {
-                if (!(partialAggregationNode.getSource() instanceof ProjectNode)
-                        || !(((ProjectNode) partialAggregationNode.getSource()).getSource() instanceof TableScanNode)) {
-                    return false;
-                }
-                tableScanNode = (TableScanNode) (((ProjectNode) partialAggregationNode.getSource()).getSource());
-            }
+            TableScanNode tableScanNode = aggregationSource.getTableScanNode();
             ConnectorTableMetadata connectorTableMetadata = metadataFactory.get().getTableMetadata(session, tableScanNode.getTable().getConnectorHandle());
             Optional<Object> rawFormat = Optional.ofNullable(connectorTableMetadata.getProperties().get(HiveTableProperties.STORAGE_FORMAT_PROPERTY));
             if (!rawFormat.isPresent()) {
@@ -210,7 +220,7 @@ public class HivePartialAggregationPushdown
             return true;
         }
 
-        private Optional<AggregationInfo> buildAggregationInfo(AggregationNode partialAggregationNode, TableScanNode tableScanNode)
+        private Optional<AggregationInfo> buildAggregationInfo(AggregationNode partialAggregationNode, Map<Symbol, AggregationNode.Aggregation> aggregations, TableScanNode tableScanNode)
         {
             BiMap<VariableReferenceExpression, VariableReferenceExpression> symbolToColumnMapping =
                     tableScanNode.getAssignments().entrySet().stream().collect(toImmutableBiMap(
@@ -218,7 +228,7 @@ public class HivePartialAggregationPushdown
                             entry -> new VariableReferenceExpression(entry.getValue().getColumnName(), types.get(entry.getKey().getName()))));
 
             ImmutableMap.Builder<String, AggregationInfo.AggregateFunction> aggregationsBuilder = ImmutableMap.builder();
-            for (Map.Entry<Symbol, AggregationNode.Aggregation> entry : partialAggregationNode.getAggregations().entrySet()) {
+            for (Map.Entry<Symbol, AggregationNode.Aggregation> entry : aggregations.entrySet()) {
                 RowExpression expression = replaceExpression(entry.getValue().getFunctionCall(), symbolToColumnMapping);
                 checkArgument(expression instanceof CallExpression, "Replace result is not callExpression");
                 CallExpression callExpression = (CallExpression) expression;
@@ -232,41 +242,218 @@ public class HivePartialAggregationPushdown
             return Optional.of(aggregationInfo);
         }
 
-        private Optional<TableScanNode> tryProjectPushdown(AggregationNode aggregationNode)
+        private Optional<TableScanNode> tryProjectPushdown(PlanNode source)
         {
-            if (aggregationNode.getSource() instanceof TableScanNode) {
-                return Optional.of((TableScanNode) aggregationNode.getSource());
+            if (source instanceof TableScanNode) {
+                return Optional.of((TableScanNode) source);
             }
 
-            if (!(aggregationNode.getSource() instanceof ProjectNode)) {
+            if (!(source instanceof ProjectNode)) {
                 return Optional.empty();
             }
 
-            ProjectNode projectNode = (ProjectNode) aggregationNode.getSource();
+            ProjectNode projectNode = (ProjectNode) source;
             return HiveProjectPushdown.tryProjectPushdown(projectNode, types);
         }
 
+        /**
+         * Rewrite the source of the partial aggregation to the offloaded shape, a table scan with an optional project on top.
+         * A filter between the project and the table scan is offloaded together with the aggregation, and the filter or mask
+         * of an aggregation is moved into the project as IF(filter, argument, NULL).
+         */
+        private Optional<AggregationSource> rewriteAggregationSource(AggregationNode partialAggregationNode)
+        {
+            PlanNode node = partialAggregationNode.getSource();
+            Optional<ProjectNode> projectNode = Optional.empty();
+            if (node instanceof ProjectNode) {
+                projectNode = Optional.of((ProjectNode) node);
+                node = ((ProjectNode) node).getSource();
+            }
+            Optional<FilterNode> filterNode = Optional.empty();
+            if (node instanceof FilterNode) {
+                filterNode = Optional.of((FilterNode) node);
+                node = ((FilterNode) node).getSource();
+            }
+            if (!(node instanceof TableScanNode)) {
+                return Optional.empty();
+            }
+            TableScanNode tableScanNode = (TableScanNode) node;
+
+            TableScanNode newTableScanNode = tableScanNode;
+            if (filterNode.isPresent()) {
+                Optional<TableScanNode> filteredTableScanNode = tryFilterPushdown(filterNode.get(), tableScanNode);
+                if (!filteredTableScanNode.isPresent()) {
+                    return Optional.empty();
+                }
+                newTableScanNode = filteredTableScanNode.get();
+            }
+
+            Map<Symbol, RowExpression> filteredArguments = new LinkedHashMap<>();
+            ImmutableMap.Builder<Symbol, AggregationNode.Aggregation> aggregations = ImmutableMap.builder();
+            for (Map.Entry<Symbol, AggregationNode.Aggregation> entry : partialAggregationNode.getAggregations().entrySet()) {
+                AggregationNode.Aggregation aggregation = entry.getValue();
+                // the partial result of a distinct aggregation cannot be merged, count(DISTINCT) only offloads its distinct set
+                if (aggregation.isDistinct() || aggregation.getOrderingScheme().isPresent()) {
+                    return Optional.empty();
+                }
+                if (!aggregation.getFilter().isPresent() && !aggregation.getMask().isPresent()) {
+                    aggregations.put(entry);
+                    continue;
+                }
+                Optional<AggregationNode.Aggregation> unfilteredAggregation = unfilterAggregation(aggregation, filteredArguments);
+                if (!unfilteredAggregation.isPresent()) {
+                    return Optional.empty();
+                }
+                aggregations.put(entry.getKey(), unfilteredAggregation.get());
+            }
+
+            PlanNode source = newTableScanNode;
+            if (filteredArguments.isEmpty()) {
+                if (projectNode.isPresent()) {
+                    source = projectNode.get().replaceChildren(ImmutableList.of(newTableScanNode));
+                }
+                return Optional.of(new AggregationSource(source, tableScanNode, aggregations.build()));
+            }
+
+            // the filters reference the outputs of the project, inline them so that the new project only reads the table scan
+            Map<RowExpression, RowExpression> projections = new HashMap<>();
+            projectNode.ifPresent(project -> project.getAssignments().getMap().forEach((symbol, expression) ->
+                    projections.put(new VariableReferenceExpression(symbol.getName(), types.get(symbol.getName())), expression)));
+            Map<Symbol, RowExpression> assignments = new LinkedHashMap<>();
+            for (Symbol symbol : partialAggregationNode.getGroupingKeys()) {
+                RowExpression variable = new VariableReferenceExpression(symbol.getName(), types.get(symbol.getName()));
+                assignments.put(symbol, projections.getOrDefault(variable, variable));
+            }
+            for (AggregationNode.Aggregation aggregation : aggregations.build().values()) {
+                for (RowExpression argument : aggregation.getArguments()) {
+                    if (!(argument instanceof VariableReferenceExpression)) {
+                        return Optional.empty();
+                    }
+                    Symbol symbol = new Symbol(((VariableReferenceExpression) argument).getName());
+                    if (filteredArguments.containsKey(symbol)) {
+                        assignments.put(symbol, replaceExpression(filteredArguments.get(symbol), projections));
+                    }
+                    else {
+                        assignments.put(symbol, projections.getOrDefault(argument, argument));
+                    }
+                }
+            }
+            source = new ProjectNode(idAllocator.getNextId(), newTableScanNode, Assignments.copyOf(assignments));
+            return Optional.of(new AggregationSource(source, tableScanNode, aggregations.build()));
+        }
+
+        private Optional<AggregationNode.Aggregation> unfilterAggregation(AggregationNode.Aggregation aggregation, Map<Symbol, RowExpression> filteredArguments)
+        {
+            CallExpression call = aggregation.getFunctionCall();
+            if (!NULL_IGNORING_AGGREGATIONS.contains(call.getDisplayName()) || call.getArguments().size() > 1) {
+                return Optional.empty();
+            }
+
+            List<RowExpression> conditions = ImmutableList.<Symbol>builder()
+                    .addAll(aggregation.getFilter().map(ImmutableList::of).orElse(ImmutableList.of()))
+                    .addAll(aggregation.getMask().map(ImmutableList::of).orElse(ImmutableList.of()))
+                    .build().stream()
+                    .map(symbol -> new VariableReferenceExpression(symbol.getName(), BOOLEAN))
+                    .collect(toImmutableList());
+            RowExpression condition = conditions.size() == 1 ? conditions.get(0) : new SpecialForm(AND, BOOLEAN, conditions);
+
+            // count(*) counts the rows where the filter holds, count(true) skips the others as NULL
+            RowExpression argument = call.getArguments().isEmpty() ? TRUE_CONSTANT : call.getArguments().get(0);
+            if (!(argument instanceof VariableReferenceExpression) && !call.getArguments().isEmpty()) {
+                return Optional.empty();
+            }
+            Type argumentType = argument.getType();
+            Symbol argumentSymbol = symbolAllocator.newSymbol(call.getDisplayName() + "_filtered", argumentType);
+            types.put(argumentSymbol.getName(), argumentType);
+            filteredArguments.put(argumentSymbol, new SpecialForm(IF, argumentType, ImmutableList.of(condition, argument, new ConstantExpression(null, argumentType))));
+
+            VariableReferenceExpression newArgument = new VariableReferenceExpression(argumentSymbol.getName(), argumentType);
+            CallExpression newCall = new CallExpression(
+                    call.getDisplayName(),
+                    call.getArguments().isEmpty() ? standardFunctionResolution.countFunction(argumentType) : call.getFunctionHandle(),
+                    call.getType(),
+                    ImmutableList.of(newArgument));
+            return Optional.of(new AggregationNode.Aggregation(newCall, newCall.getArguments(), false, Optional.empty(), Optional.empty(), Optional.empty()));
+        }
+
+        private Optional<TableScanNode> tryFilterPushdown(FilterNode filterNode, TableScanNode tableScanNode)
+        {
+            Optional<HiveTableHandle> hiveTableHandle = getHiveTableHandle(tableScanNode);
+            if (!hiveTableHandle.isPresent()) {
+                return Optional.empty();
+            }
+            // dynamic filters are evaluated by the workers
+            for (RowExpression conjunct : extractConjuncts(filterNode.getPredicate())) {
+                if (conjunct instanceof CallExpression && ((CallExpression) conjunct).getDisplayName().equals(DYNAMIC_FILTER_FUNCTION_NAME)) {
+                    return Optional.empty();
+                }
+            }
+
+            BiMap<VariableReferenceExpression, VariableReferenceExpression> symbolToColumnMapping =
+                    tableScanNode.getAssignments().entrySet().stream().collect(toImmutableBiMap(
+                            entry -> new VariableReferenceExpression(entry.getKey().getName(), types.get(entry.getKey().getName())),
+                            entry -> new VariableReferenceExpression(entry.getValue().getColumnName(), types.get(entry.getKey().getName()))));
+            RowExpression predicate = replaceExpression(filterNode.getPredicate(), symbolToColumnMapping);
+            if (!OmniExpressionChecker.checkExpression(predicate)) {
+                return Optional.empty();
+            }
+
+            HiveOffloadExpression offloadExpression = hiveTableHandle.get().getOffloadExpression();
+            if (offloadExpression.getAggregations().isPresent() || offloadExpression.getLimit().isPresent()
+                    || !offloadExpression.getProjections().isEmpty()) {
+                return Optional.empty();
+            }
+            if (TRUE_CONSTANT.equals(offloadExpression.getFilterExpression())) {
+                Set<HiveColumnHandle> offloadColumns = extractAll(filterNode.getPredicate()).stream()
+                        .map(variable -> (HiveColumnHandle) tableScanNode.getAssignments().get(new Symbol(variable.getName())))
+                        .collect(Collectors.toSet());
+                offloadExpression = offloadExpression.updateFilter(predicate, offloadColumns);
+            }
+            else if (!offloadExpression.getFilterExpression().equals(predicate)) {
+                // the filter is already partly offloaded, what is left above the table scan can not be offloaded
+                return Optional.empty();
+            }
+
+            TableHandle tableHandle = tableScanNode.getTable();
+            TableHandle newTableHandle = new TableHandle(
+                    tableHandle.getCatalogName(),
+                    hiveTableHandle.get().withOffloadExpression(offloadExpression),
+                    tableHandle.getTransaction(),
+                    tableHandle.getLayout());
+            return Optional.of(new TableScanNode(
+                    tableScanNode.getId(),
+                    newTableHandle,
+                    tableScanNode.getOutputSymbols(),
+                    tableScanNode.getAssignments(),
+                    tableScanNode.getEnforcedConstraint(),
+                    tableScanNode.getPredicate(),
+                    tableScanNode.getStrategy(),
+                    tableScanNode.getReuseTableScanMappingId(),
+                    tableScanNode.getConsumerTableScanNodeCount(),
+                    tableScanNode.isForDelete()));
+        }
+
         private Optional<PlanNode> tryPartialAggregationPushdown(PlanNode plan)
         {
             if (!(plan instanceof AggregationNode && ((AggregationNode) plan).getStep().equals(PARTIAL))) {
                 return Optional.empty();
             }
             AggregationNode partialAggregationNode = (AggregationNode) plan;
-            if (!((partialAggregationNode.getSource() instanceof TableScanNode) ||
-                    (partialAggregationNode.getSource() instanceof ProjectNode && ((ProjectNode) partialAggregationNode.getSource()).getSource() instanceof TableScanNode))) {
+            if (!isAggregationPushdownSupported(partialAggregationNode)) {
                 return Optional.empty();
             }
-
-            if (!isAggregationPushdownSupported(partialAggregationNode) || !HivePushdownUtil.isOmniDataNodesNormal()) {
+            Optional<AggregationSource> aggregationSource = rewriteAggregationSource(partialAggregationNode);
+            if (!aggregationSource.isPresent() || !isAggregationPushdownSupported(aggregationSource.get()) || !HivePushdownUtil.isOmniDataNodesNormal(session)) {
                 return Optional.empty();
             }
 
-            double aggregationFactor = getAggregationFactor(partialAggregationNode, session, transactionManager);
-            if (aggregationFactor > HiveSessionProperties.getAggregatorOffloadFactor(session)) {
+            Optional<String> offloadReason = evaluateAggregationBenefit(partialAggregationNode, aggregationSource.get().getTableScanNode(), session, transactionManager);
+            if (!offloadReason.isPresent()) {
                 return Optional.empty();
             }
 
-            Optional<TableScanNode> oldTableScanNode = tryProjectPushdown(partialAggregationNode);
+            Map<Symbol, AggregationNode.Aggregation> aggregations = aggregationSource.get().getAggregations();
+            Optional<TableScanNode> oldTableScanNode = tryProjectPushdown(aggregationSource.get().getSource());
             if (!oldTableScanNode.isPresent()) {
                 return Optional.empty();
             }
@@ -275,7 +462,7 @@ public class HivePartialAggregationPushdown
 
             HiveTypeTranslator hiveTypeTranslator = new HiveTypeTranslator();
             Map<Symbol, ColumnHandle> assignments = new HashMap<>();
-            for (Map.Entry<Symbol, AggregationNode.Aggregation> aggregationEntry : partialAggregationNode.getAggregations().entrySet()) {
+            for (Map.Entry<Symbol, AggregationNode.Aggregation> aggregationEntry : aggregations.entrySet()) {
                 CallExpression callExpression = aggregationEntry.getValue().getFunctionCall();
                 ColumnHandle newColumnHandle;
                 TypeSignature typeSignature = callExpression.getType().getTypeSignature();
@@ -313,7 +500,8 @@ public class HivePartialAggregationPushdown
 
             HiveOffloadExpression offloadExpression = hiveTableHandle.getOffloadExpression();
             HiveTableHandle newHiveTableHandle = hiveTableHandle.withOffloadExpression(
-                    offloadExpression.updateAggregation(buildAggregationInfo(partialAggregationNode, oldTableScanNode.get()), getDataSourceColumns(oldTableScanNode.get())));
+                    offloadExpression.updateAggregation(buildAggregationInfo(partialAggregationNode, aggregations, oldTableScanNode.get()), getDataSourceColumns(oldTableScanNode.get()))
+                            .withOffloadReason(offloadReason.get()));
             TableHandle newTableHandle = new TableHandle(
                     oldTableHandle.getCatalogName(),
                     newHiveTableHandle,
@@ -332,8 +520,8 @@ public class HivePartialAggregationPushdown
                             oldTableScanNode.get().getReuseTableScanMappingId(),
                             oldTableScanNode.get().getConsumerTableScanNodeCount(),
                             oldTableScanNode.get().isForDelete());
-            log.info("Offloading: table %s, aggregation factor[%.2f%%], aggregation[%s] .",
-                    newTableHandle.getConnectorHandle().getTableName(), aggregationFactor * 100,
+            log.info("Offloading: table %s, %s, aggregation[%s] .",
+                    newTableHandle.getConnectorHandle().getTableName(), offloadReason.get(),
                     HiveOffloadExpression.aggregationInfoToString(newHiveTableHandle.getOffloadExpression().getAggregations().get()));
             return Optional.of(newTableScan);
         }
@@ -348,25 +536,15 @@ public class HivePartialAggregationPushdown
                     node.getSources().stream().map(source -> source.accept(this, null)).collect(toImmutableList())));
         }
 
-        private double getAggregationFactor(
+        private Optional<String> evaluateAggregationBenefit(
                 AggregationNode aggregationNode,
+                TableScanNode tableScanNode,
                 ConnectorSession connectorSession,
                 HiveTransactionManager hiveTransactionManager)
         {
-            TableScanNode tableScanNode;
-            if (aggregationNode.getSource() instanceof TableScanNode) {
-                tableScanNode = (TableScanNode) aggregationNode.getSource();
-            }
-            else if (aggregationNode.getSource() instanceof ProjectNode && ((ProjectNode) aggregationNode.getSource()).getSource() instanceof TableScanNode) {
-                tableScanNode = (TableScanNode) ((ProjectNode) aggregationNode.getSource()).getSource();
-            }
-            else {
-                return AGGREGATION_FACTOR_MAX;
-            }
-
             ConnectorTableHandle connectorHandle = tableScanNode.getTable().getConnectorHandle();
             if (!(connectorHandle instanceof HiveTableHandle)) {
-                return AGGREGATION_FACTOR_MAX;
+                return Optional.empty();
             }
             HiveTableHandle tableHandle = (HiveTableHandle) connectorHandle;
             ConnectorMetadata metadata = hiveTransactionManager.get(tableScanNode.getTable().getTransaction());
@@ -376,9 +554,36 @@ public class HivePartialAggregationPushdown
                         tableHandle.getTableName(),
                         (long) statistics.getRowCount().getValue(),
                         HiveSessionProperties.getMinOffloadRowNumber(connectorSession));
-                return AGGREGATION_FACTOR_MAX;
+                return Optional.empty();
             }
 
+            double aggregationFactor = getAggregationFactor(aggregationNode, tableScanNode, statistics);
+            if (!HiveSessionProperties.isOmniDataCostBasedOffloadEnabled(connectorSession)) {
+                if (aggregationFactor > HiveSessionProperties.getAggregatorOffloadFactor(connectorSession)) {
+                    return Optional.empty();
+                }
+                return Optional.of(format("aggregation factor %.2f%%", aggregationFactor * 100));
+            }
+
+            double rowCount = statistics.getRowCount().getValue();
+            double inputRowWidth = estimateRowWidth(getScanColumnTypes(tableScanNode, types), statistics);
+            Map<String, Type> outputTypes = new HashMap<>();
+            for (Symbol symbol : aggregationNode.getOutputSymbols()) {
+                outputTypes.put(symbol.getName(), types.get(symbol.getName()));
+            }
+            double outputRowWidth = estimateRowWidth(outputTypes, TableStatistics.empty());
+            OffloadCost cost = HiveOffloadCostModel.estimate(connectorSession, rowCount, inputRowWidth,
+                    Math.min(aggregationFactor, AGGREGATION_FACTOR_MAX) * rowCount, outputRowWidth, HivePushdownUtil.getOmniDataClusterLoad());
+            String reason = format("aggregation factor %.2f%%, row width %.0fB, %s", aggregationFactor * 100, inputRowWidth, cost);
+            if (!cost.isOffloadBeneficial()) {
+                log.info("No need to offload: table %s, %s.", tableHandle.getTableName(), reason);
+                return Optional.empty();
+            }
+            return Optional.of(reason);
+        }
+
+        private double getAggregationFactor(AggregationNode aggregationNode, TableScanNode tableScanNode, TableStatistics statistics)
+        {
             if (aggregationNode.getGroupingKeys().isEmpty()) {
                 return AGGREGATION_FACTOR_MIN;
             }
@@ -401,4 +606,39 @@ public class HivePartialAggregationPushdown
             return rowsCount / statistics.getRowCount().getValue();
         }
     }
+
+    private static class AggregationSource
+    {
+        private final PlanNode source;
+        private final TableScanNode tableScanNode;
+        private final Map<Symbol, AggregationNode.Aggregation> aggregations;
+
+        AggregationSource(PlanNode source, TableScanNode tableScanNode, Map<Symbol, AggregationNode.Aggregation> aggregations)
+        {
+            this.source = requireNonNull(source, "source is null");
+            this.tableScanNode = requireNonNull(tableScanNode, "tableScanNode is null");
+            this.aggregations = requireNonNull(aggregations, "aggregations is null");
+        }
+
+        /**
+         * The table scan, or a project on top of it, that replaces the source of the partial aggregation.
+         */
+        PlanNode getSource()
+        {
+            return source;
+        }
+
+        /**
+         * The table scan of the original plan, used to check whether the table can be offloaded.
+         */
+        TableScanNode getTableScanNode()
+        {
+            return tableScanNode;
+        }
+
+        Map<Symbol, AggregationNode.Aggregation> getAggregations()
+        {
+            return aggregations;
+        }
+    }
 }
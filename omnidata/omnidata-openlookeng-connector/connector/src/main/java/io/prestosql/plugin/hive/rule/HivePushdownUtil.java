@@ -18,11 +18,13 @@ import com.google.common.collect.ImmutableSet;
 import com.huawei.boostkit.omnidata.expression.OmniExpressionChecker;
 import io.prestosql.expressions.DefaultRowExpressionTraversalVisitor;
 import io.prestosql.plugin.hive.HiveColumnHandle;
+import io.prestosql.plugin.hive.HiveSessionProperties;
 import io.prestosql.plugin.hive.HiveStorageFormat;
 import io.prestosql.plugin.hive.HiveTableHandle;
 import io.prestosql.plugin.hive.omnidata.OmniDataNodeManager;
 import io.prestosql.plugin.hive.omnidata.OmniDataNodeStatus;
 import io.prestosql.spi.connector.ColumnHandle;
+import io.prestosql.spi.connector.ConnectorSession;
 import io.prestosql.spi.connector.ConnectorTableHandle;
 import io.prestosql.spi.connector.ConnectorTableMetadata;
 import io.prestosql.spi.plan.Symbol;
@@ -109,25 +111,49 @@ public class HivePushdownUtil
 
     /**
      * Check that all omniDatas nodes are in the normal state.
+     * With partial offload the splits of busy nodes are read locally, so only the load of the whole cluster matters.
      *
      * @return true/false
      */
-    protected static boolean isOmniDataNodesNormal()
+    protected static boolean isOmniDataNodesNormal(ConnectorSession session)
     {
         if (!omniDataNodeManager.isPresent()) {
             return false;
         }
+        if (HiveSessionProperties.isOmniDataPartialOffloadEnabled(session)) {
+            return getOmniDataClusterLoad() <= OMNIDATA_BUSY_PERCENT;
+        }
         Map<String, OmniDataNodeStatus> nodeStatusMap = omniDataNodeManager.get().getAllNodes();
         // TODO: check online node number
         for (Map.Entry<String, OmniDataNodeStatus> entry : nodeStatusMap.entrySet()) {
             OmniDataNodeStatus omniDataNode = entry.getValue();
-            if (omniDataNode.getRunningTaskNumber() > omniDataNode.getMaxTaskNumber() * OMNIDATA_BUSY_PERCENT) {
+            // use the moving average so that a short burst of tasks does not turn off the offload
+            if (omniDataNode.getAverageRunningTaskNumber() > omniDataNode.getMaxTaskNumber() * OMNIDATA_BUSY_PERCENT) {
                 return false;
             }
         }
         return true;
     }
 
+    /**
+     * The ratio of running tasks to task slots over all the omniData nodes.
+     *
+     * @return load between 0 and 1
+     */
+    protected static double getOmniDataClusterLoad()
+    {
+        if (!omniDataNodeManager.isPresent()) {
+            return 0;
+        }
+        double runningTaskNumber = 0;
+        double maxTaskNumber = 0;
+        for (OmniDataNodeStatus omniDataNode : omniDataNodeManager.get().getAllNodes().values()) {
+            runningTaskNumber += omniDataNode.getAverageRunningTaskNumber();
+            maxTaskNumber += omniDataNode.getMaxTaskNumber();
+        }
+        return maxTaskNumber > 0 ? Math.min(runningTaskNumber / maxTaskNumber, 1.0) : 0;
+    }
+
     protected static boolean checkStorageFormat(ConnectorTableMetadata metadata)
     {
         HiveStorageFormat hiveStorageFormat = getHiveStorageFormat(metadata.getProperties());
@@ -14,16 +14,31 @@
  */
 package io.prestosql.plugin.hive.util;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.huawei.boostkit.omnidata.decode.impl.OpenLooKengDeserializer;
 import com.huawei.boostkit.omnidata.model.AggregationInfo;
 import com.huawei.boostkit.omnidata.model.Column;
 import com.huawei.boostkit.omnidata.model.Predicate;
+import com.huawei.boostkit.omnidata.model.TaskSource;
+import com.huawei.boostkit.omnidata.model.datasource.DataSource;
+import com.huawei.boostkit.omnidata.reader.DataReader;
+import com.huawei.boostkit.omnidata.reader.DataReaderFactory;
+import io.airlift.log.Logger;
 import io.prestosql.plugin.hive.HiveColumnHandle;
 import io.prestosql.plugin.hive.HiveOffloadExpression;
 import io.prestosql.plugin.hive.HivePartitionKey;
 import io.prestosql.plugin.hive.HiveUtil;
+import io.prestosql.plugin.hive.omnidata.OmniDataHedgedReader;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.connector.ColumnHandle;
 import io.prestosql.spi.connector.ConnectorPageSource;
+import io.prestosql.spi.connector.ConnectorSession;
+import io.prestosql.spi.dynamicfilter.BloomFilterDynamicFilter;
+import io.prestosql.spi.dynamicfilter.CombinedDynamicFilter;
+import io.prestosql.spi.dynamicfilter.DynamicFilter;
+import io.prestosql.spi.dynamicfilter.DynamicFilterSupplier;
 import io.prestosql.spi.plan.Symbol;
 import io.prestosql.spi.predicate.Domain;
 import io.prestosql.spi.predicate.TupleDomain;
@@ -36,6 +51,7 @@ import io.prestosql.spi.type.Type;
 import io.prestosql.spi.type.TypeManager;
 import org.apache.hadoop.fs.Path;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -44,20 +60,32 @@ import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.Maps.uniqueIndex;
+import static com.huawei.boostkit.omnidata.transfer.OmniDataProperty.OMNIDATA_CLIENT_TARGET_LIST;
 import static io.prestosql.expressions.LogicalRowExpressions.TRUE_CONSTANT;
 import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.DUMMY_OFFLOADED;
 import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.PARTITION_KEY;
+import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.REGULAR;
 import static io.prestosql.plugin.hive.HiveColumnHandle.DUMMY_OFFLOADED_COLUMN_INDEX;
+import static io.prestosql.plugin.hive.HiveSessionProperties.getOmniDataHedgedReadPercentile;
+import static io.prestosql.plugin.hive.HiveSessionProperties.getOmniDataPageSize;
+import static io.prestosql.plugin.hive.HiveSessionProperties.isOmniDataHedgedReadEnabled;
+import static java.lang.Math.toIntExact;
 import static java.util.Objects.requireNonNull;
 import static java.util.stream.Collectors.toMap;
 
 public class PageSourceUtil
 {
+    private static final Logger log = Logger.get(PageSourceUtil.class);
+
     private PageSourceUtil() {}
 
     public static List<RowExpression> buildColumnsProjections(HiveOffloadExpression expression,
@@ -177,7 +205,8 @@ public class PageSourceUtil
                                                  TupleDomain<HiveColumnHandle> effectivePredicate,
                                                  List<HivePartitionKey> partitionKeys,
                                                  OptionalInt bucketNumber,
-                                                 Path path)
+                                                 Path path,
+                                                 Optional<DynamicFilterSupplier> dynamicFilterSupplier)
     {
         // Translate variable reference to input reference because PageFunctionCompiler can only support input reference.
         List<HiveColumnHandle> datasourceColumns = combineDatasourceColumns(columns, expression);
@@ -208,11 +237,101 @@ public class PageSourceUtil
                 filter,
                 filterProjections,
                 domains,
-                ImmutableMap.of(),
+                buildBloomFilters(datasourceColumns, dynamicFilterSupplier.map(DynamicFilterSupplier::getDynamicFilters).orElse(ImmutableList.of())),
                 aggregationInfo,
                 expression.getLimit());
     }
 
+    /**
+     * Serialize the bloom filter dynamic filters of the scanned regular columns, so that OmniData can drop
+     * the rows that can not join before sending them back.
+     * Dynamic filters in different groups are OR-ed, so only a single group can be pushed down as conjuncts.
+     */
+    public static Map<String, byte[]> buildBloomFilters(List<HiveColumnHandle> datasourceColumns, List<Map<ColumnHandle, DynamicFilter>> dynamicFilters)
+    {
+        if (dynamicFilters.size() != 1) {
+            return ImmutableMap.of();
+        }
+
+        Set<String> regularColumns = datasourceColumns.stream()
+                .filter(column -> column.getColumnType() == REGULAR)
+                .map(HiveColumnHandle::getName)
+                .collect(Collectors.toSet());
+        Map<String, byte[]> bloomFilters = new HashMap<>();
+        for (DynamicFilter dynamicFilter : dynamicFilters.get(0).values()) {
+            for (DynamicFilter filter : flattenDynamicFilter(dynamicFilter)) {
+                if (!(filter instanceof BloomFilterDynamicFilter) || !(filter.getColumnHandle() instanceof HiveColumnHandle)) {
+                    continue;
+                }
+                String name = ((HiveColumnHandle) filter.getColumnHandle()).getName();
+                if (!regularColumns.contains(name) || bloomFilters.containsKey(name)) {
+                    continue;
+                }
+                try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
+                    ((BloomFilterDynamicFilter) filter).getBloomFilterDeserialized().writeTo(out);
+                    bloomFilters.put(name, out.toByteArray());
+                }
+                catch (IOException e) {
+                    // The filter is still applied by HivePageSource, only the pushdown benefit is lost
+                    log.warn("Serialize bloom filter of column %s fail: %s", name, e.getMessage());
+                }
+            }
+        }
+        return ImmutableMap.copyOf(bloomFilters);
+    }
+
+    private static List<DynamicFilter> flattenDynamicFilter(DynamicFilter dynamicFilter)
+    {
+        if (dynamicFilter instanceof CombinedDynamicFilter) {
+            ImmutableList.Builder<DynamicFilter> builder = ImmutableList.builder();
+            ((CombinedDynamicFilter) dynamicFilter).getFilters().forEach(filter -> builder.addAll(flattenDynamicFilter(filter)));
+            return builder.build();
+        }
+        return ImmutableList.of(dynamicFilter);
+    }
+
+    /**
+     * Create the reader of an offloaded split. With hedged reads, a slow OmniData node, or a node that fails before
+     * returning a page, is replaced by the next node of the target list.
+     */
+    public static DataReader<Page> createOmniDataReader(
+            ConnectorSession session,
+            String omniDataServerTarget,
+            DataSource dataSource,
+            Predicate predicate,
+            Executor hedgeExecutor)
+    {
+        return createOmniDataReader(session, omniDataServerTarget, dataSource, predicate, hedgeExecutor, PageSourceUtil::createOmniDataReader);
+    }
+
+    @VisibleForTesting
+    public static DataReader<Page> createOmniDataReader(
+            ConnectorSession session,
+            String omniDataServerTarget,
+            DataSource dataSource,
+            Predicate predicate,
+            Executor hedgeExecutor,
+            BiFunction<String, TaskSource, DataReader<Page>> readerFactory)
+    {
+        TaskSource taskSource = new TaskSource(dataSource, predicate, toIntExact(getOmniDataPageSize(session).toBytes()));
+        Function<String, DataReader<Page>> targetReaderFactory = target -> readerFactory.apply(target, taskSource);
+        if (!isOmniDataHedgedReadEnabled(session)) {
+            return targetReaderFactory.apply(omniDataServerTarget);
+        }
+        return new OmniDataHedgedReader(
+                omniDataServerTarget,
+                targetReaderFactory,
+                getOmniDataHedgedReadPercentile(session),
+                hedgeExecutor);
+    }
+
+    private static DataReader<Page> createOmniDataReader(String omniDataServerTarget, TaskSource taskSource)
+    {
+        Properties transProperties = new Properties();
+        transProperties.put(OMNIDATA_CLIENT_TARGET_LIST, omniDataServerTarget);
+        return DataReaderFactory.create(transProperties, taskSource, new OpenLooKengDeserializer());
+    }
+
     public static void closeWithSuppression(ConnectorPageSource pageSource, Throwable throwable)
     {
         requireNonNull(throwable, "throwable is null");
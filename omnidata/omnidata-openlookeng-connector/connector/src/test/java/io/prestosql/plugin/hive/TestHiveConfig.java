@@ -21,6 +21,7 @@ import io.airlift.units.DataSize;
 import io.airlift.units.DataSize.Unit;
 import io.airlift.units.Duration;
 import io.prestosql.orc.OrcWriteValidation.OrcWriteValidationMode;
+import io.prestosql.plugin.hive.omnidata.OmniDataNodeSelectionPolicy;
 import io.prestosql.plugin.hive.s3.S3FileSystemType;
 import org.testng.annotations.Test;
 
@@ -158,6 +159,17 @@ public class TestHiveConfig
                 .setFilterOffloadFactor(MAX_OFFLOAD_FACTOR)
                 .setMinOffloadRowNumber(MIN_OFFLOAD_ROW_NUM)
                 .setOmniDataEnabled(true)
+                .setOmniDataPrefetchPageCount(4)
+                .setOmniDataPrefetchThreads(100)
+                .setOmniDataNodeSelectionPolicy(OmniDataNodeSelectionPolicy.POWER_OF_TWO_CHOICES)
+                .setOmniDataCostBasedOffloadEnabled(false)
+                .setOmniDataNetworkBandwidth(new DataSize(128, Unit.MEGABYTE))
+                .setOmniDataScanThroughput(new DataSize(512, Unit.MEGABYTE))
+                .setOmniDataPartialOffloadEnabled(false)
+                .setOmniDataHedgedReadEnabled(false)
+                .setOmniDataHedgedReadPercentile(0.95)
+                .setOmniDataHedgedReadThreads(100)
+                .setOmniDataPageSize(new DataSize(1, Unit.MEGABYTE))
                 .setMetastoreWriteBatchSize(8));
     }
 
@@ -294,6 +306,17 @@ public class TestHiveConfig
                 .put("hive.filter-offload-factor", "0.3")
                 .put("hive.min-offload-row-number", "100")
                 .put("hive.omnidata-enabled", "false")
+                .put("hive.omnidata-prefetch-page-count", "8")
+                .put("hive.omnidata-prefetch-threads", "16")
+                .put("hive.omnidata-node-selection-policy", "LEAST_LOADED")
+                .put("hive.omnidata-cost-based-offload-enabled", "true")
+                .put("hive.omnidata-network-bandwidth", "1GB")
+                .put("hive.omnidata-scan-throughput", "2GB")
+                .put("hive.omnidata-partial-offload-enabled", "true")
+                .put("hive.omnidata-hedged-read-enabled", "true")
+                .put("hive.omnidata-hedged-read-percentile", "0.99")
+                .put("hive.omnidata-hedged-read-threads", "16")
+                .put("hive.omnidata-page-size", "4MB")
                 .build();
 
         HiveConfig expected = new HiveConfig()
@@ -416,7 +439,18 @@ public class TestHiveConfig
                 .setOmniDataEnabled(false)
                 .setFilterOffloadFactor(0.3)
                 .setAggregatorOffloadFactor(0.2)
-                .setMinOffloadRowNumber(100);
+                .setMinOffloadRowNumber(100)
+                .setOmniDataPrefetchPageCount(8)
+                .setOmniDataPrefetchThreads(16)
+                .setOmniDataNodeSelectionPolicy(OmniDataNodeSelectionPolicy.LEAST_LOADED)
+                .setOmniDataCostBasedOffloadEnabled(true)
+                .setOmniDataNetworkBandwidth(new DataSize(1, Unit.GIGABYTE))
+                .setOmniDataScanThroughput(new DataSize(2, Unit.GIGABYTE))
+                .setOmniDataPartialOffloadEnabled(true)
+                .setOmniDataHedgedReadEnabled(true)
+                .setOmniDataHedgedReadPercentile(0.99)
+                .setOmniDataHedgedReadThreads(16)
+                .setOmniDataPageSize(new DataSize(4, Unit.MEGABYTE));
 
         ConfigAssertions.assertFullMapping(properties, expected);
     }
@@ -24,6 +24,7 @@ import io.airlift.log.Logger;
 import io.airlift.slice.Slices;
 import io.prestosql.orc.OrcCacheStore;
 import io.prestosql.orc.OrcWriterOptions;
+import io.prestosql.plugin.hive.omnidata.OmniDataReadExecutors;
 import io.prestosql.plugin.hive.orc.OrcPageSourceFactory;
 import io.prestosql.plugin.hive.parquet.ParquetPageSourceFactory;
 import io.prestosql.plugin.hive.rcfile.RcFilePageSourceFactory;
@@ -610,7 +611,8 @@ public class TestHiveFileFormats
                 ImmutableMap.of(),
                 ImmutableList.of(),
                 Optional.empty(),
-                new HiveOffloadExpression());
+                new HiveOffloadExpression(),
+                new OmniDataReadExecutors(new HiveConfig()));
 
         RecordCursor cursor = ((RecordPageSource) pageSource.get()).getCursor();
 
@@ -666,7 +668,8 @@ public class TestHiveFileFormats
                 ImmutableMap.of(),
                 ImmutableList.of(),
                 Optional.empty(),
-                new HiveOffloadExpression());
+                new HiveOffloadExpression(),
+                new OmniDataReadExecutors(new HiveConfig()));
 
         assertTrue(pageSource.isPresent());
 
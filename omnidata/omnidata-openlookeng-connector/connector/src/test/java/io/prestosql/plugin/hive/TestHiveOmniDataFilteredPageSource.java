@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive;
+
+import com.google.common.collect.ImmutableList;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.BlockBuilder;
+import io.prestosql.spi.block.LongArrayBlockBuilder;
+import io.prestosql.spi.connector.ConnectorPageSource;
+import io.prestosql.spi.connector.FixedPageSource;
+import org.testng.annotations.Test;
+
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.BooleanType.BOOLEAN;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class TestHiveOmniDataFilteredPageSource
+{
+    @Test
+    public void testFilteredColumnInserted()
+    {
+        ConnectorPageSource pageSource = new HiveOmniDataFilteredPageSource(new FixedPageSource(ImmutableList.of(page(10, 2))), 1, true);
+
+        Page page = pageSource.getNextPage();
+        assertEquals(page.getChannelCount(), 3);
+        assertEquals(page.getPositionCount(), 10);
+        // the columns read from the split keep their order around the inserted column
+        assertEquals(BIGINT.getLong(page.getBlock(0), 3), 3);
+        assertEquals(BIGINT.getLong(page.getBlock(2), 3), 103);
+        for (int position = 0; position < page.getPositionCount(); position++) {
+            assertTrue(BOOLEAN.getBoolean(page.getBlock(1), position));
+        }
+        assertNull(pageSource.getNextPage());
+        assertTrue(pageSource.isFinished());
+    }
+
+    @Test
+    public void testSplitReadLocally()
+    {
+        ConnectorPageSource pageSource = new HiveOmniDataFilteredPageSource(new FixedPageSource(ImmutableList.of(page(10, 1))), 1, false);
+
+        Page page = pageSource.getNextPage();
+        assertEquals(page.getChannelCount(), 2);
+        assertEquals(BIGINT.getLong(page.getBlock(0), 3), 3);
+        assertFalse(BOOLEAN.getBoolean(page.getBlock(1), 3));
+    }
+
+    private static Page page(int positionCount, int channelCount)
+    {
+        Block[] blocks = new Block[channelCount];
+        for (int channel = 0; channel < channelCount; channel++) {
+            BlockBuilder builder = new LongArrayBlockBuilder(null, positionCount);
+            for (int i = 0; i < positionCount; i++) {
+                builder.writeLong(channel * 100 + i);
+            }
+            blocks[channel] = builder.build();
+        }
+        return new Page(positionCount, blocks);
+    }
+}
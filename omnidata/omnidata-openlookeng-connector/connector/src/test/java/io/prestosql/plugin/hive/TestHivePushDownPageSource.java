@@ -0,0 +1,186 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive;
+
+import com.huawei.boostkit.omnidata.reader.DataReader;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.PrestoException;
+import io.prestosql.spi.block.BlockBuilder;
+import io.prestosql.spi.block.LongArrayBlockBuilder;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.prestosql.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestHivePushDownPageSource
+{
+    @Test
+    public void testPrefetchPages()
+    {
+        TestingDataReader dataReader = new TestingDataReader(5, false);
+        HivePushDownPageSource pageSource = new HivePushDownPageSource(dataReader, newSimpleAggregatedMemoryContext(), 2, directExecutor());
+
+        assertTrue(pageSource.isBlocked().isDone());
+        // the buffer is bounded by the prefetch page count
+        assertEquals(dataReader.getReadPageCount(), 2);
+        assertTrue(pageSource.getSystemMemoryUsage() > 0);
+
+        int positionCount = 0;
+        while (!pageSource.isFinished()) {
+            assertTrue(pageSource.isBlocked().isDone());
+            Page page = pageSource.getNextPage();
+            if (page != null) {
+                positionCount += page.getPositionCount();
+            }
+        }
+        assertEquals(positionCount, 5 * TestingDataReader.POSITION_COUNT);
+        assertEquals(pageSource.getSystemMemoryUsage(), 0);
+        assertTrue(dataReader.isClosed());
+    }
+
+    @Test
+    public void testReaderFailure()
+    {
+        TestingDataReader dataReader = new TestingDataReader(5, true);
+        HivePushDownPageSource pageSource = new HivePushDownPageSource(dataReader, newSimpleAggregatedMemoryContext(), 2, directExecutor());
+
+        assertTrue(pageSource.isBlocked().isDone());
+        try {
+            pageSource.getNextPage();
+            fail("expected exception");
+        }
+        catch (PrestoException e) {
+            assertEquals(e.getErrorCode(), HiveErrorCode.HIVE_OPERATOR_OFFLOAD_FAIL.toErrorCode());
+        }
+        pageSource.close();
+        assertTrue(dataReader.isClosed());
+    }
+
+    @Test
+    public void testExecutorShutdown()
+    {
+        TestingDataReader dataReader = new TestingDataReader(5, false);
+        HivePushDownPageSource pageSource = new HivePushDownPageSource(dataReader, newSimpleAggregatedMemoryContext(), 2, command -> {
+            throw new RejectedExecutionException();
+        });
+
+        assertTrue(pageSource.isBlocked().isDone());
+        try {
+            pageSource.getNextPage();
+            fail("expected exception");
+        }
+        catch (PrestoException e) {
+            assertEquals(e.getErrorCode(), HiveErrorCode.HIVE_OPERATOR_OFFLOAD_FAIL.toErrorCode());
+        }
+        pageSource.close();
+        assertTrue(dataReader.isClosed());
+    }
+
+    @Test
+    public void testCloseBeforeFinished()
+    {
+        TestingDataReader dataReader = new TestingDataReader(5, false);
+        HivePushDownPageSource pageSource = new HivePushDownPageSource(dataReader, newSimpleAggregatedMemoryContext(), 2, directExecutor());
+
+        assertTrue(pageSource.isBlocked().isDone());
+        pageSource.close();
+        assertTrue(pageSource.isFinished());
+        assertFalse(dataReader.isFinished());
+        assertNull(pageSource.getNextPage());
+        assertEquals(pageSource.getSystemMemoryUsage(), 0);
+        assertTrue(dataReader.isClosed());
+    }
+
+    private static class TestingDataReader
+            implements DataReader<Page>
+    {
+        private static final int POSITION_COUNT = 16;
+
+        private final int pageCount;
+        private final boolean fail;
+        private int readPageCount;
+        private boolean closed;
+
+        TestingDataReader(int pageCount, boolean fail)
+        {
+            this.pageCount = pageCount;
+            this.fail = fail;
+        }
+
+        @Override
+        public Page getNextPage()
+                throws Exception
+        {
+            return getNextPageBlocking();
+        }
+
+        @Override
+        public Page getNextPageBlocking()
+                throws Exception
+        {
+            if (fail) {
+                throw new IOException("connection reset");
+            }
+            readPageCount++;
+            BlockBuilder builder = new LongArrayBlockBuilder(null, POSITION_COUNT);
+            for (int i = 0; i < POSITION_COUNT; i++) {
+                builder.writeLong(i);
+            }
+            return new Page(builder.build());
+        }
+
+        @Override
+        public boolean isFinished()
+        {
+            return readPageCount >= pageCount;
+        }
+
+        @Override
+        public int getReadPositionCount()
+        {
+            return readPageCount * POSITION_COUNT;
+        }
+
+        @Override
+        public int getReadSizeInBytes()
+        {
+            return 0;
+        }
+
+        @Override
+        public void close()
+        {
+            closed = true;
+        }
+
+        int getReadPageCount()
+        {
+            return readPageCount;
+        }
+
+        boolean isClosed()
+        {
+            return closed;
+        }
+    }
+}
@@ -31,6 +31,7 @@ import io.prestosql.operator.TableScanOperator.TableScanOperatorFactory;
 import io.prestosql.operator.project.CursorProcessor;
 import io.prestosql.operator.project.PageProcessor;
 import io.prestosql.orc.OrcCacheStore;
+import io.prestosql.plugin.hive.omnidata.OmniDataReadExecutors;
 import io.prestosql.plugin.hive.orc.OrcConcatPageSource;
 import io.prestosql.plugin.hive.orc.OrcPageSourceFactory;
 import io.prestosql.spi.Page;
@@ -520,7 +521,8 @@ public class TestOrcPageSourceMemoryTracking
                     ImmutableMap.of(),
                     ImmutableList.of(),
                     Optional.empty(),
-                    new HiveOffloadExpression())
+                    new HiveOffloadExpression(),
+                    new OmniDataReadExecutors(new HiveConfig()))
                     .get();
         }
 
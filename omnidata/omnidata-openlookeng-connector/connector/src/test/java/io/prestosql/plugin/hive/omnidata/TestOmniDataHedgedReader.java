@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive.omnidata;
+
+import com.huawei.boostkit.omnidata.reader.DataReader;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.BlockBuilder;
+import io.prestosql.spi.block.LongArrayBlockBuilder;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+public class TestOmniDataHedgedReader
+{
+    private static final int POSITION_COUNT = 16;
+
+    private final ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("test-hedged-read-%s"));
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown()
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testLatencyPercentile()
+    {
+        OmniDataLatencyTracker tracker = new OmniDataLatencyTracker(4, 2, 100);
+        tracker.add(10);
+        assertEquals(tracker.getPercentile(0.5), 100);
+        tracker.add(20);
+        tracker.add(30);
+        tracker.add(40);
+        assertEquals(tracker.getPercentile(0.5), 20);
+        assertEquals(tracker.getPercentile(1.0), 40);
+        // the oldest latency is replaced once the tracker is full
+        tracker.add(50);
+        assertEquals(tracker.getPercentile(0.5), 30);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testHedgeSlowNode()
+            throws Exception
+    {
+        TestingDataReader slowReader = new TestingDataReader(3, -1, true);
+        TestingDataReader fastReader = new TestingDataReader(3, -1, false);
+        OmniDataHedgedReader reader = createReader("slow,fast", target -> target.startsWith("slow") ? slowReader : fastReader, MILLISECONDS.toNanos(10));
+
+        assertEquals(readAll(reader), 3 * POSITION_COUNT);
+        // the read of the slow node is cancelled, and the reader is only closed once the read has stopped
+        slowReader.awaitClosed();
+        assertFalse(slowReader.isClosedWhileReading());
+        assertEquals(reader.getReadPositionCount(), 3 * POSITION_COUNT);
+        reader.close();
+        assertTrue(fastReader.isClosed());
+    }
+
+    @Test(timeOut = 10_000)
+    public void testFailureAfterFirstPage()
+            throws Exception
+    {
+        TestingDataReader failedReader = new TestingDataReader(3, 1, false);
+        TestingDataReader replicaReader = new TestingDataReader(3, -1, false);
+        OmniDataHedgedReader reader = createReader("first,second", target -> target.startsWith("first") ? failedReader : replicaReader, SECONDS.toNanos(10));
+
+        Page page = reader.getNextPageBlocking();
+        assertEquals(page.getPositionCount(), POSITION_COUNT);
+        try {
+            reader.getNextPageBlocking();
+            fail("expected exception");
+        }
+        catch (IOException e) {
+            assertEquals(e.getMessage(), "connection reset");
+        }
+        // the rows of the other replica may come in another order, so the split is not resumed there
+        assertEquals(replicaReader.getReadPositionCount(), 0);
+    }
+
+    @Test(timeOut = 10_000)
+    public void testFailureBeforeFirstPage()
+            throws Exception
+    {
+        TestingDataReader failedReader = new TestingDataReader(3, 0, false);
+        TestingDataReader replicaReader = new TestingDataReader(3, -1, false);
+        OmniDataHedgedReader reader = createReader("first,second", target -> target.startsWith("first") ? failedReader : replicaReader, SECONDS.toNanos(10));
+
+        assertEquals(readAll(reader), 3 * POSITION_COUNT);
+        assertTrue(failedReader.isClosed());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidPercentile()
+    {
+        new OmniDataHedgedReader("first,second", target -> new TestingDataReader(1, -1, false), 95, executor);
+    }
+
+    private OmniDataHedgedReader createReader(String targets, Function<String, DataReader<Page>> readerFactory, long hedgeDelayNanos)
+    {
+        return new OmniDataHedgedReader(targets, readerFactory, 0.95, new OmniDataLatencyTracker(16, 16, hedgeDelayNanos), executor);
+    }
+
+    private static int readAll(DataReader<Page> reader)
+            throws Exception
+    {
+        int positionCount = 0;
+        while (!reader.isFinished()) {
+            Page page = reader.getNextPageBlocking();
+            if (page == null) {
+                continue;
+            }
+            Block block = page.getBlock(0);
+            for (int position = 0; position < page.getPositionCount(); position++) {
+                assertEquals(block.getLong(position, 0), positionCount + position);
+            }
+            positionCount += page.getPositionCount();
+        }
+        assertNull(reader.getNextPageBlocking());
+        return positionCount;
+    }
+
+    private static class TestingDataReader
+            implements DataReader<Page>
+    {
+        private final int pageCount;
+        private final int failedPage;
+        private final CountDownLatch closed = new CountDownLatch(1);
+        private final boolean hung;
+        private volatile int readPageCount;
+        private volatile boolean reading;
+        private volatile boolean closedWhileReading;
+
+        TestingDataReader(int pageCount, int failedPage, boolean hung)
+        {
+            this.pageCount = pageCount;
+            this.failedPage = failedPage;
+            this.hung = hung;
+        }
+
+        @Override
+        public Page getNextPage()
+                throws Exception
+        {
+            return getNextPageBlocking();
+        }
+
+        @Override
+        public Page getNextPageBlocking()
+                throws Exception
+        {
+            reading = true;
+            try {
+                if (hung) {
+                    // only returns when the read is interrupted
+                    new CountDownLatch(1).await();
+                }
+                if (readPageCount == failedPage) {
+                    throw new IOException("connection reset");
+                }
+                BlockBuilder builder = new LongArrayBlockBuilder(null, POSITION_COUNT);
+                for (int i = 0; i < POSITION_COUNT; i++) {
+                    builder.writeLong((long) readPageCount * POSITION_COUNT + i);
+                }
+                readPageCount++;
+                return new Page(builder.build());
+            }
+            finally {
+                reading = false;
+            }
+        }
+
+        @Override
+        public boolean isFinished()
+        {
+            return readPageCount >= pageCount;
+        }
+
+        @Override
+        public int getReadPositionCount()
+        {
+            return readPageCount * POSITION_COUNT;
+        }
+
+        @Override
+        public int getReadSizeInBytes()
+        {
+            return 0;
+        }
+
+        @Override
+        public void close()
+        {
+            if (reading) {
+                closedWhileReading = true;
+            }
+            closed.countDown();
+        }
+
+        boolean isClosed()
+        {
+            return closed.getCount() == 0;
+        }
+
+        void awaitClosed()
+                throws InterruptedException
+        {
+            closed.await();
+        }
+
+        boolean isClosedWhileReading()
+        {
+            return closedWhileReading;
+        }
+    }
+}
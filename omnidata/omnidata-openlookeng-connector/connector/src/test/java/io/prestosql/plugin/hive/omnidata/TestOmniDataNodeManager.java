@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive.omnidata;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.airlift.discovery.client.ServiceDescriptor;
+import org.testng.annotations.Test;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import static io.airlift.discovery.client.ServiceState.RUNNING;
+import static org.testng.Assert.assertEquals;
+
+public class TestOmniDataNodeManager
+{
+    @Test
+    public void testUpdateNodes()
+    {
+        OmniDataNodeManager nodeManager = new OmniDataNodeManager();
+        nodeManager.updateNodes(ImmutableList.of(omniDataService("192.0.2.1", "10.0.0.1", 2), omniDataService("192.0.2.2", "10.0.0.2", 4)));
+        Map<String, OmniDataNodeStatus> firstSnapshot = nodeManager.getAllNodes();
+        assertEquals(firstSnapshot.keySet(), ImmutableSet.of("10.0.0.1", "10.0.0.2"));
+        assertEquals(firstSnapshot.get("10.0.0.1").getHostAddress(), "192.0.2.1");
+        assertEquals(firstSnapshot.get("10.0.0.1").getAverageRunningTaskNumber(), 2.0);
+
+        nodeManager.updateNodes(ImmutableList.of(omniDataService("192.0.2.1", "10.0.0.1", 12)));
+        Map<String, OmniDataNodeStatus> secondSnapshot = nodeManager.getAllNodes();
+        assertEquals(secondSnapshot.keySet(), ImmutableSet.of("10.0.0.1"));
+        assertEquals(secondSnapshot.get("10.0.0.1").getRunningTaskNumber(), 12);
+        assertEquals(secondSnapshot.get("10.0.0.1").getAverageRunningTaskNumber(), 5.0, 1e-9);
+        // snapshots handed out before the refresh are left untouched
+        assertEquals(firstSnapshot.size(), 2);
+    }
+
+    @Test
+    public void testUpdateNodesResetsPendingSplits()
+    {
+        OmniDataNodeManager nodeManager = new OmniDataNodeManager();
+        nodeManager.updateNodes(ImmutableList.of(omniDataService("192.0.2.1", "10.0.0.1", 2)));
+        OmniDataNodeStatus node = nodeManager.getAllNodes().get("10.0.0.1");
+        nodeManager.recordSplitAssignment(node.getHostAddress());
+        assertEquals(nodeManager.getHeadroom(node), 7);
+
+        nodeManager.updateNodes(ImmutableList.of(omniDataService("192.0.2.1", "10.0.0.1", 3)));
+        assertEquals(nodeManager.getHeadroom(nodeManager.getAllNodes().get("10.0.0.1")), 7);
+    }
+
+    @Test
+    public void testRefreshNodesWhenNotModified()
+    {
+        OmniDataNodeManager nodeManager = new OmniDataNodeManager();
+        nodeManager.updateNodes(ImmutableList.of(omniDataService("192.0.2.1", "10.0.0.1", 2)));
+        nodeManager.refreshNodes(Optional.of(ImmutableList.of(omniDataService("192.0.2.1", "10.0.0.1", 12))));
+        assertEquals(nodeManager.getAllNodes().get("10.0.0.1").getAverageRunningTaskNumber(), 5.0, 1e-9);
+        OmniDataNodeStatus node = nodeManager.getAllNodes().get("10.0.0.1");
+        nodeManager.recordSplitAssignment(node.getHostAddress());
+        assertEquals(nodeManager.getHeadroom(node), -3);
+
+        // discovery answers not modified, the pending splits are reset and the average keeps converging all the same
+        nodeManager.refreshNodes(Optional.empty());
+        node = nodeManager.getAllNodes().get("10.0.0.1");
+        assertEquals(nodeManager.getHeadroom(node), -2);
+        assertEquals(node.getAverageRunningTaskNumber(), 7.1, 1e-9);
+    }
+
+    private static ServiceDescriptor omniDataService(String host, String hdfsAddress, int runningTaskNumber)
+    {
+        return new ServiceDescriptor(UUID.randomUUID(), UUID.randomUUID().toString(), "omnidata", "general", null, RUNNING, ImmutableMap.of(
+                "http", "http://" + host + ":9100",
+                "local.hdfs.server.address", hdfsAddress,
+                "runningTaskNumber", String.valueOf(runningTaskNumber),
+                "maxTaskNumber", "10"));
+    }
+}
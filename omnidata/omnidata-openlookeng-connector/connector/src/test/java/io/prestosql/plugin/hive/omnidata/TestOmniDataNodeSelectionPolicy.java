@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive.omnidata;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToIntFunction;
+
+import static io.prestosql.plugin.hive.omnidata.OmniDataNodeSelectionPolicy.HASH;
+import static io.prestosql.plugin.hive.omnidata.OmniDataNodeSelectionPolicy.LEAST_LOADED;
+import static io.prestosql.plugin.hive.omnidata.OmniDataNodeSelectionPolicy.POWER_OF_TWO_CHOICES;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class TestOmniDataNodeSelectionPolicy
+{
+    private static final OmniDataNodeStatus NODE_1 = new OmniDataNodeStatus("192.0.2.1:9100", 10, 10);
+    private static final OmniDataNodeStatus NODE_2 = new OmniDataNodeStatus("192.0.2.2:9100", 2, 10);
+    private static final OmniDataNodeStatus NODE_3 = new OmniDataNodeStatus("192.0.2.3:9100", 5, 10);
+    private static final List<OmniDataNodeStatus> NODES = ImmutableList.of(NODE_1, NODE_2, NODE_3);
+    private static final ToIntFunction<OmniDataNodeStatus> HEADROOM = node -> node.getMaxTaskNumber() - node.getRunningTaskNumber();
+
+    @Test
+    public void testHash()
+    {
+        assertEquals(HASH.select(NODES, HEADROOM, 2, 1), ImmutableList.of(NODE_2, NODE_3));
+        assertEquals(HASH.select(NODES, HEADROOM, 5, 2), ImmutableList.of(NODE_3, NODE_1, NODE_2));
+    }
+
+    @Test
+    public void testLeastLoaded()
+    {
+        for (long seed = 0; seed < 10; seed++) {
+            assertEquals(LEAST_LOADED.select(NODES, HEADROOM, 3, seed), ImmutableList.of(NODE_2, NODE_3, NODE_1));
+        }
+    }
+
+    @Test
+    public void testPowerOfTwoChoices()
+    {
+        for (long seed = 0; seed < 100; seed++) {
+            List<OmniDataNodeStatus> selected = POWER_OF_TWO_CHOICES.select(NODES, HEADROOM, 3, seed);
+            assertEquals(selected.size(), 3);
+            // the busiest node always loses the comparison
+            assertTrue(selected.get(0) != NODE_1);
+        }
+        assertEquals(POWER_OF_TWO_CHOICES.select(ImmutableList.of(NODE_1), HEADROOM, 3, 7), ImmutableList.of(NODE_1));
+    }
+
+    @Test
+    public void testPendingSplitsReduceHeadroom()
+    {
+        OmniDataNodeManager nodeManager = new OmniDataNodeManager();
+        Map<String, OmniDataNodeStatus> nodes = ImmutableMap.of("192.0.2.2", NODE_2, "192.0.2.3", NODE_3);
+        assertEquals(nodeManager.getHeadroom(NODE_2), 8);
+        for (int i = 0; i < 4; i++) {
+            nodeManager.recordSplitAssignment(NODE_2.getHostAddress());
+        }
+        assertEquals(nodeManager.getHeadroom(NODE_2), 4);
+        assertEquals(LEAST_LOADED.select(ImmutableList.copyOf(nodes.values()), nodeManager::getHeadroom, 1, 0), ImmutableList.of(NODE_3));
+    }
+}
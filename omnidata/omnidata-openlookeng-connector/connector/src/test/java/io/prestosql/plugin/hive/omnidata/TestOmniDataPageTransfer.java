@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive.omnidata;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.huawei.boostkit.omnidata.model.Predicate;
+import com.huawei.boostkit.omnidata.model.TaskSource;
+import com.huawei.boostkit.omnidata.model.datasource.hdfs.HdfsOrcDataSource;
+import com.huawei.boostkit.omnidata.reader.DataReader;
+import io.airlift.units.DataSize;
+import io.prestosql.plugin.hive.HiveConfig;
+import io.prestosql.plugin.hive.HiveSessionProperties;
+import io.prestosql.plugin.hive.OrcFileWriterConfig;
+import io.prestosql.plugin.hive.ParquetFileWriterConfig;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.PrestoException;
+import io.prestosql.spi.connector.ConnectorSession;
+import io.prestosql.testing.TestingConnectorSession;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.units.DataSize.Unit.GIGABYTE;
+import static io.airlift.units.DataSize.Unit.KILOBYTE;
+import static io.airlift.units.DataSize.Unit.MEGABYTE;
+import static io.prestosql.plugin.hive.HiveSessionProperties.getOmniDataPageSize;
+import static io.prestosql.plugin.hive.util.PageSourceUtil.createOmniDataReader;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertThrows;
+
+public class TestOmniDataPageTransfer
+{
+    private static final String TARGET = "192.0.2.1:9100";
+
+    @Test
+    public void testTaskPageSize()
+            throws Exception
+    {
+        List<TaskSource> tasks = new ArrayList<>();
+        DataReader<Page> reader = createOmniDataReader(
+                createSession(new DataSize(64, KILOBYTE)),
+                TARGET,
+                new HdfsOrcDataSource("/omnidata/test.orc", 0, 1024, false),
+                new Predicate(ImmutableList.of(), ImmutableList.of(), Optional.empty(), ImmutableList.of(),
+                        ImmutableMap.of(), ImmutableMap.of(), Optional.empty(), OptionalLong.empty()),
+                directExecutor(),
+                (target, taskSource) -> {
+                    tasks.add(taskSource);
+                    return new EmptyReader();
+                });
+        reader.close();
+
+        assertEquals(tasks.size(), 1);
+        assertEquals(tasks.get(0).getMaxPageSizeInBytes(), 64 * 1024);
+    }
+
+    @Test
+    public void testPageSizeBounds()
+    {
+        assertEquals(getOmniDataPageSize(createSession(new DataSize(64, KILOBYTE))), new DataSize(64, KILOBYTE));
+        assertEquals(getOmniDataPageSize(createSession(new DataSize(64, MEGABYTE))), new DataSize(64, MEGABYTE));
+        // the same bounds as hive.omnidata-page-size
+        assertThrows(PrestoException.class, () -> getOmniDataPageSize(createSession(new DataSize(1, KILOBYTE))));
+        assertThrows(PrestoException.class, () -> getOmniDataPageSize(createSession(new DataSize(4, GIGABYTE))));
+    }
+
+    private static ConnectorSession createSession(DataSize pageSize)
+    {
+        return new TestingConnectorSession(
+                new HiveSessionProperties(new HiveConfig(), new OrcFileWriterConfig(), new ParquetFileWriterConfig()).getSessionProperties(),
+                ImmutableMap.of("omnidata_page_size", pageSize.toString()));
+    }
+
+    private static class EmptyReader
+            implements DataReader<Page>
+    {
+        @Override
+        public Page getNextPage()
+        {
+            return null;
+        }
+
+        @Override
+        public Page getNextPageBlocking()
+        {
+            return null;
+        }
+
+        @Override
+        public boolean isFinished()
+        {
+            return true;
+        }
+
+        @Override
+        public int getReadPositionCount()
+        {
+            return 0;
+        }
+
+        @Override
+        public int getReadSizeInBytes()
+        {
+            return 0;
+        }
+
+        @Override
+        public void close()
+        {
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive.rule;
+
+import com.google.common.collect.ImmutableMap;
+import io.prestosql.plugin.hive.HiveColumnHandle;
+import io.prestosql.plugin.hive.HiveConfig;
+import io.prestosql.plugin.hive.HiveSessionProperties;
+import io.prestosql.plugin.hive.OrcFileWriterConfig;
+import io.prestosql.plugin.hive.ParquetFileWriterConfig;
+import io.prestosql.spi.connector.ConnectorSession;
+import io.prestosql.spi.statistics.ColumnStatistics;
+import io.prestosql.spi.statistics.Estimate;
+import io.prestosql.spi.statistics.TableStatistics;
+import io.prestosql.testing.TestingConnectorSession;
+import org.testng.annotations.Test;
+
+import java.util.Optional;
+
+import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.REGULAR;
+import static io.prestosql.plugin.hive.HiveType.HIVE_STRING;
+import static io.prestosql.plugin.hive.rule.HiveOffloadCostModel.estimate;
+import static io.prestosql.plugin.hive.rule.HiveOffloadCostModel.estimateRowWidth;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.VarcharType.VARCHAR;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestHiveOffloadCostModel
+{
+    private static final ConnectorSession SESSION = new TestingConnectorSession(
+            new HiveSessionProperties(new HiveConfig(), new OrcFileWriterConfig(), new ParquetFileWriterConfig()).getSessionProperties());
+    private static final double ROW_COUNT = 100_000_000;
+
+    @Test
+    public void testWideRowsOffloadWithPoorSelectivity()
+    {
+        assertTrue(estimate(SESSION, ROW_COUNT, 200, ROW_COUNT * 0.5, 200, 0).isOffloadBeneficial());
+        assertFalse(estimate(SESSION, ROW_COUNT, 200, ROW_COUNT * 0.95, 200, 0).isOffloadBeneficial());
+    }
+
+    @Test
+    public void testNarrowRowsStayLocal()
+    {
+        assertFalse(estimate(SESSION, ROW_COUNT, 1, ROW_COUNT * 0.1, 1, 0).isOffloadBeneficial());
+    }
+
+    @Test
+    public void testClusterLoad()
+    {
+        assertTrue(estimate(SESSION, ROW_COUNT, 8, ROW_COUNT * 0.1, 8, 0).isOffloadBeneficial());
+        assertFalse(estimate(SESSION, ROW_COUNT, 8, ROW_COUNT * 0.1, 8, 0.5).isOffloadBeneficial());
+    }
+
+    @Test
+    public void testEstimateRowWidth()
+    {
+        HiveColumnHandle comment = new HiveColumnHandle("comment", HIVE_STRING, VARCHAR.getTypeSignature(), 1, REGULAR, Optional.empty());
+        TableStatistics statistics = TableStatistics.builder()
+                .setRowCount(Estimate.of(100))
+                .setColumnStatistics(comment, ColumnStatistics.builder().setDataSize(Estimate.of(1000)).build())
+                .build();
+
+        assertEquals(estimateRowWidth(ImmutableMap.of("id", BIGINT, "comment", VARCHAR), statistics), 18.0);
+        // unknown sizes fall back to a default column width
+        assertEquals(estimateRowWidth(ImmutableMap.of("id", BIGINT, "comment", VARCHAR), TableStatistics.empty()), 40.0);
+    }
+}
@@ -19,10 +19,13 @@ import com.google.common.collect.ImmutableMap;
 import com.huawei.boostkit.omnidata.model.AggregationInfo;
 import io.prestosql.plugin.hive.HiveMetadata;
 import io.prestosql.plugin.hive.HiveMetadataFactory;
+import io.prestosql.plugin.hive.HiveOffloadExpression;
+import io.prestosql.plugin.hive.HiveTableHandle;
 import io.prestosql.spi.function.OperatorType;
 import io.prestosql.spi.function.StandardFunctionResolution;
 import io.prestosql.spi.plan.AggregationNode;
 import io.prestosql.spi.plan.Assignments;
+import io.prestosql.spi.plan.FilterNode;
 import io.prestosql.spi.plan.PlanNode;
 import io.prestosql.spi.plan.ProjectNode;
 import io.prestosql.spi.plan.Symbol;
@@ -30,6 +33,7 @@ import io.prestosql.spi.plan.TableScanNode;
 import io.prestosql.spi.relation.CallExpression;
 import io.prestosql.spi.relation.ConstantExpression;
 import io.prestosql.spi.relation.RowExpression;
+import io.prestosql.spi.relation.SpecialForm;
 import io.prestosql.spi.relation.VariableReferenceExpression;
 import io.prestosql.sql.relational.FunctionResolution;
 import org.mockito.Mockito;
@@ -38,7 +42,9 @@ import org.testng.annotations.Test;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
+import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.COLUMN_BOOLEAN;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.COLUMN_INT;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.COLUMN_TYPE_MAP;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.ID_ALLOCATOR;
@@ -47,16 +53,22 @@ import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.OFFLOAD_SESSION
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.SYMBOL_ALLOCATOR;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.buildAggregationNode;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.buildAssignments;
+import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.buildFilterNode;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.buildProjectNode;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.buildTableScanNode;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.createAggregation;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.createOperationExpression;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.matchAggregatorOffload;
+import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.matchFilterOffload;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.matchProjection;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.simulationHiveMetadata;
 import static io.prestosql.plugin.hive.rule.TestHivePushdownUtil.simulationHiveTransactionManager;
 import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.relation.SpecialForm.Form.IF;
+import static io.prestosql.spi.type.BooleanType.BOOLEAN;
 import static io.prestosql.spi.type.IntegerType.INTEGER;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
 public class TestHivePartialAggregationPushdown
         extends TestHivePushdown
@@ -125,4 +137,50 @@ public class TestHivePartialAggregationPushdown
         Assignments assignmentsExpected = buildAssignments(symbols, rowExpressions);
         matchProjection(output, assignmentsExpected.getMap());
     }
+
+    @Test
+    public void testFilterProjectPartialAggregationPushdown()
+    {
+        // select count(x + 5) from table where x < 1 group by x
+        TableScanNode tableScanNode = buildTableScanNode(COLUMN_INT);
+        RowExpression predicate = createOperationExpression(OperatorType.LESS_THAN,
+                new VariableReferenceExpression(COLUMN_INT.getName(), INTEGER), new ConstantExpression(1, INTEGER));
+        FilterNode filterNode = buildFilterNode(tableScanNode, predicate);
+
+        CallExpression callExpression = createOperationExpression(OperatorType.ADD,
+                new VariableReferenceExpression(COLUMN_INT.getName(), INTEGER), new ConstantExpression(5, INTEGER));
+        List<Symbol> symbols = ImmutableList.of(new Symbol(COLUMN_INT.getName()));
+        List<RowExpression> rowExpressions = ImmutableList.of(callExpression);
+        ProjectNode projectNode = buildProjectNode(filterNode, symbols, rowExpressions);
+
+        AggregationNode aggregationNode = buildCountAggregationNode(projectNode);
+
+        PlanNode output = AGGREGATION_OPTIMIZER.optimize(aggregationNode, OFFLOAD_SESSION, COLUMN_TYPE_MAP, SYMBOL_ALLOCATOR, ID_ALLOCATOR);
+        matchFilterOffload(output, predicate);
+        matchProjection(output, buildAssignments(symbols, rowExpressions).getMap());
+    }
+
+    @Test
+    public void testFilteredPartialAggregationPushdown()
+    {
+        // select count(x) filter (where y) from table group by x
+        TableScanNode tableScanNode = buildTableScanNode(COLUMN_INT, COLUMN_BOOLEAN);
+        VariableReferenceExpression expression = new VariableReferenceExpression(COLUMN_INT.getName(), INTEGER);
+        AggregationNode.Aggregation countAggregation = createAggregation("count", BIGINT, ImmutableList.of(expression));
+        AggregationNode.Aggregation aggregation = new AggregationNode.Aggregation(countAggregation.getFunctionCall(), countAggregation.getArguments(),
+                false, Optional.of(new Symbol(COLUMN_BOOLEAN.getName())), Optional.empty(), Optional.empty());
+        Map<Symbol, AggregationNode.Aggregation> aggregations = ImmutableMap.of(new Symbol("count"), aggregation);
+        AggregationNode.GroupingSetDescriptor groupingSets =
+                new AggregationNode.GroupingSetDescriptor(ImmutableList.of(new Symbol(COLUMN_INT.getName())), 1, Collections.emptySet());
+        AggregationNode aggregationNode = buildAggregationNode(tableScanNode, aggregations, groupingSets);
+
+        PlanNode output = AGGREGATION_OPTIMIZER.optimize(aggregationNode, OFFLOAD_SESSION, COLUMN_TYPE_MAP, SYMBOL_ALLOCATOR, ID_ALLOCATOR);
+        assertTrue(output instanceof TableScanNode);
+        HiveOffloadExpression offloadExpression = ((HiveTableHandle) ((TableScanNode) output).getTable().getConnectorHandle()).getOffloadExpression();
+        assertTrue(offloadExpression.getAggregations().isPresent());
+        RowExpression argument = offloadExpression.getAggregations().get().getAggregations().get("count").getCall().getArguments().get(0);
+        RowExpression filteredArgument = offloadExpression.getProjections().get(new Symbol(argument.toString()));
+        assertEquals(filteredArgument, new SpecialForm(IF, INTEGER, ImmutableList.of(
+                new VariableReferenceExpression(COLUMN_BOOLEAN.getName(), BOOLEAN), expression, new ConstantExpression(null, INTEGER))));
+    }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2018-2021. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.prestosql.plugin.hive.util;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.prestosql.plugin.hive.HiveColumnHandle;
+import io.prestosql.spi.connector.ColumnHandle;
+import io.prestosql.spi.dynamicfilter.BloomFilterDynamicFilter;
+import io.prestosql.spi.dynamicfilter.DynamicFilter;
+import io.prestosql.spi.util.BloomFilter;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.PARTITION_KEY;
+import static io.prestosql.plugin.hive.HiveColumnHandle.ColumnType.REGULAR;
+import static io.prestosql.plugin.hive.HiveType.HIVE_LONG;
+import static io.prestosql.plugin.hive.util.PageSourceUtil.buildBloomFilters;
+import static io.prestosql.spi.type.StandardTypes.BIGINT;
+import static io.prestosql.spi.type.TypeSignature.parseTypeSignature;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class TestPageSourceUtil
+{
+    private static final HiveColumnHandle ID_COLUMN = new HiveColumnHandle("id", HIVE_LONG, parseTypeSignature(BIGINT), 0, REGULAR, Optional.empty());
+    private static final HiveColumnHandle DAY_COLUMN = new HiveColumnHandle("pt_d", HIVE_LONG, parseTypeSignature(BIGINT), -1, PARTITION_KEY, Optional.empty());
+
+    @Test
+    public void testBuildBloomFilters()
+            throws IOException
+    {
+        BloomFilter idFilter = new BloomFilter(1024, 0.01);
+        idFilter.add(7L);
+        Map<ColumnHandle, DynamicFilter> dynamicFilter = ImmutableMap.of(
+                ID_COLUMN, new BloomFilterDynamicFilter("1", ID_COLUMN, idFilter, DynamicFilter.Type.GLOBAL),
+                DAY_COLUMN, new BloomFilterDynamicFilter("2", DAY_COLUMN, new BloomFilter(1024, 0.01), DynamicFilter.Type.GLOBAL));
+
+        Map<String, byte[]> bloomFilters = buildBloomFilters(ImmutableList.of(ID_COLUMN, DAY_COLUMN), ImmutableList.of(dynamicFilter));
+
+        // partition keys are filtered at split level and never reach the storage node
+        assertEquals(bloomFilters.keySet(), ImmutableSet.of("id"));
+        BloomFilter pushedFilter = BloomFilter.readFrom(new ByteArrayInputStream(bloomFilters.get("id")));
+        assertTrue(pushedFilter.test(7L));
+        assertFalse(pushedFilter.test(8L));
+    }
+
+    @Test
+    public void testBuildBloomFiltersSkipsDisjunctiveGroups()
+    {
+        Map<ColumnHandle, DynamicFilter> dynamicFilter = ImmutableMap.of(
+                ID_COLUMN, new BloomFilterDynamicFilter("1", ID_COLUMN, new BloomFilter(1024, 0.01), DynamicFilter.Type.GLOBAL));
+        List<Map<ColumnHandle, DynamicFilter>> dynamicFilters = ImmutableList.of(dynamicFilter, dynamicFilter);
+
+        assertTrue(buildBloomFilters(ImmutableList.of(ID_COLUMN), dynamicFilters).isEmpty());
+        assertTrue(buildBloomFilters(ImmutableList.of(ID_COLUMN), ImmutableList.of()).isEmpty());
+    }
+}
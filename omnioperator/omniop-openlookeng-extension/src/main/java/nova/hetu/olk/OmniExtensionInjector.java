@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Injector;
+import io.airlift.bootstrap.Bootstrap;
+import nova.hetu.olk.operator.filterandproject.OmniExpressionCacheModule;
+import org.weakref.jmx.guice.MBeanModule;
+
+import javax.management.MBeanServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static io.airlift.configuration.ConfigurationLoader.loadPropertiesFrom;
+import static java.lang.management.ManagementFactory.getPlatformMBeanServer;
+
+/**
+ * The injector of the objects which the omni extension shares across the
+ * queries of a worker. The engine creates the extension planner with a
+ * {@link io.prestosql.sql.planner.LocalExecutionPlanner} only, so the
+ * extension bootstraps its own injector once, configured by the optional
+ * {@value #CONFIG_FILE} file.
+ *
+ * @since 20221017
+ */
+public final class OmniExtensionInjector
+{
+    /**
+     * The config file of the omni extension, relative to the working directory of the worker.
+     */
+    public static final String CONFIG_FILE = "etc/omni-extension.properties";
+
+    private static final Supplier<Injector> INJECTOR = Suppliers.memoize(OmniExtensionInjector::createInjector);
+
+    private OmniExtensionInjector()
+    {
+    }
+
+    /**
+     * Gets the instance of a type bound by the injector of the extension.
+     *
+     * @param type the type
+     * @param <T> the type
+     * @return the instance
+     */
+    public static <T> T getInstance(Class<T> type)
+    {
+        return INJECTOR.get().getInstance(type);
+    }
+
+    private static Injector createInjector()
+    {
+        try {
+            Bootstrap app = new Bootstrap(
+                    new MBeanModule(),
+                    new OmniExpressionCacheModule(),
+                    binder -> binder.bind(MBeanServer.class).toInstance(getPlatformMBeanServer()));
+            return app
+                    .strictConfig()
+                    .doNotInitializeLogging()
+                    .setRequiredConfigurationProperties(loadConfig())
+                    .quiet()
+                    .initialize();
+        }
+        catch (Exception e) {
+            throwIfUnchecked(e);
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static Map<String, String> loadConfig()
+            throws IOException
+    {
+        File file = new File(CONFIG_FILE);
+        return file.isFile() ? loadPropertiesFrom(file.getPath()) : ImmutableMap.of();
+    }
+}
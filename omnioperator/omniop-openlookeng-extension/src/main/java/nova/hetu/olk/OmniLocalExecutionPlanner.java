@@ -16,12 +16,12 @@ package nova.hetu.olk;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.primitives.Ints;
 import io.airlift.log.Logger;
 import io.airlift.node.NodeInfo;
 import io.airlift.units.DataSize;
-import io.hetu.core.transport.execution.buffer.PagesSerdeFactory;
 import io.prestosql.Session;
 import io.prestosql.cube.CubeManager;
 import io.prestosql.dynamicfilter.DynamicFilterCacheManager;
@@ -137,14 +137,17 @@ import nova.hetu.olk.operator.LookupJoinOmniOperators;
 import nova.hetu.olk.operator.MergeOmniOperator;
 import nova.hetu.olk.operator.PartitionedOutputOmniOperator;
 import nova.hetu.olk.operator.ScanFilterAndProjectOmniOperator;
+import nova.hetu.olk.operator.SortedRunsSpiller.SortedRunsSpillerFactory;
 import nova.hetu.olk.operator.TopNOmniOperator;
 import nova.hetu.olk.operator.WindowOmniOperator;
 import nova.hetu.olk.operator.filterandproject.FilterAndProjectOmniOperator;
+import nova.hetu.olk.operator.filterandproject.OmniExpressionCache;
 import nova.hetu.olk.operator.filterandproject.OmniExpressionCompiler;
 import nova.hetu.olk.operator.filterandproject.OmniRowExpressionUtil;
 import nova.hetu.olk.operator.localexchange.LocalExchangeSinkOmniOperator;
 import nova.hetu.olk.operator.localexchange.LocalExchangeSourceOmniOperator;
 import nova.hetu.olk.operator.localexchange.OmniLocalExchange;
+import nova.hetu.olk.tool.OmniPagesSerdeFactory;
 import nova.hetu.olk.tool.OperatorUtils;
 import nova.hetu.olk.tool.VecAllocatorHelper;
 import nova.hetu.omniruntime.constants.FunctionType;
@@ -186,6 +189,7 @@ import static io.prestosql.SystemSessionProperties.isSpillEnabled;
 import static io.prestosql.SystemSessionProperties.isSpillForOuterJoinEnabled;
 import static io.prestosql.SystemSessionProperties.isSpillOrderBy;
 import static io.prestosql.SystemSessionProperties.isSpillReuseExchange;
+import static io.prestosql.SystemSessionProperties.isSpillWindowOperator;
 import static io.prestosql.operator.PipelineExecutionStrategy.GROUPED_EXECUTION;
 import static io.prestosql.operator.PipelineExecutionStrategy.UNGROUPED_EXECUTION;
 import static io.prestosql.operator.WindowFunctionDefinition.window;
@@ -202,7 +206,9 @@ import static io.prestosql.sql.planner.SystemPartitioningHandle.FIXED_PASSTHROUG
 import static io.prestosql.sql.planner.SystemPartitioningHandle.SCALED_WRITER_DISTRIBUTION;
 import static io.prestosql.sql.planner.SystemPartitioningHandle.SINGLE_DISTRIBUTION;
 import static io.prestosql.sql.planner.plan.ExchangeNode.Scope.LOCAL;
+import static java.util.Objects.requireNonNull;
 import static nova.hetu.olk.operator.OrderByOmniOperator.OrderByOmniOperatorFactory.createOrderByOmniOperatorFactory;
+import static nova.hetu.olk.operator.SortedRunsSpiller.SortedRunsSpillerFactory.createSortedRunsSpillerFactory;
 import static nova.hetu.olk.operator.filterandproject.OmniRowExpressionUtil.expressionStringify;
 import static nova.hetu.omniruntime.constants.FunctionType.OMNI_AGGREGATION_TYPE_AVG;
 import static nova.hetu.omniruntime.constants.FunctionType.OMNI_AGGREGATION_TYPE_COUNT_ALL;
@@ -305,7 +311,8 @@ public class OmniLocalExecutionPlanner
                 lookupJoinOperators, orderingCompiler, nodeInfo, stateStoreProvider, stateStoreListenerManager,
                 dynamicFilterCacheManager, heuristicIndexerManager, cubeManager);
         // use omni expressionCompiler
-        this.omniExpressionCompiler = new OmniExpressionCompiler(metadata, pageFunctionCompiler);
+        this.omniExpressionCompiler = new OmniExpressionCompiler(metadata, pageFunctionCompiler,
+                OmniExtensionInjector.getInstance(OmniExpressionCache.class));
     }
 
     static List<Integer> getAggregationChannels(Map<Symbol, AggregationNode.Aggregation> aggregations,
@@ -442,7 +449,10 @@ public class OmniLocalExecutionPlanner
                 new PartitionedOutputOmniOperator.PartitionedOutputOmniFactory(partitionFunction, partitionChannels,
                         partitionConstants, partitioningScheme.isReplicateNullsAndAny(), nullChannel, outputBuffer,
                         maxPagePartitioningBufferSize, partitioningScheme.getBucketToPartition().get(),
-                        isHashPrecomputed, partitionChannelTypes),
+                        isHashPrecomputed, partitionChannelTypes,
+                        Optional.of(new OmniPagesSerdeFactory(
+                                new InternalBlockEncodingSerde(metadata.getFunctionAndTypeManager()),
+                                isExchangeCompressionEnabled(taskContext.getSession())))),
                 feederCTEId, feederCTEParentId, cteCtx);
     }
 
@@ -459,7 +469,10 @@ public class OmniLocalExecutionPlanner
 
         PhysicalOperation physicalOperation;
         try {
-            physicalOperation = plan.accept(new OmniVisitor(session, stageExecutionDescriptor), context);
+            Set<PlanNodeId> fallbackNodes = OmniOperatorPlacement.getFallbackNodes(plan,
+                    outputOperatorFactory instanceof PartitionedOutputOmniOperator.PartitionedOutputOmniFactory);
+            physicalOperation = plan.accept(new OmniVisitor(session, stageExecutionDescriptor, fallbackNodes),
+                    context);
         }
         catch (Exception e) {
             log.warn("Unable to plan with OmniRuntime Operators for task: " + taskContext.getTaskId() + ", cause: "
@@ -577,6 +590,8 @@ public class OmniLocalExecutionPlanner
     public class OmniVisitor
             extends Visitor
     {
+        private final Set<PlanNodeId> fallbackNodes;
+
         /**
          * Instantiates a new Omni visitor.
          *
@@ -584,13 +599,30 @@ public class OmniLocalExecutionPlanner
          * @param stageExecutionDescriptor the stage execution descriptor
          */
         public OmniVisitor(Session session, StageExecutionDescriptor stageExecutionDescriptor)
+        {
+            this(session, stageExecutionDescriptor, ImmutableSet.of());
+        }
+
+        /**
+         * Instantiates a new Omni visitor.
+         *
+         * @param session the session
+         * @param stageExecutionDescriptor the stage execution descriptor
+         * @param fallbackNodes the plan nodes to plan with OpenLooKeng operators, see {@link OmniOperatorPlacement}
+         */
+        public OmniVisitor(Session session, StageExecutionDescriptor stageExecutionDescriptor,
+                           Set<PlanNodeId> fallbackNodes)
         {
             super(session, stageExecutionDescriptor);
+            this.fallbackNodes = requireNonNull(fallbackNodes, "fallbackNodes is null");
         }
 
         @Override
         public PhysicalOperation visitTopN(TopNNode node, LocalExecutionPlanContext context)
         {
+            if (fallbackNodes.contains(node.getId())) {
+                return super.visitTopN(node, context);
+            }
             PhysicalOperation source = node.getSource().accept(this, context);
 
             List<Symbol> orderBySymbols = node.getOrderingScheme().getOrderBy();
@@ -611,6 +643,9 @@ public class OmniLocalExecutionPlanner
         @Override
         public PhysicalOperation visitLimit(LimitNode node, LocalExecutionPlanContext context)
         {
+            if (fallbackNodes.contains(node.getId())) {
+                return super.visitLimit(node, context);
+            }
             PhysicalOperation source = node.getSource().accept(this, context);
 
             OperatorFactory operatorFactory = new LimitOmniOperator.LimitOmniOperatorFactory(
@@ -621,6 +656,9 @@ public class OmniLocalExecutionPlanner
         @Override
         public PhysicalOperation visitDistinctLimit(DistinctLimitNode node, LocalExecutionPlanContext context)
         {
+            if (fallbackNodes.contains(node.getId())) {
+                return super.visitDistinctLimit(node, context);
+            }
             PhysicalOperation source = node.getSource().accept(this, context);
             Optional<Integer> hashChannel = node.getHashSymbol().map(channelGetter(source));
             List<Integer> distinctChannels = getChannelsForSymbols(node.getDistinctSymbols(), source.getLayout());
@@ -784,14 +822,17 @@ public class OmniLocalExecutionPlanner
                     .map(expression -> bindChannels(expression, sourceLayout, context.getTypes()))
                     .collect(toImmutableList());
 
-            boolean useOmniOperator = true;
-            Supplier<PageProcessor> pageProcessor;
-            Optional<RowExpression> omniTranslatedFilter = isLikeExpression
-                    ? addRowExpression(rowExpression, translatedFilter)
-                    : translatedFilter;
-            pageProcessor = omniExpressionCompiler.compilePageProcessor(omniTranslatedFilter, translatedProjections,
-                    Optional.of(context.getStageId() + "_" + planNodeId), OptionalInt.empty(), inputTypes,
-                    context.getTaskId(), (OmniLocalExecutionPlanContext) context);
+            boolean useOmniOperator = !fallbackNodes.contains(planNodeId);
+            Supplier<PageProcessor> pageProcessor = null;
+            if (useOmniOperator) {
+                Optional<RowExpression> omniTranslatedFilter = isLikeExpression
+                        ? addRowExpression(rowExpression, translatedFilter)
+                        : translatedFilter;
+                pageProcessor = omniExpressionCompiler.compilePageProcessor(omniTranslatedFilter,
+                        translatedProjections, Optional.of(context.getStageId() + "_" + planNodeId),
+                        OptionalInt.empty(), inputTypes, context.getTaskId(), (OmniLocalExecutionPlanContext) context,
+                        columns != null);
+            }
 
             if (pageProcessor == null) {
                 useOmniOperator = false;
@@ -868,6 +909,9 @@ public class OmniLocalExecutionPlanner
         @Override
         public PhysicalOperation visitEnforceSingleRow(EnforceSingleRowNode node, LocalExecutionPlanContext context)
         {
+            if (fallbackNodes.contains(node.getId())) {
+                return super.visitEnforceSingleRow(node, context);
+            }
             PhysicalOperation source = node.getSource().accept(this, context);
 
             OperatorFactory operatorFactory = new EnforceSingleRowOmniOperator.EnforceSingleRowOmniOperatorFactory(
@@ -1054,7 +1098,7 @@ public class OmniLocalExecutionPlanner
 
             OperatorFactory operatorFactory = new MergeOmniOperator.MergeOmniOperatorFactory(
                     context.getNextOperatorId(), context.getNextOperatorId(), node.getId(), exchangeClientSupplier,
-                    new PagesSerdeFactory(new InternalBlockEncodingSerde(metadata.getFunctionAndTypeManager()),
+                    new OmniPagesSerdeFactory(new InternalBlockEncodingSerde(metadata.getFunctionAndTypeManager()),
                             isExchangeCompressionEnabled(session)),
                     orderingCompiler, types, outputChannels, sortChannels, sortOrder);
 
@@ -1077,6 +1121,9 @@ public class OmniLocalExecutionPlanner
         @Override
         public PhysicalOperation visitAggregation(AggregationNode node, LocalExecutionPlanContext context)
         {
+            if (fallbackNodes.contains(node.getId())) {
+                return super.visitAggregation(node, context);
+            }
             PhysicalOperation source = node.getSource().accept(this, context);
             if (node.getGroupingKeys().isEmpty()) {
                 return planGlobalAggregation(node, source, context);
@@ -1214,7 +1261,8 @@ public class OmniLocalExecutionPlanner
                     return new HashAggregationOmniOperator.HashAggregationOmniOperatorFactory(
                             context.getNextOperatorId(), planNodeId, source.getTypes(), groupByInputChannels,
                             groupByInputTypes, aggregationInputChannels, aggregationInputTypes, aggregatorTypes,
-                            maskChannels.build(), aggregationOutputTypes, step);
+                            maskChannels.build(), aggregationOutputTypes, step, spillEnabled, partitioningSpillerFactory,
+                            maxPartialAggregationMemorySize);
                 }
                 else {
                     Optional<Integer> hashChannel = hashSymbol.map(channelGetter(source));
@@ -1230,6 +1278,9 @@ public class OmniLocalExecutionPlanner
         @Override
         public PhysicalOperation visitSort(SortNode node, LocalExecutionPlanContext context)
         {
+            if (fallbackNodes.contains(node.getId())) {
+                return super.visitSort(node, context);
+            }
             PhysicalOperation source = node.getSource().accept(this, context);
 
             List<Symbol> orderBySymbols = node.getOrderingScheme().getOrderBy();
@@ -1248,8 +1299,14 @@ public class OmniLocalExecutionPlanner
 
             boolean spillEnabled = isSpillEnabled(context.getSession()) && isSpillOrderBy(context.getSession());
 
+            Optional<SortedRunsSpillerFactory> sortedRunsSpillerFactory = Optional.empty();
+            if (spillEnabled) {
+                sortedRunsSpillerFactory = Optional.of(createSortedRunsSpillerFactory(source.getTypes(),
+                        orderByChannels, sortOrder.build(), orderingCompiler, spillerFactory));
+            }
             OperatorFactory operator = createOrderByOmniOperatorFactory(context.getNextOperatorId(), node.getId(),
-                    source.getTypes(), outputChannels.build(), orderByChannels, sortOrder.build());
+                    source.getTypes(), outputChannels.build(), orderByChannels, sortOrder.build(),
+                    sortedRunsSpillerFactory);
 
             return new PhysicalOperation(operator, source.getLayout(), context, source);
         }
@@ -1257,6 +1314,9 @@ public class OmniLocalExecutionPlanner
         @Override
         public PhysicalOperation visitWindow(WindowNode node, LocalExecutionPlanContext context)
         {
+            if (fallbackNodes.contains(node.getId())) {
+                return super.visitWindow(node, context);
+            }
             PhysicalOperation source = node.getSource().accept(this, context);
 
             List<Symbol> partitionBySymbols = node.getPartitionBy();
@@ -1327,10 +1387,11 @@ public class OmniLocalExecutionPlanner
                 outputMappings.put(symbol, channel);
                 channel++;
             }
+            boolean spillEnabled = isSpillEnabled(context.getSession()) && isSpillWindowOperator(context.getSession());
             OperatorFactory operatorFactory = new WindowOmniOperator.WindowOmniOperatorFactory(
                     context.getNextOperatorId(), node.getId(), source.getTypes(), outputChannels.build(),
                     windowFunctionsBuilder.build(), partitionChannels, preGroupedChannels, sortChannels, sortOrder,
-                    node.getPreSortedOrderPrefix(), 10_000);
+                    node.getPreSortedOrderPrefix(), 10_000, spillEnabled, spillerFactory, orderingCompiler);
             return new PhysicalOperation(operatorFactory, outputMappings.build(), context, source);
         }
 
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk;
+
+import com.google.common.collect.ImmutableSet;
+import io.airlift.log.Logger;
+import io.prestosql.spi.plan.AggregationNode;
+import io.prestosql.spi.plan.FilterNode;
+import io.prestosql.spi.plan.JoinNode;
+import io.prestosql.spi.plan.LimitNode;
+import io.prestosql.spi.plan.PlanNode;
+import io.prestosql.spi.plan.PlanNodeId;
+import io.prestosql.spi.plan.ProjectNode;
+import io.prestosql.spi.plan.TableScanNode;
+import io.prestosql.spi.plan.TopNNode;
+import io.prestosql.spi.plan.WindowNode;
+import io.prestosql.sql.planner.plan.DistinctLimitNode;
+import io.prestosql.sql.planner.plan.EnforceSingleRowNode;
+import io.prestosql.sql.planner.plan.ExchangeNode;
+import io.prestosql.sql.planner.plan.RemoteSourceNode;
+import io.prestosql.sql.planner.plan.SampleNode;
+import io.prestosql.sql.planner.plan.SortNode;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Decides which plan nodes are planned with OpenLooKeng operators although an
+ * OmniRuntime operator exists for them.
+ * <p>
+ * Every boundary between an OmniRuntime operator and an OpenLooKeng operator
+ * in a pipeline copies all the blocks passing it, either in a
+ * BuildOffHeap/BuildOnHeap operator or in the off heap transfer of the omni
+ * table scan. The placement splits the plan into pipelines the same way the
+ * local planner does, and for every run of OmniRuntime operators compares the
+ * conversions at its ends with the work the run saves. A run which costs more
+ * than it saves falls back to the OpenLooKeng operators, so EXPLAIN ANALYZE
+ * reports the OpenLooKeng operator type for its nodes.
+ *
+ * @since 20221017
+ */
+public final class OmniOperatorPlacement
+{
+    private static final Logger log = Logger.get(OmniOperatorPlacement.class);
+
+    /**
+     * The cost of one conversion between on heap pages and off heap vectors.
+     */
+    static final int CONVERSION_COST = 1;
+
+    // the work an OmniRuntime operator saves, in conversions
+    private static final int LIGHT_BENEFIT = 1;
+    private static final int MEDIUM_BENEFIT = 2;
+    private static final int HEAVY_BENEFIT = 4;
+
+    private final List<List<Slot>> pipelines = new ArrayList<>();
+
+    private OmniOperatorPlacement()
+    {
+    }
+
+    /**
+     * Gets the plan nodes which should be planned with OpenLooKeng operators.
+     *
+     * @param root the root of the plan fragment
+     * @param isOmniOutput whether the output operator of the fragment is an OmniRuntime operator
+     * @return the ids of the plan nodes to fall back
+     */
+    public static Set<PlanNodeId> getFallbackNodes(PlanNode root, boolean isOmniOutput)
+    {
+        OmniOperatorPlacement placement = new OmniOperatorPlacement();
+        List<Slot> pipeline = placement.visit(root);
+        pipeline.add(isOmniOutput ? Slot.fixedOmni() : Slot.olk());
+        placement.pipelines.add(pipeline);
+
+        ImmutableSet.Builder<PlanNodeId> fallbackNodes = ImmutableSet.builder();
+        for (List<Slot> slots : placement.pipelines) {
+            place(slots, fallbackNodes);
+        }
+        return fallbackNodes.build();
+    }
+
+    private static void place(List<Slot> pipeline, ImmutableSet.Builder<PlanNodeId> fallbackNodes)
+    {
+        int start = 0;
+        while (start < pipeline.size()) {
+            if (!pipeline.get(start).isOmni()) {
+                start++;
+                continue;
+            }
+            int end = start;
+            int benefit = 0;
+            boolean canFallback = true;
+            while (end < pipeline.size() && pipeline.get(end).isOmni()) {
+                benefit += pipeline.get(end).getBenefit();
+                canFallback &= pipeline.get(end).getNodeId().isPresent();
+                end++;
+            }
+
+            // the run [start, end) needs a conversion at each end which borders an OpenLooKeng operator
+            int conversions = 0;
+            if (start > 0) {
+                conversions += CONVERSION_COST;
+            }
+            if (end < pipeline.size()) {
+                conversions += CONVERSION_COST;
+            }
+            if (canFallback && conversions > benefit) {
+                for (Slot slot : pipeline.subList(start, end)) {
+                    log.debug("Plan node %s falls back to OpenLooKeng operator, conversions: %s, benefit: %s",
+                            slot.getNodeId().get(), conversions, benefit);
+                    fallbackNodes.add(slot.getNodeId().get());
+                }
+            }
+            start = end;
+        }
+    }
+
+    private List<Slot> visit(PlanNode node)
+    {
+        if (node instanceof FilterNode || node instanceof ProjectNode) {
+            return visitFilterAndProject(node);
+        }
+        if (node instanceof LimitNode || node instanceof EnforceSingleRowNode) {
+            return append(visit(node.getSources().get(0)), Slot.omni(node.getId(), LIGHT_BENEFIT));
+        }
+        if (node instanceof TopNNode || node instanceof DistinctLimitNode) {
+            return append(visit(node.getSources().get(0)), Slot.omni(node.getId(), MEDIUM_BENEFIT));
+        }
+        if (node instanceof AggregationNode || node instanceof SortNode || node instanceof WindowNode) {
+            return append(visit(node.getSources().get(0)), Slot.omni(node.getId(), HEAVY_BENEFIT));
+        }
+        if (node instanceof ExchangeNode) {
+            // each source ends with a local exchange sink, the exchange source starts a new pipeline
+            for (PlanNode source : node.getSources()) {
+                finish(append(visit(source), Slot.fixedOmni()));
+            }
+            return append(new ArrayList<>(), Slot.fixedOmni());
+        }
+        if (node instanceof RemoteSourceNode) {
+            boolean isMerge = ((RemoteSourceNode) node).getOrderingScheme().isPresent();
+            return append(new ArrayList<>(), isMerge ? Slot.fixedOmni() : Slot.olk());
+        }
+        if (node instanceof JoinNode && isLookupJoin((JoinNode) node)) {
+            JoinNode joinNode = (JoinNode) node;
+            finish(append(visit(joinNode.getRight()), Slot.fixedOmni()));
+            return append(visit(joinNode.getLeft()), Slot.fixedOmni());
+        }
+
+        // everything else is planned with OpenLooKeng operators
+        List<PlanNode> sources = node.getSources();
+        if (sources.isEmpty()) {
+            return append(new ArrayList<>(), Slot.olk());
+        }
+        for (PlanNode source : sources.subList(1, sources.size())) {
+            finish(append(visit(source), Slot.olk()));
+        }
+        return append(visit(sources.get(0)), Slot.olk());
+    }
+
+    private List<Slot> visitFilterAndProject(PlanNode node)
+    {
+        // mirror OmniVisitor: a project folds the filter below it, and both fold a table scan
+        PlanNode source = node.getSources().get(0);
+        if (node instanceof ProjectNode && source instanceof FilterNode) {
+            source = ((FilterNode) source).getSource();
+        }
+        while (source instanceof SampleNode) {
+            source = ((SampleNode) source).getSource();
+        }
+
+        List<Slot> pipeline;
+        if (source instanceof TableScanNode) {
+            // the omni scan transfers the pages of the connector off heap by itself
+            pipeline = append(new ArrayList<>(), Slot.olk());
+        }
+        else {
+            pipeline = visit(source);
+        }
+        return append(pipeline, Slot.omni(node.getId(), LIGHT_BENEFIT));
+    }
+
+    private static boolean isLookupJoin(JoinNode node)
+    {
+        if (node.isCrossJoin()) {
+            return false;
+        }
+        switch (node.getType()) {
+            case INNER:
+            case LEFT:
+            case RIGHT:
+            case FULL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void finish(List<Slot> pipeline)
+    {
+        pipelines.add(pipeline);
+    }
+
+    private static List<Slot> append(List<Slot> pipeline, Slot slot)
+    {
+        pipeline.add(slot);
+        return pipeline;
+    }
+
+    private static final class Slot
+    {
+        private final Optional<PlanNodeId> nodeId;
+        private final boolean omni;
+        private final int benefit;
+
+        private Slot(Optional<PlanNodeId> nodeId, boolean omni, int benefit)
+        {
+            this.nodeId = nodeId;
+            this.omni = omni;
+            this.benefit = benefit;
+        }
+
+        /**
+         * An OmniRuntime operator which can fall back to an OpenLooKeng operator.
+         */
+        static Slot omni(PlanNodeId nodeId, int benefit)
+        {
+            return new Slot(Optional.of(nodeId), true, benefit);
+        }
+
+        /**
+         * An OmniRuntime operator which is always used, like exchanges and joins.
+         */
+        static Slot fixedOmni()
+        {
+            return new Slot(Optional.empty(), true, HEAVY_BENEFIT);
+        }
+
+        static Slot olk()
+        {
+            return new Slot(Optional.empty(), false, 0);
+        }
+
+        Optional<PlanNodeId> getNodeId()
+        {
+            return nodeId;
+        }
+
+        boolean isOmni()
+        {
+            return omni;
+        }
+
+        int getBenefit()
+        {
+            return benefit;
+        }
+    }
+}
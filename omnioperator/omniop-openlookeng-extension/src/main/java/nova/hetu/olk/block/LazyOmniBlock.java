@@ -19,6 +19,7 @@ import io.prestosql.spi.block.Block;
 import io.prestosql.spi.block.BlockBuilder;
 import io.prestosql.spi.block.LazyBlock;
 import io.prestosql.spi.type.Type;
+import nova.hetu.olk.tool.OmniDictionaryCache;
 import nova.hetu.olk.tool.OperatorUtils;
 import nova.hetu.omniruntime.vector.LazyVec;
 import nova.hetu.omniruntime.vector.Vec;
@@ -39,12 +40,18 @@ public class LazyOmniBlock<T>
     private final LazyVec nativeLazyVec;
 
     public LazyOmniBlock(VecAllocator vecAllocator, LazyBlock lazyBlock, Type blockType)
+    {
+        this(vecAllocator, lazyBlock, blockType, null, 0);
+    }
+
+    public LazyOmniBlock(VecAllocator vecAllocator, LazyBlock lazyBlock, Type blockType,
+                         OmniDictionaryCache dictionaryCache, int channel)
     {
         this.lazyBlock = lazyBlock;
         nativeLazyVec = new LazyVec(vecAllocator, lazyBlock.getPositionCount(), () -> {
             Block block = lazyBlock.getLoadedBlock();
             return (Vec) OperatorUtils.buildOffHeapBlock(vecAllocator, block, block.getClass().getSimpleName(),
-                    block.getPositionCount(), blockType).getValues();
+                    block.getPositionCount(), blockType, dictionaryCache, channel).getValues();
         });
     }
 
@@ -150,6 +157,12 @@ public class LazyOmniBlock<T>
         return lazyBlock.getLoadedBlock();
     }
 
+    @Override
+    public void close()
+    {
+        nativeLazyVec.close();
+    }
+
     public LazyBlock getLazyBlock()
     {
         return lazyBlock;
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.block;
+
+import io.airlift.slice.Slice;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.BlockBuilder;
+import io.prestosql.spi.block.RunLengthEncodedBlock;
+import io.prestosql.spi.type.Type;
+import nova.hetu.olk.tool.OperatorUtils;
+import nova.hetu.omniruntime.vector.Vec;
+import nova.hetu.omniruntime.vector.VecAllocator;
+import org.openjdk.jol.info.ClassLayout;
+
+import java.util.function.BiConsumer;
+
+import static io.prestosql.spi.block.BlockUtil.checkArrayRange;
+import static io.prestosql.spi.block.BlockUtil.checkValidRegion;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Run length encoded omni block. The single value stays on heap and the vector
+ * of all the positions is only built, in one native copy, when an OmniRuntime
+ * operator reads the block. Regions, copies and the transfer back to heap keep
+ * the block run length encoded.
+ *
+ * @param <T> Block type
+ * @since 20221017
+ */
+public class RunLengthEncodedOmniBlock<T>
+        implements Block<T>
+{
+    private static final int INSTANCE_SIZE = ClassLayout.parseClass(RunLengthEncodedOmniBlock.class).instanceSize();
+
+    // the positions are only read, so all the expansions share one array of zeros
+    private static volatile int[] zeroPositions = new int[0];
+
+    private final VecAllocator vecAllocator;
+
+    private final RunLengthEncodedBlock block;
+
+    private final Type blockType;
+
+    private Vec values;
+
+    private boolean isClosable = true;
+
+    /**
+     * Instantiates a new run length encoded omni block.
+     *
+     * @param vecAllocator vector allocator
+     * @param block the on heap run length encoded block
+     * @param blockType the type of the block, may be null
+     */
+    public RunLengthEncodedOmniBlock(VecAllocator vecAllocator, RunLengthEncodedBlock block, Type blockType)
+    {
+        this.vecAllocator = vecAllocator;
+        this.block = requireNonNull(block, "block is null");
+        this.blockType = blockType;
+    }
+
+    /**
+     * Builds a vector with the first value of a vector at all the positions.
+     *
+     * @param value the vector holding the value
+     * @param positionCount the position count of the new vector
+     * @return the new vector
+     */
+    public static Vec expandVec(Vec value, int positionCount)
+    {
+        int[] positions = zeroPositions;
+        if (positions.length < positionCount) {
+            positions = new int[positionCount];
+            zeroPositions = positions;
+        }
+        return value.copyPositions(positions, 0, positionCount);
+    }
+
+    @Override
+    public boolean isExtensionBlock()
+    {
+        return true;
+    }
+
+    @Override
+    public Vec getValues()
+    {
+        if (values == null) {
+            Block value = block.getValue();
+            Block omniValue = OperatorUtils.buildOffHeapBlock(vecAllocator, value, value.getClass().getSimpleName(),
+                    1, blockType);
+            values = expandVec((Vec) omniValue.getValues(), block.getPositionCount());
+            omniValue.close();
+            values.setClosable(isClosable);
+        }
+        return values;
+    }
+
+    @Override
+    public void setClosable(boolean isClosable)
+    {
+        this.isClosable = isClosable;
+        if (values != null) {
+            values.setClosable(isClosable);
+        }
+    }
+
+    @Override
+    public void close()
+    {
+        if (values != null) {
+            values.close();
+        }
+    }
+
+    /**
+     * Gets the on heap run length encoded block.
+     *
+     * @return the on heap block
+     */
+    public RunLengthEncodedBlock getRunLengthEncodedBlock()
+    {
+        return block;
+    }
+
+    @Override
+    public int getPositionCount()
+    {
+        return block.getPositionCount();
+    }
+
+    @Override
+    public int getSliceLength(int position)
+    {
+        return block.getSliceLength(position);
+    }
+
+    @Override
+    public byte getByte(int position, int offset)
+    {
+        return block.getByte(position, offset);
+    }
+
+    @Override
+    public short getShort(int position, int offset)
+    {
+        return block.getShort(position, offset);
+    }
+
+    @Override
+    public int getInt(int position, int offset)
+    {
+        return block.getInt(position, offset);
+    }
+
+    @Override
+    public long getLong(int position, int offset)
+    {
+        return block.getLong(position, offset);
+    }
+
+    @Override
+    public Slice getSlice(int position, int offset, int length)
+    {
+        return block.getSlice(position, offset, length);
+    }
+
+    @Override
+    public T get(int position)
+    {
+        return (T) block.get(position);
+    }
+
+    @Override
+    public boolean mayHaveNull()
+    {
+        return block.mayHaveNull();
+    }
+
+    @Override
+    public boolean isNull(int position)
+    {
+        return block.isNull(position);
+    }
+
+    @Override
+    public void writePositionTo(int position, BlockBuilder blockBuilder)
+    {
+        block.writePositionTo(position, blockBuilder);
+    }
+
+    @Override
+    public Block<T> getSingleValueBlock(int position)
+    {
+        return block.getSingleValueBlock(position);
+    }
+
+    @Override
+    public long getSizeInBytes()
+    {
+        return block.getSizeInBytes();
+    }
+
+    @Override
+    public long getRegionSizeInBytes(int position, int length)
+    {
+        return block.getRegionSizeInBytes(position, length);
+    }
+
+    @Override
+    public long getPositionsSizeInBytes(boolean[] positions)
+    {
+        return block.getPositionsSizeInBytes(positions);
+    }
+
+    @Override
+    public long getRetainedSizeInBytes()
+    {
+        long retainedSizeInBytes = INSTANCE_SIZE + block.getRetainedSizeInBytes();
+        if (values != null) {
+            retainedSizeInBytes += values.getCapacityInBytes();
+        }
+        return retainedSizeInBytes;
+    }
+
+    @Override
+    public long getEstimatedDataSizeForStats(int position)
+    {
+        return block.getEstimatedDataSizeForStats(position);
+    }
+
+    @Override
+    public void retainedBytesForEachPart(BiConsumer<Object, Long> consumer)
+    {
+        block.retainedBytesForEachPart(consumer);
+        if (values != null) {
+            consumer.accept(values, (long) values.getCapacityInBytes());
+        }
+        consumer.accept(this, (long) INSTANCE_SIZE);
+    }
+
+    @Override
+    public String getEncodingName()
+    {
+        return block.getEncodingName();
+    }
+
+    @Override
+    public Block<T> copyPositions(int[] positions, int offset, int length)
+    {
+        checkArrayRange(positions, offset, length);
+        return withPositionCount(length);
+    }
+
+    @Override
+    public Block<T> getRegion(int positionOffset, int length)
+    {
+        checkValidRegion(getPositionCount(), positionOffset, length);
+        return withPositionCount(length);
+    }
+
+    @Override
+    public Block<T> copyRegion(int positionOffset, int length)
+    {
+        checkValidRegion(getPositionCount(), positionOffset, length);
+        return withPositionCount(length);
+    }
+
+    private Block<T> withPositionCount(int positionCount)
+    {
+        return new RunLengthEncodedOmniBlock<>(vecAllocator, new RunLengthEncodedBlock(block.getValue(), positionCount),
+                blockType);
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder("RunLengthEncodedOmniBlock{");
+        sb.append("positionCount=").append(getPositionCount());
+        sb.append(", value=").append(block.getValue());
+        sb.append('}');
+        return sb.toString();
+    }
+}
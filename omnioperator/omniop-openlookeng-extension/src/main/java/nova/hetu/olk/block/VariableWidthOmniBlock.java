@@ -106,7 +106,8 @@ public class VariableWidthOmniBlock
             throw new IllegalArgumentException("slice is null");
         }
 
-        int dataLength = offsets[arrayOffset + positionCount] - offsets[arrayOffset];
+        int dataOffset = offsets[arrayOffset];
+        int dataLength = offsets[arrayOffset + positionCount] - dataOffset;
         this.values = new VarcharVec(vecAllocator, dataLength, positionCount);
 
         if (offsets.length - arrayOffset < (positionCount + 1)) {
@@ -114,8 +115,13 @@ public class VariableWidthOmniBlock
         }
         this.offsets = compactOffsets(offsets, arrayOffset, positionCount);
 
+        // the compacted offsets start at 0, so the data is read from the first position of the region
         if (slice.hasByteArray()) {
-            this.values.put(0, slice.byteArray(), slice.byteArrayOffset(), this.offsets, 0, positionCount);
+            this.values.put(0, slice.byteArray(), slice.byteArrayOffset() + dataOffset, this.offsets, 0,
+                    positionCount);
+        }
+        else {
+            this.values.put(0, slice.getBytes(dataOffset, dataLength), 0, this.offsets, 0, positionCount);
         }
 
         if (valueIsNull != null && valueIsNull.length - arrayOffset < positionCount) {
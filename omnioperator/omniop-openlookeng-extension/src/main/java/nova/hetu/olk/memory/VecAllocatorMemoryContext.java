@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.memory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.prestosql.memory.context.LocalMemoryContext;
+import io.prestosql.operator.OperatorContext;
+import nova.hetu.omniruntime.vector.VecAllocator;
+
+import static io.prestosql.operator.Operator.NOT_BLOCKED;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reports the native memory of an operator level vector allocator to a memory
+ * context of the operator, so the memory pools of openLooKeng see it and the
+ * memory limits of the query apply to it. The operator calls update after each
+ * call into its OmniRuntime operator, and the memory context is only updated
+ * when the allocated bytes moved by more than the batch size since the last
+ * update.
+ * <p>
+ * Operators do not need to return the future of an update from isBlocked. The
+ * memory contexts of the operator context record it as the memory future of
+ * the operator, and the driver does not run the operator again until
+ * OperatorContext#isWaitingForMemory (or isWaitingForRevocableMemory) is done.
+ *
+ * @since 20221017
+ */
+public class VecAllocatorMemoryContext
+{
+    /**
+     * Default batch size of the updates, 1MB.
+     */
+    public static final long DEFAULT_BATCH_SIZE = 1 << 20;
+
+    private final VecAllocator vecAllocator;
+
+    private final LocalMemoryContext memoryContext;
+
+    private final long batchSize;
+
+    private long reportedBytes;
+
+    /**
+     * Instantiates a new vector allocator memory context.
+     *
+     * @param vecAllocator the operator level vector allocator
+     * @param memoryContext the memory context to report to
+     * @param batchSize the change of the allocated bytes which triggers an update
+     */
+    public VecAllocatorMemoryContext(VecAllocator vecAllocator, LocalMemoryContext memoryContext, long batchSize)
+    {
+        this.vecAllocator = vecAllocator;
+        this.memoryContext = requireNonNull(memoryContext, "memoryContext is null");
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Reports the allocator to the user memory of the operator.
+     *
+     * @param operatorContext operator context
+     * @param vecAllocator the operator level vector allocator
+     * @return the vector allocator memory context
+     */
+    public static VecAllocatorMemoryContext userMemory(OperatorContext operatorContext, VecAllocator vecAllocator)
+    {
+        return new VecAllocatorMemoryContext(vecAllocator, operatorContext.localUserMemoryContext(),
+                DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Reports the allocator to the revocable memory of the operator, the
+     * operator must be able to spill the memory of the allocator.
+     *
+     * @param operatorContext operator context
+     * @param vecAllocator the operator level vector allocator
+     * @return the vector allocator memory context
+     */
+    public static VecAllocatorMemoryContext revocableMemory(OperatorContext operatorContext,
+                                                            VecAllocator vecAllocator)
+    {
+        return new VecAllocatorMemoryContext(vecAllocator, operatorContext.localRevocableMemoryContext(),
+                DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Updates the memory context if the allocated bytes of the allocator moved
+     * by more than the batch size. The memory context fails the query when the
+     * memory limits of the query are exceeded. When the memory pool is full
+     * the driver waits on the memory future of the operator context, callers
+     * may ignore the returned future.
+     *
+     * @return a future which is done when the memory pool has space again
+     */
+    public ListenableFuture<?> update()
+    {
+        // operators share the global allocator when the task has none, its memory is not the operator's
+        if (vecAllocator == null || vecAllocator == VecAllocator.GLOBAL_VECTOR_ALLOCATOR) {
+            return NOT_BLOCKED;
+        }
+        long allocatedBytes = vecAllocator.getAllocatedMemory();
+        if (Math.abs(allocatedBytes - reportedBytes) < batchSize && (allocatedBytes != 0 || reportedBytes == 0)) {
+            return NOT_BLOCKED;
+        }
+        reportedBytes = allocatedBytes;
+        return memoryContext.setBytes(allocatedBytes);
+    }
+
+    /**
+     * Gets the bytes last reported to the memory context.
+     *
+     * @return the reported bytes
+     */
+    public long getReportedBytes()
+    {
+        return reportedBytes;
+    }
+
+    /**
+     * Releases the memory reported to the memory context, called when the
+     * vector allocator has freed the memory of the operator.
+     */
+    public void close()
+    {
+        reportedBytes = 0;
+        memoryContext.setBytes(0);
+    }
+}
@@ -23,6 +23,7 @@ import io.prestosql.spi.Page;
 import io.prestosql.spi.plan.AggregationNode;
 import io.prestosql.spi.plan.PlanNodeId;
 import io.prestosql.spi.type.Type;
+import nova.hetu.olk.memory.VecAllocatorMemoryContext;
 import nova.hetu.olk.tool.OperatorUtils;
 import nova.hetu.olk.tool.VecAllocatorHelper;
 import nova.hetu.olk.tool.VecBatchToPageIterator;
@@ -52,6 +53,8 @@ public class AggregationOmniOperator
 
     private final OmniOperator omniOperator;
 
+    private final VecAllocatorMemoryContext nativeMemoryContext;
+
     private State state = State.NEEDS_INPUT;
 
     /**
@@ -64,6 +67,7 @@ public class AggregationOmniOperator
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
         this.omniOperator = requireNonNull(omniOperator, "omniOperator is null");
+        this.nativeMemoryContext = VecAllocatorMemoryContext.userMemory(operatorContext, omniOperator.getVecAllocator());
     }
 
     @Override
@@ -86,6 +90,7 @@ public class AggregationOmniOperator
 
         VecBatch vecBatch = buildVecBatch(omniOperator.getVecAllocator(), page, this);
         omniOperator.addInput(vecBatch);
+        nativeMemoryContext.update();
     }
 
     @Override
@@ -96,6 +101,7 @@ public class AggregationOmniOperator
         }
 
         VecBatchToPageIterator pageIterator = new VecBatchToPageIterator(omniOperator.getOutput());
+        nativeMemoryContext.update();
         if (pageIterator.hasNext()) {
             state = State.FINISHED;
             return pageIterator.next();
@@ -121,6 +127,7 @@ public class AggregationOmniOperator
     public void close()
     {
         omniOperator.close();
+        nativeMemoryContext.close();
     }
 
     private enum State
@@ -49,6 +49,8 @@ public class BuildOffHeapOmniOperator
 
     private final List<Type> inputTypes;
 
+    private final OmniDictionaryCache dictionaryCache = new OmniDictionaryCache();
+
     /**
      * Instantiates a new BuildOffHeap Omni Operator.
      *
@@ -108,7 +110,13 @@ public class BuildOffHeapOmniOperator
 
     private Page processPage()
     {
-        return transferToOffHeapPages(vecAllocator, inputPage, inputTypes);
+        return transferToOffHeapPages(vecAllocator, inputPage, inputTypes, dictionaryCache);
+    }
+
+    @Override
+    public void close()
+    {
+        dictionaryCache.close();
     }
 
     /**
@@ -16,19 +16,27 @@
 package nova.hetu.olk.operator;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableList;
+import com.google.common.io.Closer;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.airlift.log.Logger;
+import io.airlift.units.DataSize;
 import io.prestosql.execution.Lifespan;
 import io.prestosql.operator.DriverContext;
+import io.prestosql.operator.InterpretedHashGenerator;
 import io.prestosql.operator.Operator;
 import io.prestosql.operator.OperatorContext;
 import io.prestosql.operator.OperatorFactory;
+import io.prestosql.operator.exchange.LocalPartitionGenerator;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.plan.AggregationNode;
 import io.prestosql.spi.plan.AggregationNode.Step;
 import io.prestosql.spi.plan.PlanNodeId;
 import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.PartitioningSpiller;
+import io.prestosql.spiller.PartitioningSpillerFactory;
+import nova.hetu.olk.memory.VecAllocatorMemoryContext;
 import nova.hetu.olk.tool.VecAllocatorHelper;
 import nova.hetu.olk.tool.VecBatchToPageIterator;
 import nova.hetu.omniruntime.constants.FunctionType;
@@ -38,18 +46,40 @@ import nova.hetu.omniruntime.type.DataType;
 import nova.hetu.omniruntime.vector.VecAllocator;
 import nova.hetu.omniruntime.vector.VecBatch;
 
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
 
 import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.util.concurrent.Futures.transformAsync;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.airlift.concurrent.MoreFutures.getFutureValue;
 import static java.util.Objects.requireNonNull;
+import static nova.hetu.olk.tool.BlockUtils.freePage;
 import static nova.hetu.olk.tool.OperatorUtils.buildVecBatch;
 import static nova.hetu.olk.tool.OperatorUtils.createExpressions;
+import static nova.hetu.olk.tool.OperatorUtils.transferToOnHeapPage;
 
 /**
  * The type Hash aggregation omni operator.
+ * <p>
+ * When spilling is enabled the native operator accumulates partial states, and
+ * its memory is revocable. A memory revoke spills the partial states into
+ * partitions by the hash of the group by keys, without blocking the driver,
+ * and a new native operator is started once the spill finished. On finish,
+ * the partitions are merged one after the other by a native operator which
+ * takes the partial states as input, so only the groups of one partition are
+ * in memory at a time.
+ * <p>
+ * A partial aggregation flushes its partial states when the native table
+ * reaches the partial aggregation memory limit, and once after a sample window
+ * of input rows. When the sample shows that the groups hardly reduce the rows,
+ * every page is aggregated on its own and flushed right away, so the partial
+ * aggregation stops holding the rows of the query.
  *
  * @since 20210630
  */
@@ -58,12 +88,47 @@ public class HashAggregationOmniOperator
 {
     private static final Logger log = Logger.get(HashAggregationOmniOperator.class);
 
-    private final OmniOperator omniOperator;
+    private static final int SPILL_PARTITION_COUNT = 16;
+
+    private static final long PARTIAL_AGGREGATION_SAMPLE_ROWS = 100_000;
+
+    // the partial aggregation is bypassed when the groups are more than this ratio of the input rows
+    private static final double MIN_PARTIAL_AGGREGATION_REDUCTION = 0.8;
+
+    private final VecAllocator vecAllocator;
+
+    private OmniOperator omniOperator;
+
+    private VecAllocatorMemoryContext nativeMemoryContext;
 
     private final OperatorContext operatorContext;
 
     private final Step step;
 
+    private final Optional<SpillInfo> spillInfo;
+
+    private Optional<PartitioningSpiller> spiller = Optional.empty();
+
+    private Optional<ListenableFuture<?>> spillInProgress = Optional.empty();
+
+    private OmniOperator mergeOperator;
+
+    private final Optional<PartialAggregationInfo> partialAggregationInfo;
+
+    private long tableInputRows;
+
+    private long flushedInputRows;
+
+    private long flushedOutputRows;
+
+    private boolean sampled;
+
+    private boolean eachPageFlushed;
+
+    private OmniOperator flushingOperator;
+
+    private Iterator<Page> flushingPages;
+
     /**
      * The Pages.
      */
@@ -80,10 +145,34 @@ public class HashAggregationOmniOperator
      * @param omniOperator the omni operator
      */
     public HashAggregationOmniOperator(OperatorContext operatorContext, OmniOperator omniOperator, Step step)
+    {
+        this(operatorContext, omniOperator, step, Optional.empty(), Optional.empty());
+    }
+
+    /**
+     * Instantiates a new Hash aggregation omni operator.
+     *
+     * @param operatorContext the operator context
+     * @param omniOperator the omni operator
+     * @param step the step
+     * @param spillInfo the operator factories and types for spilling, present when spilling is enabled
+     * @param partialAggregationInfo the operator factory and memory limit of a partial aggregation
+     */
+    public HashAggregationOmniOperator(OperatorContext operatorContext, OmniOperator omniOperator, Step step,
+                                       Optional<SpillInfo> spillInfo, Optional<PartialAggregationInfo> partialAggregationInfo)
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null.");
         this.omniOperator = requireNonNull(omniOperator, "omniOperator is null.");
+        this.vecAllocator = omniOperator.getVecAllocator();
         this.step = step;
+        this.spillInfo = requireNonNull(spillInfo, "spillInfo is null.");
+        this.partialAggregationInfo = requireNonNull(partialAggregationInfo, "partialAggregationInfo is null.");
+        if (spillInfo.isPresent()) {
+            this.nativeMemoryContext = VecAllocatorMemoryContext.revocableMemory(operatorContext, vecAllocator);
+        }
+        else {
+            this.nativeMemoryContext = VecAllocatorMemoryContext.userMemory(operatorContext, vecAllocator);
+        }
     }
 
     @Override
@@ -95,6 +184,12 @@ public class HashAggregationOmniOperator
     @Override
     public void finish()
     {
+        if (!finishing && spillInfo.isPresent()) {
+            // the memory of merging the partial states can not be revoked
+            nativeMemoryContext.close();
+            nativeMemoryContext = VecAllocatorMemoryContext.userMemory(operatorContext, vecAllocator);
+            nativeMemoryContext.update();
+        }
         finishing = true;
     }
 
@@ -105,15 +200,23 @@ public class HashAggregationOmniOperator
     }
 
     @Override
-    public void close()
+    public void close() throws IOException
     {
-        omniOperator.close();
+        // stop reading the partial states of an unfinished spill before the native operators are closed
+        spillInProgress.ifPresent(future -> future.cancel(true));
+        try (Closer closer = Closer.create()) {
+            closer.register(nativeMemoryContext::close);
+            spiller.ifPresent(closer::register);
+            closer.register(() -> closeOperator(mergeOperator));
+            closer.register(() -> closeOperator(flushingOperator));
+            closer.register(() -> closeOperator(omniOperator));
+        }
     }
 
     @Override
     public boolean needsInput()
     {
-        return !finishing;
+        return !finishing && flushingPages == null;
     }
 
     @Override
@@ -121,8 +224,50 @@ public class HashAggregationOmniOperator
     {
         checkState(!finishing, "Operator is already finishing");
         requireNonNull(page, "page is null");
-        VecBatch vecBatch = buildVecBatch(omniOperator.getVecAllocator(), page, this);
+        VecBatch vecBatch = buildVecBatch(vecAllocator, page, this);
         omniOperator.addInput(vecBatch);
+        nativeMemoryContext.update();
+
+        if (partialAggregationInfo.isPresent()) {
+            tableInputRows += page.getPositionCount();
+            if (eachPageFlushed || nativeMemoryContext.getReportedBytes() >= partialAggregationInfo.get().getMaxMemory()
+                    || (!sampled && tableInputRows >= PARTIAL_AGGREGATION_SAMPLE_ROWS)) {
+                flushPartialStates();
+            }
+        }
+    }
+
+    private void flushPartialStates()
+    {
+        flushingOperator = omniOperator;
+        flushingPages = new VecBatchToPageIterator(flushingOperator.getOutput());
+        omniOperator = partialAggregationInfo.get().getOmniFactory().createOperator(vecAllocator);
+        flushedInputRows = tableInputRows;
+        flushedOutputRows = 0;
+        tableInputRows = 0;
+    }
+
+    private Page getFlushedPage()
+    {
+        if (flushingPages.hasNext()) {
+            Page page = flushingPages.next();
+            flushedOutputRows += page.getPositionCount();
+            return page;
+        }
+        closeOperator(flushingOperator);
+        flushingOperator = null;
+        flushingPages = null;
+        nativeMemoryContext.update();
+
+        if (!sampled && flushedInputRows >= PARTIAL_AGGREGATION_SAMPLE_ROWS) {
+            sampled = true;
+            if (flushedOutputRows > flushedInputRows * MIN_PARTIAL_AGGREGATION_REDUCTION) {
+                log.debug("Partial aggregation %s reduced %s rows to %s groups, flushing each page",
+                        operatorContext.getOperatorId(), flushedInputRows, flushedOutputRows);
+                eachPageFlushed = true;
+            }
+        }
+        return null;
     }
 
     @Override
@@ -131,13 +276,19 @@ public class HashAggregationOmniOperator
         if (finished) {
             return null;
         }
+        if (flushingPages != null) {
+            return getFlushedPage();
+        }
         if (finishing) {
             if (pages == null) {
-                pages = new VecBatchToPageIterator(omniOperator.getOutput());
+                pages = spillInfo.isPresent() ? mergePartialStates() : new VecBatchToPageIterator(omniOperator.getOutput());
+                nativeMemoryContext.update();
             }
             else {
                 if (pages.hasNext()) {
-                    return pages.next();
+                    Page page = pages.next();
+                    nativeMemoryContext.update();
+                    return page;
                 }
                 else {
                     finished = true;
@@ -151,12 +302,25 @@ public class HashAggregationOmniOperator
     @Override
     public ListenableFuture<?> startMemoryRevoke()
     {
-        return null;
+        if (!spillInfo.isPresent() || finishing) {
+            return NOT_BLOCKED;
+        }
+        ListenableFuture<?> spillingFuture = spill(new VecBatchToPageIterator(omniOperator.getOutput()));
+        spillInProgress = Optional.of(spillingFuture);
+        return spillingFuture;
     }
 
     @Override
     public void finishMemoryRevoke()
     {
+        if (spillInProgress.isPresent()) {
+            // the spilled partial states are read from the native operator until the spill finished
+            getFutureValue(spillInProgress.get());
+            spillInProgress = Optional.empty();
+            omniOperator.close();
+            omniOperator = spillInfo.get().getAccumulatorFactory().createOperator(vecAllocator);
+        }
+        nativeMemoryContext.update();
     }
 
     public Step getStep()
@@ -164,6 +328,199 @@ public class HashAggregationOmniOperator
         return step;
     }
 
+    private ListenableFuture<?> spill(Iterator<Page> partialStates)
+    {
+        if (!spiller.isPresent()) {
+            SpillInfo info = spillInfo.get();
+            LocalPartitionGenerator partitionGenerator = new LocalPartitionGenerator(
+                    new InterpretedHashGenerator(info.getGroupByTypes(), info.getGroupByChannels()),
+                    SPILL_PARTITION_COUNT);
+            spiller = Optional.of(info.getPartitioningSpillerFactory().create(info.getSpillTypes(),
+                    partitionGenerator, operatorContext.getSpillContext(),
+                    operatorContext.newAggregateSystemMemoryContext()));
+        }
+        return spillPages(partialStates);
+    }
+
+    private ListenableFuture<?> spillPages(Iterator<Page> partialStates)
+    {
+        while (partialStates.hasNext()) {
+            Page page = partialStates.next();
+            Page onHeapPage = transferToOnHeapPage(page);
+            freePage(page);
+            ListenableFuture<?> spillingFuture = spiller.get().partitionAndSpill(onHeapPage, partition -> true)
+                    .getSpillingFuture();
+            if (!spillingFuture.isDone()) {
+                // a partition can only be spilled when the spill of the last page finished
+                return transformAsync(spillingFuture, ignored -> spillPages(partialStates), directExecutor());
+            }
+            getFutureValue(spillingFuture);
+        }
+        return NOT_BLOCKED;
+    }
+
+    private Iterator<Page> mergePartialStates()
+    {
+        if (!spiller.isPresent()) {
+            // nothing was spilled, only the partial states of the accumulator need merging
+            mergeOperator = spillInfo.get().getMergeFactory().createOperator(vecAllocator);
+            addPartialStates(new VecBatchToPageIterator(omniOperator.getOutput()));
+            closeOperator(omniOperator);
+            omniOperator = null;
+            return new VecBatchToPageIterator(mergeOperator.getOutput());
+        }
+
+        // like the hash aggregation of openLooKeng, the last partial states are spilled before the merge
+        getFutureValue(spill(new VecBatchToPageIterator(omniOperator.getOutput())));
+        closeOperator(omniOperator);
+        omniOperator = null;
+        log.debug("Merging %s spilled partitions of hash aggregation %s", SPILL_PARTITION_COUNT,
+                operatorContext.getOperatorId());
+        return new AbstractIterator<Page>()
+        {
+            private int partition;
+            private Iterator<Page> partitionPages;
+
+            @Override
+            protected Page computeNext()
+            {
+                while (partitionPages == null || !partitionPages.hasNext()) {
+                    closeOperator(mergeOperator);
+                    mergeOperator = null;
+                    if (partition == SPILL_PARTITION_COUNT) {
+                        spiller.get().verifyAllPartitionsRead();
+                        return endOfData();
+                    }
+                    mergeOperator = spillInfo.get().getMergeFactory().createOperator(vecAllocator);
+                    addPartialStates(spiller.get().getSpilledPages(partition++));
+                    partitionPages = new VecBatchToPageIterator(mergeOperator.getOutput());
+                }
+                return partitionPages.next();
+            }
+        };
+    }
+
+    private void addPartialStates(Iterator<Page> partialStates)
+    {
+        while (partialStates.hasNext()) {
+            Page page = partialStates.next();
+            if (page.getPositionCount() > 0) {
+                mergeOperator.addInput(buildVecBatch(vecAllocator, page, this));
+                nativeMemoryContext.update();
+            }
+        }
+    }
+
+    private static void closeOperator(OmniOperator operator)
+    {
+        if (operator != null) {
+            operator.close();
+        }
+    }
+
+    /**
+     * The operator factory and the memory limit of a partial aggregation.
+     *
+     * @since 20221017
+     */
+    public static class PartialAggregationInfo
+    {
+        private final OmniHashAggregationOperatorFactory omniFactory;
+
+        private final long maxMemory;
+
+        /**
+         * Instantiates a new partial aggregation info.
+         *
+         * @param omniFactory creates the operators which replace the flushed ones
+         * @param maxMemory the native memory of the partial aggregation which triggers a flush
+         */
+        public PartialAggregationInfo(OmniHashAggregationOperatorFactory omniFactory, long maxMemory)
+        {
+            this.omniFactory = requireNonNull(omniFactory, "omniFactory is null.");
+            this.maxMemory = maxMemory;
+        }
+
+        public OmniHashAggregationOperatorFactory getOmniFactory()
+        {
+            return omniFactory;
+        }
+
+        public long getMaxMemory()
+        {
+            return maxMemory;
+        }
+    }
+
+    /**
+     * The operator factories and types needed to spill the partial states.
+     *
+     * @since 20221017
+     */
+    public static class SpillInfo
+    {
+        private final OmniHashAggregationOperatorFactory accumulatorFactory;
+
+        private final OmniHashAggregationOperatorFactory mergeFactory;
+
+        private final List<Type> spillTypes;
+
+        private final List<Integer> groupByChannels;
+
+        private final PartitioningSpillerFactory partitioningSpillerFactory;
+
+        /**
+         * Instantiates a new spill info.
+         *
+         * @param accumulatorFactory creates the operators which accumulate partial states of the input
+         * @param mergeFactory creates the operators which merge partial states into the output
+         * @param spillTypes the types of the group by keys followed by the types of the partial states
+         * @param groupByCount the number of group by keys
+         * @param partitioningSpillerFactory the partitioning spiller factory
+         */
+        public SpillInfo(OmniHashAggregationOperatorFactory accumulatorFactory,
+                         OmniHashAggregationOperatorFactory mergeFactory, List<Type> spillTypes, int groupByCount,
+                         PartitioningSpillerFactory partitioningSpillerFactory)
+        {
+            this.accumulatorFactory = requireNonNull(accumulatorFactory, "accumulatorFactory is null.");
+            this.mergeFactory = requireNonNull(mergeFactory, "mergeFactory is null.");
+            this.spillTypes = ImmutableList.copyOf(requireNonNull(spillTypes, "spillTypes is null."));
+            this.groupByChannels = IntStream.range(0, groupByCount).boxed().collect(toImmutableList());
+            this.partitioningSpillerFactory = requireNonNull(partitioningSpillerFactory,
+                    "partitioningSpillerFactory is null.");
+        }
+
+        public OmniHashAggregationOperatorFactory getAccumulatorFactory()
+        {
+            return accumulatorFactory;
+        }
+
+        public OmniHashAggregationOperatorFactory getMergeFactory()
+        {
+            return mergeFactory;
+        }
+
+        public List<Type> getSpillTypes()
+        {
+            return spillTypes;
+        }
+
+        public List<Integer> getGroupByChannels()
+        {
+            return groupByChannels;
+        }
+
+        public List<Type> getGroupByTypes()
+        {
+            return spillTypes.subList(0, groupByChannels.size());
+        }
+
+        public PartitioningSpillerFactory getPartitioningSpillerFactory()
+        {
+            return partitioningSpillerFactory;
+        }
+    }
+
     /**
      * The type Hash aggregation omni operator factory.
      *
@@ -203,6 +560,14 @@ public class HashAggregationOmniOperator
 
         private DataType[] aggregationOutputTypes;
 
+        private boolean spillEnabled;
+
+        private PartitioningSpillerFactory partitioningSpillerFactory;
+
+        private Optional<SpillInfo> spillInfo = Optional.empty();
+
+        private Optional<DataSize> maxPartialAggregationMemorySize = Optional.empty();
+
         /**
          * Instantiates a new Hash aggregation omni operator factory.
          *
@@ -221,6 +586,38 @@ public class HashAggregationOmniOperator
                                                   int[] groupByInputChannels, DataType[] groupByInputTypes, int[] aggregationInputChannels,
                                                   DataType[] aggregationInputTypes, FunctionType[] aggregatorTypes,
                                                   List<Optional<Integer>> maskChannelList, DataType[] aggregationOutputTypes, AggregationNode.Step step)
+        {
+            this(operatorId, planNodeId, sourceTypes, groupByInputChannels, groupByInputTypes,
+                    aggregationInputChannels, aggregationInputTypes, aggregatorTypes, maskChannelList,
+                    aggregationOutputTypes, step, false, null, Optional.empty());
+        }
+
+        /**
+         * Instantiates a new Hash aggregation omni operator factory.
+         * <p>
+         * Only the steps which take partial states as input can spill, the
+         * partial states of raw input have types the planner does not provide.
+         *
+         * @param operatorId the operator id
+         * @param planNodeId the plan node id
+         * @param groupByInputChannels the group by input channels
+         * @param groupByInputTypes the group by input types
+         * @param aggregationInputChannels the aggregation input channels
+         * @param aggregationInputTypes the aggregation input types
+         * @param aggregatorTypes the aggregator types
+         * @param maskChannelList mask channel list for aggregators
+         * @param aggregationOutputTypes the aggregation output types
+         * @param step the step
+         * @param spillEnabled whether spilling is enabled
+         * @param partitioningSpillerFactory the partitioning spiller factory, used when spilling is enabled
+         * @param maxPartialAggregationMemorySize the native memory which makes a partial aggregation flush
+         */
+        public HashAggregationOmniOperatorFactory(int operatorId, PlanNodeId planNodeId, List<Type> sourceTypes,
+                                                  int[] groupByInputChannels, DataType[] groupByInputTypes, int[] aggregationInputChannels,
+                                                  DataType[] aggregationInputTypes, FunctionType[] aggregatorTypes,
+                                                  List<Optional<Integer>> maskChannelList, DataType[] aggregationOutputTypes, AggregationNode.Step step,
+                                                  boolean spillEnabled, PartitioningSpillerFactory partitioningSpillerFactory,
+                                                  Optional<DataSize> maxPartialAggregationMemorySize)
         {
             this.operatorId = operatorId;
             this.planNodeId = planNodeId;
@@ -255,10 +652,47 @@ public class HashAggregationOmniOperator
                     requireNonNull(aggregationOutputTypes, "aggregationOutputTypes is null."),
                     aggregationOutputTypes.length);
 
-            this.omniFactory = new OmniHashAggregationOperatorFactory(createExpressions(this.groupByInputChannels),
-                    this.groupByInputTypes, createExpressions(this.aggregationInputChannels),
-                    this.aggregationInputTypes, this.aggregatorTypes, maskChannelArray, this.aggregationOutputTypes, step.isInputRaw(),
+            this.spillEnabled = spillEnabled;
+            this.partitioningSpillerFactory = partitioningSpillerFactory;
+            this.maxPartialAggregationMemorySize = requireNonNull(maxPartialAggregationMemorySize,
+                    "maxPartialAggregationMemorySize is null.");
+
+            if (spillEnabled && !step.isInputRaw()) {
+                // accumulate partial states, which can be spilled and merged by the merge operators later
+                this.omniFactory = new OmniHashAggregationOperatorFactory(createExpressions(this.groupByInputChannels),
+                        this.groupByInputTypes, createExpressions(this.aggregationInputChannels),
+                        this.aggregationInputTypes, this.aggregatorTypes, maskChannelArray, this.aggregationInputTypes,
+                        false, true);
+                this.spillInfo = Optional.of(createSpillInfo(requireNonNull(partitioningSpillerFactory,
+                        "partitioningSpillerFactory is null.")));
+            }
+            else {
+                this.omniFactory = new OmniHashAggregationOperatorFactory(createExpressions(this.groupByInputChannels),
+                        this.groupByInputTypes, createExpressions(this.aggregationInputChannels),
+                        this.aggregationInputTypes, this.aggregatorTypes, maskChannelArray, this.aggregationOutputTypes, step.isInputRaw(),
+                        step.isOutputPartial());
+            }
+        }
+
+        private SpillInfo createSpillInfo(PartitioningSpillerFactory partitioningSpillerFactory)
+        {
+            // the partial states are laid out as the group by keys followed by the aggregations
+            int groupByLength = groupByInputChannels.length;
+            int[] mergeGroupByChannels = IntStream.range(0, groupByLength).toArray();
+            int[] mergeAggregationChannels = IntStream.range(groupByLength, groupByLength + aggregationInputChannels.length)
+                    .toArray();
+            int[] mergeMaskChannels = new int[aggregatorTypes.length];
+            Arrays.fill(mergeMaskChannels, INVALID_MASK_CHANNEL);
+            OmniHashAggregationOperatorFactory mergeFactory = new OmniHashAggregationOperatorFactory(
+                    createExpressions(mergeGroupByChannels), groupByInputTypes, createExpressions(mergeAggregationChannels),
+                    aggregationInputTypes, aggregatorTypes, mergeMaskChannels, aggregationOutputTypes, false,
                     step.isOutputPartial());
+
+            ImmutableList.Builder<Type> spillTypes = ImmutableList.builder();
+            Arrays.stream(groupByInputChannels).mapToObj(sourceTypes::get).forEach(spillTypes::add);
+            Arrays.stream(aggregationInputChannels).mapToObj(sourceTypes::get).forEach(spillTypes::add);
+            return new SpillInfo(omniFactory, mergeFactory, spillTypes.build(), groupByLength,
+                    partitioningSpillerFactory);
         }
 
         /**
@@ -308,7 +742,13 @@ public class HashAggregationOmniOperator
             OperatorContext operatorContext = driverContext.addOperatorContext(operatorId, planNodeId,
                     HashAggregationOmniOperator.class.getSimpleName());
             OmniOperator omniOperator = omniFactory.createOperator(vecAllocator);
-            return new HashAggregationOmniOperator(operatorContext, omniOperator, step);
+            Optional<PartialAggregationInfo> partialAggregationInfo = Optional.empty();
+            if (step == Step.PARTIAL && maxPartialAggregationMemorySize.isPresent()) {
+                partialAggregationInfo = Optional.of(new PartialAggregationInfo(omniFactory,
+                        maxPartialAggregationMemorySize.get().toBytes()));
+            }
+            return new HashAggregationOmniOperator(operatorContext, omniOperator, step, spillInfo,
+                    partialAggregationInfo);
         }
 
         @Override
@@ -326,7 +766,8 @@ public class HashAggregationOmniOperator
         {
             return new HashAggregationOmniOperatorFactory(operatorId, planNodeId, sourceTypes, groupByInputChannels,
                     groupByInputTypes, aggregationInputChannels, aggregationInputTypes, aggregatorTypes, maskChannels,
-                    aggregationOutputTypes, step);
+                    aggregationOutputTypes, step, spillEnabled, partitioningSpillerFactory,
+                    maxPartialAggregationMemorySize);
         }
 
         @Override
@@ -33,6 +33,7 @@ import io.prestosql.operator.PartitionedLookupSourceFactory;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.plan.PlanNodeId;
 import io.prestosql.spi.type.Type;
+import nova.hetu.olk.memory.VecAllocatorMemoryContext;
 import nova.hetu.olk.tool.OperatorUtils;
 import nova.hetu.olk.tool.VecAllocatorHelper;
 import nova.hetu.omniruntime.operator.OmniOperator;
@@ -237,6 +238,8 @@ public class HashBuilderOmniOperator
 
     private final OmniOperator omniOperator;
 
+    private final VecAllocatorMemoryContext nativeMemoryContext;
+
     /**
      * Instantiates a new Hash builder omni operator.
      *
@@ -257,6 +260,7 @@ public class HashBuilderOmniOperator
         this.hashCollisionsCounter = new HashCollisionsCounter(operatorContext);
         operatorContext.setInfoSupplier(hashCollisionsCounter);
         this.omniOperator = omniOperator;
+        this.nativeMemoryContext = VecAllocatorMemoryContext.userMemory(operatorContext, omniOperator.getVecAllocator());
     }
 
     @Override
@@ -307,6 +311,7 @@ public class HashBuilderOmniOperator
 
         VecBatch vecBatch = buildVecBatch(omniOperator.getVecAllocator(), page, this);
         omniOperator.addInput(vecBatch);
+        nativeMemoryContext.update();
 
         operatorContext.recordOutput(page.getSizeInBytes(), positionCount);
     }
@@ -351,6 +356,7 @@ public class HashBuilderOmniOperator
         }
 
         omniOperator.getOutput();
+        nativeMemoryContext.update();
         lookupSourceNotNeeded = Optional
                 .of(lookupSourceFactory.lendPartitionLookupSource(partitionIndex, new EmptyJoinHashSupplier()));
 
@@ -389,6 +395,7 @@ public class HashBuilderOmniOperator
         // close() can be called in any state, due for example to query failure, and
         // must clean resource up unconditionally
         omniOperator.close();
+        nativeMemoryContext.close();
         state = State.CLOSED;
     }
 
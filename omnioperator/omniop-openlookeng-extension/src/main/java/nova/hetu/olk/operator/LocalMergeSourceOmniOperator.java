@@ -111,7 +111,7 @@ public class LocalMergeSourceOmniOperator
             List<LocalExchangeSource> sources = IntStream.range(0, localExchange.getBufferCount()).boxed()
                     .map(index -> localExchange.getNextSource()).collect(toImmutableList());
             return new LocalMergeSourceOmniOperator(operatorContext, sources,
-                    orderByOmniOperatorFactory.createOperator(vecAllocator));
+                    orderByOmniOperatorFactory.createOperator(operatorContext, vecAllocator));
         }
 
         @Override
@@ -20,7 +20,6 @@ import com.google.common.io.Closer;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.SettableFuture;
 import io.hetu.core.transport.execution.buffer.PagesSerde;
-import io.hetu.core.transport.execution.buffer.PagesSerdeFactory;
 import io.prestosql.metadata.Split;
 import io.prestosql.operator.DriverContext;
 import io.prestosql.operator.ExchangeClient;
@@ -37,6 +36,7 @@ import io.prestosql.spi.plan.PlanNodeId;
 import io.prestosql.spi.type.Type;
 import io.prestosql.split.RemoteSplit;
 import io.prestosql.sql.gen.OrderingCompiler;
+import nova.hetu.olk.tool.OmniPagesSerdeFactory;
 import nova.hetu.olk.tool.VecAllocatorHelper;
 import nova.hetu.omniruntime.vector.VecAllocator;
 
@@ -77,7 +77,7 @@ public class MergeOmniOperator
 
         private final ExchangeClientSupplier exchangeClientSupplier;
 
-        private final PagesSerdeFactory serdeFactory;
+        private final OmniPagesSerdeFactory serdeFactory;
 
         private final List<Type> sourceTypes;
 
@@ -92,7 +92,7 @@ public class MergeOmniOperator
          * @param omniMergeId the omni merge id
          * @param sourceId the source id
          * @param exchangeClientSupplier the exchange client supplier
-         * @param serdeFactory the serde factory
+         * @param serdeFactory the serde factory, the pages are deserialized to omni blocks
          * @param orderingCompiler the ordering compiler
          * @param types the types
          * @param outputChannels the output channels
@@ -100,7 +100,7 @@ public class MergeOmniOperator
          * @param sortOrder the sort order
          */
         public MergeOmniOperatorFactory(int operatorId, int omniMergeId, PlanNodeId sourceId,
-                                        ExchangeClientSupplier exchangeClientSupplier, PagesSerdeFactory serdeFactory,
+                                        ExchangeClientSupplier exchangeClientSupplier, OmniPagesSerdeFactory serdeFactory,
                                         OrderingCompiler orderingCompiler, List<Type> types, List<Integer> outputChannels,
                                         List<Integer> sortChannels, List<SortOrder> sortOrder)
         {
@@ -130,7 +130,8 @@ public class MergeOmniOperator
                     MergeOmniOperator.class.getSimpleName());
 
             return new MergeOmniOperator(operatorContext, sourceId, exchangeClientSupplier,
-                    serdeFactory.createPagesSerde(), orderByOmniOperatorFactory.createOperator(vecAllocator));
+                    serdeFactory.createOmniPagesSerde(vecAllocator, sourceTypes),
+                    orderByOmniOperatorFactory.createOperator(operatorContext, vecAllocator));
         }
 
         @Override
@@ -17,21 +17,17 @@ package nova.hetu.olk.operator;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.primitives.Ints;
-import com.google.common.util.concurrent.MoreExecutors;
-import io.prestosql.execution.Lifespan;
-import io.prestosql.memory.context.MemoryTrackingContext;
+import com.google.common.util.concurrent.ListenableFuture;
 import io.prestosql.operator.DriverContext;
 import io.prestosql.operator.Operator;
 import io.prestosql.operator.OperatorContext;
 import io.prestosql.operator.OperatorFactory;
-import io.prestosql.operator.PipelineContext;
-import io.prestosql.operator.TaskContext;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.block.SortOrder;
 import io.prestosql.spi.plan.PlanNodeId;
 import io.prestosql.spi.type.Type;
-import io.prestosql.testing.TestingSession;
-import io.prestosql.testing.TestingTaskContext;
+import nova.hetu.olk.memory.VecAllocatorMemoryContext;
+import nova.hetu.olk.operator.SortedRunsSpiller.SortedRunsSpillerFactory;
 import nova.hetu.olk.tool.OperatorUtils;
 import nova.hetu.olk.tool.VecAllocatorHelper;
 import nova.hetu.olk.tool.VecBatchToPageIterator;
@@ -41,17 +37,17 @@ import nova.hetu.omniruntime.type.DataType;
 import nova.hetu.omniruntime.vector.VecAllocator;
 import nova.hetu.omniruntime.vector.VecBatch;
 
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.Executor;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.IntStream;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.collect.Iterators.transform;
-import static io.prestosql.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
 import static java.util.Objects.requireNonNull;
-import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
 import static nova.hetu.olk.tool.OperatorUtils.buildVecBatch;
 import static nova.hetu.olk.tool.OperatorUtils.createExpressions;
 
@@ -87,6 +83,8 @@ public class OrderByOmniOperator
 
         private final OmniSortOperatorFactory omniSortOperatorFactory;
 
+        private final Optional<SortedRunsSpillerFactory> spillerFactory;
+
         private boolean closed;
 
         /**
@@ -103,6 +101,26 @@ public class OrderByOmniOperator
         public static OrderByOmniOperatorFactory createOrderByOmniOperatorFactory(int operatorId, PlanNodeId planNodeId,
                                                                                   List<? extends Type> sourceTypes, List<Integer> outputChannels, List<Integer> sortChannels,
                                                                                   List<SortOrder> sortOrder)
+        {
+            return createOrderByOmniOperatorFactory(operatorId, planNodeId, sourceTypes, outputChannels, sortChannels,
+                    sortOrder, Optional.empty());
+        }
+
+        /**
+         * Create order by omni operator factory order by omni operator factory.
+         *
+         * @param operatorId the operator id
+         * @param planNodeId the plan node id
+         * @param sourceTypes the source types
+         * @param outputChannels the output channels
+         * @param sortChannels the sort channels
+         * @param sortOrder the sort order
+         * @param spillerFactory spills sorted runs of all the source channels, present when spilling is enabled
+         * @return the order by omni operator factory
+         */
+        public static OrderByOmniOperatorFactory createOrderByOmniOperatorFactory(int operatorId, PlanNodeId planNodeId,
+                                                                                  List<? extends Type> sourceTypes, List<Integer> outputChannels, List<Integer> sortChannels,
+                                                                                  List<SortOrder> sortOrder, Optional<SortedRunsSpillerFactory> spillerFactory)
         {
             DataType[] types = OperatorUtils.toDataTypes(sourceTypes);
 
@@ -120,7 +138,7 @@ public class OrderByOmniOperator
 
             return new OrderByOmniOperatorFactory(operatorId, planNodeId, (List<Type>) sourceTypes,
                     Ints.toArray(outputChannels), Ints.toArray(sortChannels), ascendings, nullFirsts,
-                    omniSortOperatorFactory);
+                    omniSortOperatorFactory, spillerFactory);
         }
 
         /**
@@ -139,6 +157,31 @@ public class OrderByOmniOperator
                                           int[] outputChannels, int[] sortChannels, int[] sortAscendings, int[] sortNullFirsts,
                                           OmniSortOperatorFactory omniSortOperatorFactory)
         {
+            this(operatorId, planNodeId, sourceTypes, outputChannels, sortChannels, sortAscendings, sortNullFirsts,
+                    omniSortOperatorFactory, Optional.empty());
+        }
+
+        /**
+         * Instantiates a new Order by omni operator factory.
+         *
+         * @param operatorId the operator id
+         * @param planNodeId the plan node id
+         * @param sourceTypes the source types
+         * @param outputChannels the output channels
+         * @param sortChannels the sort channels
+         * @param sortAscendings the sort ascendings
+         * @param sortNullFirsts the sort null firsts
+         * @param omniSortOperatorFactory the omni sort operator factory
+         * @param spillerFactory spills sorted runs of all the source channels, present when spilling is enabled
+         */
+        public OrderByOmniOperatorFactory(int operatorId, PlanNodeId planNodeId, List<Type> sourceTypes,
+                                          int[] outputChannels, int[] sortChannels, int[] sortAscendings, int[] sortNullFirsts,
+                                          OmniSortOperatorFactory omniSortOperatorFactory,
+                                          Optional<SortedRunsSpillerFactory> spillerFactory)
+        {
+            checkArgument(!spillerFactory.isPresent()
+                            || Arrays.equals(outputChannels, IntStream.range(0, sourceTypes.size()).toArray()),
+                    "spilled runs must have all the source channels");
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
             this.sourceTypes = ImmutableList.copyOf(requireNonNull(sourceTypes, "sourceTypes is null"));
@@ -147,6 +190,7 @@ public class OrderByOmniOperator
             this.sortAscendings = sortAscendings;
             this.sortNullFirsts = sortNullFirsts;
             this.omniSortOperatorFactory = omniSortOperatorFactory;
+            this.spillerFactory = spillerFactory;
         }
 
         @Override
@@ -158,35 +202,27 @@ public class OrderByOmniOperator
 
             OperatorContext operatorContext = driverContext.addOperatorContext(operatorId, planNodeId,
                     OrderByOmniOperator.class.getSimpleName());
+            if (spillerFactory.isPresent()) {
+                OmniOperator omniSortOperator = spillerFactory.get().getSortOperatorFactory().createOperator(vecAllocator);
+                return new OrderByOmniOperator(operatorContext, omniSortOperator,
+                        Optional.of(spillerFactory.get().create(operatorContext, omniSortOperator)));
+            }
             OmniOperator omniSortOperator = omniSortOperatorFactory.createOperator(vecAllocator);
             return new OrderByOmniOperator(operatorContext, omniSortOperator);
         }
 
         /**
-         * Create operator operator.
+         * Creates an operator sharing the operator context of the operator which
+         * merges through it, so its native memory is reported to that operator.
          *
+         * @param operatorContext the operator context of the merging operator
+         * @param vecAllocator vector allocator
          * @return the operator
          */
-        public Operator createOperator(VecAllocator vecAllocator)
+        public Operator createOperator(OperatorContext operatorContext, VecAllocator vecAllocator)
         {
-            // all this is prepared for a fake driverContext to avoid change the original
-            // pipeline
-            Executor mockExecutor = MoreExecutors.directExecutor();
-            ScheduledExecutorService mockScheduledExecutorService = newSingleThreadScheduledExecutor();
-            TaskContext mockTaskContext = TestingTaskContext.createTaskContext(mockExecutor,
-                    mockScheduledExecutorService, TestingSession.testSessionBuilder().build());
-            MemoryTrackingContext mockMemoryTrackingContext = new MemoryTrackingContext(
-                    newSimpleAggregatedMemoryContext(), newSimpleAggregatedMemoryContext(),
-                    newSimpleAggregatedMemoryContext());
-            PipelineContext mockPipelineContext = new PipelineContext(1, mockTaskContext, mockExecutor,
-                    mockScheduledExecutorService, mockMemoryTrackingContext, false, false, false);
-            DriverContext mockDriverContext = new DriverContext(mockPipelineContext, mockExecutor,
-                    mockScheduledExecutorService, mockMemoryTrackingContext, Lifespan.taskWide(), 0);
-            OperatorContext mockOperatorContext = mockDriverContext.addOperatorContext(1,
-                    new PlanNodeId("Fake node for creating the OrderByOmniOperator"), "OrderByOmniOperator type");
-
             OmniOperator omniSortOperator = omniSortOperatorFactory.createOperator(vecAllocator);
-            return new OrderByOmniOperator(mockOperatorContext, omniSortOperator);
+            return new OrderByOmniOperator(operatorContext, omniSortOperator);
         }
 
         @Override
@@ -199,7 +235,7 @@ public class OrderByOmniOperator
         public OperatorFactory duplicate()
         {
             return new OrderByOmniOperatorFactory(operatorId, planNodeId, sourceTypes, outputChannels, sortChannels,
-                    sortAscendings, sortNullFirsts, omniSortOperatorFactory);
+                    sortAscendings, sortNullFirsts, omniSortOperatorFactory, spillerFactory);
         }
 
         @Override
@@ -235,6 +271,10 @@ public class OrderByOmniOperator
 
     private final OmniOperator omniOperator;
 
+    private final VecAllocatorMemoryContext nativeMemoryContext;
+
+    private final Optional<SortedRunsSpiller> spiller;
+
     private Iterator<Optional<Page>> sortedPages;
 
     private State state = State.NEEDS_INPUT;
@@ -246,9 +286,26 @@ public class OrderByOmniOperator
      * @param omniOperator the omni operator
      */
     public OrderByOmniOperator(OperatorContext operatorContext, OmniOperator omniOperator)
+    {
+        this(operatorContext, omniOperator, Optional.empty());
+    }
+
+    /**
+     * Instantiates a new Order by omni operator.
+     *
+     * @param operatorContext the operator context
+     * @param omniOperator the omni operator
+     * @param spiller the spiller which took over the omni operator, present when spilling is enabled
+     */
+    public OrderByOmniOperator(OperatorContext operatorContext, OmniOperator omniOperator,
+                               Optional<SortedRunsSpiller> spiller)
     {
         this.operatorContext = operatorContext;
         this.omniOperator = omniOperator;
+        this.spiller = requireNonNull(spiller, "spiller is null");
+        // the spiller reports the memory of the sort operators itself
+        this.nativeMemoryContext = VecAllocatorMemoryContext.userMemory(operatorContext,
+                spiller.isPresent() ? null : omniOperator.getVecAllocator());
     }
 
     @Override
@@ -274,8 +331,13 @@ public class OrderByOmniOperator
             return;
         }
 
+        if (spiller.isPresent()) {
+            spiller.get().addInput(page);
+            return;
+        }
         VecBatch vecBatch = buildVecBatch(omniOperator.getVecAllocator(), page, this);
         omniOperator.addInput(vecBatch);
+        nativeMemoryContext.update();
     }
 
     @Override
@@ -304,10 +366,30 @@ public class OrderByOmniOperator
     {
         if (state == State.NEEDS_INPUT) {
             state = State.HAS_OUTPUT;
+            if (spiller.isPresent()) {
+                sortedPages = spiller.get().getSortedPages();
+                return;
+            }
             sortedPages = transform(new VecBatchToPageIterator(omniOperator.getOutput()), Optional::of);
+            nativeMemoryContext.update();
         }
     }
 
+    @Override
+    public ListenableFuture<?> startMemoryRevoke()
+    {
+        if (spiller.isPresent() && state == State.NEEDS_INPUT) {
+            return spiller.get().startSpill();
+        }
+        return NOT_BLOCKED;
+    }
+
+    @Override
+    public void finishMemoryRevoke()
+    {
+        spiller.ifPresent(SortedRunsSpiller::finishSpill);
+    }
+
     @Override
     public boolean isFinished()
     {
@@ -315,8 +397,14 @@ public class OrderByOmniOperator
     }
 
     @Override
-    public void close()
+    public void close() throws IOException
     {
-        omniOperator.close();
+        if (spiller.isPresent()) {
+            spiller.get().close();
+        }
+        else {
+            omniOperator.close();
+        }
+        nativeMemoryContext.close();
     }
 }
@@ -34,10 +34,15 @@ import io.prestosql.operator.TaskContext;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.PageBuilder;
 import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.BlockBuilder;
+import io.prestosql.spi.block.RunLengthEncodedBlock;
 import io.prestosql.spi.plan.PlanNodeId;
 import io.prestosql.spi.predicate.NullableValue;
 import io.prestosql.spi.type.Type;
+import nova.hetu.olk.block.RunLengthEncodedOmniBlock;
 import nova.hetu.olk.tool.BlockUtils;
+import nova.hetu.olk.tool.OmniPagesSerde;
+import nova.hetu.olk.tool.OmniPagesSerdeFactory;
 import nova.hetu.olk.tool.OperatorUtils;
 import nova.hetu.olk.tool.VecAllocatorHelper;
 import nova.hetu.olk.tool.VecBatchToPageIterator;
@@ -165,12 +170,22 @@ public class PartitionedOutputOmniOperator
         private final DataSize maxMemory;
         private final int[] bucketToPartition;
         private final List<Type> hashChannelTypes;
+        private final Optional<OmniPagesSerdeFactory> serdeFactory;
         private boolean isHashPrecomputed = true;
 
         public PartitionedOutputOmniFactory(PartitionFunction partitionFunction, List<Integer> partitionChannels,
                                             List<Optional<NullableValue>> partitionConstants, boolean replicatesAnyRow, OptionalInt nullChannel,
                                             OutputBuffer outputBuffer, DataSize maxMemory, int[] bucketToPartition, boolean isHashPrecomputed,
                                             List<Type> hashChannelTypes)
+        {
+            this(partitionFunction, partitionChannels, partitionConstants, replicatesAnyRow, nullChannel, outputBuffer,
+                    maxMemory, bucketToPartition, isHashPrecomputed, hashChannelTypes, Optional.empty());
+        }
+
+        public PartitionedOutputOmniFactory(PartitionFunction partitionFunction, List<Integer> partitionChannels,
+                                            List<Optional<NullableValue>> partitionConstants, boolean replicatesAnyRow, OptionalInt nullChannel,
+                                            OutputBuffer outputBuffer, DataSize maxMemory, int[] bucketToPartition, boolean isHashPrecomputed,
+                                            List<Type> hashChannelTypes, Optional<OmniPagesSerdeFactory> serdeFactory)
         {
             this.partitionFunction = requireNonNull(partitionFunction, "partitionFunction is null");
             this.partitionChannels = requireNonNull(partitionChannels, "partitionChannels is null");
@@ -182,6 +197,7 @@ public class PartitionedOutputOmniOperator
             this.bucketToPartition = requireNonNull(bucketToPartition, "bucketToPartition is null");
             this.hashChannelTypes = requireNonNull(hashChannelTypes, "hashChannelTypes is null");
             this.isHashPrecomputed = requireNonNull(isHashPrecomputed);
+            this.serdeFactory = requireNonNull(serdeFactory, "serdeFactory is null");
         }
 
         @Override
@@ -206,7 +222,7 @@ public class PartitionedOutputOmniOperator
                     hashChannels);
             return new PartitionedOutputOmniOperatorFactory(operatorId, planNodeId, types, pagePreprocessor,
                     partitionFunction, partitionChannels, partitionConstants, replicatesAnyRow, nullChannel,
-                    outputBuffer, maxMemory, omniPartitionedOutPutOperatorFactory);
+                    outputBuffer, maxMemory, omniPartitionedOutPutOperatorFactory, serdeFactory);
         }
     }
 
@@ -225,12 +241,14 @@ public class PartitionedOutputOmniOperator
         private final OutputBuffer outputBuffer;
         private final DataSize maxMemory;
         private final OmniPartitionedOutPutOperatorFactory omniPartitionedOutPutOperatorFactory;
+        private final Optional<OmniPagesSerdeFactory> serdeFactory;
 
         public PartitionedOutputOmniOperatorFactory(int operatorId, PlanNodeId planNodeId, List<Type> sourceTypes,
                                                     Function<Page, Page> pagePreprocessor, PartitionFunction partitionFunction,
                                                     List<Integer> partitionChannels, List<Optional<NullableValue>> partitionConstants,
                                                     boolean replicatesAnyRow, OptionalInt nullChannel, OutputBuffer outputBuffer, DataSize maxMemory,
-                                                    OmniPartitionedOutPutOperatorFactory omniPartitionedOutPutOperatorFactory)
+                                                    OmniPartitionedOutPutOperatorFactory omniPartitionedOutPutOperatorFactory,
+                                                    Optional<OmniPagesSerdeFactory> serdeFactory)
         {
             this.operatorId = operatorId;
             this.planNodeId = requireNonNull(planNodeId, "planNodeId is null");
@@ -244,6 +262,7 @@ public class PartitionedOutputOmniOperator
             this.outputBuffer = requireNonNull(outputBuffer, "outputBuffer is null");
             this.maxMemory = requireNonNull(maxMemory, "maxMemory is null");
             this.omniPartitionedOutPutOperatorFactory = omniPartitionedOutPutOperatorFactory;
+            this.serdeFactory = requireNonNull(serdeFactory, "serdeFactory is null");
         }
 
         @Override
@@ -256,9 +275,11 @@ public class PartitionedOutputOmniOperator
             OmniOperator omniOperator = omniPartitionedOutPutOperatorFactory.createOperator(vecAllocator);
             String id = operatorContext.getUniqueId();
             outputBuffer.addInputChannel(id);
+            PagesSerde serde = serdeFactory.<PagesSerde>map(factory -> factory.createOmniPagesSerde(vecAllocator,
+                    sourceTypes)).orElseGet(driverContext::getSerde);
             return new PartitionedOutputOmniOperator(id, operatorContext, sourceTypes, pagePreprocessor,
                     partitionFunction, partitionChannels, partitionConstants, replicatesAnyRow, nullChannel,
-                    outputBuffer, maxMemory, omniOperator);
+                    outputBuffer, maxMemory, omniOperator, serde);
         }
 
         @Override
@@ -277,7 +298,7 @@ public class PartitionedOutputOmniOperator
         {
             return new PartitionedOutputOmniOperatorFactory(operatorId, planNodeId, sourceTypes, pagePreprocessor,
                     partitionFunction, partitionChannels, partitionConstants, replicatesAnyRow, nullChannel,
-                    outputBuffer, maxMemory, omniPartitionedOutPutOperatorFactory);
+                    outputBuffer, maxMemory, omniPartitionedOutPutOperatorFactory, serdeFactory);
         }
 
         @Override
@@ -299,14 +320,24 @@ public class PartitionedOutputOmniOperator
                                          Function<Page, Page> pagePreprocessor, PartitionFunction partitionFunction, List<Integer> partitionChannels,
                                          List<Optional<NullableValue>> partitionConstants, boolean replicatesAnyRow, OptionalInt nullChannel,
                                          OutputBuffer outputBuffer, DataSize maxMemory, OmniOperator omniOperator)
+    {
+        this(id, operatorContext, sourceTypes, pagePreprocessor, partitionFunction, partitionChannels,
+                partitionConstants, replicatesAnyRow, nullChannel, outputBuffer, maxMemory, omniOperator,
+                operatorContext.getDriverContext().getSerde());
+    }
+
+    public PartitionedOutputOmniOperator(String id, OperatorContext operatorContext, List<Type> sourceTypes,
+                                         Function<Page, Page> pagePreprocessor, PartitionFunction partitionFunction, List<Integer> partitionChannels,
+                                         List<Optional<NullableValue>> partitionConstants, boolean replicatesAnyRow, OptionalInt nullChannel,
+                                         OutputBuffer outputBuffer, DataSize maxMemory, OmniOperator omniOperator, PagesSerde serde)
     {
         this.operatorContext = requireNonNull(operatorContext, "operatorContext is null");
         this.pagePreprocessor = requireNonNull(pagePreprocessor, "pagePreprocessor is null");
         this.omniOperator = omniOperator;
 
         this.partitionFunction = new PagePartitioner(id, operatorContext, partitionFunction, partitionChannels,
-                partitionConstants, replicatesAnyRow, nullChannel, outputBuffer,
-                operatorContext.getDriverContext().getSerde(), sourceTypes, maxMemory, omniOperator);
+                partitionConstants, replicatesAnyRow, nullChannel, outputBuffer, serde, sourceTypes, maxMemory,
+                omniOperator);
 
         operatorContext.setInfoSupplier(this::getInfo);
         this.systemMemoryContext = operatorContext
@@ -326,7 +357,9 @@ public class PartitionedOutputOmniOperator
         private final List<Integer> partitionChannels;
         private final List<Optional<Block>> partitionConstants;
         private final PagesSerde serde;
+        private final boolean isVectorSerde;
         private final PageBuilder[] pageBuilders;
+        private final long maxPageSizeInBytes;
         private final boolean replicatesAnyRow;
         private final OptionalInt nullChannel;
         private final AtomicLong rowsAdded = new AtomicLong();
@@ -351,10 +384,12 @@ public class PartitionedOutputOmniOperator
             this.outputBuffer = requireNonNull(outputBuffer, "outputBuffer is null");
             this.sourceTypes = requireNonNull(sourceTypes, "sourceTypes is null");
             this.serde = requireNonNull(serde, "serdeFactory is null");
+            this.isVectorSerde = serde instanceof OmniPagesSerde;
 
             int partitionCount = partitionFunction.getPartitionCount();
             int pageSize = min(DEFAULT_MAX_PAGE_SIZE_IN_BYTES, ((int) maxMemory.toBytes()) / partitionCount);
             pageSize = max(1, pageSize);
+            this.maxPageSizeInBytes = pageSize;
             this.pageBuilders = new PageBuilder[partitionCount];
             for (int i = 0; i < partitionCount; i++) {
                 pageBuilders[i] = PageBuilder.withMaxPageSize(pageSize, sourceTypes);
@@ -426,7 +461,8 @@ public class PartitionedOutputOmniOperator
             VecBatch originalAndPartitionArgVecBatch = addPartitionFunctionArguments(originalVecBatch);
 
             omniOperator.addInput(originalAndPartitionArgVecBatch);
-            flush(true);
+            appendPartitions();
+            flush(false);
 
             originalVecBatch.close();
         }
@@ -438,16 +474,11 @@ public class PartitionedOutputOmniOperator
             for (int i = 0; i < partitionChannels.size(); i++) {
                 Optional<Block> partitionConstant = partitionConstants.get(i);
                 if (partitionConstant.isPresent()) {
-                    Block block = OperatorUtils.buildOffHeapBlock(omniOperator.getVecAllocator(),
-                            partitionConstant.get());
-                    // Because there is no vec corresponding to RunLengthEncodedBlock,
-                    // the original data is directly constructed.
-                    int[] positions = new int[positionCount];
-                    Arrays.fill(positions, 0);
-                    vecList.add(((Vec) block.getValues()).copyPositions(positions, 0, positionCount));
-                    // there is no need to release partitionConstant because it is converted from
-                    // NullableValue, which is always in on heap
-                    block.close();
+                    // the partition function needs the constant at every position, the vector is expanded
+                    // natively and owned by the vec batch
+                    Block block = new RunLengthEncodedOmniBlock(omniOperator.getVecAllocator(),
+                            new RunLengthEncodedBlock(partitionConstant.get(), positionCount), null);
+                    vecList.add((Vec) block.getValues());
                 }
                 else {
                     vecList.add(vecList.get(partitionChannels.get(i)).slice(0, positionCount));
@@ -456,30 +487,70 @@ public class PartitionedOutputOmniOperator
             return new VecBatch(vecList, positionCount);
         }
 
+        private void appendPartitions()
+        {
+            // the native operator outputs one page per partition, in partition order
+            VecBatchToPageIterator pageIterator = new VecBatchToPageIterator(omniOperator.getOutput());
+            int partition = 0;
+            while (pageIterator.hasNext()) {
+                Page partitionPage = pageIterator.next();
+                if (partitionPage.getPositionCount() > 0) {
+                    if (isVectorSerde && pageBuilders[partition].isEmpty()
+                            && partitionPage.getSizeInBytes() >= maxPageSizeInBytes) {
+                        // large enough on its own, serialized straight from the vectors
+                        enqueue(partition, partitionPage);
+                    }
+                    else {
+                        appendToPartition(partition, OperatorUtils.transferToOnHeapPage(partitionPage));
+                    }
+                }
+                BlockUtils.freePage(partitionPage);
+                partition++;
+            }
+        }
+
+        private void appendToPartition(int partition, Page page)
+        {
+            PageBuilder pageBuilder = pageBuilders[partition];
+            if (pageBuilder.isEmpty() && page.getSizeInBytes() >= maxPageSizeInBytes) {
+                // large enough on its own, no need to copy it
+                enqueue(partition, page);
+                return;
+            }
+            pageBuilder.declarePositions(page.getPositionCount());
+            for (int channel = 0; channel < page.getChannelCount(); channel++) {
+                Type type = sourceTypes.get(channel);
+                Block block = page.getBlock(channel);
+                BlockBuilder blockBuilder = pageBuilder.getBlockBuilder(channel);
+                for (int position = 0; position < page.getPositionCount(); position++) {
+                    type.appendTo(block, position, blockBuilder);
+                }
+            }
+        }
+
         /**
-         * write data to pages
+         * write the buffered rows of the partitions to the output buffer
          *
-         * @param force force write
+         * @param force write all the partitions, otherwise only the full ones
          */
         public void flush(boolean force)
         {
-            // add all full pages to output buffer
-            VecBatchToPageIterator pageIterator = new VecBatchToPageIterator(omniOperator.getOutput());
-            int partition = 0;
-            if (force) {
-                // if (!partitionPageBuilder.isEmpty() && (force ||
-                // partitionPageBuilder.isFull()))
-                while (pageIterator.hasNext()) {
-                    Page pagePartition = pageIterator.next();
-                    Page onHeapPage = OperatorUtils.transferToOnHeapPage(pagePartition);
-                    SerializedPage serializedPage = serde.serialize(onHeapPage);
-                    BlockUtils.freePage(pagePartition);
-                    outputBuffer.enqueue(partition, ImmutableList.of(serializedPage), id);
-                    pagesAdded.incrementAndGet();
-                    rowsAdded.addAndGet(pagePartition.getPositionCount());
-                    partition++;
+            for (int partition = 0; partition < pageBuilders.length; partition++) {
+                PageBuilder pageBuilder = pageBuilders[partition];
+                if (!pageBuilder.isEmpty() && (force || pageBuilder.isFull())) {
+                    Page page = pageBuilder.build();
+                    pageBuilder.reset();
+                    enqueue(partition, page);
                 }
             }
         }
+
+        private void enqueue(int partition, Page page)
+        {
+            SerializedPage serializedPage = serde.serialize(page);
+            outputBuffer.enqueue(partition, ImmutableList.of(serializedPage), id);
+            pagesAdded.incrementAndGet();
+            rowsAdded.addAndGet(page.getPositionCount());
+        }
     }
 }
@@ -64,6 +64,7 @@ import io.prestosql.split.EmptySplit;
 import io.prestosql.split.EmptySplitPageSource;
 import io.prestosql.split.PageSourceProvider;
 import io.prestosql.statestore.StateStoreProvider;
+import nova.hetu.olk.tool.OmniDictionaryCache;
 import nova.hetu.olk.tool.VecAllocatorHelper;
 import nova.hetu.omniruntime.vector.VecAllocator;
 
@@ -89,6 +90,7 @@ import static io.prestosql.operator.WorkProcessor.TransformationState.ofResult;
 import static java.util.Objects.requireNonNull;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static nova.hetu.olk.operator.filterandproject.OmniMergePages.mergePages;
+import static nova.hetu.olk.operator.filterandproject.OmniPageProcessor.closePageProcessor;
 import static nova.hetu.olk.tool.OperatorUtils.transferToOffHeapPages;
 
 public class ScanFilterAndProjectOmniOperator
@@ -96,6 +98,8 @@ public class ScanFilterAndProjectOmniOperator
 {
     private final WorkProcessor<Page> pages;
 
+    private final PageProcessor pageProcessor;
+
     private RecordCursor cursor;
     private ConnectorPageSource pageSource;
 
@@ -105,6 +109,7 @@ public class ScanFilterAndProjectOmniOperator
     private long readTimeNanos;
     private VecAllocator vecAllocator;
     private List<Type> inputTypes;
+    private final OmniDictionaryCache dictionaryCache = new OmniDictionaryCache();
 
     private static final Logger log = Logger.get(ScanFilterAndProjectOmniOperator.class);
 
@@ -122,6 +127,7 @@ public class ScanFilterAndProjectOmniOperator
                 requireNonNull(memoryTrackingContext, "memoryTrackingContext is null").aggregateSystemMemoryContext(),
                 minOutputPageSize, minOutputPageRowCount, tableScanNodeOptional, stateStoreProviderOptional,
                 queryIdOptional, metadataOptional, dynamicFilterCacheManagerOptional));
+        this.pageProcessor = pageProcessor;
         this.vecAllocator = vecAllocator;
         this.inputTypes = inputTypes;
     }
@@ -176,6 +182,8 @@ public class ScanFilterAndProjectOmniOperator
     @Override
     public void close()
     {
+        closePageProcessor(pageProcessor);
+        dictionaryCache.close();
         if (pageSource != null) {
             try {
                 pageSource.close();
@@ -388,7 +396,7 @@ public class ScanFilterAndProjectOmniOperator
                 }
                 pageBuilder.reset();
                 outputMemoryContext.setBytes(pageBuilder.getRetainedSizeInBytes());
-                page = transferToOffHeapPages(vecAllocator, page, outputTypes);
+                page = transferToOffHeapPages(vecAllocator, page, outputTypes, dictionaryCache);
                 return ProcessState.ofResult(page);
             }
             else if (finished) {
@@ -495,7 +503,7 @@ public class ScanFilterAndProjectOmniOperator
                     log.error("Filter page error: %s", e.getMessage());
                 }
             }
-            page = transferToOffHeapPages(vecAllocator, page, inputTypes);
+            page = transferToOffHeapPages(vecAllocator, page, inputTypes, dictionaryCache);
             return ProcessState.ofResult(page);
         }
 
@@ -0,0 +1,329 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.operator;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Closer;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.log.Logger;
+import io.prestosql.operator.OperatorContext;
+import io.prestosql.operator.PageWithPositionComparator;
+import io.prestosql.operator.WorkProcessor;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.block.SortOrder;
+import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.Spiller;
+import io.prestosql.spiller.SpillerFactory;
+import io.prestosql.sql.gen.OrderingCompiler;
+import nova.hetu.olk.memory.VecAllocatorMemoryContext;
+import nova.hetu.olk.tool.VecBatchToPageIterator;
+import nova.hetu.omniruntime.operator.OmniOperator;
+import nova.hetu.omniruntime.operator.sort.OmniSortOperatorFactory;
+import nova.hetu.omniruntime.vector.VecAllocator;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static com.google.common.collect.Iterators.transform;
+import static io.airlift.concurrent.MoreFutures.getFutureValue;
+import static io.prestosql.util.MergeSortedPages.mergeSortedPages;
+import static java.util.Objects.requireNonNull;
+import static nova.hetu.olk.tool.BlockUtils.freePage;
+import static nova.hetu.olk.tool.OperatorUtils.buildVecBatch;
+import static nova.hetu.olk.tool.OperatorUtils.createExpressions;
+import static nova.hetu.olk.tool.OperatorUtils.toDataTypes;
+import static nova.hetu.olk.tool.OperatorUtils.transferToOffHeapPages;
+import static nova.hetu.olk.tool.OperatorUtils.transferToOnHeapPage;
+
+/**
+ * Sorts the input of an operator in an OmniRuntime sort operator whose memory
+ * is revocable. A memory revoke writes the sorted rows of the native operator
+ * to disk as one sorted run without blocking the driver, and a new native
+ * operator is started once the run is on disk. The sorted pages
+ * are read from the native operator when nothing was spilled, otherwise the
+ * spilled runs and the rows in memory are merged on heap, one page at a time,
+ * and transferred off heap again.
+ *
+ * @since 20221017
+ */
+public class SortedRunsSpiller
+        implements Closeable
+{
+    private static final Logger log = Logger.get(SortedRunsSpiller.class);
+
+    private final OperatorContext operatorContext;
+
+    private final VecAllocator vecAllocator;
+
+    private final SortedRunsSpillerFactory factory;
+
+    private OmniOperator sortOperator;
+
+    private VecAllocatorMemoryContext nativeMemoryContext;
+
+    private Optional<Spiller> spiller = Optional.empty();
+
+    private Optional<ListenableFuture<?>> spillInProgress = Optional.empty();
+
+    private int spilledRuns;
+
+    /**
+     * Instantiates a new sorted runs spiller.
+     *
+     * @param operatorContext the operator context
+     * @param sortOperator the native sort operator taking the first rows
+     * @param factory the factory of the spiller
+     */
+    public SortedRunsSpiller(OperatorContext operatorContext, OmniOperator sortOperator,
+                             SortedRunsSpillerFactory factory)
+    {
+        this.operatorContext = requireNonNull(operatorContext, "operatorContext is null.");
+        this.sortOperator = requireNonNull(sortOperator, "sortOperator is null.");
+        this.vecAllocator = sortOperator.getVecAllocator();
+        this.factory = requireNonNull(factory, "factory is null.");
+        this.nativeMemoryContext = VecAllocatorMemoryContext.revocableMemory(operatorContext, vecAllocator);
+    }
+
+    /**
+     * Adds a page to the native sort operator.
+     *
+     * @param page the page
+     */
+    public void addInput(Page page)
+    {
+        checkState(sortOperator != null, "Sorted pages are already read");
+        checkState(!spillInProgress.isPresent(), "Spill is in progress");
+        sortOperator.addInput(buildVecBatch(vecAllocator, page, this));
+        nativeMemoryContext.update();
+    }
+
+    /**
+     * Starts to spill the rows of the native sort operator as one sorted run.
+     * The rows are read from the native operator until the run is on disk,
+     * so no input is taken before {@link #finishSpill()}.
+     *
+     * @return a future which is done when the run is on disk
+     */
+    public ListenableFuture<?> startSpill()
+    {
+        checkState(sortOperator != null, "Sorted pages are already read");
+        checkState(!spillInProgress.isPresent(), "Spill is already in progress");
+        ListenableFuture<?> spillingFuture = spillRun(new VecBatchToPageIterator(sortOperator.getOutput()));
+        spillInProgress = Optional.of(spillingFuture);
+        return spillingFuture;
+    }
+
+    /**
+     * Starts a new native sort operator once the run of the last spill is on
+     * disk, does nothing when no spill was started.
+     */
+    public void finishSpill()
+    {
+        if (!spillInProgress.isPresent()) {
+            return;
+        }
+        getFutureValue(spillInProgress.get());
+        spillInProgress = Optional.empty();
+        sortOperator.close();
+        sortOperator = factory.getSortOperatorFactory().createOperator(vecAllocator);
+        nativeMemoryContext.update();
+    }
+
+    /**
+     * Gets the sorted pages off heap, an empty page means the merge yielded.
+     * The memory of the native operator is not revocable anymore.
+     *
+     * @return the sorted pages
+     */
+    public Iterator<Optional<Page>> getSortedPages()
+    {
+        checkState(sortOperator != null, "Sorted pages are already read");
+        checkState(!spillInProgress.isPresent(), "Spill is in progress");
+        nativeMemoryContext.close();
+        nativeMemoryContext = VecAllocatorMemoryContext.userMemory(operatorContext, vecAllocator);
+        if (!spiller.isPresent()) {
+            return transform(new VecBatchToPageIterator(sortOperator.getOutput()), Optional::of);
+        }
+
+        // the rows in memory are the last run, so the native operator is free before the merge
+        getFutureValue(spillRun(new VecBatchToPageIterator(sortOperator.getOutput())));
+        sortOperator.close();
+        sortOperator = null;
+        nativeMemoryContext.update();
+        log.debug("Merging %s sorted runs of operator %s", spilledRuns, operatorContext.getOperatorId());
+
+        List<Type> types = factory.getTypes();
+        List<WorkProcessor<Page>> runs = spiller.get().getSpills().stream()
+                .map(WorkProcessor::fromIterator)
+                .collect(toImmutableList());
+        Iterator<Optional<Page>> mergedPages = mergeSortedPages(runs, factory.getComparator(),
+                IntStream.range(0, types.size()).boxed().collect(toImmutableList()), types,
+                (pageBuilder, pageWithPosition) -> pageBuilder.isFull(), false,
+                operatorContext.aggregateUserMemoryContext(), operatorContext.getDriverContext().getYieldSignal())
+                .yieldingIterator();
+        return transform(mergedPages, page -> page.map(onHeapPage -> transferToOffHeapPages(vecAllocator,
+                onHeapPage, types)));
+    }
+
+    /**
+     * Reports the native memory of the operators sharing the vector allocator
+     * after the sorted pages were read.
+     */
+    public void updateMemory()
+    {
+        nativeMemoryContext.update();
+    }
+
+    /**
+     * Gets the count of the spilled runs.
+     *
+     * @return the spilled runs
+     */
+    public int getSpilledRuns()
+    {
+        return spilledRuns;
+    }
+
+    private ListenableFuture<?> spillRun(Iterator<Page> sortedPages)
+    {
+        if (!spiller.isPresent()) {
+            spiller = Optional.of(factory.getSpillerFactory().create(factory.getTypes(),
+                    operatorContext.getSpillContext(), operatorContext.newAggregateSystemMemoryContext()));
+        }
+        Iterator<Page> onHeapPages = transform(sortedPages, page -> {
+            Page onHeapPage = transferToOnHeapPage(page);
+            freePage(page);
+            return onHeapPage;
+        });
+        spilledRuns++;
+        // the native operator can only be closed once the run is on disk
+        return spiller.get().spill(onHeapPages);
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        // stop reading the rows of an unfinished spill before the native operator is closed
+        spillInProgress.ifPresent(future -> future.cancel(true));
+        try (Closer closer = Closer.create()) {
+            closer.register(nativeMemoryContext::close);
+            spiller.ifPresent(closer::register);
+            if (sortOperator != null) {
+                closer.register(sortOperator::close);
+            }
+        }
+    }
+
+    /**
+     * Creates the native sort operators and the on heap comparator of the
+     * sorted runs of an operator factory.
+     *
+     * @since 20221017
+     */
+    public static class SortedRunsSpillerFactory
+    {
+        private final List<Type> types;
+
+        private final OmniSortOperatorFactory sortOperatorFactory;
+
+        private final PageWithPositionComparator comparator;
+
+        private final SpillerFactory spillerFactory;
+
+        /**
+         * Instantiates a new sorted runs spiller factory.
+         *
+         * @param types the types of the sorted pages
+         * @param sortOperatorFactory the factory of the native sort operators
+         * @param comparator the comparator of the sorted pages
+         * @param spillerFactory the spiller factory
+         */
+        public SortedRunsSpillerFactory(List<Type> types, OmniSortOperatorFactory sortOperatorFactory,
+                                        PageWithPositionComparator comparator, SpillerFactory spillerFactory)
+        {
+            this.types = ImmutableList.copyOf(requireNonNull(types, "types is null."));
+            this.sortOperatorFactory = requireNonNull(sortOperatorFactory, "sortOperatorFactory is null.");
+            this.comparator = requireNonNull(comparator, "comparator is null.");
+            this.spillerFactory = requireNonNull(spillerFactory, "spillerFactory is null.");
+        }
+
+        /**
+         * Creates a factory which sorts all the channels of the pages by the
+         * sort channels, with its own native sort operator factory.
+         *
+         * @param types the types of the pages
+         * @param sortChannels the sort channels
+         * @param sortOrder the sort order
+         * @param orderingCompiler the ordering compiler
+         * @param spillerFactory the spiller factory
+         * @return the sorted runs spiller factory
+         */
+        public static SortedRunsSpillerFactory createSortedRunsSpillerFactory(List<Type> types,
+                                                                              List<Integer> sortChannels, List<SortOrder> sortOrder, OrderingCompiler orderingCompiler,
+                                                                              SpillerFactory spillerFactory)
+        {
+            int[] ascendings = new int[sortOrder.size()];
+            int[] nullFirsts = new int[sortOrder.size()];
+            for (int i = 0; i < sortOrder.size(); i++) {
+                ascendings[i] = sortOrder.get(i).isAscending() ? 1 : 0;
+                nullFirsts[i] = sortOrder.get(i).isNullsFirst() ? 1 : 0;
+            }
+            int[] outputChannels = IntStream.range(0, types.size()).toArray();
+            OmniSortOperatorFactory sortOperatorFactory = new OmniSortOperatorFactory(toDataTypes(types),
+                    outputChannels, createExpressions(sortChannels), ascendings, nullFirsts);
+            return new SortedRunsSpillerFactory(types, sortOperatorFactory,
+                    orderingCompiler.compilePageWithPositionComparator(types, sortChannels, sortOrder), spillerFactory);
+        }
+
+        /**
+         * Creates a spiller taking over the first native sort operator.
+         *
+         * @param operatorContext the operator context
+         * @param sortOperator the native sort operator
+         * @return the sorted runs spiller
+         */
+        public SortedRunsSpiller create(OperatorContext operatorContext, OmniOperator sortOperator)
+        {
+            return new SortedRunsSpiller(operatorContext, sortOperator, this);
+        }
+
+        public List<Type> getTypes()
+        {
+            return types;
+        }
+
+        public OmniSortOperatorFactory getSortOperatorFactory()
+        {
+            return sortOperatorFactory;
+        }
+
+        public PageWithPositionComparator getComparator()
+        {
+            return comparator;
+        }
+
+        public SpillerFactory getSpillerFactory()
+        {
+            return spillerFactory;
+        }
+    }
+}
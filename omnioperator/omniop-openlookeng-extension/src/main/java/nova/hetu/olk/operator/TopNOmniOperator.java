@@ -24,6 +24,7 @@ import io.prestosql.spi.Page;
 import io.prestosql.spi.block.SortOrder;
 import io.prestosql.spi.plan.PlanNodeId;
 import io.prestosql.spi.type.Type;
+import nova.hetu.olk.memory.VecAllocatorMemoryContext;
 import nova.hetu.olk.tool.OperatorUtils;
 import nova.hetu.olk.tool.VecAllocatorHelper;
 import nova.hetu.olk.tool.VecBatchToPageIterator;
@@ -53,6 +54,8 @@ public class TopNOmniOperator
 
     private final OmniOperator omniOperator;
 
+    private final VecAllocatorMemoryContext nativeMemoryContext;
+
     private final int topN;
 
     /**
@@ -75,6 +78,7 @@ public class TopNOmniOperator
     {
         this.operatorContext = operatorContext;
         this.omniOperator = omniOperator;
+        this.nativeMemoryContext = VecAllocatorMemoryContext.userMemory(operatorContext, omniOperator.getVecAllocator());
         this.topN = topN;
     }
 
@@ -94,6 +98,7 @@ public class TopNOmniOperator
     public void close() throws Exception
     {
         omniOperator.close();
+        nativeMemoryContext.close();
     }
 
     @Override
@@ -119,6 +124,7 @@ public class TopNOmniOperator
 
         VecBatch vecBatch = buildVecBatch(omniOperator.getVecAllocator(), page, this);
         omniOperator.addInput(vecBatch);
+        nativeMemoryContext.update();
     }
 
     @Override
@@ -131,6 +137,7 @@ public class TopNOmniOperator
         if (finishing) {
             if (pages == null) {
                 pages = new VecBatchToPageIterator(omniOperator.getOutput());
+                nativeMemoryContext.update();
             }
             else {
                 if (pages.hasNext()) {
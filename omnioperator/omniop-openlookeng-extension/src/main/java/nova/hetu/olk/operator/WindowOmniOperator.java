@@ -17,11 +17,13 @@ package nova.hetu.olk.operator;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Closer;
 import com.google.common.util.concurrent.ListenableFuture;
 import io.prestosql.operator.DriverContext;
 import io.prestosql.operator.Operator;
 import io.prestosql.operator.OperatorContext;
 import io.prestosql.operator.OperatorFactory;
+import io.prestosql.operator.PageWithPositionComparator;
 import io.prestosql.operator.WindowFunctionDefinition;
 import io.prestosql.operator.window.FrameInfo;
 import io.prestosql.spi.Page;
@@ -29,6 +31,10 @@ import io.prestosql.spi.block.SortOrder;
 import io.prestosql.spi.plan.PlanNodeId;
 import io.prestosql.spi.sql.expression.Types;
 import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.SpillerFactory;
+import io.prestosql.sql.gen.OrderingCompiler;
+import nova.hetu.olk.memory.VecAllocatorMemoryContext;
+import nova.hetu.olk.operator.SortedRunsSpiller.SortedRunsSpillerFactory;
 import nova.hetu.olk.tool.OperatorUtils;
 import nova.hetu.olk.tool.VecAllocatorHelper;
 import nova.hetu.olk.tool.VecBatchToPageIterator;
@@ -43,23 +49,51 @@ import nova.hetu.omniruntime.vector.VecBatch;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkState;
+import static io.prestosql.spi.block.SortOrder.ASC_NULLS_LAST;
+import static java.util.Collections.nCopies;
 import static java.util.Objects.requireNonNull;
+import static nova.hetu.olk.operator.SortedRunsSpiller.SortedRunsSpillerFactory.createSortedRunsSpillerFactory;
+import static nova.hetu.olk.tool.BlockUtils.freePage;
 import static nova.hetu.olk.tool.OperatorUtils.buildVecBatch;
+import static nova.hetu.olk.tool.OperatorUtils.transferToOnHeapPage;
 
 /**
  * The type Window omni operator.
+ * <p>
+ * When spilling is enabled the input is sorted by the partition and sort
+ * channels first, in a native sort operator which spills sorted runs on a
+ * memory revoke. On finish the sorted, or merged, rows are evaluated by native
+ * window operators in batches which end at a partition boundary, so only the
+ * rows of one batch are in a window operator at a time.
  *
  * @since 20210630
  */
 public class WindowOmniOperator
         implements Operator
 {
+    private static final int PARTITION_BATCH_ROWS = 1_000_000;
+
     private final OperatorContext operatorContext;
 
-    private final OmniOperator omniOperator;
+    private final VecAllocator vecAllocator;
+
+    private OmniOperator omniOperator;
+
+    private final VecAllocatorMemoryContext nativeMemoryContext;
+
+    private final Optional<SpillInfo> spillInfo;
+
+    private final Optional<SortedRunsSpiller> spiller;
+
+    private Iterator<Optional<Page>> sortedPages;
+
+    private OmniOperator flushingOperator;
+
+    private long batchRows;
 
     /**
      * The Pages.
@@ -77,14 +111,37 @@ public class WindowOmniOperator
      * @param omniOperator the omni operator
      */
     public WindowOmniOperator(OperatorContext operatorContext, OmniOperator omniOperator)
+    {
+        this(operatorContext, omniOperator, Optional.empty());
+    }
+
+    /**
+     * Instantiates a new Window omni operator.
+     *
+     * @param operatorContext the operator context
+     * @param omniOperator the omni operator
+     * @param spillInfo the operator factories and comparator for spilling, present when spilling is enabled
+     */
+    public WindowOmniOperator(OperatorContext operatorContext, OmniOperator omniOperator,
+                              Optional<SpillInfo> spillInfo)
     {
         this.operatorContext = operatorContext;
         this.omniOperator = omniOperator;
+        this.vecAllocator = omniOperator.getVecAllocator();
+        this.spillInfo = requireNonNull(spillInfo, "spillInfo is null");
+        this.spiller = spillInfo.map(info -> info.getSpillerFactory().create(operatorContext,
+                info.getSpillerFactory().getSortOperatorFactory().createOperator(vecAllocator)));
+        // the spiller reports the memory of all the operators on the allocator
+        this.nativeMemoryContext = VecAllocatorMemoryContext.userMemory(operatorContext,
+                spillInfo.isPresent() ? null : vecAllocator);
     }
 
     @Override
     public void finish()
     {
+        if (!finishing && spiller.isPresent()) {
+            sortedPages = spiller.get().getSortedPages();
+        }
         finishing = true;
     }
 
@@ -97,7 +154,12 @@ public class WindowOmniOperator
     @Override
     public void close() throws Exception
     {
-        omniOperator.close();
+        try (Closer closer = Closer.create()) {
+            closer.register(nativeMemoryContext::close);
+            spiller.ifPresent(closer::register);
+            closer.register(() -> closeOperator(flushingOperator));
+            closer.register(() -> closeOperator(omniOperator));
+        }
     }
 
     @Override
@@ -118,8 +180,13 @@ public class WindowOmniOperator
         checkState(!finishing, "Operator is already finishing");
         requireNonNull(page, "page is null");
 
-        VecBatch vecBatch = buildVecBatch(omniOperator.getVecAllocator(), page, this);
+        if (spiller.isPresent()) {
+            spiller.get().addInput(page);
+            return;
+        }
+        VecBatch vecBatch = buildVecBatch(vecAllocator, page, this);
         omniOperator.addInput(vecBatch);
+        nativeMemoryContext.update();
     }
 
     @Override
@@ -129,9 +196,13 @@ public class WindowOmniOperator
             return null;
         }
 
+        if (finishing && spiller.isPresent()) {
+            return getBatchOutput();
+        }
         if (finishing) {
             if (pages == null) {
                 pages = new VecBatchToPageIterator(omniOperator.getOutput());
+                nativeMemoryContext.update();
             }
             else {
                 if (pages.hasNext()) {
@@ -146,16 +217,154 @@ public class WindowOmniOperator
         return null;
     }
 
+    private Page getBatchOutput()
+    {
+        while (true) {
+            if (pages != null) {
+                if (pages.hasNext()) {
+                    return pages.next();
+                }
+                closeOperator(flushingOperator);
+                flushingOperator = null;
+                pages = null;
+                spiller.get().updateMemory();
+            }
+            if (sortedPages == null) {
+                finished = true;
+                return null;
+            }
+            if (!sortedPages.hasNext()) {
+                flushBatch(false);
+                sortedPages = null;
+                continue;
+            }
+            Optional<Page> sortedPage = sortedPages.next();
+            if (!sortedPage.isPresent()) {
+                // the merge of the spilled runs yielded
+                return null;
+            }
+            addSortedPage(sortedPage.get());
+            if (pages == null) {
+                return null;
+            }
+        }
+    }
+
+    private void addSortedPage(Page page)
+    {
+        int positionCount = page.getPositionCount();
+        int partitionStart = 0;
+        if (batchRows + positionCount >= PARTITION_BATCH_ROWS) {
+            partitionStart = getLastPartitionStart(page);
+        }
+        if (partitionStart == 0) {
+            // the batch only ends at a partition boundary, so it grows past the limit for a large partition
+            addToBatch(page);
+            return;
+        }
+
+        // cutting the page is rare, so it is cut on heap where the regions need no copy
+        Page onHeapPage = transferToOnHeapPage(page);
+        freePage(page);
+        addToBatch(onHeapPage.getRegion(0, partitionStart));
+        flushBatch(true);
+        addToBatch(onHeapPage.getRegion(partitionStart, positionCount - partitionStart));
+    }
+
+    private int getLastPartitionStart(Page page)
+    {
+        PageWithPositionComparator partitionComparator = spillInfo.get().getPartitionComparator();
+        for (int position = page.getPositionCount() - 1; position > 0; position--) {
+            if (partitionComparator.compareTo(page, position - 1, page, position) != 0) {
+                return position;
+            }
+        }
+        return 0;
+    }
+
+    private void addToBatch(Page page)
+    {
+        if (page.getPositionCount() == 0) {
+            return;
+        }
+        omniOperator.addInput(buildVecBatch(vecAllocator, page, this));
+        batchRows += page.getPositionCount();
+        spiller.get().updateMemory();
+    }
+
+    private void flushBatch(boolean hasNextBatch)
+    {
+        flushingOperator = omniOperator;
+        pages = new VecBatchToPageIterator(flushingOperator.getOutput());
+        omniOperator = hasNextBatch ? spillInfo.get().getWindowOperatorFactory().createOperator(vecAllocator) : null;
+        batchRows = 0;
+    }
+
+    private static void closeOperator(OmniOperator operator)
+    {
+        if (operator != null) {
+            operator.close();
+        }
+    }
+
     @Override
     public ListenableFuture<?> startMemoryRevoke()
     {
-        return Operator.super.startMemoryRevoke();
+        if (spiller.isPresent() && !finishing) {
+            return spiller.get().startSpill();
+        }
+        return NOT_BLOCKED;
     }
 
     @Override
     public void finishMemoryRevoke()
     {
-        Operator.super.finishMemoryRevoke();
+        spiller.ifPresent(SortedRunsSpiller::finishSpill);
+    }
+
+    /**
+     * The native operator factories and the partition comparator of a window
+     * operator which spills.
+     *
+     * @since 20221017
+     */
+    public static class SpillInfo
+    {
+        private final OmniWindowOperatorFactory windowOperatorFactory;
+
+        private final SortedRunsSpillerFactory spillerFactory;
+
+        private final PageWithPositionComparator partitionComparator;
+
+        /**
+         * Instantiates a new spill info.
+         *
+         * @param windowOperatorFactory creates the window operator of each batch
+         * @param spillerFactory sorts the input by the partition and sort channels
+         * @param partitionComparator compares the partition channels of two rows
+         */
+        public SpillInfo(OmniWindowOperatorFactory windowOperatorFactory, SortedRunsSpillerFactory spillerFactory,
+                         PageWithPositionComparator partitionComparator)
+        {
+            this.windowOperatorFactory = requireNonNull(windowOperatorFactory, "windowOperatorFactory is null");
+            this.spillerFactory = requireNonNull(spillerFactory, "spillerFactory is null");
+            this.partitionComparator = requireNonNull(partitionComparator, "partitionComparator is null");
+        }
+
+        public OmniWindowOperatorFactory getWindowOperatorFactory()
+        {
+            return windowOperatorFactory;
+        }
+
+        public SortedRunsSpillerFactory getSpillerFactory()
+        {
+            return spillerFactory;
+        }
+
+        public PageWithPositionComparator getPartitionComparator()
+        {
+            return partitionComparator;
+        }
     }
 
     /**
@@ -190,6 +399,14 @@ public class WindowOmniOperator
 
         private OmniWindowOperatorFactory omniWindowOperatorFactory;
 
+        private final boolean spillEnabled;
+
+        private final SpillerFactory spillerFactory;
+
+        private final OrderingCompiler orderingCompiler;
+
+        private final Optional<SpillInfo> spillInfo;
+
         /**
          * Instantiates a new Window omni operator factory.
          *
@@ -209,6 +426,35 @@ public class WindowOmniOperator
                                          List<Integer> outputChannels, List<WindowFunctionDefinition> windowFunctionDefinitions,
                                          List<Integer> partitionChannels, List<Integer> preGroupedChannels, List<Integer> sortChannels,
                                          List<SortOrder> sortOrder, int preSortedChannelPrefix, int expectedPositions)
+        {
+            this(operatorId, planNodeId, sourceTypes, outputChannels, windowFunctionDefinitions, partitionChannels,
+                    preGroupedChannels, sortChannels, sortOrder, preSortedChannelPrefix, expectedPositions, false, null,
+                    null);
+        }
+
+        /**
+         * Instantiates a new Window omni operator factory.
+         *
+         * @param operatorId the operator id
+         * @param planNodeId the plan node id
+         * @param sourceTypes the source types
+         * @param outputChannels the output channels
+         * @param windowFunctionDefinitions the window function definitions
+         * @param partitionChannels the partition channels
+         * @param preGroupedChannels the pre grouped channels
+         * @param sortChannels the sort channels
+         * @param sortOrder the sort order
+         * @param preSortedChannelPrefix the pre sorted channel prefix
+         * @param expectedPositions the expected positions
+         * @param spillEnabled whether the input is sorted in sorted runs which spill
+         * @param spillerFactory the spiller factory, used when spilling is enabled
+         * @param orderingCompiler the ordering compiler, used when spilling is enabled
+         */
+        public WindowOmniOperatorFactory(int operatorId, PlanNodeId planNodeId, List<? extends Type> sourceTypes,
+                                         List<Integer> outputChannels, List<WindowFunctionDefinition> windowFunctionDefinitions,
+                                         List<Integer> partitionChannels, List<Integer> preGroupedChannels, List<Integer> sortChannels,
+                                         List<SortOrder> sortOrder, int preSortedChannelPrefix, int expectedPositions,
+                                         boolean spillEnabled, SpillerFactory spillerFactory, OrderingCompiler orderingCompiler)
         {
             requireNonNull(sourceTypes, "sourceTypes is null");
             requireNonNull(planNodeId, "planNodeId is null");
@@ -244,6 +490,23 @@ public class WindowOmniOperator
             omniWindowOperatorFactory = getOmniWindowOperatorFactory(sourceTypes, outputChannels,
                     windowFunctionDefinitions, partitionChannels, preGroupedChannels, sortChannels, sortOrder,
                     preSortedChannelPrefix, expectedPositions);
+
+            this.spillEnabled = spillEnabled;
+            this.spillerFactory = spillerFactory;
+            this.orderingCompiler = orderingCompiler;
+            this.spillInfo = spillEnabled ? Optional.of(createSpillInfo()) : Optional.empty();
+        }
+
+        private SpillInfo createSpillInfo()
+        {
+            // the input is sorted by the partition channels first, so the rows of a partition are adjacent
+            List<SortOrder> partitionOrder = nCopies(partitionChannels.size(), ASC_NULLS_LAST);
+            SortedRunsSpillerFactory sortedRunsSpillerFactory = createSortedRunsSpillerFactory(sourceTypes,
+                    ImmutableList.<Integer>builder().addAll(partitionChannels).addAll(sortChannels).build(),
+                    ImmutableList.<SortOrder>builder().addAll(partitionOrder).addAll(sortOrder).build(),
+                    orderingCompiler, requireNonNull(spillerFactory, "spillerFactory is null"));
+            return new SpillInfo(omniWindowOperatorFactory, sortedRunsSpillerFactory,
+                    orderingCompiler.compilePageWithPositionComparator(sourceTypes, partitionChannels, partitionOrder));
         }
 
         private OmniWindowOperatorFactory getOmniWindowOperatorFactory(List<? extends Type> sourceTypes,
@@ -412,7 +675,7 @@ public class WindowOmniOperator
             OperatorContext operatorContext = driverContext.addOperatorContext(operatorId, planNodeId,
                     WindowOmniOperator.class.getSimpleName());
             OmniOperator omniOperator = omniWindowOperatorFactory.createOperator(vecAllocator);
-            return new WindowOmniOperator(operatorContext, omniOperator);
+            return new WindowOmniOperator(operatorContext, omniOperator, spillInfo);
         }
 
         @Override
@@ -425,7 +688,7 @@ public class WindowOmniOperator
         {
             return new WindowOmniOperatorFactory(operatorId, planNodeId, sourceTypes, outputChannels,
                     windowFunctionDefinitions, partitionChannels, preGroupedChannels, sortChannels, sortOrder,
-                    preSortedChannelPrefix, expectedPositions);
+                    preSortedChannelPrefix, expectedPositions, spillEnabled, spillerFactory, orderingCompiler);
         }
 
         @Override
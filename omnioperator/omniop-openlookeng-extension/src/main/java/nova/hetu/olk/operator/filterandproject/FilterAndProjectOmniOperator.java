@@ -33,6 +33,7 @@ import java.util.function.Supplier;
 import static com.google.common.base.Preconditions.checkState;
 import static io.prestosql.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
 import static java.util.Objects.requireNonNull;
+import static nova.hetu.olk.operator.filterandproject.OmniPageProcessor.closePageProcessor;
 
 public class FilterAndProjectOmniOperator
         implements Operator
@@ -108,6 +109,12 @@ public class FilterAndProjectOmniOperator
         return mergingOutput.getOutput();
     }
 
+    @Override
+    public void close()
+    {
+        closePageProcessor(processor);
+    }
+
     public static class FilterAndProjectOmniOperatorFactory
             implements OperatorFactory
     {
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.operator.filterandproject;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.airlift.jmx.CacheStatsMBean;
+import io.airlift.stats.TimeStat;
+import io.airlift.units.Duration;
+import org.weakref.jmx.Managed;
+import org.weakref.jmx.Nested;
+
+import javax.inject.Inject;
+
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Throwables.throwIfUnchecked;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Cache of the compiled omni filters and projections, shared by the queries
+ * of a worker so that a query reuses the native code generated for the same
+ * expressions of an earlier query.
+ * <p>
+ * The maximum size and the time to live after the last access are configured
+ * by {@link OmniExpressionCacheConfig}. {@link OmniExpressionCacheModule}
+ * binds a single cache per worker and exports its statistics and compile time
+ * over JMX.
+ *
+ * @since 20221017
+ */
+public class OmniExpressionCache
+{
+    private final Cache<OmniExpressionCompiler.ProjectionsCacheKey, OmniProjection> projectionCache;
+
+    private final Cache<OmniExpressionCompiler.FilterCacheKey, OmniPageFilter> filterCache;
+
+    private final CacheStatsMBean projectionCacheStats;
+
+    private final CacheStatsMBean filterCacheStats;
+
+    private final TimeStat compileTime = new TimeStat(MILLISECONDS);
+
+    /**
+     * Instantiates a new Omni expression cache.
+     *
+     * @param config the cache config
+     */
+    @Inject
+    public OmniExpressionCache(OmniExpressionCacheConfig config)
+    {
+        this(config.getMaximumSize(), config.getTtl());
+    }
+
+    /**
+     * Instantiates a new Omni expression cache.
+     *
+     * @param maximumSize the maximum count of filters and of projections
+     * @param ttl the time to live of an entry after its last access
+     */
+    public OmniExpressionCache(int maximumSize, Duration ttl)
+    {
+        // the evicted factories may still be used by running operators, so they are left to the garbage collector
+        this.projectionCache = CacheBuilder.newBuilder().recordStats().maximumSize(maximumSize)
+                .expireAfterAccess(ttl.toMillis(), MILLISECONDS).build();
+        this.filterCache = CacheBuilder.newBuilder().recordStats().maximumSize(maximumSize)
+                .expireAfterAccess(ttl.toMillis(), MILLISECONDS).build();
+        this.projectionCacheStats = new CacheStatsMBean(projectionCache);
+        this.filterCacheStats = new CacheStatsMBean(filterCache);
+    }
+
+    /**
+     * Gets a projection, and compiles it on a miss.
+     *
+     * @param key the projections and input types
+     * @param compiler the compiler of the projection
+     * @return the projection
+     */
+    OmniProjection getProjection(OmniExpressionCompiler.ProjectionsCacheKey key, Supplier<OmniProjection> compiler)
+    {
+        return get(projectionCache, key, compiler);
+    }
+
+    /**
+     * Gets a filter, and compiles it on a miss.
+     *
+     * @param key the filter, projections and input types
+     * @param compiler the compiler of the filter
+     * @return the filter
+     */
+    OmniPageFilter getFilter(OmniExpressionCompiler.FilterCacheKey key, Supplier<OmniPageFilter> compiler)
+    {
+        return get(filterCache, key, compiler);
+    }
+
+    private <K, V> V get(Cache<K, V> cache, K key, Supplier<V> compiler)
+    {
+        try {
+            return cache.get(key, () -> {
+                try (TimeStat.BlockTimer ignored = compileTime.time()) {
+                    return compiler.get();
+                }
+            });
+        }
+        catch (ExecutionException | UncheckedExecutionException e) {
+            throwIfUnchecked(e.getCause());
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @Managed
+    @Nested
+    public CacheStatsMBean getProjectionCacheStats()
+    {
+        return projectionCacheStats;
+    }
+
+    @Managed
+    @Nested
+    public CacheStatsMBean getFilterCacheStats()
+    {
+        return filterCacheStats;
+    }
+
+    @Managed
+    @Nested
+    public TimeStat getCompileTime()
+    {
+        return compileTime;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.operator.filterandproject;
+
+import io.airlift.configuration.Config;
+import io.airlift.configuration.ConfigDescription;
+import io.airlift.units.Duration;
+import io.airlift.units.MinDuration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+
+/**
+ * Config of the {@link OmniExpressionCache}.
+ *
+ * @since 20221017
+ */
+public class OmniExpressionCacheConfig
+{
+    private int maximumSize = 1000;
+
+    private Duration ttl = new Duration(1, HOURS);
+
+    @Min(1)
+    public int getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    @Config("omni.expression-cache.max-size")
+    @ConfigDescription("Maximum count of the compiled omni filters, and of the compiled omni projections")
+    public OmniExpressionCacheConfig setMaximumSize(int maximumSize)
+    {
+        this.maximumSize = maximumSize;
+        return this;
+    }
+
+    @NotNull
+    @MinDuration("1s")
+    public Duration getTtl()
+    {
+        return ttl;
+    }
+
+    @Config("omni.expression-cache.ttl")
+    @ConfigDescription("Time to live of a compiled omni filter or projection after its last access")
+    public OmniExpressionCacheConfig setTtl(Duration ttl)
+    {
+        this.ttl = ttl;
+        return this;
+    }
+}
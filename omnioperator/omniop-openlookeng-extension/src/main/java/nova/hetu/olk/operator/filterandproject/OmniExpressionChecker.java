@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.operator.filterandproject;
+
+import io.prestosql.spi.PrestoException;
+import io.prestosql.spi.function.StandardFunctionResolution;
+import io.prestosql.spi.relation.CallExpression;
+import io.prestosql.spi.relation.ConstantExpression;
+import io.prestosql.spi.relation.InputReferenceExpression;
+import io.prestosql.spi.relation.RowExpression;
+import io.prestosql.spi.relation.SpecialForm;
+import io.prestosql.spi.type.StandardTypes;
+import io.prestosql.spi.type.Type;
+
+import static nova.hetu.olk.tool.OperatorUtils.toDataType;
+
+/**
+ * Checks whether an expression can be translated for OmniRuntime without
+ * compiling it, so that the native code is only generated for the filters and
+ * projections which actually run.
+ *
+ * @since 20221017
+ */
+public final class OmniExpressionChecker
+{
+    private OmniExpressionChecker()
+    {
+    }
+
+    /**
+     * Checks an expression.
+     *
+     * @param expression the row expression
+     * @return false if OmniRuntime cannot evaluate the expression, true if it
+     * may, which compiling the expression finally decides
+     */
+    public static boolean checkExpression(RowExpression expression)
+    {
+        if (!checkType(expression.getType())) {
+            return false;
+        }
+        if (expression instanceof InputReferenceExpression || expression instanceof ConstantExpression) {
+            return true;
+        }
+        if (expression instanceof CallExpression) {
+            return ((CallExpression) expression).getArguments().stream()
+                    .allMatch(OmniExpressionChecker::checkExpression);
+        }
+        if (expression instanceof SpecialForm) {
+            SpecialForm specialForm = (SpecialForm) expression;
+            switch (specialForm.getForm()) {
+                case BIND:
+                case DEREFERENCE:
+                case ROW_CONSTRUCTOR:
+                    return false;
+                default:
+                    return specialForm.getArguments().stream().allMatch(OmniExpressionChecker::checkExpression);
+            }
+        }
+        // lambdas and variable references are not supported by OmniRuntime
+        return false;
+    }
+
+    /**
+     * Checks whether evaluating an expression can fail, e.g. on a division by
+     * zero, an overflow or a cast, so that a filter can evaluate it before the
+     * conjuncts which precede it. Only comparisons and logical forms of
+     * columns and constants are known not to fail.
+     *
+     * @param expression the row expression
+     * @param functionResolution the function resolution
+     * @return if evaluating the expression never fails
+     */
+    public static boolean isFailSafe(RowExpression expression, StandardFunctionResolution functionResolution)
+    {
+        if (expression instanceof InputReferenceExpression || expression instanceof ConstantExpression) {
+            return true;
+        }
+        if (expression instanceof CallExpression) {
+            CallExpression call = (CallExpression) expression;
+            return (functionResolution.isComparisonFunction(call.getFunctionHandle())
+                    || functionResolution.isNotFunction(call.getFunctionHandle()))
+                    && call.getArguments().stream().allMatch(argument -> isFailSafe(argument, functionResolution));
+        }
+        if (expression instanceof SpecialForm) {
+            SpecialForm specialForm = (SpecialForm) expression;
+            switch (specialForm.getForm()) {
+                case AND:
+                case OR:
+                case IS_NULL:
+                case IN:
+                case BETWEEN:
+                    return specialForm.getArguments().stream()
+                            .allMatch(argument -> isFailSafe(argument, functionResolution));
+                default:
+                    return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks a type.
+     *
+     * @param type the type
+     * @return if OmniRuntime has a vector of the type, except for row types
+     */
+    public static boolean checkType(Type type)
+    {
+        if (StandardTypes.ROW.equals(type.getTypeSignature().getBase())) {
+            return false;
+        }
+        try {
+            toDataType(type);
+            return true;
+        }
+        catch (PrestoException e) {
+            return false;
+        }
+    }
+}
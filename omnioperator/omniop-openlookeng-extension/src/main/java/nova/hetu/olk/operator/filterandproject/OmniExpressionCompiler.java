@@ -15,21 +15,21 @@
 
 package nova.hetu.olk.operator.filterandproject;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableList;
 import io.prestosql.execution.TaskId;
 import io.prestosql.metadata.Metadata;
 import io.prestosql.operator.project.PageFieldsToInputParametersRewriter;
 import io.prestosql.operator.project.PageFilter;
 import io.prestosql.operator.project.PageProcessor;
+import io.prestosql.spi.function.StandardFunctionResolution;
 import io.prestosql.spi.relation.DeterminismEvaluator;
+import io.prestosql.spi.relation.InputReferenceExpression;
 import io.prestosql.spi.relation.RowExpression;
 import io.prestosql.spi.type.Type;
 import io.prestosql.sql.gen.ExpressionCompiler;
 import io.prestosql.sql.gen.ExpressionProfiler;
 import io.prestosql.sql.gen.PageFunctionCompiler;
+import io.prestosql.sql.relational.FunctionResolution;
 import io.prestosql.sql.relational.RowExpressionDeterminismEvaluator;
 import nova.hetu.olk.OmniLocalExecutionPlanner.OmniLocalExecutionPlanContext;
 import nova.hetu.omniruntime.vector.VecAllocator;
@@ -37,14 +37,26 @@ import nova.hetu.omniruntime.vector.VecAllocatorFactory;
 
 import javax.inject.Inject;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.prestosql.expressions.LogicalRowExpressions.and;
+import static io.prestosql.expressions.LogicalRowExpressions.extractConjuncts;
+import static io.prestosql.expressions.RowExpressionNodeInliner.replaceExpression;
 import static io.prestosql.operator.project.PageFieldsToInputParametersRewriter.rewritePageFieldsToInputParameters;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static java.util.Objects.requireNonNull;
 
 /**
  * The type Omni expression compiler.
@@ -55,36 +67,40 @@ public class OmniExpressionCompiler
         extends ExpressionCompiler
 {
     private final DeterminismEvaluator determinismEvaluator;
-    private final LoadingCache<ProjectionsCacheKey, OmniProjection> projectionCache;
-    private final LoadingCache<FilterCacheKey, OmniPageFilter> filterCache;
+    private final StandardFunctionResolution functionResolution;
+    private final OmniExpressionCache expressionCache;
 
     /**
      * Instantiates a new Omni expression compiler.
      *
      * @param metadata the metadata
      * @param pageFunctionCompiler the page function compiler
+     * @param expressionCache the cache of the compiled filters and projections
      */
     @Inject
-    public OmniExpressionCompiler(Metadata metadata, PageFunctionCompiler pageFunctionCompiler)
+    public OmniExpressionCompiler(Metadata metadata, PageFunctionCompiler pageFunctionCompiler,
+                                  OmniExpressionCache expressionCache)
     {
         super(metadata, pageFunctionCompiler);
         this.determinismEvaluator = new RowExpressionDeterminismEvaluator(metadata);
+        this.functionResolution = new FunctionResolution(metadata.getFunctionAndTypeManager());
+        this.expressionCache = requireNonNull(expressionCache, "expressionCache is null");
+    }
+
+    private OmniProjection getProjection(ProjectionsCacheKey cacheKey)
+    {
+        return expressionCache.getProjection(cacheKey, () -> new OmniProjection(cacheKey.projections,
+                cacheKey.inputTypes, OmniRowExpressionUtil.Format.JSON));
+    }
 
-        // get this from the config
-        int expressionCacheSize = 1000;
-        projectionCache = CacheBuilder.newBuilder().recordStats().maximumSize(expressionCacheSize)
-                .removalListener(notification -> {}).build(CacheLoader.from(cacheKey -> new OmniProjection(cacheKey.projections, cacheKey.inputTypes,
-                        OmniRowExpressionUtil.Format.JSON)));
-
-        filterCache = CacheBuilder.newBuilder().recordStats().maximumSize(expressionCacheSize)
-                .removalListener(notification -> {}).build(CacheLoader.from(cacheKey -> {
-                    RowExpression re = cacheKey.filter.get();
-                    PageFieldsToInputParametersRewriter.Result result = rewritePageFieldsToInputParameters(re);
-                    OmniPageFilter omniPageFilter = new OmniPageFilter(re, determinismEvaluator.isDeterministic(re),
-                            result.getInputChannels(), cacheKey.inputTypes, cacheKey.projections,
-                            OmniRowExpressionUtil.Format.JSON);
-                    return omniPageFilter;
-                }));
+    private OmniPageFilter getFilter(FilterCacheKey cacheKey)
+    {
+        return expressionCache.getFilter(cacheKey, () -> {
+            RowExpression re = cacheKey.filter.get();
+            PageFieldsToInputParametersRewriter.Result result = rewritePageFieldsToInputParameters(re);
+            return new OmniPageFilter(re, determinismEvaluator.isDeterministic(re), result.getInputChannels(),
+                    cacheKey.inputTypes, cacheKey.projections, OmniRowExpressionUtil.Format.JSON);
+        });
     }
 
     /**
@@ -104,7 +120,8 @@ public class OmniExpressionCompiler
                                                         List<? extends RowExpression> projections, Optional<String> classNameSuffix, OptionalInt initialBatchSize,
                                                         List<Type> inputTypes, TaskId taskId)
     {
-        return compilePageProcessor(filter, projections, classNameSuffix, initialBatchSize, inputTypes, taskId, null);
+        return compilePageProcessor(filter, projections, classNameSuffix, initialBatchSize, inputTypes, taskId, null,
+                false);
     }
 
     /**
@@ -118,19 +135,23 @@ public class OmniExpressionCompiler
      * @param initialBatchSize initial batch size
      * @param taskId the task identifier
      * @param context LocalExecutionPlan context
+     * @param isScan if the pages come from a table scan, whose channels may
+     * still be lazy, so that a page processor can copy the channels which the
+     * filter does not read at the selected positions only
      * @return Supplier<PageProcessor> supplier page processor
      */
     public Supplier<PageProcessor> compilePageProcessor(Optional<RowExpression> filter,
                                                         List<? extends RowExpression> projections, Optional<String> classNameSuffix, OptionalInt initialBatchSize,
-                                                        List<Type> inputTypes, TaskId taskId, OmniLocalExecutionPlanContext context)
+                                                        List<Type> inputTypes, TaskId taskId, OmniLocalExecutionPlanContext context,
+                                                        boolean isScan)
     {
         VecAllocator vecAllocator = VecAllocatorFactory.get(taskId.toString());
         Optional<PageFilter> pageFilter;
         if (filter.isPresent()) {
-            OmniPageFilter omniPageFilter = filterCache
-                    .getUnchecked(new FilterCacheKey(filter, projections, inputTypes));
+            OmniPageFilter omniPageFilter = getFilter(new FilterCacheKey(filter, projections, inputTypes));
             if (!omniPageFilter.isSupported()) {
-                return null;
+                return compileSplitPageProcessor(filter, projections, classNameSuffix, initialBatchSize, inputTypes,
+                        vecAllocator, context);
             }
             pageFilter = Optional.of(omniPageFilter);
         }
@@ -138,26 +159,275 @@ public class OmniExpressionCompiler
             pageFilter = Optional.empty();
         }
 
-        OmniProjection proj = projectionCache.getUnchecked(new ProjectionsCacheKey(projections, inputTypes));
+        OmniProjection proj = getProjection(new ProjectionsCacheKey(projections, inputTypes));
         if (!proj.isSupported()) {
+            return compileSplitPageProcessor(filter, projections, classNameSuffix, initialBatchSize, inputTypes,
+                    vecAllocator, context);
+        }
+
+        Optional<OmniPageFilter> positionFilter = isScan
+                ? filter.flatMap(expression -> getPositionFilter(expression, inputTypes))
+                : Optional.empty();
+        return () -> new OmniPageProcessor(vecAllocator, pageFilter, positionFilter, inputTypes, proj,
+                initialBatchSize, new ExpressionProfiler(), context);
+    }
+
+    /**
+     * Gets the filter of the channels read by a filter, which outputs these
+     * channels followed by the positions of the selected rows, so that the
+     * other channels can be copied to native vectors at these positions only.
+     *
+     * @return the position filter, or empty when the filter reads every channel
+     */
+    private Optional<OmniPageFilter> getPositionFilter(RowExpression filter, List<Type> inputTypes)
+    {
+        PageFieldsToInputParametersRewriter.Result result = rewritePageFieldsToInputParameters(filter);
+        List<Integer> filterChannels = result.getInputChannels().getInputChannels();
+        if (filterChannels.isEmpty() || filterChannels.size() == inputTypes.size()) {
+            return Optional.empty();
+        }
+        List<Type> positionFilterTypes = new ArrayList<>();
+        List<RowExpression> positionFilterProjections = new ArrayList<>();
+        for (int i = 0; i < filterChannels.size(); i++) {
+            Type type = inputTypes.get(filterChannels.get(i));
+            positionFilterTypes.add(type);
+            positionFilterProjections.add(new InputReferenceExpression(i, type));
+        }
+        positionFilterTypes.add(BIGINT);
+        positionFilterProjections.add(new InputReferenceExpression(filterChannels.size(), BIGINT));
+        OmniPageFilter positionFilter = getFilter(new FilterCacheKey(Optional.of(result.getRewrittenExpression()),
+                positionFilterProjections, positionFilterTypes));
+        return positionFilter.isSupported() ? Optional.of(positionFilter) : Optional.empty();
+    }
+
+    /**
+     * Splits a filter and projections which OmniRuntime supports only in part
+     * between an omni page processor and a page processor of the residual
+     * expressions, see {@link #splitExpressions}. The expressions are first
+     * checked by {@link OmniExpressionChecker}, which does not know which
+     * functions OmniRuntime implements. When the omni expressions do not
+     * compile, each expression is compiled alone instead, and the split is
+     * retried with the expressions which compile.
+     *
+     * @return the page processor supplier, or null when nothing is left to
+     * OmniRuntime
+     */
+    private Supplier<PageProcessor> compileSplitPageProcessor(Optional<RowExpression> filter,
+                                                              List<? extends RowExpression> projections,
+                                                              Optional<String> classNameSuffix,
+                                                              OptionalInt initialBatchSize, List<Type> inputTypes,
+                                                              VecAllocator vecAllocator,
+                                                              OmniLocalExecutionPlanContext context)
+    {
+        Optional<ExpressionSplit> split = splitExpressions(filter, projections, inputTypes,
+                OmniExpressionChecker::checkExpression, this::isReorderable);
+        if (!split.isPresent()) {
+            return null;
+        }
+        Supplier<PageProcessor> pageProcessor = compileSplitPageProcessor(split.get(), projections,
+                classNameSuffix, initialBatchSize, inputTypes, vecAllocator, context);
+        if (pageProcessor != null) {
+            return pageProcessor;
+        }
+        split = splitExpressions(filter, projections, inputTypes,
+                expression -> isNativelySupported(expression, inputTypes), this::isReorderable);
+        if (!split.isPresent()) {
             return null;
         }
+        return compileSplitPageProcessor(split.get(), projections, classNameSuffix, initialBatchSize, inputTypes,
+                vecAllocator, context);
+    }
+
+    private Supplier<PageProcessor> compileSplitPageProcessor(ExpressionSplit split,
+                                                              List<? extends RowExpression> projections,
+                                                              Optional<String> classNameSuffix,
+                                                              OptionalInt initialBatchSize, List<Type> inputTypes,
+                                                              VecAllocator vecAllocator,
+                                                              OmniLocalExecutionPlanContext context)
+    {
+        OmniProjection omniProjection = getProjection(new ProjectionsCacheKey(split.omniProjections, inputTypes));
+        if (!omniProjection.isSupported()) {
+            return null;
+        }
+        Optional<PageFilter> omniPageFilter = Optional.empty();
+        if (split.omniFilter.isPresent()) {
+            OmniPageFilter pageFilter = getFilter(
+                    new FilterCacheKey(split.omniFilter, split.omniProjections, inputTypes));
+            if (!pageFilter.isSupported()) {
+                return null;
+            }
+            omniPageFilter = Optional.of(pageFilter);
+        }
+        Supplier<PageProcessor> residualPageProcessor = compilePageProcessor(split.residualFilter,
+                split.residualProjections, classNameSuffix);
+        List<Type> outputTypes = projections.stream().map(RowExpression::getType).collect(toImmutableList());
+
+        Optional<PageFilter> pageFilter = omniPageFilter;
+        return () -> new OmniSplitPageProcessor(vecAllocator,
+                new OmniPageProcessor(vecAllocator, pageFilter, omniProjection, initialBatchSize,
+                        new ExpressionProfiler(), context),
+                residualPageProcessor.get(), outputTypes, initialBatchSize);
+    }
+
+    /**
+     * Compiles an expression alone, as a projection, so that the result is
+     * cached for the other filters and projections which contain it.
+     */
+    private boolean isNativelySupported(RowExpression expression, List<Type> inputTypes)
+    {
+        return OmniExpressionChecker.checkExpression(expression)
+                && getProjection(new ProjectionsCacheKey(ImmutableList.of(expression), inputTypes)).isSupported();
+    }
+
+    private boolean isReorderable(RowExpression conjunct)
+    {
+        return determinismEvaluator.isDeterministic(conjunct)
+                && OmniExpressionChecker.isFailSafe(conjunct, functionResolution);
+    }
+
+    /**
+     * Splits a filter and projections between OmniRuntime and Java. The
+     * supported conjuncts of the filter run first in an omni page filter,
+     * which outputs the input channels read by the residual expressions
+     * followed by the supported projections. A supported conjunct which
+     * follows a residual one only runs first when it is reorderable, i.e.
+     * deterministic and unable to fail, so that a conjunct which may fail is
+     * never evaluated on rows which the conjuncts before it reject, e.g. in
+     * x <> 0 AND y / x > 1. The residual conjuncts and the other projections
+     * then run on the reduced page, where they refer to the input channels
+     * and to the supported projections by input references.
+     *
+     * @param isSupported if OmniRuntime supports an expression
+     * @param isReorderable if a conjunct can run before the conjuncts which
+     * precede it
+     * @return the split, or empty when nothing is left to OmniRuntime
+     */
+    static Optional<ExpressionSplit> splitExpressions(Optional<RowExpression> filter,
+                                                      List<? extends RowExpression> projections,
+                                                      List<Type> inputTypes,
+                                                      Predicate<RowExpression> isSupported,
+                                                      Predicate<RowExpression> isReorderable)
+    {
+        List<RowExpression> supportedConjuncts = new ArrayList<>();
+        List<RowExpression> residualConjuncts = new ArrayList<>();
+        if (filter.isPresent()) {
+            for (RowExpression conjunct : extractConjuncts(filter.get())) {
+                if (isSupported.test(conjunct) && (residualConjuncts.isEmpty() || isReorderable.test(conjunct))) {
+                    supportedConjuncts.add(conjunct);
+                }
+                else {
+                    residualConjuncts.add(conjunct);
+                }
+            }
+            if (supportedConjuncts.isEmpty()) {
+                return Optional.empty();
+            }
+        }
+
+        List<RowExpression> supportedProjections = new ArrayList<>();
+        List<RowExpression> residualExpressions = new ArrayList<>(residualConjuncts);
+        for (RowExpression projection : projections) {
+            if (isSupported.test(projection)) {
+                supportedProjections.add(projection);
+            }
+            else {
+                residualExpressions.add(projection);
+            }
+        }
+        if (!filter.isPresent() && supportedProjections.isEmpty()) {
+            return Optional.empty();
+        }
+
+        SortedSet<Integer> residualChannels = new TreeSet<>();
+        for (RowExpression expression : residualExpressions) {
+            residualChannels.addAll(rewritePageFieldsToInputParameters(expression).getInputChannels()
+                    .getInputChannels());
+        }
+        if (residualChannels.isEmpty() && supportedProjections.isEmpty() && !inputTypes.isEmpty()) {
+            // the reduced page needs a channel for its position count
+            residualChannels.add(0);
+        }
+        List<RowExpression> omniProjections = new ArrayList<>();
+        Map<RowExpression, RowExpression> inputReferences = new HashMap<>();
+        for (int channel : residualChannels) {
+            Type type = inputTypes.get(channel);
+            inputReferences.put(new InputReferenceExpression(channel, type),
+                    new InputReferenceExpression(omniProjections.size(), type));
+            omniProjections.add(new InputReferenceExpression(channel, type));
+        }
+
+        List<RowExpression> residualProjections = new ArrayList<>();
+        for (RowExpression projection : projections) {
+            if (supportedProjections.contains(projection)) {
+                residualProjections.add(new InputReferenceExpression(
+                        omniProjections.size() + supportedProjections.indexOf(projection), projection.getType()));
+            }
+            else {
+                residualProjections.add(replaceExpression(projection, inputReferences));
+            }
+        }
+        omniProjections.addAll(supportedProjections);
+        Optional<RowExpression> residualFilter = residualConjuncts.isEmpty()
+                ? Optional.empty()
+                : Optional.of(replaceExpression(and(residualConjuncts), inputReferences));
+        Optional<RowExpression> omniFilter = supportedConjuncts.isEmpty()
+                ? Optional.empty()
+                : Optional.of(and(supportedConjuncts));
+        return Optional.of(new ExpressionSplit(omniFilter, omniProjections, residualFilter, residualProjections));
+    }
 
-        return () -> new OmniPageProcessor(vecAllocator, pageFilter, proj, initialBatchSize, new ExpressionProfiler(),
-                context);
+    /**
+     * The filters and projections of the omni page processor and of the
+     * residual page processor of a split filter and projection.
+     */
+    static final class ExpressionSplit
+    {
+        private final Optional<RowExpression> omniFilter;
+        private final List<RowExpression> omniProjections;
+        private final Optional<RowExpression> residualFilter;
+        private final List<RowExpression> residualProjections;
+
+        ExpressionSplit(Optional<RowExpression> omniFilter, List<RowExpression> omniProjections,
+                        Optional<RowExpression> residualFilter, List<RowExpression> residualProjections)
+        {
+            this.omniFilter = omniFilter;
+            this.omniProjections = ImmutableList.copyOf(omniProjections);
+            this.residualFilter = residualFilter;
+            this.residualProjections = ImmutableList.copyOf(residualProjections);
+        }
+
+        Optional<RowExpression> getOmniFilter()
+        {
+            return omniFilter;
+        }
+
+        List<RowExpression> getOmniProjections()
+        {
+            return omniProjections;
+        }
+
+        Optional<RowExpression> getResidualFilter()
+        {
+            return residualFilter;
+        }
+
+        List<RowExpression> getResidualProjections()
+        {
+            return residualProjections;
+        }
     }
 
-    private static final class FilterCacheKey
+    static final class FilterCacheKey
     {
         private final Optional<RowExpression> filter;
         private final List<RowExpression> projections;
         private final List<Type> inputTypes;
 
-        private FilterCacheKey(Optional<RowExpression> filter, List<? extends RowExpression> projections,
-                               List<Type> inputTypes)
+        FilterCacheKey(Optional<RowExpression> filter, List<? extends RowExpression> projections,
+                       List<Type> inputTypes)
         {
             this.filter = filter;
-            this.inputTypes = inputTypes;
+            this.inputTypes = ImmutableList.copyOf(inputTypes);
             this.projections = ImmutableList.copyOf(projections);
         }
 
@@ -189,14 +459,14 @@ public class OmniExpressionCompiler
         }
     }
 
-    private static final class ProjectionsCacheKey
+    static final class ProjectionsCacheKey
     {
         private final List<RowExpression> projections;
         private final List<Type> inputTypes;
 
-        private ProjectionsCacheKey(List<? extends RowExpression> projections, List<Type> inputTypes)
+        ProjectionsCacheKey(List<? extends RowExpression> projections, List<Type> inputTypes)
         {
-            this.inputTypes = inputTypes;
+            this.inputTypes = ImmutableList.copyOf(inputTypes);
             this.projections = ImmutableList.copyOf(projections);
         }
 
@@ -22,17 +22,20 @@ import io.prestosql.operator.WorkProcessor;
 import io.prestosql.operator.WorkProcessor.ProcessState;
 import io.prestosql.operator.project.PageFilter;
 import io.prestosql.operator.project.PageProcessor;
-import io.prestosql.operator.project.SelectedPositions;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.block.Block;
 import io.prestosql.spi.block.LazyBlock;
+import io.prestosql.spi.block.LongArrayBlock;
 import io.prestosql.spi.connector.ConnectorSession;
+import io.prestosql.spi.type.Type;
 import io.prestosql.sql.gen.ExpressionProfiler;
 import nova.hetu.olk.OmniLocalExecutionPlanner.OmniLocalExecutionPlanContext;
+import nova.hetu.olk.block.LazyOmniBlock;
 import nova.hetu.olk.tool.BlockUtils;
 import nova.hetu.olk.tool.VecBatchToPageIterator;
 import nova.hetu.omniruntime.operator.OmniOperator;
 import nova.hetu.omniruntime.utils.OmniRuntimeException;
+import nova.hetu.omniruntime.vector.LongVec;
 import nova.hetu.omniruntime.vector.VecAllocator;
 import nova.hetu.omniruntime.vector.VecBatch;
 
@@ -46,8 +49,8 @@ import java.util.OptionalInt;
 
 import static io.prestosql.operator.WorkProcessor.ProcessState.finished;
 import static io.prestosql.operator.WorkProcessor.ProcessState.ofResult;
-import static io.prestosql.operator.project.SelectedPositions.positionsRange;
 import static java.util.Objects.requireNonNull;
+import static nova.hetu.olk.tool.OperatorUtils.buildOffHeapBlock;
 import static nova.hetu.olk.tool.OperatorUtils.buildVecBatch;
 import static nova.hetu.omniruntime.utils.OmniErrorType.OMNI_NATIVE_ERROR;
 
@@ -60,6 +63,12 @@ import static nova.hetu.omniruntime.utils.OmniErrorType.OMNI_NATIVE_ERROR;
 public class OmniPageProcessor
         extends PageProcessor
 {
+    private static final int MAX_BATCH_SIZE = 8 * 1024;
+
+    private static final long MAX_PAGE_SIZE_IN_BYTES = 4 * 1024 * 1024;
+
+    private static final long MIN_PAGE_SIZE_IN_BYTES = 1024 * 1024;
+
     private final OmniProjection projection;
 
     private final VecAllocator vecAllocator;
@@ -68,6 +77,14 @@ public class OmniPageProcessor
 
     private Optional<OmniPageFilter.OmniPageFilterOperator> omniPageFilterOperator = Optional.empty();
     private Optional<OmniOperator> omniProjectionOperator = Optional.empty();
+    private final Optional<OmniPageFilter> positionFilter;
+    private Optional<OmniPageFilter.OmniPageFilterOperator> positionFilterOperator = Optional.empty();
+
+    private final List<Type> inputTypes;
+
+    private int batchSize;
+
+    private OmniProcessPositionRanges currentRanges;
 
     /**
      * Instantiates a new Omni page processor.
@@ -80,11 +97,37 @@ public class OmniPageProcessor
     public OmniPageProcessor(VecAllocator vecAllocator, Optional<PageFilter> filter, OmniProjection proj,
                              OptionalInt initialBatchSize, ExpressionProfiler expressionProfiler,
                              OmniLocalExecutionPlanContext context)
+    {
+        this(vecAllocator, filter, Optional.empty(), ImmutableList.of(), proj, initialBatchSize, expressionProfiler,
+                context);
+    }
+
+    /**
+     * Instantiates a new Omni page processor which copies the channels that
+     * the filter does not read to native vectors only at the positions
+     * selected by the filter, see {@link #filterThenCopySelected}.
+     *
+     * @param filter the filter
+     * @param positionFilter the filter of the filter channels, which outputs
+     * these channels followed by the positions of the selected rows
+     * @param inputTypes the input types
+     * @param proj the proj
+     * @param initialBatchSize the initial batch size
+     * @param expressionProfiler the expression profiler
+     */
+    public OmniPageProcessor(VecAllocator vecAllocator, Optional<PageFilter> filter,
+                             Optional<OmniPageFilter> positionFilter, List<Type> inputTypes, OmniProjection proj,
+                             OptionalInt initialBatchSize, ExpressionProfiler expressionProfiler,
+                             OmniLocalExecutionPlanContext context)
     {
         super(filter, Collections.emptyList(), initialBatchSize, expressionProfiler);
         this.vecAllocator = vecAllocator;
         this.context = context;
         this.projection = requireNonNull(proj, "projection is null");
+        this.inputTypes = ImmutableList.copyOf(requireNonNull(inputTypes, "inputTypes is null"));
+        this.batchSize = Math.min(initialBatchSize.orElse(MAX_BATCH_SIZE), MAX_BATCH_SIZE);
+        this.positionFilter = filter.isPresent() ? requireNonNull(positionFilter, "positionFilter is null")
+                : Optional.empty();
 
         if (filter.isPresent()) {
             PageFilter pageFilter = filter.get();
@@ -134,88 +177,312 @@ public class OmniPageProcessor
     public WorkProcessor<Page> createWorkProcessor(ConnectorSession session, DriverYieldSignal yieldSignal,
                                                    LocalMemoryContext memoryContext, Page page)
     {
+        // the work processor of the previous page is only left unfinished when it was abandoned
+        close();
         if (page.getPositionCount() == 0) {
             BlockUtils.freePage(page);
             return WorkProcessor.of();
         }
 
+        if (isSelectiveCopy(page)) {
+            Page output = filterThenCopySelected(page);
+            return output == null ? WorkProcessor.of() : WorkProcessor.of(output);
+        }
+
         Page preloadPage = preloadNeedFilterLazyBlock(page);
-        VecBatch inputVecBatch = buildVecBatch(vecAllocator, preloadPage, this);
-        if (omniPageFilterOperator.isPresent()) {
-            VecBatch filteredVecBatch = omniPageFilterOperator.get().filterAndProject(inputVecBatch);
-            if (filteredVecBatch == null) {
-                return WorkProcessor.of();
+        currentRanges = new OmniProcessPositionRanges(yieldSignal, memoryContext, preloadPage);
+        return WorkProcessor.create(currentRanges);
+    }
+
+    /**
+     * Releases the vectors of the page of a work processor which was abandoned
+     * before it finished, e.g. when the operator is closed after a limit is
+     * reached.
+     */
+    public void close()
+    {
+        if (currentRanges != null) {
+            currentRanges.close();
+            currentRanges = null;
+        }
+    }
+
+    /**
+     * Closes a page processor if it is an omni page processor.
+     *
+     * @param pageProcessor the page processor
+     */
+    public static void closePageProcessor(PageProcessor pageProcessor)
+    {
+        if (pageProcessor instanceof OmniPageProcessor) {
+            ((OmniPageProcessor) pageProcessor).close();
+        }
+        else if (pageProcessor instanceof OmniSplitPageProcessor) {
+            ((OmniSplitPageProcessor) pageProcessor).close();
+        }
+    }
+
+    private boolean isSelectiveCopy(Page page)
+    {
+        if (!positionFilter.isPresent()) {
+            return false;
+        }
+        // only worth it when every channel which the filter does not read is still to be loaded
+        List<Integer> filterChannels = omniPageFilterOperator.get().getInputChannels().getInputChannels();
+        for (int channel = 0; channel < page.getChannelCount(); channel++) {
+            if (!filterChannels.contains(channel) && !isUnloadedLazyBlock(page.getBlock(channel))) {
+                return false;
             }
-            Iterator<Page> result = new VecBatchToPageIterator(ImmutableList.of(filteredVecBatch).iterator());
-            if (result.hasNext()) {
-                return WorkProcessor.of(result.next());
+        }
+        return true;
+    }
+
+    private static boolean isUnloadedLazyBlock(Block block)
+    {
+        if (block instanceof LazyOmniBlock) {
+            return !((LazyOmniBlock<?>) block).getLazyBlock().isLoaded();
+        }
+        return block instanceof LazyBlock && !((LazyBlock<?>) block).isLoaded();
+    }
+
+    /**
+     * Creates the operators of {@link #filterThenCopySelected} on the first
+     * page which it processes, so that a page processor whose pages are never
+     * lazy does not hold them.
+     */
+    private void createPositionFilterOperators()
+    {
+        if (positionFilterOperator.isPresent()) {
+            return;
+        }
+        this.positionFilterOperator = Optional.of(positionFilter.get().getOperator(vecAllocator));
+        this.omniProjectionOperator = Optional.of(projection.getFactory().createOperator(vecAllocator));
+        if (context != null) {
+            context.onTaskFinished(taskFinished -> {
+                this.positionFilterOperator.get().close();
+                this.omniProjectionOperator.get().close();
+            });
+        }
+    }
+
+    /**
+     * Filters the filter channels of the page, then copies the other channels
+     * to native vectors at the selected positions only and projects the
+     * reduced page. The lazy blocks of the other channels are still loaded
+     * whole on heap, since a lazy block cannot load a subset of its positions,
+     * so this saves the native copy and the projection of the rows which the
+     * filter rejects. The other channels are not loaded at all when no row is
+     * selected.
+     */
+    private Page filterThenCopySelected(Page page)
+    {
+        createPositionFilterOperators();
+        List<Integer> filterChannels = omniPageFilterOperator.get().getInputChannels().getInputChannels();
+        try {
+            return filterThenCopySelected(page, filterChannels);
+        }
+        finally {
+            // the lazy vectors of the other channels are bypassed, their blocks are loaded on heap instead
+            for (int channel = 0; channel < page.getChannelCount(); channel++) {
+                Block block = page.getBlock(channel);
+                if (!filterChannels.contains(channel) && block instanceof LazyOmniBlock) {
+                    block.close();
+                }
             }
-            else {
-                return WorkProcessor.of();
+        }
+    }
+
+    private Page filterThenCopySelected(Page page, List<Integer> filterChannels)
+    {
+        int positionCount = page.getPositionCount();
+        int filterChannelCount = filterChannels.size();
+        Block[] filterBlocks = new Block[filterChannelCount + 1];
+        for (int i = 0; i < filterChannelCount; i++) {
+            Block block = page.getBlock(filterChannels.get(i));
+            // the native filter loads a lazy vector through the dictionary cache of the operator
+            filterBlocks[i] = block instanceof LazyOmniBlock ? block : block.getLoadedBlock();
+        }
+        long[] rowPositions = new long[positionCount];
+        for (int position = 0; position < positionCount; position++) {
+            rowPositions[position] = position;
+        }
+        filterBlocks[filterChannelCount] = buildOffHeapBlock(vecAllocator,
+                new LongArrayBlock(positionCount, Optional.empty(), rowPositions));
+        VecBatch filteredVecBatch = positionFilterOperator.get()
+                .filterAndProject(buildVecBatch(vecAllocator, new Page(positionCount, filterBlocks), this));
+        if (filteredVecBatch == null) {
+            return null;
+        }
+        Iterator<Page> result = new VecBatchToPageIterator(ImmutableList.of(filteredVecBatch).iterator());
+        if (!result.hasNext()) {
+            return null;
+        }
+        Page filteredPage = result.next();
+
+        int selectedCount = filteredPage.getPositionCount();
+        Block positionBlock = filteredPage.getBlock(filterChannelCount);
+        long[] selectedPositions = ((LongVec) positionBlock.getValues()).get(0, selectedCount);
+        positionBlock.close();
+        int[] positions = new int[selectedCount];
+        for (int i = 0; i < selectedCount; i++) {
+            positions[i] = (int) selectedPositions[i];
+        }
+        Block[] blocks = new Block[page.getChannelCount()];
+        for (int i = 0; i < filterChannelCount; i++) {
+            blocks[filterChannels.get(i)] = filteredPage.getBlock(i);
+        }
+        for (int channel = 0; channel < blocks.length; channel++) {
+            if (blocks[channel] == null) {
+                Block selectedBlock = page.getBlock(channel).getLoadedBlock().copyPositions(positions, 0,
+                        selectedCount);
+                blocks[channel] = buildOffHeapBlock(vecAllocator, selectedBlock,
+                        selectedBlock.getClass().getSimpleName(), selectedCount, inputTypes.get(channel));
             }
         }
 
-        return WorkProcessor.create(new OmniProjectSelectedPositions(vecAllocator, session, yieldSignal, memoryContext,
-                inputVecBatch, positionsRange(0, inputVecBatch.getRowCount()), omniProjectionOperator.get()));
+        OmniOperator projectionOperator = omniProjectionOperator.get();
+        projectionOperator.addInput(buildVecBatch(vecAllocator, new Page(selectedCount, blocks), this));
+        Iterator<Page> output = new VecBatchToPageIterator(projectionOperator.getOutput());
+        if (!output.hasNext()) {
+            throw new OmniRuntimeException(OMNI_NATIVE_ERROR, "Projection returns empty result");
+        }
+        return output.next();
     }
 
-    private class OmniProjectSelectedPositions
-            implements WorkProcessor.Process<Page>
+    private static boolean isSplittable(Page page)
     {
-        private final VecAllocator vecAllocator;
+        // lazy blocks are loaded by the native operator, so their pages are processed whole
+        for (Block block : page.getBlocks()) {
+            if (!block.isExtensionBlock() || block instanceof LazyOmniBlock) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Page process(VecBatch vecBatch)
+    {
+        if (omniPageFilterOperator.isPresent()) {
+            VecBatch filteredVecBatch = omniPageFilterOperator.get().filterAndProject(vecBatch);
+            if (filteredVecBatch == null) {
+                return null;
+            }
+            Iterator<Page> result = new VecBatchToPageIterator(ImmutableList.of(filteredVecBatch).iterator());
+            return result.hasNext() ? result.next() : null;
+        }
 
-        private final ConnectorSession session;
+        OmniOperator projectionOperator = omniProjectionOperator.get();
+        projectionOperator.addInput(vecBatch);
+        Iterator<Page> result = new VecBatchToPageIterator(projectionOperator.getOutput());
+        if (!result.hasNext()) {
+            throw new OmniRuntimeException(OMNI_NATIVE_ERROR, "Filter returns empty result");
+        }
+        return result.next();
+    }
 
+    /**
+     * Processes a page one position range at a time, so that the driver can
+     * yield between two calls into OmniRuntime. The size of the ranges adapts
+     * to the size of the output pages.
+     */
+    private class OmniProcessPositionRanges
+            implements WorkProcessor.Process<Page>
+    {
         private final DriverYieldSignal yieldSignal;
 
         private final LocalMemoryContext memoryContext;
 
-        private final VecBatch vecBatch;
+        private final int positionCount;
+
+        private final boolean isSplittable;
 
-        private final SelectedPositions selectedPositions;
+        // null once the vectors of the page are handed over to the native operator or released
+        private Page page;
 
-        private boolean isFinished;
-        private final OmniOperator omniProjectionOperator;
+        private int position;
 
         /**
-         * Instantiates a new Omni project selected positions.
+         * Instantiates a new Omni process position ranges.
          *
-         * @param vecAllocator vector allocator
-         * @param session the session
          * @param yieldSignal the yield signal
          * @param memoryContext the memory context
-         * @param vecBatch the page
-         * @param selectedPositions the selected positions
+         * @param page the page
          */
-        public OmniProjectSelectedPositions(VecAllocator vecAllocator, ConnectorSession session,
-                                            DriverYieldSignal yieldSignal, LocalMemoryContext memoryContext, VecBatch vecBatch,
-                                            SelectedPositions selectedPositions, OmniOperator omniProjectionOperator)
+        OmniProcessPositionRanges(DriverYieldSignal yieldSignal, LocalMemoryContext memoryContext, Page page)
         {
-            this.vecAllocator = vecAllocator;
-            this.omniProjectionOperator = omniProjectionOperator;
-            this.session = session;
             this.yieldSignal = yieldSignal;
             this.memoryContext = memoryContext;
-            this.vecBatch = vecBatch;
-            this.selectedPositions = selectedPositions;
-            this.isFinished = false;
+            this.page = page;
+            this.positionCount = page.getPositionCount();
+            this.isSplittable = isSplittable(page);
+        }
+
+        /**
+         * Releases the vectors of the page unless they are handed over already.
+         */
+        void close()
+        {
+            if (page != null) {
+                BlockUtils.freePage(page);
+                page = null;
+            }
         }
 
         @Override
         public ProcessState<Page> process()
         {
-            if (isFinished) {
-                return finished();
-            }
+            while (position < positionCount) {
+                if (position > 0 && yieldSignal != null && yieldSignal.isSet()) {
+                    return ProcessState.yield();
+                }
+
+                Page range;
+                int length;
+                if (position == 0 && (!isSplittable || positionCount <= batchSize)) {
+                    range = page;
+                    length = positionCount;
+                }
+                else {
+                    length = Math.min(batchSize, positionCount - position);
+                    range = page.getRegion(position, length);
+                }
+                position += length;
+                Page output;
+                try {
+                    output = OmniPageProcessor.this.process(buildVecBatch(vecAllocator, range,
+                            OmniPageProcessor.this));
+                }
+                finally {
+                    if (range == page) {
+                        // the native operator owns the vectors of a page which it gets whole
+                        page = null;
+                    }
+                    else if (position == positionCount) {
+                        // the ranges are slices of the vectors of the page, which are released after the last one
+                        close();
+                    }
+                }
+                if (output == null) {
+                    continue;
+                }
 
-            omniProjectionOperator.addInput(vecBatch);
-            Iterator<Page> result = new VecBatchToPageIterator(omniProjectionOperator.getOutput());
-            if (!result.hasNext()) {
-                throw new OmniRuntimeException(OMNI_NATIVE_ERROR, "Filter returns empty result");
+                long outputSize = output.getSizeInBytes();
+                if (outputSize > MAX_PAGE_SIZE_IN_BYTES) {
+                    batchSize = Math.max(1, batchSize / 2);
+                }
+                else if (outputSize < MIN_PAGE_SIZE_IN_BYTES && length >= batchSize) {
+                    batchSize = Math.min(MAX_BATCH_SIZE, batchSize * 2);
+                }
+                if (memoryContext != null) {
+                    // the output vectors are native memory until the operator hands them over
+                    memoryContext.setBytes(output.getRetainedSizeInBytes());
+                }
+                return ofResult(output);
+            }
+            if (memoryContext != null) {
+                memoryContext.setBytes(0);
             }
-            Page projectedPage = result.next();
-            isFinished = true;
-            return ofResult(projectedPage);
+            return finished();
         }
     }
 }
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.operator.filterandproject;
+
+import com.google.common.collect.ImmutableList;
+import io.prestosql.memory.context.LocalMemoryContext;
+import io.prestosql.operator.DriverYieldSignal;
+import io.prestosql.operator.WorkProcessor;
+import io.prestosql.operator.project.PageProcessor;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.connector.ConnectorSession;
+import io.prestosql.spi.type.Type;
+import io.prestosql.sql.gen.ExpressionProfiler;
+import nova.hetu.omniruntime.vector.VecAllocator;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+import static java.util.Objects.requireNonNull;
+import static nova.hetu.olk.tool.BlockUtils.freePage;
+import static nova.hetu.olk.tool.OperatorUtils.transferToOffHeapPages;
+import static nova.hetu.olk.tool.OperatorUtils.transferToOnHeapPage;
+
+/**
+ * Page processor of a filter and projection which OmniRuntime supports only
+ * in part. The omni page processor applies the supported conjuncts of the
+ * filter and computes the supported projections first, then the residual page
+ * processor applies the other conjuncts and projections to the reduced page.
+ *
+ * @since 20221017
+ */
+@NotThreadSafe
+public class OmniSplitPageProcessor
+        extends PageProcessor
+{
+    private final VecAllocator vecAllocator;
+
+    private final OmniPageProcessor omniPageProcessor;
+
+    private final PageProcessor residualPageProcessor;
+
+    private final List<Type> outputTypes;
+
+    /**
+     * Instantiates a new Omni split page processor.
+     *
+     * @param vecAllocator vector allocator
+     * @param omniPageProcessor the page processor of the supported conjuncts and projections
+     * @param residualPageProcessor the page processor of the residual conjuncts and projections
+     * @param outputTypes the types of the projections
+     * @param initialBatchSize the initial batch size
+     */
+    public OmniSplitPageProcessor(VecAllocator vecAllocator, OmniPageProcessor omniPageProcessor,
+                                  PageProcessor residualPageProcessor, List<Type> outputTypes,
+                                  OptionalInt initialBatchSize)
+    {
+        super(Optional.empty(), Collections.emptyList(), initialBatchSize, new ExpressionProfiler());
+        this.vecAllocator = vecAllocator;
+        this.omniPageProcessor = requireNonNull(omniPageProcessor, "omniPageProcessor is null");
+        this.residualPageProcessor = requireNonNull(residualPageProcessor, "residualPageProcessor is null");
+        this.outputTypes = ImmutableList.copyOf(requireNonNull(outputTypes, "outputTypes is null"));
+    }
+
+    @Override
+    public WorkProcessor<Page> createWorkProcessor(ConnectorSession session, DriverYieldSignal yieldSignal,
+                                                   LocalMemoryContext memoryContext, Page page)
+    {
+        return omniPageProcessor.createWorkProcessor(session, yieldSignal, memoryContext, page)
+                .flatMap(reducedPage -> {
+                    // the compiled residual expressions read the values of on-heap blocks only
+                    Page onHeapPage = transferToOnHeapPage(reducedPage);
+                    freePage(reducedPage);
+                    return residualPageProcessor.createWorkProcessor(session, yieldSignal, memoryContext, onHeapPage)
+                            .map(outputPage -> transferToOffHeapPages(vecAllocator, outputPage, outputTypes));
+                });
+    }
+
+    /**
+     * Releases the page of an abandoned work processor of the omni page
+     * processor.
+     */
+    public void close()
+    {
+        omniPageProcessor.close();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.operator.localexchange;
+
+import com.google.common.primitives.Ints;
+import io.prestosql.operator.HashGenerator;
+import io.prestosql.operator.InterpretedHashGenerator;
+import io.prestosql.operator.PrecomputedHashGenerator;
+import io.prestosql.operator.exchange.LocalPartitionGenerator;
+import io.prestosql.operator.scalar.CombineHashFunction;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.type.AbstractLongType;
+import io.prestosql.spi.type.Type;
+import io.prestosql.type.TypeUtils;
+import nova.hetu.olk.block.LongArrayOmniBlock;
+import nova.hetu.omniruntime.vector.LongVec;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.sql.planner.optimizations.HashGenerationOptimizer.INITIAL_HASH_VALUE;
+import static io.prestosql.type.TypeUtils.NULL_HASH_CODE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Assigns the rows of a page to the partitions of a local exchange. The hashes
+ * are computed one partition channel at a time, and long vectors are read with
+ * one bulk copy instead of a getter call per value. The rows are then grouped
+ * by partition in a single counting pass, so the positions of every partition
+ * are a range of one array.
+ * <p>
+ * The raw hashes are the ones of InterpretedHashGenerator and
+ * PrecomputedHashGenerator, and the partitions are the ones of
+ * LocalPartitionGenerator, so the rows are partitioned like the pages of the
+ * Java local exchange and the partitioned lookup sources of joins. An instance
+ * keeps the state of one producer and is not thread safe.
+ *
+ * @since 20221017
+ */
+public class OmniLocalPartitionGenerator
+{
+    private final List<Type> partitionChannelTypes;
+
+    private final int[] partitionChannels;
+
+    private final Optional<Integer> hashChannel;
+
+    private final int partitionCount;
+
+    private final LocalPartitionGenerator localPartitionGenerator;
+
+    private final int[] partitionStarts;
+
+    private final int[] partitionCursors;
+
+    private long[] hashes = new long[0];
+
+    private int[] rowPartitions = new int[0];
+
+    private int[] positions = new int[0];
+
+    /**
+     * Instantiates a new local partition generator.
+     *
+     * @param types the types of the pages
+     * @param partitionChannels the partition channels
+     * @param hashChannel the channel of the precomputed hash of the partition channels
+     * @param partitionCount the partition count, a power of 2
+     */
+    public OmniLocalPartitionGenerator(List<? extends Type> types, List<Integer> partitionChannels,
+                                       Optional<Integer> hashChannel, int partitionCount)
+    {
+        this.partitionChannelTypes = partitionChannels.stream().map(types::get).collect(toImmutableList());
+        this.partitionChannels = Ints.toArray(partitionChannels);
+        this.hashChannel = requireNonNull(hashChannel, "hashChannel is null");
+        this.partitionCount = partitionCount;
+        HashGenerator hashGenerator;
+        if (hashChannel.isPresent()) {
+            hashGenerator = new PrecomputedHashGenerator(hashChannel.get());
+        }
+        else {
+            hashGenerator = new InterpretedHashGenerator(partitionChannelTypes, this.partitionChannels);
+        }
+        // only maps the raw hashes to partitions, the hashes of the page are computed in bulk
+        this.localPartitionGenerator = new LocalPartitionGenerator(hashGenerator, partitionCount);
+        this.partitionStarts = new int[partitionCount + 1];
+        this.partitionCursors = new int[partitionCount];
+    }
+
+    /**
+     * Groups the positions of the page by partition. The positions of a
+     * partition are in ascending order.
+     *
+     * @param page the page
+     */
+    public void partitionPage(Page page)
+    {
+        int positionCount = page.getPositionCount();
+        ensureCapacity(positionCount);
+        if (hashChannel.isPresent()) {
+            readLongs(page.getBlock(hashChannel.get()), positionCount);
+        }
+        else {
+            Arrays.fill(hashes, 0, positionCount, INITIAL_HASH_VALUE);
+            for (int i = 0; i < partitionChannels.length; i++) {
+                combineHashes(partitionChannelTypes.get(i), page.getBlock(partitionChannels[i]), positionCount);
+            }
+        }
+
+        Arrays.fill(partitionStarts, 0);
+        for (int position = 0; position < positionCount; position++) {
+            int partition = localPartitionGenerator.getPartition(hashes[position]);
+            rowPartitions[position] = partition;
+            partitionStarts[partition + 1]++;
+        }
+        for (int partition = 0; partition < partitionCount; partition++) {
+            partitionStarts[partition + 1] += partitionStarts[partition];
+        }
+        System.arraycopy(partitionStarts, 0, partitionCursors, 0, partitionCount);
+        for (int position = 0; position < positionCount; position++) {
+            positions[partitionCursors[rowPartitions[position]]++] = position;
+        }
+    }
+
+    /**
+     * Gets the positions of the last page grouped by partition.
+     *
+     * @return the positions
+     */
+    public int[] getPositions()
+    {
+        return positions;
+    }
+
+    /**
+     * Gets the offset of the first position of a partition in the positions.
+     *
+     * @param partition the partition
+     * @return the offset
+     */
+    public int getPartitionStart(int partition)
+    {
+        return partitionStarts[partition];
+    }
+
+    /**
+     * Gets the count of the positions of a partition in the last page.
+     *
+     * @param partition the partition
+     * @return the position count
+     */
+    public int getPartitionSize(int partition)
+    {
+        return partitionStarts[partition + 1] - partitionStarts[partition];
+    }
+
+    private void readLongs(Block block, int positionCount)
+    {
+        if (block instanceof LongArrayOmniBlock) {
+            long[] values = ((LongVec) block.getValues()).get(0, positionCount);
+            System.arraycopy(values, 0, hashes, 0, positionCount);
+            return;
+        }
+        for (int position = 0; position < positionCount; position++) {
+            hashes[position] = BIGINT.getLong(block, position);
+        }
+    }
+
+    private void combineHashes(Type type, Block block, int positionCount)
+    {
+        if (type.equals(BIGINT) && block instanceof LongArrayOmniBlock) {
+            long[] values = ((LongVec) block.getValues()).get(0, positionCount);
+            boolean mayHaveNull = block.mayHaveNull();
+            for (int position = 0; position < positionCount; position++) {
+                long hash = mayHaveNull && block.isNull(position)
+                        ? NULL_HASH_CODE
+                        : AbstractLongType.hash(values[position]);
+                hashes[position] = CombineHashFunction.getHash(hashes[position], hash);
+            }
+            return;
+        }
+        for (int position = 0; position < positionCount; position++) {
+            hashes[position] = CombineHashFunction.getHash(hashes[position],
+                    TypeUtils.hashPosition(type, block, position));
+        }
+    }
+
+    private void ensureCapacity(int positionCount)
+    {
+        if (hashes.length < positionCount) {
+            hashes = new long[positionCount];
+            rowPartitions = new int[positionCount];
+            positions = new int[positionCount];
+        }
+    }
+}
@@ -16,21 +16,14 @@
 package nova.hetu.olk.operator.localexchange;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.ListenableFuture;
-import io.prestosql.operator.HashGenerator;
-import io.prestosql.operator.InterpretedHashGenerator;
-import io.prestosql.operator.PrecomputedHashGenerator;
 import io.prestosql.operator.TaskContext;
 import io.prestosql.operator.exchange.LocalExchangeMemoryManager;
 import io.prestosql.operator.exchange.LocalExchanger;
-import io.prestosql.operator.exchange.LocalPartitionGenerator;
 import io.prestosql.operator.exchange.PageReference;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.block.Block;
 import io.prestosql.spi.type.Type;
-import it.unimi.dsi.fastutil.ints.IntArrayList;
-import it.unimi.dsi.fastutil.ints.IntList;
 import nova.hetu.olk.operator.filterandproject.OmniMergingPageOutput;
 import nova.hetu.olk.tool.BlockUtils;
 import nova.hetu.olk.tool.VecAllocatorHelper;
@@ -41,10 +34,16 @@ import java.util.List;
 import java.util.Optional;
 import java.util.function.BiConsumer;
 
-import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.Iterators.transform;
 import static java.util.Objects.requireNonNull;
 
+/**
+ * Partitions the pages of one producer of a local exchange. Every sink of the
+ * exchange gets its own exchanger, so the exchanger keeps its partitioning
+ * state without a lock.
+ *
+ * @since 20221017
+ */
 public class OmniPartitioningExchanger
         implements LocalExchanger
 {
@@ -52,9 +51,7 @@ public class OmniPartitioningExchanger
 
     private final LocalExchangeMemoryManager memoryManager;
 
-    private final LocalPartitionGenerator partitionGenerator;
-
-    private final IntArrayList[] partitionAssignments;
+    private final OmniLocalPartitionGenerator partitionGenerator;
 
     private final OmniMergingPageOutput mergingPageOutput;
 
@@ -67,20 +64,7 @@ public class OmniPartitioningExchanger
         this.buffers = ImmutableList.copyOf(requireNonNull(partitions, "partitions is null"));
         this.memoryManager = requireNonNull(memoryManager, "memoryManager is null");
 
-        HashGenerator hashGenerator;
-        if (hashChannel.isPresent()) {
-            hashGenerator = new PrecomputedHashGenerator(hashChannel.get());
-        }
-        else {
-            List<Type> partitionChannelTypes = partitionChannels.stream().map(types::get).collect(toImmutableList());
-            hashGenerator = new InterpretedHashGenerator(partitionChannelTypes, Ints.toArray(partitionChannels));
-        }
-        partitionGenerator = new LocalPartitionGenerator(hashGenerator, buffers.size());
-
-        partitionAssignments = new IntArrayList[partitions.size()];
-        for (int i = 0; i < partitionAssignments.length; i++) {
-            partitionAssignments[i] = new IntArrayList();
-        }
+        partitionGenerator = new OmniLocalPartitionGenerator(types, partitionChannels, hashChannel, buffers.size());
         VecAllocator allocator = VecAllocatorHelper.createOperatorLevelAllocator(taskContext,
                 VecAllocator.UNLIMIT, VecAllocatorHelper.DEFAULT_RESERVATION, OmniPartitioningExchanger.class);
         mergingPageOutput = new OmniMergingPageOutput(types, 128000, 256, allocator);
@@ -97,7 +81,7 @@ public class OmniPartitioningExchanger
     }
 
     @Override
-    public synchronized void accept(Page page, String origin)
+    public void accept(Page page, String origin)
     {
         this.origin = origin;
         mergingPageOutput.addInput(createPagesIterator(page));
@@ -110,27 +94,21 @@ public class OmniPartitioningExchanger
 
     private void process(Page mergedPage, String origin)
     {
-        // reset the assignment lists
-        for (IntList partitionAssignment : partitionAssignments) {
-            partitionAssignment.clear();
-        }
-
-        // assign each row to a partition
-        for (int position = 0; position < mergedPage.getPositionCount(); position++) {
-            int partition = partitionGenerator.getPartition(mergedPage, position);
-            partitionAssignments[partition].add(position);
-        }
+        // group the rows by partition, the positions of each partition are a range of one array
+        partitionGenerator.partitionPage(mergedPage);
+        int[] positions = partitionGenerator.getPositions();
 
         // build a page for each partition
         Block[] outputBlocks = new Block[mergedPage.getChannelCount()];
         for (int partition = 0; partition < buffers.size(); partition++) {
-            IntArrayList positions = partitionAssignments[partition];
-            if (!positions.isEmpty()) {
+            int partitionSize = partitionGenerator.getPartitionSize(partition);
+            if (partitionSize > 0) {
+                int partitionStart = partitionGenerator.getPartitionStart(partition);
                 for (int i = 0; i < mergedPage.getChannelCount(); i++) {
-                    outputBlocks[i] = mergedPage.getBlock(i).copyPositions(positions.elements(), 0, positions.size());
+                    outputBlocks[i] = mergedPage.getBlock(i).copyPositions(positions, partitionStart, partitionSize);
                 }
 
-                Page pageSplit = new Page(positions.size(), outputBlocks);
+                Page pageSplit = new Page(partitionSize, outputBlocks);
                 memoryManager.updateMemoryUsage(pageSplit.getRetainedSizeInBytes());
                 buffers.get(partition).accept(new PageReference(pageSplit, 1,
                         () -> memoryManager.updateMemoryUsage(-pageSplit.getRetainedSizeInBytes())), origin);
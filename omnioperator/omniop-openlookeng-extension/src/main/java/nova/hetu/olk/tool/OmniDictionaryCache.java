@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.tool;
+
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.DictionaryBlock;
+import io.prestosql.spi.block.DictionaryId;
+import io.prestosql.spi.type.Type;
+import nova.hetu.omniruntime.vector.Vec;
+import nova.hetu.omniruntime.vector.VecAllocator;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the dictionary of the last dictionary block converted by an operator
+ * for each channel as a vector, so that the next pages with the same
+ * dictionary in that channel, which the ORC reader hands out for a whole
+ * stripe, reuse it instead of converting the dictionary again. The vector of
+ * a channel is released when a block with another dictionary comes to the
+ * channel, e.g. from the next stripe, and when the cache is closed.
+ *
+ * @since 20221017
+ */
+@NotThreadSafe
+public class OmniDictionaryCache
+        implements AutoCloseable
+{
+    private final Map<Integer, ChannelDictionary> channelDictionaries = new HashMap<>();
+
+    private boolean closed;
+
+    private long hitCount;
+
+    private long missCount;
+
+    /**
+     * Gets the dictionary of a dictionary block as a vector. The vector is
+     * owned by the cache and must not be closed by the caller.
+     *
+     * @param vecAllocator vector allocator
+     * @param channel the channel of the block in its page
+     * @param dictionaryBlock the dictionary block
+     * @param blockType the type of the block
+     * @return the dictionary vector
+     */
+    public Vec getDictionaryVec(VecAllocator vecAllocator, int channel, DictionaryBlock dictionaryBlock,
+                                Type blockType)
+    {
+        ChannelDictionary channelDictionary = channelDictionaries.computeIfAbsent(channel,
+                ignored -> new ChannelDictionary());
+        Block blockDictionary = dictionaryBlock.getDictionary();
+        DictionaryId blockDictionaryId = dictionaryBlock.getDictionarySourceId();
+        if (channelDictionary.matches(blockDictionary, blockDictionaryId, blockType)) {
+            hitCount++;
+            return (Vec) channelDictionary.omniDictionary.getValues();
+        }
+
+        missCount++;
+        channelDictionary.release();
+        channelDictionary.omniDictionary = OperatorUtils.buildOffHeapBlock(vecAllocator, blockDictionary,
+                blockDictionary.getClass().getSimpleName(), blockDictionary.getPositionCount(), blockType);
+        channelDictionary.dictionary = blockDictionary;
+        channelDictionary.dictionaryId = blockDictionaryId;
+        channelDictionary.dictionaryType = blockType;
+        return (Vec) channelDictionary.omniDictionary.getValues();
+    }
+
+    /**
+     * Is closed boolean.
+     *
+     * @return if the cache is closed and does not keep dictionaries anymore
+     */
+    public boolean isClosed()
+    {
+        return closed;
+    }
+
+    public long getHitCount()
+    {
+        return hitCount;
+    }
+
+    public long getMissCount()
+    {
+        return missCount;
+    }
+
+    @Override
+    public void close()
+    {
+        closed = true;
+        channelDictionaries.values().forEach(ChannelDictionary::release);
+        channelDictionaries.clear();
+    }
+
+    private static class ChannelDictionary
+    {
+        private DictionaryId dictionaryId;
+
+        private Block dictionary;
+
+        private Type dictionaryType;
+
+        private Block omniDictionary;
+
+        private boolean matches(Block blockDictionary, DictionaryId blockDictionaryId, Type blockType)
+        {
+            // the same source id is given to the regions and copies of a dictionary, so the instance is compared too
+            return omniDictionary != null && blockDictionary == dictionary && blockDictionaryId.equals(dictionaryId)
+                    && Objects.equals(blockType, dictionaryType);
+        }
+
+        private void release()
+        {
+            if (omniDictionary != null) {
+                omniDictionary.close();
+                omniDictionary = null;
+                dictionary = null;
+                dictionaryId = null;
+                dictionaryType = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.tool;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.compress.Compressor;
+import io.airlift.compress.Decompressor;
+import io.airlift.compress.lz4.Lz4Compressor;
+import io.airlift.compress.lz4.Lz4Decompressor;
+import io.airlift.slice.DynamicSliceOutput;
+import io.airlift.slice.Slice;
+import io.airlift.slice.SliceInput;
+import io.airlift.slice.SliceOutput;
+import io.airlift.slice.Slices;
+import io.hetu.core.transport.execution.buffer.PageCodecMarker;
+import io.hetu.core.transport.execution.buffer.PagesSerde;
+import io.hetu.core.transport.execution.buffer.SerializedPage;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.BlockEncodingSerde;
+import io.prestosql.spi.block.ByteArrayBlockEncoding;
+import io.prestosql.spi.block.DictionaryBlockEncoding;
+import io.prestosql.spi.block.DictionaryId;
+import io.prestosql.spi.block.Int128ArrayBlockEncoding;
+import io.prestosql.spi.block.IntArrayBlockEncoding;
+import io.prestosql.spi.block.LongArrayBlockEncoding;
+import io.prestosql.spi.block.VariableWidthBlockEncoding;
+import io.prestosql.spi.snapshot.MarkerPage;
+import io.prestosql.spi.type.Type;
+import nova.hetu.olk.block.ByteArrayOmniBlock;
+import nova.hetu.olk.block.DictionaryOmniBlock;
+import nova.hetu.olk.block.DoubleArrayOmniBlock;
+import nova.hetu.olk.block.Int128ArrayOmniBlock;
+import nova.hetu.olk.block.IntArrayOmniBlock;
+import nova.hetu.olk.block.LongArrayOmniBlock;
+import nova.hetu.olk.block.VariableWidthOmniBlock;
+import nova.hetu.omniruntime.vector.JvmUtils;
+import nova.hetu.omniruntime.vector.VarcharVec;
+import nova.hetu.omniruntime.vector.Vec;
+import nova.hetu.omniruntime.vector.VecAllocator;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkState;
+import static io.hetu.core.transport.block.BlockSerdeUtil.readBlock;
+import static io.hetu.core.transport.block.BlockSerdeUtil.writeBlock;
+import static io.prestosql.spi.type.DoubleType.DOUBLE;
+import static java.lang.Math.toIntExact;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Pages serde which writes the vectors of omni blocks to the wire format of
+ * openLooKeng without building on heap blocks first, the values are copied
+ * once from the native buffers into the serialized page. Deserialized pages
+ * are made of omni blocks built from the wire, so an OmniRuntime operator
+ * reading them needs no transfer off heap.
+ * <p>
+ * The serialized pages are the ones of {@link PagesSerde}, so either side
+ * can be a regular pages serde. Blocks without a direct encoding are written
+ * and read through the block encoding serde, and marker and encrypted pages
+ * are left to the regular pages serde.
+ *
+ * @since 20221017
+ */
+public class OmniPagesSerde
+        extends PagesSerde
+{
+    private static final double MINIMUM_COMPRESSION_RATIO = 0.8;
+
+    private final BlockEncodingSerde blockEncodingSerde;
+
+    private final Optional<Compressor> compressor;
+
+    private final Optional<Decompressor> decompressor;
+
+    private final VecAllocator vecAllocator;
+
+    private final List<Type> types;
+
+    /**
+     * Instantiates a new omni pages serde.
+     *
+     * @param blockEncodingSerde the block encoding serde
+     * @param compressionEnabled whether the serialized pages are compressed
+     * @param vecAllocator the vector allocator of the deserialized blocks
+     * @param types the types of the pages
+     */
+    public OmniPagesSerde(BlockEncodingSerde blockEncodingSerde, boolean compressionEnabled,
+                          VecAllocator vecAllocator, List<Type> types)
+    {
+        this(blockEncodingSerde,
+                compressionEnabled ? Optional.of(new Lz4Compressor()) : Optional.empty(),
+                compressionEnabled ? Optional.of(new Lz4Decompressor()) : Optional.empty(),
+                vecAllocator, types);
+    }
+
+    private OmniPagesSerde(BlockEncodingSerde blockEncodingSerde, Optional<Compressor> compressor,
+                           Optional<Decompressor> decompressor, VecAllocator vecAllocator, List<Type> types)
+    {
+        super(blockEncodingSerde, compressor, decompressor, Optional.empty());
+        this.blockEncodingSerde = requireNonNull(blockEncodingSerde, "blockEncodingSerde is null");
+        this.compressor = compressor;
+        this.decompressor = decompressor;
+        this.vecAllocator = vecAllocator;
+        this.types = ImmutableList.copyOf(requireNonNull(types, "types is null"));
+    }
+
+    @Override
+    public SerializedPage serialize(Page page)
+    {
+        if (page instanceof MarkerPage || !hasExtensionBlock(page)) {
+            return super.serialize(page);
+        }
+
+        SliceOutput output = new DynamicSliceOutput(toIntExact(page.getSizeInBytes() + Integer.BYTES));
+        output.writeInt(page.getChannelCount());
+        for (int channel = 0; channel < page.getChannelCount(); channel++) {
+            writeOmniBlock(output, page.getBlock(channel));
+        }
+        Slice slice = output.slice();
+        int uncompressedSize = slice.length();
+        PageCodecMarker.MarkerSet markers = PageCodecMarker.MarkerSet.empty();
+        if (compressor.isPresent()) {
+            ByteBuffer compressionBuffer = ByteBuffer.allocate(compressor.get().maxCompressedLength(uncompressedSize));
+            compressor.get().compress(slice.toByteBuffer(), compressionBuffer);
+            compressionBuffer.flip();
+            if (((double) compressionBuffer.remaining()) / uncompressedSize <= MINIMUM_COMPRESSION_RATIO) {
+                slice = Slices.wrappedBuffer(compressionBuffer);
+                markers.add(PageCodecMarker.COMPRESSED);
+            }
+        }
+        // the dynamic output over allocates, the serialized page keeps only the written bytes
+        slice = Slices.copyOf(slice);
+        return new SerializedPage(slice, markers, page.getPositionCount(), uncompressedSize, page.getPageMetadata());
+    }
+
+    @Override
+    public Page deserialize(SerializedPage serializedPage)
+    {
+        requireNonNull(serializedPage, "serializedPage is null");
+        if (serializedPage.isMarkerPage() || serializedPage.isEncrypted()) {
+            return super.deserialize(serializedPage);
+        }
+
+        Slice slice = serializedPage.getSlice();
+        if (serializedPage.isCompressed()) {
+            checkState(decompressor.isPresent(), "Page is compressed, but decompressor is missing");
+            int uncompressedSize = serializedPage.getUncompressedSizeInBytes();
+            ByteBuffer decompressionBuffer = ByteBuffer.allocate(uncompressedSize);
+            decompressor.get().decompress(slice.toByteBuffer(), decompressionBuffer);
+            decompressionBuffer.flip();
+            checkState(decompressionBuffer.remaining() == uncompressedSize, "Page decompressed to an unexpected size");
+            slice = Slices.wrappedBuffer(decompressionBuffer);
+        }
+
+        SliceInput input = slice.getInput();
+        int channelCount = input.readInt();
+        Block[] blocks = new Block[channelCount];
+        for (int channel = 0; channel < channelCount; channel++) {
+            blocks[channel] = readOmniBlock(input, types.get(channel));
+        }
+        return new Page(serializedPage.getPositionCount(), serializedPage.getPageMetadata(), blocks);
+    }
+
+    private static boolean hasExtensionBlock(Page page)
+    {
+        for (int channel = 0; channel < page.getChannelCount(); channel++) {
+            if (page.getBlock(channel).isExtensionBlock()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeOmniBlock(SliceOutput output, Block block)
+    {
+        if (block instanceof LongArrayOmniBlock || block instanceof DoubleArrayOmniBlock) {
+            writeFixedWidthBlock(output, LongArrayBlockEncoding.NAME, block, Long.BYTES);
+        }
+        else if (block instanceof IntArrayOmniBlock) {
+            writeFixedWidthBlock(output, IntArrayBlockEncoding.NAME, block, Integer.BYTES);
+        }
+        else if (block instanceof Int128ArrayOmniBlock) {
+            writeFixedWidthBlock(output, Int128ArrayBlockEncoding.NAME, block, Long.BYTES * 2);
+        }
+        else if (block instanceof ByteArrayOmniBlock) {
+            writeFixedWidthBlock(output, ByteArrayBlockEncoding.NAME, block, Byte.BYTES);
+        }
+        else if (block instanceof VariableWidthOmniBlock) {
+            writeVariableWidthBlock(output, (VariableWidthOmniBlock) block);
+        }
+        else if (block instanceof DictionaryOmniBlock) {
+            writeDictionaryBlock(output, (DictionaryOmniBlock) block);
+        }
+        else if (block.isExtensionBlock()) {
+            writeBlock(blockEncodingSerde, output, OperatorUtils.buildOnHeapBlock(block));
+        }
+        else {
+            writeBlock(blockEncodingSerde, output, block);
+        }
+    }
+
+    private static void writeFixedWidthBlock(SliceOutput output, String encodingName, Block block, int width)
+    {
+        writeEncodingName(output, encodingName);
+        int positionCount = block.getPositionCount();
+        output.writeInt(positionCount);
+        encodeNullsAsBits(output, block);
+        if (positionCount == 0) {
+            return;
+        }
+
+        Vec vec = (Vec) block.getValues();
+        Slice values = Slices.wrappedBuffer(JvmUtils.directBuffer(vec.getValuesBuf()));
+        int offset = vec.getOffset() * width;
+        if (!block.mayHaveNull()) {
+            output.writeBytes(values, offset, positionCount * width);
+            return;
+        }
+        // only the values which are not null are written, one run of them at a time
+        int position = 0;
+        while (position < positionCount) {
+            if (block.isNull(position)) {
+                position++;
+                continue;
+            }
+            int runStart = position;
+            while (position < positionCount && !block.isNull(position)) {
+                position++;
+            }
+            output.writeBytes(values, offset + runStart * width, (position - runStart) * width);
+        }
+    }
+
+    private static void writeVariableWidthBlock(SliceOutput output, VariableWidthOmniBlock block)
+    {
+        writeEncodingName(output, VariableWidthBlockEncoding.NAME);
+        int positionCount = block.getPositionCount();
+        output.writeInt(positionCount);
+        int totalLength = 0;
+        for (int position = 0; position < positionCount; position++) {
+            totalLength += block.getSliceLength(position);
+            output.writeInt(totalLength);
+        }
+        encodeNullsAsBits(output, block);
+        output.writeInt(totalLength);
+        if (totalLength > 0) {
+            int dataOffset = ((VarcharVec) block.getValues()).getValueOffset(0);
+            output.writeBytes(block.getRawSlice(0), dataOffset, totalLength);
+        }
+    }
+
+    private void writeDictionaryBlock(SliceOutput output, DictionaryOmniBlock block)
+    {
+        // like DictionaryBlockEncoding, only the dictionary entries the ids refer to are written
+        DictionaryOmniBlock compactBlock = block.compact();
+        try {
+            writeEncodingName(output, DictionaryBlockEncoding.NAME);
+            int positionCount = compactBlock.getPositionCount();
+            output.writeInt(positionCount);
+            writeOmniBlock(output, compactBlock.getDictionary());
+            for (int position = 0; position < positionCount; position++) {
+                output.writeInt(compactBlock.getId(position));
+            }
+            DictionaryId dictionarySourceId = compactBlock.getDictionarySourceId();
+            output.writeLong(dictionarySourceId.getMostSignificantBits());
+            output.writeLong(dictionarySourceId.getLeastSignificantBits());
+            output.writeLong(dictionarySourceId.getSequenceId());
+        }
+        finally {
+            if (compactBlock != block) {
+                compactBlock.close();
+            }
+        }
+    }
+
+    private static void writeEncodingName(SliceOutput output, String encodingName)
+    {
+        byte[] bytes = encodingName.getBytes(UTF_8);
+        output.writeInt(bytes.length);
+        output.writeBytes(bytes);
+    }
+
+    private static void encodeNullsAsBits(SliceOutput output, Block block)
+    {
+        boolean mayHaveNull = block.mayHaveNull();
+        output.writeBoolean(mayHaveNull);
+        if (!mayHaveNull) {
+            return;
+        }
+        int positionCount = block.getPositionCount();
+        // the first position is the highest bit of a byte
+        for (int position = 0; position < positionCount; position += Byte.SIZE) {
+            int value = 0;
+            int mask = 0b1000_0000;
+            for (int i = position; i < Math.min(position + Byte.SIZE, positionCount); i++) {
+                value |= block.isNull(i) ? mask : 0;
+                mask >>>= 1;
+            }
+            output.writeByte(value);
+        }
+    }
+
+    private Block readOmniBlock(SliceInput input, Type type)
+    {
+        long blockStart = input.position();
+        String encodingName = input.readSlice(input.readInt()).toStringUtf8();
+        switch (encodingName) {
+            case LongArrayBlockEncoding.NAME:
+                return readLongArrayBlock(input, type);
+            case IntArrayBlockEncoding.NAME: {
+                int positionCount = input.readInt();
+                Optional<byte[]> valueIsNull = decodeNullBits(input, positionCount);
+                int[] values = new int[positionCount];
+                readNonNullValues(input, Slices.wrappedIntArray(values), valueIsNull, positionCount, Integer.BYTES);
+                return new IntArrayOmniBlock(vecAllocator, positionCount, valueIsNull, values);
+            }
+            case Int128ArrayBlockEncoding.NAME: {
+                int positionCount = input.readInt();
+                Optional<byte[]> valueIsNull = decodeNullBits(input, positionCount);
+                long[] values = new long[positionCount * 2];
+                readNonNullValues(input, Slices.wrappedLongArray(values), valueIsNull, positionCount, Long.BYTES * 2);
+                return new Int128ArrayOmniBlock(vecAllocator, positionCount, valueIsNull, values);
+            }
+            case VariableWidthBlockEncoding.NAME: {
+                int positionCount = input.readInt();
+                int[] offsets = new int[positionCount + 1];
+                input.readBytes(Slices.wrappedIntArray(offsets), Integer.BYTES, positionCount * Integer.BYTES);
+                Optional<byte[]> valueIsNull = decodeNullBits(input, positionCount);
+                Slice slice = input.readSlice(input.readInt());
+                return new VariableWidthOmniBlock(vecAllocator, positionCount, slice, offsets, valueIsNull);
+            }
+            case DictionaryBlockEncoding.NAME: {
+                int positionCount = input.readInt();
+                Block dictionary = readOmniBlock(input, type);
+                int[] ids = new int[positionCount];
+                input.readBytes(Slices.wrappedIntArray(ids));
+                DictionaryId dictionarySourceId = new DictionaryId(input.readLong(), input.readLong(),
+                        input.readLong());
+                Block block = new DictionaryOmniBlock(0, positionCount, (Vec) dictionary.getValues(), ids, false,
+                        dictionarySourceId);
+                dictionary.close();
+                return block;
+            }
+            default:
+                input.setPosition(blockStart);
+                Block block = readBlock(blockEncodingSerde, input);
+                return OperatorUtils.buildOffHeapBlock(vecAllocator, block, block.getClass().getSimpleName(),
+                        block.getPositionCount(), type);
+        }
+    }
+
+    private Block readLongArrayBlock(SliceInput input, Type type)
+    {
+        int positionCount = input.readInt();
+        Optional<byte[]> valueIsNull = decodeNullBits(input, positionCount);
+        if (DOUBLE.equals(type)) {
+            double[] values = new double[positionCount];
+            readNonNullValues(input, Slices.wrappedDoubleArray(values), valueIsNull, positionCount, Double.BYTES);
+            return new DoubleArrayOmniBlock(vecAllocator, positionCount, valueIsNull, values);
+        }
+        long[] values = new long[positionCount];
+        readNonNullValues(input, Slices.wrappedLongArray(values), valueIsNull, positionCount, Long.BYTES);
+        return new LongArrayOmniBlock(vecAllocator, positionCount, valueIsNull, values);
+    }
+
+    private static void readNonNullValues(SliceInput input, Slice values, Optional<byte[]> valueIsNull,
+                                          int positionCount, int width)
+    {
+        if (!valueIsNull.isPresent()) {
+            input.readBytes(values, 0, positionCount * width);
+            return;
+        }
+        byte[] isNull = valueIsNull.get();
+        int position = 0;
+        while (position < positionCount) {
+            if (isNull[position] == Vec.NULL) {
+                position++;
+                continue;
+            }
+            int runStart = position;
+            while (position < positionCount && isNull[position] != Vec.NULL) {
+                position++;
+            }
+            input.readBytes(values, runStart * width, (position - runStart) * width);
+        }
+    }
+
+    private static Optional<byte[]> decodeNullBits(SliceInput input, int positionCount)
+    {
+        if (!input.readBoolean()) {
+            return Optional.empty();
+        }
+        byte[] valueIsNull = new byte[positionCount];
+        for (int position = 0; position < positionCount; position += Byte.SIZE) {
+            int value = input.readUnsignedByte();
+            int mask = 0b1000_0000;
+            for (int i = position; i < Math.min(position + Byte.SIZE, positionCount); i++) {
+                if ((value & mask) != 0) {
+                    valueIsNull[i] = Vec.NULL;
+                }
+                mask >>>= 1;
+            }
+        }
+        return Optional.of(valueIsNull);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.tool;
+
+import io.hetu.core.transport.execution.buffer.PagesSerdeFactory;
+import io.prestosql.spi.block.BlockEncodingSerde;
+import io.prestosql.spi.type.Type;
+import nova.hetu.omniruntime.vector.VecAllocator;
+
+import java.util.List;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Pages serde factory which also creates the omni pages serdes of the
+ * operators.
+ *
+ * @since 20221017
+ */
+public class OmniPagesSerdeFactory
+        extends PagesSerdeFactory
+{
+    private final BlockEncodingSerde blockEncodingSerde;
+
+    private final boolean compressionEnabled;
+
+    /**
+     * Instantiates a new omni pages serde factory.
+     *
+     * @param blockEncodingSerde the block encoding serde
+     * @param compressionEnabled whether the serialized pages are compressed
+     */
+    public OmniPagesSerdeFactory(BlockEncodingSerde blockEncodingSerde, boolean compressionEnabled)
+    {
+        super(blockEncodingSerde, compressionEnabled);
+        this.blockEncodingSerde = requireNonNull(blockEncodingSerde, "blockEncodingSerde is null");
+        this.compressionEnabled = compressionEnabled;
+    }
+
+    /**
+     * Creates an omni pages serde.
+     *
+     * @param vecAllocator the vector allocator of the deserialized blocks
+     * @param types the types of the pages
+     * @return the omni pages serde
+     */
+    public OmniPagesSerde createOmniPagesSerde(VecAllocator vecAllocator, List<Type> types)
+    {
+        return new OmniPagesSerde(blockEncodingSerde, compressionEnabled, vecAllocator, types);
+    }
+}
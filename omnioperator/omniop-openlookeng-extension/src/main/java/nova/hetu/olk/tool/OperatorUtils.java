@@ -22,7 +22,6 @@ import io.airlift.slice.Slices;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.PrestoException;
 import io.prestosql.spi.StandardErrorCode;
-import io.prestosql.spi.block.AbstractVariableWidthBlock;
 import io.prestosql.spi.block.Block;
 import io.prestosql.spi.block.ByteArrayBlock;
 import io.prestosql.spi.block.DictionaryBlock;
@@ -46,6 +45,7 @@ import nova.hetu.olk.block.IntArrayOmniBlock;
 import nova.hetu.olk.block.LazyOmniBlock;
 import nova.hetu.olk.block.LongArrayOmniBlock;
 import nova.hetu.olk.block.RowOmniBlock;
+import nova.hetu.olk.block.RunLengthEncodedOmniBlock;
 import nova.hetu.olk.block.VariableWidthOmniBlock;
 import nova.hetu.omniruntime.constants.OmniWindowFrameBoundType;
 import nova.hetu.omniruntime.constants.OmniWindowFrameType;
@@ -66,23 +66,24 @@ import nova.hetu.omniruntime.vector.Decimal128Vec;
 import nova.hetu.omniruntime.vector.DictionaryVec;
 import nova.hetu.omniruntime.vector.DoubleVec;
 import nova.hetu.omniruntime.vector.IntVec;
+import nova.hetu.omniruntime.vector.JvmUtils;
 import nova.hetu.omniruntime.vector.LongVec;
 import nova.hetu.omniruntime.vector.VarcharVec;
 import nova.hetu.omniruntime.vector.Vec;
 import nova.hetu.omniruntime.vector.VecAllocator;
 import nova.hetu.omniruntime.vector.VecBatch;
 
+import java.nio.ByteOrder;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static io.prestosql.spi.StandardErrorCode.GENERIC_INTERNAL_ERROR;
+import static io.prestosql.spi.block.BlockUtil.compactOffsets;
 import static io.prestosql.spi.type.Decimals.MAX_SHORT_PRECISION;
+import static io.prestosql.spi.type.DoubleType.DOUBLE;
 import static java.lang.Double.doubleToLongBits;
-import static java.lang.Double.longBitsToDouble;
-import static javassist.bytecode.StackMap.DOUBLE;
 
 /**
  * The type Operator utils.
@@ -334,18 +335,45 @@ public final class OperatorUtils
         return new Page(blocks);
     }
 
+    /**
+     * Transfer to off heap pages page with types, reusing the dictionaries
+     * already converted by the operator.
+     *
+     * @param vecAllocator vector allocator
+     * @param page the page
+     * @param blockTypes types
+     * @param dictionaryCache the dictionary cache of the operator
+     * @return the page
+     */
+    public static Page transferToOffHeapPages(VecAllocator vecAllocator, Page page, List<Type> blockTypes,
+                                              OmniDictionaryCache dictionaryCache)
+    {
+        if (page.getBlocks().length == 0) {
+            return page;
+        }
+        Block[] blocks = getOffHeapBlocks(vecAllocator, page.getBlocks(), blockTypes, dictionaryCache);
+        return new Page(blocks);
+    }
+
     private static Block[] getOffHeapBlocks(VecAllocator vecAllocator, Block[] blocks, List<Type> blockTypes)
+    {
+        return getOffHeapBlocks(vecAllocator, blocks, blockTypes, null);
+    }
+
+    private static Block[] getOffHeapBlocks(VecAllocator vecAllocator, Block[] blocks, List<Type> blockTypes,
+                                            OmniDictionaryCache dictionaryCache)
     {
         Block[] res = new Block[blocks.length];
         if (blockTypes == null || blockTypes.isEmpty()) {
             for (int i = 0; i < blocks.length; i++) {
-                res[i] = buildOffHeapBlock(vecAllocator, blocks[i]);
+                res[i] = buildOffHeapBlock(vecAllocator, blocks[i], blocks[i].getClass().getSimpleName(),
+                        blocks[i].getPositionCount(), null, dictionaryCache, i);
             }
         }
         else {
             for (int i = 0; i < blocks.length; i++) {
                 res[i] = buildOffHeapBlock(vecAllocator, blocks[i], blocks[i].getClass().getSimpleName(),
-                        blocks[i].getPositionCount(), blockTypes.get(i));
+                        blocks[i].getPositionCount(), blockTypes.get(i), dictionaryCache, i);
             }
         }
         return res;
@@ -363,13 +391,26 @@ public final class OperatorUtils
         return buildOffHeapBlock(vecAllocator, block, block.getClass().getSimpleName(), block.getPositionCount(), null);
     }
 
-    private static double[] transformLongArrayToDoubleArray(long[] values)
+    /**
+     * Gets the null flags of the positions [offset, offset + positionCount) of a block in the layout of the
+     * vectors, or null when none of these positions is null, so that no null buffer is built at all.
+     */
+    private static byte[] getRegionValueIsNull(Block block, int offset, int positionCount)
     {
-        double[] doubles = new double[values.length];
-        for (int i = 0; i < values.length; i++) {
-            doubles[i] = longBitsToDouble(values[i]);
+        boolean[] valueIsNull = block.getValueNulls();
+        if (valueIsNull == null || !block.mayHaveNull()) {
+            return null;
         }
-        return doubles;
+        byte[] regionValueIsNull = null;
+        for (int i = 0; i < positionCount; i++) {
+            if (valueIsNull[offset + i]) {
+                if (regionValueIsNull == null) {
+                    regionValueIsNull = new byte[positionCount];
+                }
+                regionValueIsNull[i] = Vec.NULL;
+            }
+        }
+        return regionValueIsNull;
     }
 
     public static byte[] transformBooleanToByte(boolean[] values)
@@ -386,176 +427,102 @@ public final class OperatorUtils
         return transformedBytes;
     }
 
-    private static void fillLongArray(long[] val, long[] longs)
+    private static Block buildByteArrayOmniBlock(VecAllocator vecAllocator, Block block, int positionCount)
     {
-        for (int i = 0; i < longs.length; i++) {
-            if (i % 2 == 0) {
-                longs[i] = val[0];
-            }
-            else {
-                longs[i] = val[1];
-            }
+        int offset = block.getBlockOffset();
+        byte[] valueIsNull = getRegionValueIsNull(block, offset, positionCount);
+        BooleanVec vec = new BooleanVec(vecAllocator, positionCount);
+        vec.put(((ByteArrayBlock) block).getValues(), 0, offset, positionCount);
+        if (valueIsNull != null) {
+            vec.setNulls(0, valueIsNull, 0, positionCount);
         }
+        return new ByteArrayOmniBlock(positionCount, Optional.ofNullable(valueIsNull), vec);
     }
 
-    private static Block buildByteArrayOmniBlock(VecAllocator vecAllocator, Block block, int positionCount,
-                                                 boolean isRLE)
+    private static Block buildIntArrayOmniBLock(VecAllocator vecAllocator, Block block, int positionCount)
     {
-        if (isRLE) {
-            byte[] valueIsNull = null;
-            byte[] bytes = new byte[positionCount];
-            if (positionCount != 0) {
-                if (block.isNull(0)) {
-                    valueIsNull = new byte[positionCount];
-                    Arrays.fill(valueIsNull, Vec.NULL);
-                }
-                else {
-                    Arrays.fill(bytes, (byte) block.get(0));
-                }
-            }
-            return new ByteArrayOmniBlock(vecAllocator, 0, positionCount, valueIsNull, bytes);
-        }
-        else {
-            boolean[] valueIsNull = block.getValueNulls();
-            int offset = block.getBlockOffset();
-            byte[] bytes = ((ByteArrayBlock) block).getValues();
-            return new ByteArrayOmniBlock(vecAllocator, offset, positionCount, transformBooleanToByte(valueIsNull), bytes);
+        int offset = block.getBlockOffset();
+        byte[] valueIsNull = getRegionValueIsNull(block, offset, positionCount);
+        IntVec vec = new IntVec(vecAllocator, positionCount);
+        vec.put(((IntArrayBlock) block).getValues(), 0, offset, positionCount);
+        if (valueIsNull != null) {
+            vec.setNulls(0, valueIsNull, 0, positionCount);
         }
+        return new IntArrayOmniBlock(positionCount, Optional.ofNullable(valueIsNull), vec);
     }
 
-    private static Block buildIntArrayOmniBLock(VecAllocator vecAllocator, Block block, int positionCount,
-                                                boolean isRLE)
+    private static Block buildLongArrayOmniBLock(VecAllocator vecAllocator, Block block, int positionCount)
     {
-        if (isRLE) {
-            byte[] valueIsNull = null;
-            int[] values = new int[positionCount];
-            if (positionCount != 0) {
-                if (block.isNull(0)) {
-                    valueIsNull = new byte[positionCount];
-                    Arrays.fill(valueIsNull, Vec.NULL);
-                }
-                else {
-                    Arrays.fill(values, (int) block.get(0));
-                }
-            }
-            return new IntArrayOmniBlock(vecAllocator, 0, positionCount, valueIsNull, values);
-        }
-        else {
-            boolean[] valueIsNull = block.getValueNulls();
-            int offset = block.getBlockOffset();
-            int[] values = ((IntArrayBlock) block).getValues();
-            return new IntArrayOmniBlock(vecAllocator, offset, positionCount, transformBooleanToByte(valueIsNull), values);
+        int offset = block.getBlockOffset();
+        byte[] valueIsNull = getRegionValueIsNull(block, offset, positionCount);
+        LongVec vec = new LongVec(vecAllocator, positionCount);
+        vec.put(((LongArrayBlock) block).getValues(), 0, offset, positionCount);
+        if (valueIsNull != null) {
+            vec.setNulls(0, valueIsNull, 0, positionCount);
         }
+        return new LongArrayOmniBlock(positionCount, Optional.ofNullable(valueIsNull), vec);
     }
 
-    private static Block buildLongArrayOmniBLock(VecAllocator vecAllocator, Block block, int positionCount,
-                                                 boolean isRLE)
+    private static Block buildDoubleArrayOmniBLock(VecAllocator vecAllocator, Block block, int positionCount)
     {
-        if (isRLE) {
-            byte[] valueIsNull = null;
-            long[] values = new long[positionCount];
-            if (positionCount != 0) {
-                if (block.isNull(0)) {
-                    valueIsNull = new byte[positionCount];
-                    Arrays.fill(valueIsNull, Vec.NULL);
-                }
-                else {
-                    Arrays.fill(values, (long) block.get(0));
-                }
-            }
-            return new LongArrayOmniBlock(vecAllocator, 0, positionCount, valueIsNull, values);
-        }
-        else {
-            boolean[] valueIsNull = block.getValueNulls();
-            int offset = block.getBlockOffset();
-            long[] values = ((LongArrayBlock) block).getValues();
-            return new LongArrayOmniBlock(vecAllocator, offset, positionCount, transformBooleanToByte(valueIsNull), values);
+        int offset = block.getBlockOffset();
+        byte[] valueIsNull = getRegionValueIsNull(block, offset, positionCount);
+        DoubleVec vec = new DoubleVec(vecAllocator, positionCount);
+        // the longs of the block are the bits of the doubles, write them straight into the vector memory
+        JvmUtils.directBuffer(vec.getValuesBuf()).order(ByteOrder.nativeOrder()).asLongBuffer()
+                .put(((LongArrayBlock) block).getValues(), offset, positionCount);
+        if (valueIsNull != null) {
+            vec.setNulls(0, valueIsNull, 0, positionCount);
         }
+        return new DoubleArrayOmniBlock(positionCount, Optional.ofNullable(valueIsNull), vec);
     }
 
-    private static Block buildDoubleArrayOmniBLock(VecAllocator vecAllocator, Block block, int positionCount,
-                                                   boolean isRLE)
+    private static Block buildInt128ArrayOmniBlock(VecAllocator vecAllocator, Block block, int positionCount)
     {
-        if (isRLE) {
-            byte[] valueIsNull = null;
-            double[] doubles = new double[positionCount];
-            if (positionCount != 0) {
-                if (block.isNull(0)) {
-                    valueIsNull = new byte[positionCount];
-                    Arrays.fill(valueIsNull, Vec.NULL);
-                }
-                else {
-                    Arrays.fill(doubles, longBitsToDouble((long) block.get(0)));
-                }
-            }
-            return new DoubleArrayOmniBlock(vecAllocator, 0, positionCount, valueIsNull, doubles);
-        }
-        else {
-            boolean[] valueIsNull = block.getValueNulls();
-            int offset = block.getBlockOffset();
-            long[] values = ((LongArrayBlock) block).getValues();
-            double[] doubles = transformLongArrayToDoubleArray(values);
-            return new DoubleArrayOmniBlock(vecAllocator, offset, positionCount, transformBooleanToByte(valueIsNull), doubles);
+        int offset = block.getBlockOffset();
+        byte[] valueIsNull = getRegionValueIsNull(block, offset, positionCount);
+        Decimal128Vec vec = new Decimal128Vec(vecAllocator, positionCount);
+        vec.put(((Int128ArrayBlock) block).getValues(), 0, offset * 2, positionCount * 2);
+        if (valueIsNull != null) {
+            vec.setNulls(0, valueIsNull, 0, positionCount);
         }
+        return new Int128ArrayOmniBlock(positionCount, Optional.ofNullable(valueIsNull), vec);
     }
 
-    private static Block buildInt128ArrayOmniBlock(VecAllocator vecAllocator, Block block, int positionCount,
-                                                   boolean isRLE)
+    private static VariableWidthOmniBlock buildVariableWidthOmniBlock(VecAllocator vecAllocator, Block block, int positionCount)
     {
-        if (isRLE) {
-            byte[] valueIsNull = null;
-            long[] longs = new long[positionCount * 2];
-            if (positionCount != 0) {
-                if (block.isNull(0)) {
-                    valueIsNull = new byte[positionCount];
-                    Arrays.fill(valueIsNull, Vec.NULL);
-                }
-                else {
-                    long[] val = (long[]) block.get(0);
-                    fillLongArray(val, longs);
-                }
-            }
-            return new Int128ArrayOmniBlock(vecAllocator, 0, positionCount, valueIsNull, longs);
+        int offset = block.getBlockOffset();
+        byte[] valueIsNull = getRegionValueIsNull(block, offset, positionCount);
+        int[] offsets = ((VariableWidthBlock) block).getOffsets();
+        int dataOffset = offsets[offset];
+        int dataLength = offsets[offset + positionCount] - dataOffset;
+        int[] positionOffsets = compactOffsets(offsets, offset, positionCount);
+        Slice slice = ((VariableWidthBlock) block).getRawSlice(0);
+        VarcharVec vec = new VarcharVec(vecAllocator, dataLength, positionCount);
+        if (slice.hasByteArray()) {
+            vec.put(0, slice.byteArray(), slice.byteArrayOffset() + dataOffset, positionOffsets, 0,
+                    positionCount);
         }
         else {
-            boolean[] valueIsNull = block.getValueNulls();
-            int offset = block.getBlockOffset();
-            long[] longs = ((Int128ArrayBlock) block).getValues();
-            return new Int128ArrayOmniBlock(vecAllocator, offset, positionCount, transformBooleanToByte(valueIsNull), longs);
+            vec.put(0, slice.getBytes(dataOffset, dataLength), 0, positionOffsets, 0, positionCount);
         }
-    }
-
-    private static VariableWidthOmniBlock buildVariableWidthOmniBlock(VecAllocator vecAllocator, Block block, int positionCount,
-                                                                      boolean isRLE)
-    {
-        if (!isRLE) {
-            int[] offsets = ((VariableWidthBlock) block).getOffsets();
-            int offset = block.getBlockOffset();
-            boolean[] valueIsNull = block.getValueNulls();
-            Slice slice = ((VariableWidthBlock) block).getRawSlice(0);
-            return new VariableWidthOmniBlock(vecAllocator, offset, positionCount, slice, offsets,
-                    transformBooleanToByte(valueIsNull));
-        }
-        else {
-            AbstractVariableWidthBlock variableWidthBlock = (AbstractVariableWidthBlock) ((RunLengthEncodedBlock) block)
-                    .getValue();
-            VarcharVec vec = new VarcharVec(vecAllocator, variableWidthBlock.getSliceLength(0) * positionCount,
-                    positionCount);
-            for (int i = 0; i < positionCount; i++) {
-                if (block.isNull(i)) {
-                    vec.setNull(i);
-                }
-                else {
-                    vec.set(i, (byte[]) block.get(i));
-                }
-            }
-            return new VariableWidthOmniBlock(positionCount, vec);
+        if (valueIsNull != null) {
+            vec.setNulls(0, valueIsNull, 0, positionCount);
         }
+        return new VariableWidthOmniBlock(positionCount, vec, positionOffsets, Optional.ofNullable(valueIsNull));
     }
 
-    private static Block buildDictionaryOmniBlock(VecAllocator vecAllocator, Block inputBlock, Type blockType)
+    private static Block buildDictionaryOmniBlock(VecAllocator vecAllocator, Block inputBlock, Type blockType,
+                                                  OmniDictionaryCache dictionaryCache, int channel)
     {
         DictionaryBlock dictionaryBlock = (DictionaryBlock) inputBlock;
+        if (dictionaryCache != null && !dictionaryCache.isClosed()) {
+            // the dictionary vector stays with the cache for the next blocks of the same dictionary
+            Vec dictionaryVec = dictionaryCache.getDictionaryVec(vecAllocator, channel, dictionaryBlock, blockType);
+            int[] ids = dictionaryBlock.getIdsArray();
+            return new DictionaryOmniBlock(ids.length, dictionaryVec, ids, false,
+                    dictionaryBlock.getDictionarySourceId());
+        }
         Block block = dictionaryBlock.getDictionary();
         Block omniDictionary = buildOffHeapBlock(vecAllocator, block, block.getClass().getSimpleName(),
                 block.getPositionCount(), blockType);
@@ -591,10 +558,25 @@ public final class OperatorUtils
     public static Block buildOffHeapBlock(VecAllocator vecAllocator, Block block, String type, int positionCount,
                                           Type blockType)
     {
-        return buildOffHeapBlock(vecAllocator, block, type, positionCount, false, blockType);
+        return buildOffHeapBlock(vecAllocator, block, type, positionCount, blockType, null, 0);
     }
 
-    private static Block buildOffHeapBlock(VecAllocator vecAllocator, Block block, String type, int positionCount, boolean isRLE, Type blockType)
+    /**
+     * Gets off heap block, reusing the dictionaries already converted by the
+     * operator.
+     *
+     * @param vecAllocator vector allocator
+     * @param block the block
+     * @param type the actual block type, e.g. RunLengthEncodedBlock or
+     * DictionaryBlock
+     * @param positionCount the position count of the block
+     * @param blockType the type of the block
+     * @param dictionaryCache the dictionary cache of the operator, or null
+     * @param channel the channel of the block in its page, which the dictionary cache is keyed by
+     * @return the off heap block
+     */
+    public static Block buildOffHeapBlock(VecAllocator vecAllocator, Block block, String type, int positionCount,
+                                          Type blockType, OmniDictionaryCache dictionaryCache, int channel)
     {
         if (block.isExtensionBlock()) {
             return block;
@@ -602,26 +584,24 @@ public final class OperatorUtils
 
         switch (type) {
             case "ByteArrayBlock":
-                return buildByteArrayOmniBlock(vecAllocator, block, positionCount, isRLE);
+                return buildByteArrayOmniBlock(vecAllocator, block, positionCount);
             case "IntArrayBlock":
-                return buildIntArrayOmniBLock(vecAllocator, block, positionCount, isRLE);
+                return buildIntArrayOmniBLock(vecAllocator, block, positionCount);
             case "LongArrayBlock":
                 if (blockType != null && blockType.equals(DOUBLE)) {
-                    return buildDoubleArrayOmniBLock(vecAllocator, block, positionCount, isRLE);
+                    return buildDoubleArrayOmniBLock(vecAllocator, block, positionCount);
                 }
-                return buildLongArrayOmniBLock(vecAllocator, block, positionCount, isRLE);
+                return buildLongArrayOmniBLock(vecAllocator, block, positionCount);
             case "Int128ArrayBlock":
-                return buildInt128ArrayOmniBlock(vecAllocator, block, positionCount, isRLE);
+                return buildInt128ArrayOmniBlock(vecAllocator, block, positionCount);
             case "VariableWidthBlock":
-                return buildVariableWidthOmniBlock(vecAllocator, block, positionCount, isRLE);
+                return buildVariableWidthOmniBlock(vecAllocator, block, positionCount);
             case "DictionaryBlock":
-                return buildDictionaryOmniBlock(vecAllocator, block, blockType);
+                return buildDictionaryOmniBlock(vecAllocator, block, blockType, dictionaryCache, channel);
             case "RunLengthEncodedBlock":
-                return buildOffHeapBlock(vecAllocator, block,
-                        ((RunLengthEncodedBlock) block).getValue().getClass().getSimpleName(), positionCount, true,
-                        blockType);
+                return new RunLengthEncodedOmniBlock(vecAllocator, (RunLengthEncodedBlock) block, blockType);
             case "LazyBlock":
-                return new LazyOmniBlock(vecAllocator, (LazyBlock) block, blockType);
+                return new LazyOmniBlock(vecAllocator, (LazyBlock) block, blockType, dictionaryCache, channel);
             case "RowBlock":
                 return buildRowOmniBlock(vecAllocator, block, positionCount, blockType);
             default:
@@ -824,6 +804,8 @@ public final class OperatorUtils
                 return buildLazyBlock(block);
             case "RowOmniBlock":
                 return buildRowBlock(block, positionCount);
+            case "RunLengthEncodedOmniBlock":
+                return ((RunLengthEncodedOmniBlock) block).getRunLengthEncodedBlock();
             default:
                 throw new PrestoException(StandardErrorCode.NOT_SUPPORTED, "Not support block:" + type);
         }
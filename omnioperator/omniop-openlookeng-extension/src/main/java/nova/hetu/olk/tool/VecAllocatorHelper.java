@@ -25,6 +25,8 @@ import nova.hetu.olk.memory.OpenLooKengAllocatorFactory;
 import nova.hetu.omniruntime.vector.Vec;
 import nova.hetu.omniruntime.vector.VecAllocator;
 
+import static io.prestosql.SystemSessionProperties.getQueryMaxMemoryPerNode;
+
 public class VecAllocatorHelper
 {
     private static final Logger log = Logger.get(VecAllocatorHelper.class);
@@ -72,8 +74,7 @@ public class VecAllocatorHelper
     public static VecAllocator createOperatorLevelAllocator(DriverContext driverContext, long limit, Class<?> jazz)
     {
         TaskContext taskContext = driverContext.getPipelineContext().getTaskContext();
-        VecAllocator vecAllocator = getVecAllocatorFromTaskContext(taskContext);
-        return createOperatorLevelAllocator(vecAllocator, limit, taskContext.getTaskId().toString(), 0, jazz);
+        return createOperatorLevelAllocator(taskContext, limit, 0, jazz);
     }
 
     /**
@@ -89,42 +90,40 @@ public class VecAllocatorHelper
                                                             Class<?> jazz)
     {
         TaskContext taskContext = driverContext.getPipelineContext().getTaskContext();
-        VecAllocator vecAllocator = getVecAllocatorFromTaskContext(taskContext);
-        return createOperatorLevelAllocator(vecAllocator, limit, taskContext.getTaskId().toString(), reservation, jazz);
+        return createOperatorLevelAllocator(taskContext, limit, reservation, jazz);
     }
 
     /**
-     * create an operator level allocator base on a vecAllocator.
+     * create an operator level allocator based on task context.
      *
-     * @param parent parent vecAllocator
+     * @param taskContext task context
      * @param limit allocator limit
-     * @param prefix taskId
-     * @param reservation allocator default reservation
      * @param jazz operator Class
      * @return operator allocator
      */
-    private static VecAllocator createOperatorLevelAllocator(VecAllocator parent, long limit, String prefix,
-                                                             long reservation, Class<?> jazz)
+    public static VecAllocator createOperatorLevelAllocator(TaskContext taskContext, long limit, long reservation,
+                                                            Class<?> jazz)
     {
+        VecAllocator parent = getVecAllocatorFromTaskContext(taskContext);
         if (parent == VecAllocator.GLOBAL_VECTOR_ALLOCATOR || parent == null) {
             return VecAllocator.GLOBAL_VECTOR_ALLOCATOR;
         }
-        return parent.newChildAllocator(prefix + jazz.getSimpleName(), limit, reservation);
+        return parent.newChildAllocator(taskContext.getTaskId().toString() + jazz.getSimpleName(),
+                getNativeMemoryLimit(taskContext, limit), reservation);
     }
 
     /**
-     * create an operator level allocator based on task context.
-     *
-     * @param taskContext task context
-     * @param limit allocator limit
-     * @param jazz operator Class
-     * @return operator allocator
+     * The operators report their native memory to the memory pools in batches,
+     * so a single operator also can not allocate more than the memory limit of
+     * the query on this node between two reports.
      */
-    public static VecAllocator createOperatorLevelAllocator(TaskContext taskContext, long limit, long reservation,
-                                                            Class<?> jazz)
+    private static long getNativeMemoryLimit(TaskContext taskContext, long limit)
     {
-        VecAllocator vecAllocator = getVecAllocatorFromTaskContext(taskContext);
-        return createOperatorLevelAllocator(vecAllocator, limit, taskContext.getTaskId().toString(), 0, jazz);
+        long queryLimit = getQueryMaxMemoryPerNode(taskContext.getSession()).toBytes();
+        if (limit == VecAllocator.UNLIMIT) {
+            return queryLimit;
+        }
+        return Math.min(limit, queryLimit);
     }
 
     /**
@@ -56,6 +56,7 @@ import java.util.function.Supplier;
 import static io.airlift.testing.Closeables.closeAllRuntimeException;
 import static io.prestosql.SessionTestUtils.TEST_SESSION;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyString;
@@ -229,6 +230,14 @@ public class TestOmniLocalExecutionPlanner
                 anyList(),
                 anyList(),
                 anyList())).thenReturn(orderByOmniOperatorFactory);
+        when(OrderByOmniOperator.OrderByOmniOperatorFactory.createOrderByOmniOperatorFactory(
+                anyInt(),
+                any(PlanNodeId.class),
+                anyList(),
+                anyList(),
+                anyList(),
+                anyList(),
+                any(Optional.class))).thenReturn(orderByOmniOperatorFactory);
         whenNew(OrderByOmniOperator.OrderByOmniOperatorFactory.class).withAnyArguments().thenReturn(orderByOmniOperatorFactory);
         when(orderByOmniOperatorFactory.createOperator(any(DriverContext.class))).thenReturn(orderByOmniOperator);
 
@@ -242,7 +251,8 @@ public class TestOmniLocalExecutionPlanner
                 any(OptionalInt.class),
                 anyList(),
                 any(TaskId.class),
-                any(OmniLocalExecutionPlanner.OmniLocalExecutionPlanContext.class)))
+                any(OmniLocalExecutionPlanner.OmniLocalExecutionPlanContext.class),
+                anyBoolean()))
                 .thenReturn(supplier);
         whenNew(OmniExpressionCompiler.class).withAnyArguments().thenReturn(omniExpressionCompiler);
 
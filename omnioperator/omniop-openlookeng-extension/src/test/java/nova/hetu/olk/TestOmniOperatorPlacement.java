@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import io.prestosql.spi.connector.ColumnHandle;
+import io.prestosql.spi.plan.FilterNode;
+import io.prestosql.spi.plan.LimitNode;
+import io.prestosql.spi.plan.PlanNode;
+import io.prestosql.spi.plan.PlanNodeIdAllocator;
+import io.prestosql.spi.plan.Symbol;
+import io.prestosql.spi.plan.TopNNode;
+import io.prestosql.sql.planner.iterative.rule.test.PlanBuilder;
+import org.testng.annotations.Test;
+
+import static io.prestosql.expressions.LogicalRowExpressions.TRUE_CONSTANT;
+import static io.prestosql.metadata.MetadataManager.createTestMetadataManager;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+
+public class TestOmniOperatorPlacement
+{
+    private final PlanNodeIdAllocator idAllocator = new PlanNodeIdAllocator();
+    private final PlanBuilder planBuilder = new PlanBuilder(idAllocator, createTestMetadataManager());
+    private final Symbol symbol = planBuilder.symbol("a", BIGINT);
+
+    @Test
+    public void testIsolatedScanFilterFallsBack()
+    {
+        FilterNode filter = filter(tableScan());
+
+        assertEquals(OmniOperatorPlacement.getFallbackNodes(filter, false), ImmutableSet.of(filter.getId()));
+        // the off heap transfer of the scan is needed anyway when the output is an omni operator
+        assertEquals(OmniOperatorPlacement.getFallbackNodes(filter, true), ImmutableSet.of());
+    }
+
+    @Test
+    public void testRunBetweenOpenLooKengOperators()
+    {
+        // Scan -> Filter(Omni) -> MarkDistinct(OLK) -> Limit(Omni) -> Output(Omni)
+        FilterNode filter = filter(tableScan());
+        LimitNode limit = new LimitNode(idAllocator.getNextId(), markDistinct(filter), 10, false);
+
+        assertEquals(OmniOperatorPlacement.getFallbackNodes(limit, true), ImmutableSet.of(filter.getId()));
+        assertEquals(OmniOperatorPlacement.getFallbackNodes(limit, false),
+                ImmutableSet.of(filter.getId(), limit.getId()));
+    }
+
+    @Test
+    public void testRunWorthTheConversions()
+    {
+        // Values(OLK) -> Filter(Omni) -> TopN(Omni) -> MarkDistinct(OLK) -> Output(OLK)
+        TopNNode topN = planBuilder.topN(10, ImmutableList.of(symbol), filter(planBuilder.values(symbol)));
+
+        assertEquals(OmniOperatorPlacement.getFallbackNodes(markDistinct(topN), false), ImmutableSet.of());
+    }
+
+    private PlanNode tableScan()
+    {
+        return planBuilder.tableScan(ImmutableList.of(symbol), ImmutableMap.of(symbol, mock(ColumnHandle.class)));
+    }
+
+    private FilterNode filter(PlanNode source)
+    {
+        return new FilterNode(idAllocator.getNextId(), source, TRUE_CONSTANT);
+    }
+
+    private PlanNode markDistinct(PlanNode source)
+    {
+        return planBuilder.markDistinct(planBuilder.symbol("marker", BIGINT), ImmutableList.of(symbol), source);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.memory;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import io.airlift.units.DataSize;
+import io.prestosql.memory.context.LocalMemoryContext;
+import io.prestosql.operator.OperatorContext;
+import io.prestosql.operator.TaskContext;
+import io.prestosql.spi.plan.PlanNodeId;
+import io.prestosql.testing.TestingTaskContext;
+import nova.hetu.omniruntime.vector.VecAllocator;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static io.airlift.concurrent.Threads.daemonThreadsNamed;
+import static io.airlift.units.DataSize.Unit.KILOBYTE;
+import static io.prestosql.SessionTestUtils.TEST_SESSION;
+import static io.prestosql.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@PrepareForTest(VecAllocator.class)
+@SuppressStaticInitializationFor("nova.hetu.omniruntime.vector.VecAllocator")
+@PowerMockIgnore("javax.management.*")
+public class TestVecAllocatorMemoryContext
+        extends PowerMockTestCase
+{
+    private final ExecutorService executor = newCachedThreadPool(daemonThreadsNamed("test-executor-%s"));
+    private final ScheduledExecutorService scheduledExecutor = newScheduledThreadPool(1,
+            daemonThreadsNamed("test-scheduled-executor-%s"));
+
+    @AfterClass(alwaysRun = true)
+    public void tearDown()
+    {
+        executor.shutdownNow();
+        scheduledExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testBatchedUpdates()
+    {
+        VecAllocator vecAllocator = mock(VecAllocator.class);
+        LocalMemoryContext memoryContext = newSimpleAggregatedMemoryContext().newLocalMemoryContext("test");
+        VecAllocatorMemoryContext nativeMemoryContext = new VecAllocatorMemoryContext(vecAllocator, memoryContext, 100);
+
+        when(vecAllocator.getAllocatedMemory()).thenReturn(150L);
+        nativeMemoryContext.update();
+        assertEquals(memoryContext.getBytes(), 150);
+
+        // smaller changes than the batch size are not reported
+        when(vecAllocator.getAllocatedMemory()).thenReturn(200L);
+        nativeMemoryContext.update();
+        assertEquals(memoryContext.getBytes(), 150);
+
+        when(vecAllocator.getAllocatedMemory()).thenReturn(260L);
+        nativeMemoryContext.update();
+        assertEquals(memoryContext.getBytes(), 260);
+
+        // releasing all the memory is always reported
+        when(vecAllocator.getAllocatedMemory()).thenReturn(0L);
+        nativeMemoryContext.update();
+        assertEquals(memoryContext.getBytes(), 0);
+
+        when(vecAllocator.getAllocatedMemory()).thenReturn(500L);
+        nativeMemoryContext.update();
+        nativeMemoryContext.close();
+        assertEquals(memoryContext.getBytes(), 0);
+        assertEquals(nativeMemoryContext.getReportedBytes(), 0);
+    }
+
+    @Test
+    public void testFullMemoryPoolBlocksOperator()
+    {
+        TaskContext taskContext = TestingTaskContext.builder(executor, scheduledExecutor, TEST_SESSION)
+                .setMemoryPoolSize(new DataSize(1, KILOBYTE))
+                .build();
+        OperatorContext operatorContext = taskContext.addPipelineContext(0, true, true, false)
+                .addDriverContext()
+                .addOperatorContext(0, new PlanNodeId("test"), "test");
+        VecAllocator vecAllocator = mock(VecAllocator.class);
+        VecAllocatorMemoryContext nativeMemoryContext = new VecAllocatorMemoryContext(vecAllocator,
+                operatorContext.localUserMemoryContext(), 100);
+
+        // the update is only accounted, the driver waits on the memory future of the operator context
+        when(vecAllocator.getAllocatedMemory()).thenReturn(2048L);
+        ListenableFuture<?> blocked = nativeMemoryContext.update();
+        assertFalse(blocked.isDone());
+        assertFalse(operatorContext.isWaitingForMemory().isDone());
+
+        when(vecAllocator.getAllocatedMemory()).thenReturn(0L);
+        nativeMemoryContext.update();
+        assertTrue(blocked.isDone());
+        assertTrue(operatorContext.isWaitingForMemory().isDone());
+    }
+}
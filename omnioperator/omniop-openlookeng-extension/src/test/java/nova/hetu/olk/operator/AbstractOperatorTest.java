@@ -165,6 +165,8 @@ public class AbstractOperatorTest
         when(operatorContext.aggregateUserMemoryContext()).thenReturn(AggregatedMemoryContext.newSimpleAggregatedMemoryContext());
         when(operatorContext.aggregateSystemMemoryContext()).thenReturn(AggregatedMemoryContext.newSimpleAggregatedMemoryContext());
         when(operatorContext.newLocalSystemMemoryContext(anyString())).thenReturn(localMemoryContext);
+        when(operatorContext.localUserMemoryContext()).thenReturn(localMemoryContext);
+        when(operatorContext.localRevocableMemoryContext()).thenReturn(localMemoryContext);
         when(operatorContext.getDriverContext()).thenReturn(driverContext);
         when(operatorContext.getSession()).thenReturn(createSession());
         when(operatorContext.getUniqueId()).thenReturn(UUID.randomUUID().toString());
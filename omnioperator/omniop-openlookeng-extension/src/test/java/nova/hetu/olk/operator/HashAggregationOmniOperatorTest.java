@@ -15,13 +15,21 @@
 
 package nova.hetu.olk.operator;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import io.prestosql.operator.Operator;
 import io.prestosql.operator.OperatorFactory;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.plan.AggregationNode;
 import io.prestosql.spi.plan.PlanNodeId;
 import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.PartitioningSpiller;
+import io.prestosql.spiller.PartitioningSpiller.PartitioningSpillResult;
+import io.prestosql.spiller.PartitioningSpillerFactory;
 import nova.hetu.olk.operator.HashAggregationOmniOperator.HashAggregationOmniOperatorFactory;
+import nova.hetu.olk.operator.HashAggregationOmniOperator.PartialAggregationInfo;
+import nova.hetu.olk.operator.HashAggregationOmniOperator.SpillInfo;
 import nova.hetu.olk.tool.OperatorUtils;
 import nova.hetu.omniruntime.constants.FunctionType;
 import nova.hetu.omniruntime.operator.OmniOperator;
@@ -33,19 +41,29 @@ import org.testng.annotations.Test;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 import java.util.Random;
 import java.util.UUID;
 
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static io.prestosql.spi.type.BigintType.BIGINT;
 import static java.lang.Math.abs;
+import static java.util.Collections.emptyIterator;
 import static nova.hetu.olk.mock.MockUtil.mockNewWithWithAnyArguments;
 import static nova.hetu.olk.mock.MockUtil.mockOmniOperator;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @PrepareForTest({
@@ -107,7 +125,8 @@ public class HashAggregationOmniOperatorTest
     protected void checkOperator(Operator operator)
     {
         super.checkOperator(operator);
-        assertNull(operator.startMemoryRevoke());
+        // spilling is disabled
+        assertTrue(operator.startMemoryRevoke().isDone());
         assertEquals(((HashAggregationOmniOperator) operator).getStep(), step);
     }
 
@@ -133,4 +152,101 @@ public class HashAggregationOmniOperatorTest
         assertFalse(operator.needsInput());
         operator.finishMemoryRevoke();
     }
+
+    @Test
+    public void testSpillAndMerge() throws Exception
+    {
+        PartitioningSpiller spiller = mock(PartitioningSpiller.class);
+        PartitioningSpillResult spillResult = mock(PartitioningSpillResult.class);
+        when(spillResult.getSpillingFuture()).thenReturn(immediateFuture(null));
+        when(spiller.partitionAndSpill(any(), any())).thenReturn(spillResult);
+        when(spiller.getSpilledPages(anyInt())).thenReturn(emptyIterator());
+        PartitioningSpillerFactory spillerFactory = mock(PartitioningSpillerFactory.class);
+        when(spillerFactory.create(any(), any(), any(), any())).thenReturn(spiller);
+
+        OmniHashAggregationOperatorFactory aggregationFactory = mock(OmniHashAggregationOperatorFactory.class);
+        when(aggregationFactory.createOperator(any())).thenAnswer(invocation -> mockOmniOperator());
+        SpillInfo spillInfo = new SpillInfo(aggregationFactory, aggregationFactory, ImmutableList.of(BIGINT, BIGINT),
+                1, spillerFactory);
+        Operator operator = new HashAggregationOmniOperator(operatorContext, mockOmniOperator(),
+                AggregationNode.Step.FINAL, Optional.of(spillInfo), Optional.empty());
+
+        operator.addInput(getPageForTest(1));
+        assertTrue(operator.startMemoryRevoke().isDone());
+        operator.finishMemoryRevoke();
+        verify(spiller).partitionAndSpill(any(), any());
+        // a new accumulator takes the input after the spill
+        verify(aggregationFactory).createOperator(any());
+
+        operator.finish();
+        do {
+            operator.getOutput();
+        } while (!operator.isFinished());
+        verify(spiller).verifyAllPartitionsRead();
+        // one merge operator for each partition
+        verify(aggregationFactory, times(17)).createOperator(any());
+        operator.close();
+        verify(spiller).close();
+    }
+
+    @Test
+    public void testSpillDoesNotBlock() throws Exception
+    {
+        SettableFuture<Void> spillingFuture = SettableFuture.create();
+        PartitioningSpiller spiller = mock(PartitioningSpiller.class);
+        PartitioningSpillResult spillResult = mock(PartitioningSpillResult.class);
+        when(spillResult.getSpillingFuture()).thenAnswer(invocation -> spillingFuture);
+        when(spiller.partitionAndSpill(any(), any())).thenReturn(spillResult);
+        PartitioningSpillerFactory spillerFactory = mock(PartitioningSpillerFactory.class);
+        when(spillerFactory.create(any(), any(), any(), any())).thenReturn(spiller);
+
+        OmniHashAggregationOperatorFactory aggregationFactory = mock(OmniHashAggregationOperatorFactory.class);
+        when(aggregationFactory.createOperator(any())).thenAnswer(invocation -> mockOmniOperator());
+        SpillInfo spillInfo = new SpillInfo(aggregationFactory, aggregationFactory, ImmutableList.of(BIGINT, BIGINT),
+                1, spillerFactory);
+        OmniOperator accumulator = mockOmniOperator();
+        Operator operator = new HashAggregationOmniOperator(operatorContext, accumulator,
+                AggregationNode.Step.FINAL, Optional.of(spillInfo), Optional.empty());
+
+        operator.addInput(getPageForTest(1));
+        operator.addInput(getPageForTest(1));
+        ListenableFuture<?> revokeFuture = operator.startMemoryRevoke();
+        // the driver is not blocked, the second page waits for the spill of the first one
+        assertFalse(revokeFuture.isDone());
+        verify(spiller).partitionAndSpill(any(), any());
+        verify(accumulator, never()).close();
+
+        spillingFuture.set(null);
+        assertTrue(revokeFuture.isDone());
+        verify(spiller, times(2)).partitionAndSpill(any(), any());
+        operator.finishMemoryRevoke();
+        verify(accumulator).close();
+        verify(aggregationFactory).createOperator(any());
+        operator.close();
+    }
+
+    @Test
+    public void testPartialAggregationFlush() throws Exception
+    {
+        OmniHashAggregationOperatorFactory aggregationFactory = mock(OmniHashAggregationOperatorFactory.class);
+        when(aggregationFactory.createOperator(any())).thenAnswer(invocation -> mockOmniOperator());
+        // no native memory is allowed, so every page flushes the partial states
+        Operator operator = new HashAggregationOmniOperator(operatorContext, mockOmniOperator(),
+                AggregationNode.Step.PARTIAL, Optional.empty(), Optional.of(new PartialAggregationInfo(aggregationFactory, 0)));
+
+        operator.addInput(getPageForTest(1));
+        assertFalse(operator.needsInput());
+        verify(aggregationFactory).createOperator(any());
+        while (operator.getOutput() != null) {
+            assertFalse(operator.needsInput());
+        }
+        assertTrue(operator.needsInput());
+        assertFalse(operator.isFinished());
+
+        operator.finish();
+        do {
+            operator.getOutput();
+        } while (!operator.isFinished());
+        operator.close();
+    }
 }
@@ -15,7 +15,6 @@
 
 package nova.hetu.olk.operator;
 
-import io.hetu.core.transport.execution.buffer.PagesSerdeFactory;
 import io.prestosql.operator.DriverContext;
 import io.prestosql.operator.ExchangeClientSupplier;
 import io.prestosql.operator.Operator;
@@ -28,6 +27,7 @@ import io.prestosql.spi.type.Type;
 import io.prestosql.sql.gen.OrderingCompiler;
 import nova.hetu.olk.block.LazyOmniBlock;
 import nova.hetu.olk.operator.MergeOmniOperator.MergeOmniOperatorFactory;
+import nova.hetu.olk.tool.OmniPagesSerdeFactory;
 import nova.hetu.olk.tool.OperatorUtils;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.testng.annotations.Test;
@@ -63,7 +63,7 @@ public class MergeOmniOperatorTest
     private final int omniMergeId = 0;
     private final PlanNodeId sourceId = new PlanNodeId(UUID.randomUUID().toString());
     private final ExchangeClientSupplier exchangeClientSupplier = systemMemoryContext -> null;
-    private final PagesSerdeFactory serdeFactory = new PagesSerdeFactory(new BlockEncodingSerde()
+    private final OmniPagesSerdeFactory serdeFactory = new OmniPagesSerdeFactory(new BlockEncodingSerde()
     {
     }, false);
     private final OrderingCompiler orderingCompiler = new OrderingCompiler();
@@ -15,11 +15,20 @@
 
 package nova.hetu.olk.operator;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import io.prestosql.operator.Operator;
 import io.prestosql.operator.OperatorFactory;
+import io.prestosql.operator.PageWithPositionComparator;
+import io.prestosql.operator.WorkProcessor;
 import io.prestosql.spi.Page;
 import io.prestosql.spi.plan.PlanNodeId;
 import io.prestosql.spi.type.Type;
+import io.prestosql.spiller.Spiller;
+import io.prestosql.spiller.SpillerFactory;
+import io.prestosql.util.MergeSortedPages;
+import nova.hetu.olk.operator.SortedRunsSpiller.SortedRunsSpillerFactory;
 import nova.hetu.olk.tool.OperatorUtils;
 import nova.hetu.omniruntime.operator.OmniOperator;
 import nova.hetu.omniruntime.operator.sort.OmniSortOperatorFactory;
@@ -28,17 +37,32 @@ import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.testng.annotations.Test;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
 
+import static com.google.common.util.concurrent.Futures.immediateFuture;
+import static io.prestosql.util.MergeSortedPages.mergeSortedPages;
+import static java.util.Collections.emptyIterator;
 import static nova.hetu.olk.mock.MockUtil.mockOmniOperator;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyList;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
-@PrepareForTest(OperatorUtils.class)
+@PrepareForTest({
+        OperatorUtils.class,
+        MergeSortedPages.class
+})
 public class OrderByOperatorTest
         extends AbstractOperatorTest
 {
@@ -97,4 +121,64 @@ public class OrderByOperatorTest
 
         //assertFalse(operator.needsInput());
     }
+
+    @Test
+    public void testSpillAndMerge() throws Exception
+    {
+        Spiller spiller = mock(Spiller.class);
+        when(spiller.spill(any(Iterator.class))).thenReturn(immediateFuture(null));
+        when(spiller.getSpills()).thenReturn(ImmutableList.of(emptyIterator(), emptyIterator()));
+        SpillerFactory spillerFactory = mock(SpillerFactory.class);
+        when(spillerFactory.create(any(), any(), any())).thenReturn(spiller);
+        mockStatic(MergeSortedPages.class);
+        when(mergeSortedPages(anyList(), any(), anyList(), anyList(), any(), anyBoolean(), any(), any()))
+                .thenReturn(WorkProcessor.fromIterator(emptyIterator()));
+
+        SortedRunsSpillerFactory sortedRunsSpillerFactory = new SortedRunsSpillerFactory(sourceTypes,
+                omniSortOperatorFactory, mock(PageWithPositionComparator.class), spillerFactory);
+        Operator operator = new OrderByOmniOperator(operatorContext, mockOmniOperator(),
+                Optional.of(sortedRunsSpillerFactory.create(operatorContext, mockOmniOperator())));
+
+        operator.addInput(getPageForTest(1));
+        assertTrue(operator.startMemoryRevoke().isDone());
+        operator.finishMemoryRevoke();
+        verify(spiller).spill(any(Iterator.class));
+
+        operator.finish();
+        while (!operator.isFinished()) {
+            operator.getOutput();
+        }
+        // the rows in memory are spilled as the last run before the merge
+        verify(spiller, times(2)).spill(any(Iterator.class));
+        operator.close();
+        verify(spiller).close();
+    }
+
+    @Test
+    public void testSpillDoesNotBlock() throws Exception
+    {
+        SettableFuture<Void> spillingFuture = SettableFuture.create();
+        Spiller spiller = mock(Spiller.class);
+        when(spiller.spill(any(Iterator.class))).thenReturn(spillingFuture);
+        SpillerFactory spillerFactory = mock(SpillerFactory.class);
+        when(spillerFactory.create(any(), any(), any())).thenReturn(spiller);
+
+        SortedRunsSpillerFactory sortedRunsSpillerFactory = new SortedRunsSpillerFactory(sourceTypes,
+                omniSortOperatorFactory, mock(PageWithPositionComparator.class), spillerFactory);
+        OmniOperator sortOperator = mockOmniOperator();
+        Operator operator = new OrderByOmniOperator(operatorContext, mockOmniOperator(),
+                Optional.of(sortedRunsSpillerFactory.create(operatorContext, sortOperator)));
+
+        operator.addInput(getPageForTest(1));
+        ListenableFuture<?> revokeFuture = operator.startMemoryRevoke();
+        // the driver is not blocked, the sort operator is read until the run is on disk
+        assertFalse(revokeFuture.isDone());
+        verify(sortOperator, never()).close();
+
+        spillingFuture.set(null);
+        assertTrue(revokeFuture.isDone());
+        operator.finishMemoryRevoke();
+        verify(sortOperator).close();
+        operator.close();
+    }
 }
@@ -28,6 +28,9 @@ import io.prestosql.spi.type.Type;
 import nova.hetu.olk.operator.PartitionedOutputOmniOperator.PartitionedOutputOmniFactory;
 import nova.hetu.olk.tool.OperatorUtils;
 import nova.hetu.omniruntime.operator.OmniOperator;
+import nova.hetu.omniruntime.vector.Vec;
+import nova.hetu.omniruntime.vector.VecAllocator;
+import nova.hetu.omniruntime.vector.VecBatch;
 import org.mockito.Mock;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.testng.annotations.Test;
@@ -50,7 +53,11 @@ import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @PrepareForTest({
         OperatorUtils.class, PartitionedOutputOmniOperator.class
@@ -143,4 +150,32 @@ public class PartitionedOutputOmniOperatorTest
         Page output = operator.getOutput();
         assertTrue(page != null || output == null);
     }
+
+    @Test
+    public void testSmallPartitionsCoalesced()
+    {
+        OmniOperator omniOperator = mock(OmniOperator.class);
+        when(omniOperator.getVecAllocator()).thenReturn(mock(VecAllocator.class));
+        // every input page gives one row to each partition
+        doAnswer(invocation -> {
+            List<VecBatch> partitions = new ArrayList<>();
+            for (int i = 0; i < partitionFunction.getPartitionCount(); i++) {
+                VecBatch vecBatch = mock(VecBatch.class);
+                when(vecBatch.getRowCount()).thenReturn(1);
+                when(vecBatch.getVectors()).thenReturn(new Vec[0]);
+                partitions.add(vecBatch);
+            }
+            return partitions.iterator();
+        }).when(omniOperator).getOutput();
+        Operator operator = new PartitionedOutputOmniOperator(UUID.randomUUID().toString(), operatorContext,
+                sourceTypes, pagePageFunction, partitionFunction, partitionChannels, partitionConstants,
+                replicatesAnyRow, channel, outputBuffer, new DataSize(1, DataSize.Unit.MEGABYTE), omniOperator);
+
+        for (int i = 0; i < 3; i++) {
+            operator.addInput(new Page(1));
+        }
+        verify(outputBuffer, never()).enqueue(anyInt(), any(), any());
+        operator.finish();
+        verify(outputBuffer, times(partitionFunction.getPartitionCount())).enqueue(anyInt(), any(), any());
+    }
 }
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.operator.filterandproject;
+
+import com.google.common.collect.ImmutableList;
+import io.airlift.units.Duration;
+import io.prestosql.spi.relation.InputReferenceExpression;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static java.util.concurrent.TimeUnit.HOURS;
+import static org.mockito.Mockito.mock;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+
+public class OmniExpressionCacheTest
+{
+    @Test
+    public void testProjectionCompiledOnce()
+    {
+        OmniExpressionCache expressionCache = new OmniExpressionCache(10, new Duration(1, HOURS));
+        AtomicInteger compileCount = new AtomicInteger();
+        OmniProjection projection = mock(OmniProjection.class);
+
+        // equal keys built by different queries share the compiled projection
+        List<OmniProjection> projections = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            OmniExpressionCompiler.ProjectionsCacheKey cacheKey = new OmniExpressionCompiler.ProjectionsCacheKey(
+                    ImmutableList.of(new InputReferenceExpression(0, BIGINT)),
+                    new ArrayList<>(ImmutableList.of(BIGINT)));
+            projections.add(expressionCache.getProjection(cacheKey, () -> {
+                compileCount.incrementAndGet();
+                return projection;
+            }));
+        }
+
+        assertEquals(compileCount.get(), 1);
+        projections.forEach(cachedProjection -> assertSame(cachedProjection, projection));
+        assertEquals(expressionCache.getProjectionCacheStats().getMissCount(), 1);
+        assertEquals(expressionCache.getProjectionCacheStats().getHitCount(), 2);
+        assertEquals(expressionCache.getCompileTime().getAllTime().getCount(), 1.0);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.operator.filterandproject;
+
+import com.google.common.collect.ImmutableList;
+import io.prestosql.spi.connector.CatalogSchemaName;
+import io.prestosql.spi.function.FunctionHandle;
+import io.prestosql.spi.function.StandardFunctionResolution;
+import io.prestosql.spi.relation.CallExpression;
+import io.prestosql.spi.relation.InputReferenceExpression;
+import io.prestosql.spi.relation.LambdaDefinitionExpression;
+import io.prestosql.spi.relation.RowExpression;
+import io.prestosql.spi.relation.SpecialForm;
+import io.prestosql.spi.type.RowType;
+import org.testng.annotations.Test;
+
+import static io.prestosql.spi.relation.SpecialForm.Form.AND;
+import static io.prestosql.spi.relation.SpecialForm.Form.DEREFERENCE;
+import static io.prestosql.spi.relation.SpecialForm.Form.IS_NULL;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.BooleanType.BOOLEAN;
+import static io.prestosql.spi.type.TimestampType.TIMESTAMP;
+import static nova.hetu.olk.operator.filterandproject.OmniExpressionChecker.checkExpression;
+import static nova.hetu.olk.operator.filterandproject.OmniExpressionChecker.isFailSafe;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class OmniExpressionCheckerTest
+{
+    @Test
+    public void testCheckExpression()
+    {
+        RowExpression bigint = new InputReferenceExpression(0, BIGINT);
+        RowExpression timestamp = new InputReferenceExpression(1, TIMESTAMP);
+        RowExpression lambda = new LambdaDefinitionExpression(ImmutableList.of(), ImmutableList.of(), bigint);
+
+        assertTrue(checkExpression(new SpecialForm(IS_NULL, BOOLEAN, ImmutableList.of(bigint))));
+        // every sub expression is checked
+        assertFalse(checkExpression(new SpecialForm(IS_NULL, BOOLEAN, ImmutableList.of(timestamp))));
+        assertFalse(checkExpression(new SpecialForm(AND, BOOLEAN, ImmutableList.of(
+                new SpecialForm(IS_NULL, BOOLEAN, ImmutableList.of(bigint)),
+                new SpecialForm(IS_NULL, BOOLEAN, ImmutableList.of(lambda))))));
+        assertFalse(checkExpression(new SpecialForm(DEREFERENCE, BIGINT, ImmutableList.of(
+                new InputReferenceExpression(2, RowType.anonymous(ImmutableList.of(BIGINT)))))));
+    }
+
+    @Test
+    public void testIsFailSafe()
+    {
+        FunctionHandle greaterThan = () -> new CatalogSchemaName("presto", "builtin");
+        FunctionHandle divide = () -> new CatalogSchemaName("presto", "builtin");
+        StandardFunctionResolution functionResolution = mock(StandardFunctionResolution.class);
+        when(functionResolution.isComparisonFunction(greaterThan)).thenReturn(true);
+        RowExpression x = new InputReferenceExpression(0, BIGINT);
+        RowExpression y = new InputReferenceExpression(1, BIGINT);
+
+        RowExpression comparison = new CallExpression("$operator$greater_than", greaterThan, BOOLEAN,
+                ImmutableList.of(x, y));
+        assertTrue(isFailSafe(comparison, functionResolution));
+        assertTrue(isFailSafe(new SpecialForm(AND, BOOLEAN, ImmutableList.of(comparison,
+                new SpecialForm(IS_NULL, BOOLEAN, ImmutableList.of(y)))), functionResolution));
+        // y / x > 1 fails when x is 0
+        RowExpression quotient = new CallExpression("$operator$divide", divide, BIGINT, ImmutableList.of(y, x));
+        assertFalse(isFailSafe(new CallExpression("$operator$greater_than", greaterThan, BOOLEAN,
+                ImmutableList.of(quotient, x)), functionResolution));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.operator.filterandproject;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import io.prestosql.spi.relation.InputReferenceExpression;
+import io.prestosql.spi.relation.RowExpression;
+import io.prestosql.spi.relation.SpecialForm;
+import io.prestosql.spi.type.Type;
+import nova.hetu.olk.operator.filterandproject.OmniExpressionCompiler.ExpressionSplit;
+import org.testng.annotations.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static io.prestosql.expressions.LogicalRowExpressions.and;
+import static io.prestosql.spi.relation.SpecialForm.Form.IS_NULL;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.BooleanType.BOOLEAN;
+import static nova.hetu.olk.operator.filterandproject.OmniExpressionCompiler.splitExpressions;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+
+public class OmniExpressionCompilerTest
+{
+    private static final List<Type> INPUT_TYPES = ImmutableList.of(BIGINT, BIGINT, BIGINT, BIGINT);
+
+    @Test
+    public void testSplitExpressions()
+    {
+        RowExpression supported = isNull(0);
+        RowExpression unsupported = isNull(1);
+        RowExpression reorderable = isNull(2);
+        RowExpression notReorderable = isNull(3);
+        Set<RowExpression> unsupportedExpressions = ImmutableSet.of(unsupported);
+
+        Optional<ExpressionSplit> split = splitExpressions(
+                Optional.of(and(supported, unsupported, reorderable, notReorderable)),
+                ImmutableList.of(input(2), unsupported), INPUT_TYPES,
+                expression -> !unsupportedExpressions.contains(expression), reorderable::equals);
+
+        // a supported conjunct after a residual one only runs first if it is reorderable
+        assertEquals(split.get().getOmniFilter(), Optional.of(and(supported, reorderable)));
+        // the omni page processor outputs only the input channels which the residual expressions read
+        assertEquals(split.get().getOmniProjections(), ImmutableList.of(input(1), input(3), input(2)));
+        assertEquals(split.get().getResidualFilter(), Optional.of(and(isNull(0), isNull(1))));
+        assertEquals(split.get().getResidualProjections(), ImmutableList.of(input(2), isNull(0)));
+    }
+
+    @Test
+    public void testNothingLeftToOmni()
+    {
+        RowExpression unsupported = isNull(1);
+
+        assertFalse(splitExpressions(Optional.of(and(unsupported, isNull(2))), ImmutableList.of(input(0)),
+                INPUT_TYPES, expression -> !unsupported.equals(expression), expression -> false).isPresent());
+        assertFalse(splitExpressions(Optional.empty(), ImmutableList.of(unsupported), INPUT_TYPES,
+                expression -> !unsupported.equals(expression), expression -> true).isPresent());
+    }
+
+    private static RowExpression input(int channel)
+    {
+        return new InputReferenceExpression(channel, BIGINT);
+    }
+
+    private static RowExpression isNull(int channel)
+    {
+        return new SpecialForm(IS_NULL, BOOLEAN, ImmutableList.of(input(channel)));
+    }
+}
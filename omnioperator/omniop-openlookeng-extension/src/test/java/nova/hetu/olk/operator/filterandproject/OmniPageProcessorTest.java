@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.operator.filterandproject;
+
+import com.google.common.collect.ImmutableList;
+import io.prestosql.memory.context.LocalMemoryContext;
+import io.prestosql.operator.DriverYieldSignal;
+import io.prestosql.operator.WorkProcessor;
+import io.prestosql.operator.project.InputChannels;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.LazyBlock;
+import io.prestosql.sql.gen.ExpressionProfiler;
+import nova.hetu.olk.block.LazyOmniBlock;
+import nova.hetu.olk.tool.OperatorUtils;
+import nova.hetu.olk.tool.VecBatchToPageIterator;
+import nova.hetu.omniruntime.operator.OmniOperator;
+import nova.hetu.omniruntime.operator.project.OmniProjectOperatorFactory;
+import nova.hetu.omniruntime.vector.LongVec;
+import nova.hetu.omniruntime.vector.VecAllocator;
+import nova.hetu.omniruntime.vector.VecBatch;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.Test;
+
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.prestosql.memory.context.AggregatedMemoryContext.newSimpleAggregatedMemoryContext;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static org.mockito.AdditionalMatchers.aryEq;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.powermock.api.mockito.PowerMockito.whenNew;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@PrepareForTest({OmniPageProcessor.class,
+        OperatorUtils.class
+})
+@SuppressStaticInitializationFor({"nova.hetu.omniruntime.vector.VecAllocator",
+        "nova.hetu.omniruntime.vector.VecBatch",
+        "nova.hetu.omniruntime.vector.Vec",
+        "nova.hetu.omniruntime.operator.OmniOperator",
+        "nova.hetu.omniruntime.operator.OmniOperatorFactory",
+        "nova.hetu.olk.tool.OperatorUtils"
+})
+@PowerMockIgnore("javax.management.*")
+public class OmniPageProcessorTest
+        extends PowerMockTestCase
+{
+    private static final int POSITION_COUNT = 20000;
+
+    @Test
+    public void testLargePageProcessedInRanges()
+            throws Exception
+    {
+        VecAllocator vecAllocator = mock(VecAllocator.class);
+        OmniOperator projectionOperator = mock(OmniOperator.class);
+        OmniProjectOperatorFactory projectOperatorFactory = mock(OmniProjectOperatorFactory.class);
+        when(projectOperatorFactory.createOperator(any())).thenReturn(projectionOperator);
+        OmniProjection projection = mock(OmniProjection.class);
+        when(projection.getFactory()).thenReturn(projectOperatorFactory);
+
+        mockStatic(OperatorUtils.class);
+        when(OperatorUtils.buildVecBatch(any(), any(), any())).thenReturn(mock(VecBatch.class));
+        Page outputPage = new Page(mock(Block.class));
+        VecBatchToPageIterator outputIterator = mock(VecBatchToPageIterator.class);
+        when(outputIterator.hasNext()).thenReturn(true);
+        when(outputIterator.next()).thenReturn(outputPage);
+        whenNew(VecBatchToPageIterator.class).withAnyArguments().thenReturn(outputIterator);
+
+        Block block = mock(Block.class);
+        when(block.isExtensionBlock()).thenReturn(true);
+        when(block.getRegion(anyInt(), anyInt())).thenReturn(mock(Block.class));
+        Page page = new Page(POSITION_COUNT, block);
+
+        OmniPageProcessor pageProcessor = new OmniPageProcessor(vecAllocator, Optional.empty(), projection,
+                OptionalInt.empty(), new ExpressionProfiler(), null);
+        DriverYieldSignal yieldSignal = new DriverYieldSignal();
+        LocalMemoryContext memoryContext = newSimpleAggregatedMemoryContext().newLocalMemoryContext("test");
+        WorkProcessor<Page> workProcessor = pageProcessor.createWorkProcessor(null, yieldSignal, memoryContext,
+                page);
+
+        assertTrue(workProcessor.process());
+        assertEquals(workProcessor.getResult(), outputPage);
+        // the driver can yield between two ranges
+        yieldSignal.forceYieldForTesting();
+        assertFalse(workProcessor.process());
+        yieldSignal.resetYieldForTesting();
+        assertTrue(workProcessor.process());
+        assertEquals(workProcessor.getResult(), outputPage);
+        assertTrue(workProcessor.process());
+        assertEquals(workProcessor.getResult(), outputPage);
+        assertTrue(workProcessor.process());
+        assertTrue(workProcessor.isFinished());
+
+        verify(projectionOperator, times(3)).addInput(any());
+        // the vectors of the page are released after its last range
+        verify(block).close();
+        assertEquals(memoryContext.getBytes(), 0);
+    }
+
+    @Test
+    public void testAbandonedPageReleased()
+            throws Exception
+    {
+        VecAllocator vecAllocator = mock(VecAllocator.class);
+        OmniOperator projectionOperator = mock(OmniOperator.class);
+        OmniProjectOperatorFactory projectOperatorFactory = mock(OmniProjectOperatorFactory.class);
+        when(projectOperatorFactory.createOperator(any())).thenReturn(projectionOperator);
+        OmniProjection projection = mock(OmniProjection.class);
+        when(projection.getFactory()).thenReturn(projectOperatorFactory);
+
+        mockStatic(OperatorUtils.class);
+        when(OperatorUtils.buildVecBatch(any(), any(), any())).thenReturn(mock(VecBatch.class));
+        Page outputPage = new Page(mock(Block.class));
+        VecBatchToPageIterator outputIterator = mock(VecBatchToPageIterator.class);
+        when(outputIterator.hasNext()).thenReturn(true);
+        when(outputIterator.next()).thenReturn(outputPage);
+        whenNew(VecBatchToPageIterator.class).withAnyArguments().thenReturn(outputIterator);
+
+        Block block = mock(Block.class);
+        when(block.isExtensionBlock()).thenReturn(true);
+        when(block.getRegion(anyInt(), anyInt())).thenReturn(mock(Block.class));
+
+        OmniPageProcessor pageProcessor = new OmniPageProcessor(vecAllocator, Optional.empty(), projection,
+                OptionalInt.empty(), new ExpressionProfiler(), null);
+        WorkProcessor<Page> workProcessor = pageProcessor.createWorkProcessor(null, new DriverYieldSignal(), null,
+                new Page(POSITION_COUNT, block));
+        assertTrue(workProcessor.process());
+        assertFalse(workProcessor.isFinished());
+        verify(block, times(0)).close();
+
+        // the operator is closed before the last range, e.g. after a limit is reached
+        pageProcessor.close();
+        verify(block).close();
+        pageProcessor.close();
+        verify(block).close();
+    }
+
+    @Test
+    public void testUnreadChannelsCopiedAtSelectedPositions()
+            throws Exception
+    {
+        VecAllocator vecAllocator = mock(VecAllocator.class);
+        OmniPageFilter.OmniPageFilterOperator filterOperator = mock(OmniPageFilter.OmniPageFilterOperator.class);
+        when(filterOperator.getInputChannels()).thenReturn(new InputChannels(0));
+        OmniPageFilter filter = mock(OmniPageFilter.class);
+        when(filter.getOperator(any())).thenReturn(filterOperator);
+        OmniPageFilter.OmniPageFilterOperator positionFilterOperator = mock(
+                OmniPageFilter.OmniPageFilterOperator.class);
+        OmniPageFilter positionFilter = mock(OmniPageFilter.class);
+        when(positionFilter.getOperator(any())).thenReturn(positionFilterOperator);
+        OmniOperator projectionOperator = mock(OmniOperator.class);
+        OmniProjectOperatorFactory projectOperatorFactory = mock(OmniProjectOperatorFactory.class);
+        when(projectOperatorFactory.createOperator(any())).thenReturn(projectionOperator);
+        OmniProjection projection = mock(OmniProjection.class);
+        when(projection.getFactory()).thenReturn(projectOperatorFactory);
+
+        mockStatic(OperatorUtils.class);
+        when(OperatorUtils.buildVecBatch(any(), any(), any())).thenReturn(mock(VecBatch.class));
+        LongVec positionVec = mock(LongVec.class);
+        when(positionVec.get(0, 2)).thenReturn(new long[] {1, 3});
+        Block positionBlock = mock(Block.class);
+        when(positionBlock.getValues()).thenReturn(positionVec);
+        Page filteredPage = new Page(2, mock(Block.class), positionBlock);
+        Page outputPage = new Page(mock(Block.class));
+        VecBatchToPageIterator outputIterator = mock(VecBatchToPageIterator.class);
+        when(outputIterator.hasNext()).thenReturn(true);
+        when(outputIterator.next()).thenReturn(filteredPage, outputPage);
+        whenNew(VecBatchToPageIterator.class).withAnyArguments().thenReturn(outputIterator);
+
+        OmniPageProcessor pageProcessor = new OmniPageProcessor(vecAllocator, Optional.of(filter),
+                Optional.of(positionFilter), ImmutableList.of(BIGINT, BIGINT), projection, OptionalInt.empty(),
+                new ExpressionProfiler(), null);
+        // the operators of the selective copy are created on the first lazy page
+        verify(positionFilter, never()).getOperator(any());
+        verify(projectOperatorFactory, never()).createOperator(any());
+
+        // no row is selected, so the unread channel is never loaded
+        AtomicInteger loadCount = new AtomicInteger();
+        Block loadedBlock = mock(Block.class);
+        when(loadedBlock.getPositionCount()).thenReturn(4);
+        when(loadedBlock.copyPositions(any(), anyInt(), anyInt())).thenReturn(mock(Block.class));
+        WorkProcessor<Page> workProcessor = pageProcessor.createWorkProcessor(null, new DriverYieldSignal(), null,
+                new Page(4, mock(Block.class), lazyBlock(loadedBlock, loadCount)));
+        assertTrue(workProcessor.process());
+        assertTrue(workProcessor.isFinished());
+        assertEquals(loadCount.get(), 0);
+
+        when(positionFilterOperator.filterAndProject(any())).thenReturn(mock(VecBatch.class));
+        workProcessor = pageProcessor.createWorkProcessor(null, new DriverYieldSignal(), null,
+                new Page(4, mock(Block.class), lazyBlock(loadedBlock, loadCount)));
+        assertTrue(workProcessor.process());
+        assertEquals(workProcessor.getResult(), outputPage);
+        assertEquals(loadCount.get(), 1);
+        verify(loadedBlock).copyPositions(aryEq(new int[] {1, 3}), eq(0), eq(2));
+        verify(positionBlock).close();
+        verify(projectionOperator).addInput(any());
+        verify(positionFilter, times(1)).getOperator(any());
+        verify(projectOperatorFactory, times(1)).createOperator(any());
+    }
+
+    @Test
+    public void testBypassedLazyVectorsReleased()
+            throws Exception
+    {
+        VecAllocator vecAllocator = mock(VecAllocator.class);
+        OmniPageFilter.OmniPageFilterOperator filterOperator = mock(OmniPageFilter.OmniPageFilterOperator.class);
+        when(filterOperator.getInputChannels()).thenReturn(new InputChannels(0));
+        OmniPageFilter filter = mock(OmniPageFilter.class);
+        when(filter.getOperator(any())).thenReturn(filterOperator);
+        OmniPageFilter.OmniPageFilterOperator positionFilterOperator = mock(
+                OmniPageFilter.OmniPageFilterOperator.class);
+        OmniPageFilter positionFilter = mock(OmniPageFilter.class);
+        when(positionFilter.getOperator(any())).thenReturn(positionFilterOperator);
+        OmniProjectOperatorFactory projectOperatorFactory = mock(OmniProjectOperatorFactory.class);
+        when(projectOperatorFactory.createOperator(any())).thenReturn(mock(OmniOperator.class));
+        OmniProjection projection = mock(OmniProjection.class);
+        when(projection.getFactory()).thenReturn(projectOperatorFactory);
+
+        mockStatic(OperatorUtils.class);
+        when(OperatorUtils.buildVecBatch(any(), any(), any())).thenReturn(mock(VecBatch.class));
+        LongVec positionVec = mock(LongVec.class);
+        when(positionVec.get(0, 1)).thenReturn(new long[] {2});
+        Block positionBlock = mock(Block.class);
+        when(positionBlock.getValues()).thenReturn(positionVec);
+        VecBatchToPageIterator outputIterator = mock(VecBatchToPageIterator.class);
+        when(outputIterator.hasNext()).thenReturn(true);
+        when(outputIterator.next()).thenReturn(new Page(1, mock(Block.class), positionBlock),
+                new Page(mock(Block.class)));
+        whenNew(VecBatchToPageIterator.class).withAnyArguments().thenReturn(outputIterator);
+
+        OmniPageProcessor pageProcessor = new OmniPageProcessor(vecAllocator, Optional.of(filter),
+                Optional.of(positionFilter), ImmutableList.of(BIGINT, BIGINT), projection, OptionalInt.empty(),
+                new ExpressionProfiler(), null);
+
+        // no row is selected
+        LazyOmniBlock<?> filterBlock = lazyOmniBlock(mock(Block.class));
+        LazyOmniBlock<?> unreadBlock = lazyOmniBlock(mock(Block.class));
+        WorkProcessor<Page> workProcessor = pageProcessor.createWorkProcessor(null, new DriverYieldSignal(), null,
+                new Page(4, filterBlock, unreadBlock));
+        assertTrue(workProcessor.process());
+        assertTrue(workProcessor.isFinished());
+        verify(unreadBlock).close();
+
+        // a row is selected
+        when(positionFilterOperator.filterAndProject(any())).thenReturn(mock(VecBatch.class));
+        Block loadedBlock = mock(Block.class);
+        when(loadedBlock.copyPositions(any(), anyInt(), anyInt())).thenReturn(mock(Block.class));
+        filterBlock = lazyOmniBlock(mock(Block.class));
+        unreadBlock = lazyOmniBlock(loadedBlock);
+        workProcessor = pageProcessor.createWorkProcessor(null, new DriverYieldSignal(), null,
+                new Page(4, filterBlock, unreadBlock));
+        assertTrue(workProcessor.process());
+        verify(unreadBlock).close();
+        verify(positionBlock).close();
+        // the lazy vector of the filter channel is handed to the native filter, which loads it
+        verify(filterBlock, never()).getLoadedBlock();
+        verify(filterBlock, never()).close();
+    }
+
+    private static LazyOmniBlock<?> lazyOmniBlock(Block loadedBlock)
+    {
+        LazyOmniBlock block = mock(LazyOmniBlock.class);
+        when(block.getPositionCount()).thenReturn(4);
+        when(block.getLazyBlock()).thenReturn(new LazyBlock<>(4, lazyBlock -> lazyBlock.setBlock(loadedBlock)));
+        when(block.getLoadedBlock()).thenReturn(loadedBlock);
+        return block;
+    }
+
+    private static Block lazyBlock(Block loadedBlock, AtomicInteger loadCount)
+    {
+        return new LazyBlock<>(4, lazyBlock -> {
+            loadCount.incrementAndGet();
+            lazyBlock.setBlock(loadedBlock);
+        });
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.operator.filterandproject;
+
+import com.google.common.collect.ImmutableList;
+import io.prestosql.operator.WorkProcessor;
+import io.prestosql.operator.project.PageProcessor;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.block.Block;
+import nova.hetu.olk.tool.OperatorUtils;
+import nova.hetu.omniruntime.vector.VecAllocator;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.Test;
+
+import java.util.OptionalInt;
+
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@PrepareForTest({OperatorUtils.class,
+        VecAllocator.class
+})
+@SuppressStaticInitializationFor({"nova.hetu.olk.tool.OperatorUtils",
+        "nova.hetu.omniruntime.vector.VecAllocator"
+})
+@PowerMockIgnore("javax.management.*")
+public class OmniSplitPageProcessorTest
+        extends PowerMockTestCase
+{
+    @Test
+    public void testResidualAppliedToReducedPage()
+    {
+        VecAllocator vecAllocator = mock(VecAllocator.class);
+        Page inputPage = new Page(mock(Block.class));
+        Block reducedBlock = mock(Block.class);
+        Page reducedPage = new Page(reducedBlock);
+        Page onHeapPage = new Page(mock(Block.class));
+        Page outputPage = new Page(mock(Block.class));
+        Page offHeapPage = new Page(mock(Block.class));
+
+        OmniPageProcessor omniPageProcessor = mock(OmniPageProcessor.class);
+        when(omniPageProcessor.createWorkProcessor(any(), any(), any(), eq(inputPage)))
+                .thenReturn(WorkProcessor.of(reducedPage));
+        PageProcessor residualPageProcessor = mock(PageProcessor.class);
+        when(residualPageProcessor.createWorkProcessor(any(), any(), any(), eq(onHeapPage)))
+                .thenReturn(WorkProcessor.of(outputPage));
+        mockStatic(OperatorUtils.class);
+        when(OperatorUtils.transferToOnHeapPage(reducedPage)).thenReturn(onHeapPage);
+        when(OperatorUtils.transferToOffHeapPages(eq(vecAllocator), eq(outputPage), any())).thenReturn(offHeapPage);
+
+        OmniSplitPageProcessor pageProcessor = new OmniSplitPageProcessor(vecAllocator, omniPageProcessor,
+                residualPageProcessor, ImmutableList.of(BIGINT), OptionalInt.empty());
+        WorkProcessor<Page> workProcessor = pageProcessor.createWorkProcessor(null, null, null, inputPage);
+        assertTrue(workProcessor.process());
+        assertEquals(workProcessor.getResult(), offHeapPage);
+        assertTrue(workProcessor.process());
+        assertTrue(workProcessor.isFinished());
+        // the vectors of the reduced page are released once it is on heap
+        verify(reducedBlock).close();
+    }
+}
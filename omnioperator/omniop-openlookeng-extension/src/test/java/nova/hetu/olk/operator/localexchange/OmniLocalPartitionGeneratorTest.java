@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.operator.localexchange;
+
+import com.google.common.collect.ImmutableList;
+import io.prestosql.operator.InterpretedHashGenerator;
+import io.prestosql.operator.exchange.LocalPartitionGenerator;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.type.Type;
+import org.testng.annotations.Test;
+
+import java.util.Optional;
+import java.util.stream.IntStream;
+
+import static com.google.common.collect.ImmutableList.toImmutableList;
+import static io.prestosql.block.BlockAssertions.createLongSequenceBlock;
+import static io.prestosql.block.BlockAssertions.createLongsBlock;
+import static io.prestosql.block.BlockAssertions.createStringsBlock;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.VarcharType.VARCHAR;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+public class OmniLocalPartitionGeneratorTest
+{
+    private static final int PARTITION_COUNT = 4;
+
+    private final ImmutableList<Type> types = ImmutableList.of(BIGINT, VARCHAR);
+
+    @Test
+    public void testPositionsGroupedByPartition()
+    {
+        Page page = new Page(createLongsBlock(1L, 2L, null, 1L, 3L, 2L, null, 1L),
+                createStringsBlock("a", "b", "c", "a", "d", "b", "c", "a"));
+        OmniLocalPartitionGenerator partitionGenerator = new OmniLocalPartitionGenerator(types,
+                ImmutableList.of(0, 1), Optional.empty(), PARTITION_COUNT);
+        partitionGenerator.partitionPage(page);
+
+        int[] partitionOfPosition = getPartitions(partitionGenerator, page.getPositionCount());
+        // rows with the same values are in the same partition
+        assertEquals(partitionOfPosition[0], partitionOfPosition[3]);
+        assertEquals(partitionOfPosition[0], partitionOfPosition[7]);
+        assertEquals(partitionOfPosition[1], partitionOfPosition[5]);
+        assertEquals(partitionOfPosition[2], partitionOfPosition[6]);
+    }
+
+    @Test
+    public void testPrecomputedHash()
+    {
+        Page page = new Page(createLongSequenceBlock(0, 1000), createLongSequenceBlock(0, 1000));
+        OmniLocalPartitionGenerator partitionGenerator = new OmniLocalPartitionGenerator(
+                ImmutableList.of(BIGINT, BIGINT), ImmutableList.of(0), Optional.of(1), PARTITION_COUNT);
+        partitionGenerator.partitionPage(page);
+
+        getPartitions(partitionGenerator, page.getPositionCount());
+        for (int partition = 0; partition < PARTITION_COUNT; partition++) {
+            assertTrue(partitionGenerator.getPartitionSize(partition) > 0, "partition " + partition + " is empty");
+        }
+    }
+
+    @Test
+    public void testPartitionsOfLocalPartitionGenerator()
+    {
+        Page page = new Page(createLongSequenceBlock(0, 1000),
+                createStringsBlock(IntStream.range(0, 1000).mapToObj(Integer::toString).collect(toImmutableList())));
+        OmniLocalPartitionGenerator partitionGenerator = new OmniLocalPartitionGenerator(types,
+                ImmutableList.of(0, 1), Optional.empty(), PARTITION_COUNT);
+        partitionGenerator.partitionPage(page);
+
+        // the joins with a Java lookup source find the rows in the partitions of LocalPartitionGenerator
+        LocalPartitionGenerator localPartitionGenerator = new LocalPartitionGenerator(
+                new InterpretedHashGenerator(types, new int[] {0, 1}), PARTITION_COUNT);
+        int[] partitionOfPosition = getPartitions(partitionGenerator, page.getPositionCount());
+        for (int position = 0; position < page.getPositionCount(); position++) {
+            assertEquals(partitionOfPosition[position], localPartitionGenerator.getPartition(page, position));
+        }
+    }
+
+    private static int[] getPartitions(OmniLocalPartitionGenerator partitionGenerator, int positionCount)
+    {
+        int[] partitionOfPosition = new int[positionCount];
+        int assignedPositions = 0;
+        for (int partition = 0; partition < PARTITION_COUNT; partition++) {
+            int start = partitionGenerator.getPartitionStart(partition);
+            assertEquals(start, assignedPositions);
+            int previous = -1;
+            for (int i = start; i < start + partitionGenerator.getPartitionSize(partition); i++) {
+                int position = partitionGenerator.getPositions()[i];
+                assertTrue(position > previous, "positions of a partition are ascending");
+                partitionOfPosition[position] = partition;
+                previous = position;
+            }
+            assignedPositions += partitionGenerator.getPartitionSize(partition);
+        }
+        assertEquals(assignedPositions, positionCount);
+        return partitionOfPosition;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.tool;
+
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.DictionaryBlock;
+import io.prestosql.spi.block.DictionaryId;
+import nova.hetu.omniruntime.vector.Vec;
+import nova.hetu.omniruntime.vector.VecAllocator;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.Test;
+
+import static io.prestosql.spi.block.DictionaryId.randomDictionaryId;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+@PrepareForTest({OperatorUtils.class,
+        DictionaryBlock.class
+})
+@SuppressStaticInitializationFor({"nova.hetu.olk.tool.OperatorUtils",
+        "nova.hetu.omniruntime.vector.VecAllocator",
+        "nova.hetu.omniruntime.vector.Vec"
+})
+public class OmniDictionaryCacheTest
+        extends PowerMockTestCase
+{
+    @Test
+    public void testDictionaryConvertedOncePerDictionaryId()
+    {
+        VecAllocator vecAllocator = mock(VecAllocator.class);
+        Block dictionary = mock(Block.class);
+        Vec firstVec = mock(Vec.class);
+        Block firstOmniDictionary = mock(Block.class);
+        when(firstOmniDictionary.getValues()).thenReturn(firstVec);
+        Vec secondVec = mock(Vec.class);
+        Block secondOmniDictionary = mock(Block.class);
+        when(secondOmniDictionary.getValues()).thenReturn(secondVec);
+        mockStatic(OperatorUtils.class);
+        when(OperatorUtils.buildOffHeapBlock(any(), any(), anyString(), anyInt(), any()))
+                .thenReturn(firstOmniDictionary, secondOmniDictionary);
+
+        DictionaryId stripeDictionaryId = randomDictionaryId();
+        OmniDictionaryCache dictionaryCache = new OmniDictionaryCache();
+        // the pages of a stripe share the dictionary
+        for (int i = 0; i < 3; i++) {
+            assertSame(dictionaryCache.getDictionaryVec(vecAllocator, 0,
+                    dictionaryBlock(dictionary, stripeDictionaryId), BIGINT), firstVec);
+        }
+        assertEquals(dictionaryCache.getMissCount(), 1);
+        assertEquals(dictionaryCache.getHitCount(), 2);
+        verify(firstOmniDictionary, never()).close();
+
+        // the next stripe comes with another dictionary
+        assertSame(dictionaryCache.getDictionaryVec(vecAllocator, 0,
+                dictionaryBlock(dictionary, randomDictionaryId()), BIGINT), secondVec);
+        assertEquals(dictionaryCache.getMissCount(), 2);
+        verify(firstOmniDictionary).close();
+
+        dictionaryCache.close();
+        assertTrue(dictionaryCache.isClosed());
+        verify(secondOmniDictionary).close();
+    }
+
+    @Test
+    public void testDictionaryColumnsInterleaved()
+    {
+        VecAllocator vecAllocator = mock(VecAllocator.class);
+        Block firstDictionary = mock(Block.class);
+        Block secondDictionary = mock(Block.class);
+        Vec firstVec = mock(Vec.class);
+        Block firstOmniDictionary = mock(Block.class);
+        when(firstOmniDictionary.getValues()).thenReturn(firstVec);
+        Vec secondVec = mock(Vec.class);
+        Block secondOmniDictionary = mock(Block.class);
+        when(secondOmniDictionary.getValues()).thenReturn(secondVec);
+        mockStatic(OperatorUtils.class);
+        when(OperatorUtils.buildOffHeapBlock(any(), any(), anyString(), anyInt(), any()))
+                .thenReturn(firstOmniDictionary, secondOmniDictionary);
+
+        DictionaryId firstDictionaryId = randomDictionaryId();
+        DictionaryId secondDictionaryId = randomDictionaryId();
+        OmniDictionaryCache dictionaryCache = new OmniDictionaryCache();
+        // each page of a stripe has a block of both dictionary columns
+        for (int i = 0; i < 4; i++) {
+            assertSame(dictionaryCache.getDictionaryVec(vecAllocator, 0,
+                    dictionaryBlock(firstDictionary, firstDictionaryId), BIGINT), firstVec);
+            assertSame(dictionaryCache.getDictionaryVec(vecAllocator, 1,
+                    dictionaryBlock(secondDictionary, secondDictionaryId), BIGINT), secondVec);
+        }
+        assertEquals(dictionaryCache.getMissCount(), 2);
+        assertEquals(dictionaryCache.getHitCount(), 6);
+        // the vector of a column is still in use by the block of the other column of the same page
+        verify(firstOmniDictionary, never()).close();
+        verify(secondOmniDictionary, never()).close();
+
+        dictionaryCache.close();
+        verify(firstOmniDictionary).close();
+        verify(secondOmniDictionary).close();
+    }
+
+    private static DictionaryBlock dictionaryBlock(Block dictionary, DictionaryId dictionaryId)
+    {
+        DictionaryBlock dictionaryBlock = mock(DictionaryBlock.class);
+        when(dictionaryBlock.getDictionary()).thenReturn(dictionary);
+        when(dictionaryBlock.getDictionarySourceId()).thenReturn(dictionaryId);
+        return dictionaryBlock;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2020-2022. Huawei Technologies Co., Ltd. All rights reserved.
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package nova.hetu.olk.tool;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import io.airlift.slice.Slices;
+import io.hetu.core.transport.execution.buffer.PagesSerdeFactory;
+import io.hetu.core.transport.execution.buffer.SerializedPage;
+import io.prestosql.metadata.InternalBlockEncodingSerde;
+import io.prestosql.spi.Page;
+import io.prestosql.spi.block.Block;
+import io.prestosql.spi.block.BlockEncodingSerde;
+import io.prestosql.spi.block.DictionaryBlock;
+import nova.hetu.olk.block.DictionaryOmniBlock;
+import nova.hetu.olk.block.LongArrayOmniBlock;
+import nova.hetu.olk.block.VariableWidthOmniBlock;
+import nova.hetu.omniruntime.vector.JvmUtils;
+import nova.hetu.omniruntime.vector.LongVec;
+import nova.hetu.omniruntime.vector.VarcharVec;
+import nova.hetu.omniruntime.vector.Vec;
+import org.powermock.core.classloader.annotations.PowerMockIgnore;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.core.classloader.annotations.SuppressStaticInitializationFor;
+import org.powermock.modules.testng.PowerMockTestCase;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static io.prestosql.metadata.MetadataManager.createTestMetadataManager;
+import static io.prestosql.spi.block.DictionaryId.randomDictionaryId;
+import static io.prestosql.spi.type.BigintType.BIGINT;
+import static io.prestosql.spi.type.VarcharType.VARCHAR;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
+import static org.powermock.api.mockito.PowerMockito.when;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+@PrepareForTest({Vec.class,
+        JvmUtils.class
+})
+@SuppressStaticInitializationFor({"nova.hetu.omniruntime.vector.Vec",
+        "nova.hetu.omniruntime.vector.JvmUtils"
+})
+@PowerMockIgnore("javax.management.*")
+public class OmniPagesSerdeTest
+        extends PowerMockTestCase
+{
+    private static final int POSITION_COUNT = 1000;
+
+    private static final String VALUE = "abc";
+
+    private final BlockEncodingSerde blockEncodingSerde = new InternalBlockEncodingSerde(
+            createTestMetadataManager().getFunctionAndTypeManager());
+
+    @DataProvider(name = "compressionEnabled")
+    public Object[][] compressionEnabled()
+    {
+        return new Object[][] {{false}, {true}};
+    }
+
+    @Test(dataProvider = "compressionEnabled")
+    public void testVectorsReadByPagesSerde(boolean compressionEnabled)
+    {
+        Page page = new Page(POSITION_COUNT, mockLongBlock(), mockVarcharBlock());
+        OmniPagesSerde omniPagesSerde = new OmniPagesSerde(blockEncodingSerde, compressionEnabled, null,
+                ImmutableList.of(BIGINT, VARCHAR));
+        SerializedPage serializedPage = omniPagesSerde.serialize(page);
+
+        Page deserializedPage = new PagesSerdeFactory(blockEncodingSerde, compressionEnabled).createPagesSerde()
+                .deserialize(serializedPage);
+        assertEquals(deserializedPage.getPositionCount(), POSITION_COUNT);
+        Block longBlock = deserializedPage.getBlock(0);
+        Block varcharBlock = deserializedPage.getBlock(1);
+        for (int position = 0; position < POSITION_COUNT; position++) {
+            if (isNull(position)) {
+                assertTrue(longBlock.isNull(position));
+            }
+            else {
+                assertFalse(longBlock.isNull(position));
+                assertEquals(BIGINT.getLong(longBlock, position), position);
+            }
+            assertEquals(VARCHAR.getSlice(varcharBlock, position).toStringUtf8(), VALUE);
+        }
+    }
+
+    @Test
+    public void testDictionaryCompactedBeforeWrite()
+    {
+        DictionaryOmniBlock compactBlock = mockDictionaryBlock(mockDictionary(100L, 200L));
+        DictionaryOmniBlock block = mock(DictionaryOmniBlock.class);
+        when(block.isExtensionBlock()).thenReturn(true);
+        when(block.compact()).thenReturn(compactBlock);
+        Page page = new Page(POSITION_COUNT, block);
+        OmniPagesSerde omniPagesSerde = new OmniPagesSerde(blockEncodingSerde, false, null, ImmutableList.of(BIGINT));
+        SerializedPage serializedPage = omniPagesSerde.serialize(page);
+
+        // only the referenced entries of the dictionary are written, and the compacted copy is freed
+        verify(block, never()).getDictionary();
+        verify(compactBlock).close();
+        Block deserializedBlock = new PagesSerdeFactory(blockEncodingSerde, false).createPagesSerde()
+                .deserialize(serializedPage).getBlock(0);
+        assertTrue(deserializedBlock instanceof DictionaryBlock);
+        assertEquals(((DictionaryBlock) deserializedBlock).getDictionary().getPositionCount(), 2);
+        for (int position = 0; position < POSITION_COUNT; position++) {
+            assertEquals(BIGINT.getLong(deserializedBlock, position), position % 2 == 0 ? 100L : 200L);
+        }
+    }
+
+    private static boolean isNull(int position)
+    {
+        return position % 10 == 1;
+    }
+
+    private static Block mockLongBlock()
+    {
+        ByteBuffer values = ByteBuffer.allocateDirect(POSITION_COUNT * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        for (int position = 0; position < POSITION_COUNT; position++) {
+            values.putLong(position * Long.BYTES, isNull(position) ? 0 : position);
+        }
+        mockStatic(JvmUtils.class);
+        when(JvmUtils.directBuffer(any())).thenReturn(values);
+        LongVec longVec = mock(LongVec.class);
+        when(longVec.getOffset()).thenReturn(0);
+
+        LongArrayOmniBlock block = mock(LongArrayOmniBlock.class);
+        when(block.isExtensionBlock()).thenReturn(true);
+        when(block.getPositionCount()).thenReturn(POSITION_COUNT);
+        when(block.getValues()).thenReturn(longVec);
+        when(block.mayHaveNull()).thenReturn(true);
+        when(block.isNull(anyInt())).thenAnswer(invocation -> isNull(invocation.getArgument(0)));
+        return block;
+    }
+
+    private static Block mockVarcharBlock()
+    {
+        VarcharVec varcharVec = mock(VarcharVec.class);
+        when(varcharVec.getValueOffset(0)).thenReturn(0);
+
+        VariableWidthOmniBlock block = mock(VariableWidthOmniBlock.class);
+        when(block.isExtensionBlock()).thenReturn(true);
+        when(block.getPositionCount()).thenReturn(POSITION_COUNT);
+        when(block.getValues()).thenReturn(varcharVec);
+        when(block.mayHaveNull()).thenReturn(false);
+        when(block.getSliceLength(anyInt())).thenReturn(VALUE.length());
+        when(block.getRawSlice(0)).thenReturn(Slices.utf8Slice(Strings.repeat(VALUE, POSITION_COUNT)));
+        return block;
+    }
+
+    private static Block mockDictionary(long... dictionaryValues)
+    {
+        ByteBuffer values = ByteBuffer.allocateDirect(dictionaryValues.length * Long.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (int position = 0; position < dictionaryValues.length; position++) {
+            values.putLong(position * Long.BYTES, dictionaryValues[position]);
+        }
+        mockStatic(JvmUtils.class);
+        when(JvmUtils.directBuffer(any())).thenReturn(values);
+        LongVec longVec = mock(LongVec.class);
+        when(longVec.getOffset()).thenReturn(0);
+
+        LongArrayOmniBlock block = mock(LongArrayOmniBlock.class);
+        when(block.isExtensionBlock()).thenReturn(true);
+        when(block.getPositionCount()).thenReturn(dictionaryValues.length);
+        when(block.getValues()).thenReturn(longVec);
+        when(block.mayHaveNull()).thenReturn(false);
+        return block;
+    }
+
+    private static DictionaryOmniBlock mockDictionaryBlock(Block dictionary)
+    {
+        DictionaryOmniBlock block = mock(DictionaryOmniBlock.class);
+        when(block.isExtensionBlock()).thenReturn(true);
+        when(block.getPositionCount()).thenReturn(POSITION_COUNT);
+        when(block.getDictionary()).thenReturn(dictionary);
+        int dictionarySize = dictionary.getPositionCount();
+        when(block.getId(anyInt())).thenAnswer(invocation -> (int) invocation.getArgument(0) % dictionarySize);
+        when(block.getDictionarySourceId()).thenReturn(randomDictionaryId());
+        return block;
+    }
+}
@@ -20,6 +20,7 @@ import io.prestosql.spi.Page;
 import io.prestosql.spi.block.Block;
 import io.prestosql.spi.block.BlockBuilder;
 import io.prestosql.spi.block.LazyBlock;
+import io.prestosql.spi.block.LongArrayBlock;
 import io.prestosql.spi.block.RowBlock;
 import io.prestosql.spi.block.RunLengthEncodedBlock;
 import io.prestosql.spi.type.CharType;
@@ -33,6 +34,7 @@ import nova.hetu.olk.block.IntArrayOmniBlock;
 import nova.hetu.olk.block.LazyOmniBlock;
 import nova.hetu.olk.block.LongArrayOmniBlock;
 import nova.hetu.olk.block.RowOmniBlock;
+import nova.hetu.olk.block.RunLengthEncodedOmniBlock;
 import nova.hetu.olk.block.VariableWidthOmniBlock;
 import nova.hetu.olk.operator.benchmark.PageBuilderUtil;
 import nova.hetu.omniruntime.type.BooleanDataType;
@@ -52,6 +54,7 @@ import nova.hetu.omniruntime.vector.Decimal128Vec;
 import nova.hetu.omniruntime.vector.DictionaryVec;
 import nova.hetu.omniruntime.vector.DoubleVec;
 import nova.hetu.omniruntime.vector.IntVec;
+import nova.hetu.omniruntime.vector.JvmUtils;
 import nova.hetu.omniruntime.vector.LongVec;
 import nova.hetu.omniruntime.vector.VarcharVec;
 import nova.hetu.omniruntime.vector.Vec;
@@ -66,6 +69,8 @@ import org.powermock.modules.testng.PowerMockTestCase;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -81,23 +86,32 @@ import static io.prestosql.spi.type.RealType.REAL;
 import static io.prestosql.spi.type.TimestampType.TIMESTAMP;
 import static io.prestosql.spi.type.VarbinaryType.VARBINARY;
 import static io.prestosql.spi.type.VarcharType.VARCHAR;
+import static java.lang.Double.doubleToLongBits;
 import static nova.hetu.olk.tool.OperatorUtils.transferToOffHeapPages;
 import static nova.hetu.olk.tool.OperatorUtils.transferToOnHeapPage;
 import static nova.hetu.olk.tool.OperatorUtils.transferToOnHeapPages;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyInt;
 import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.mock;
+import static org.powermock.api.mockito.PowerMockito.mockStatic;
 import static org.powermock.api.mockito.PowerMockito.when;
 import static org.powermock.api.mockito.PowerMockito.whenNew;
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest({VecAllocator.class,
         Vec.class,
+        JvmUtils.class,
         OperatorUtils.class
 })
 @SuppressStaticInitializationFor({"nova.hetu.omniruntime.vector.VecAllocator",
-        "nova.hetu.omniruntime.vector.Vec"
+        "nova.hetu.omniruntime.vector.Vec",
+        "nova.hetu.omniruntime.vector.JvmUtils"
 })
 @PowerMockIgnore("javax.management.*")
 public class TestOperatorUtils
@@ -115,6 +129,7 @@ public class TestOperatorUtils
     Decimal128Vec decimal128Vec;
     ContainerVec containerVec;
     DictionaryVec dictionaryVec;
+    ByteBuffer doubleValuesBuffer;
 
     @BeforeMethod
     public void setUp() throws Exception
@@ -179,6 +194,22 @@ public class TestOperatorUtils
         freeNativeMemory(offHeapPages);
     }
 
+    @Test
+    public void testRunLengthEncodedBlockStaysConstant()
+    {
+        Page page = buildPages(new ImmutableList.Builder<Type>().add(BIGINT).build(), false, 1).get(0);
+        RunLengthEncodedBlock block = new RunLengthEncodedBlock(page.getBlock(0), 1024);
+
+        Block offHeapBlock = OperatorUtils.buildOffHeapBlock(VecAllocator.GLOBAL_VECTOR_ALLOCATOR, block);
+        assertTrue(offHeapBlock instanceof RunLengthEncodedOmniBlock);
+        assertEquals(offHeapBlock.getPositionCount(), 1024);
+        assertEquals(offHeapBlock.getLong(1000, 0), block.getLong(1000, 0));
+        assertTrue(offHeapBlock.getRegion(10, 100) instanceof RunLengthEncodedOmniBlock);
+
+        // back on heap without expanding the value
+        assertSame(OperatorUtils.buildOnHeapBlock(offHeapBlock), block);
+    }
+
     @Test
     public void testBlockTypeTransfer()
     {
@@ -187,6 +218,27 @@ public class TestOperatorUtils
         OperatorUtils.buildOffHeapBlock(VecAllocator.GLOBAL_VECTOR_ALLOCATOR, new RunLengthEncodedBlock(page.getBlock(0), 1), "RunLengthEncodedBlock", 1, DOUBLE);
     }
 
+    @Test
+    public void testDoubleBlockRegionTransfer()
+    {
+        long[] values = new long[8];
+        boolean[] valueIsNull = new boolean[8];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = doubleToLongBits(i * 1.5);
+        }
+        valueIsNull[1] = true;
+        Block region = new LongArrayBlock(values.length, Optional.of(valueIsNull), values).getRegion(2, 4);
+
+        OperatorUtils.buildOffHeapBlock(VecAllocator.GLOBAL_VECTOR_ALLOCATOR, region, "LongArrayBlock", 4, DOUBLE);
+
+        // the doubles of the region are written straight into the vector, and the region has no null
+        ByteBuffer buffer = doubleValuesBuffer.duplicate().order(ByteOrder.nativeOrder());
+        for (int i = 0; i < 4; i++) {
+            assertEquals(buffer.getDouble(i * Double.BYTES), (i + 2) * 1.5);
+        }
+        verify(doubleVec, never()).setNulls(anyInt(), any(byte[].class), anyInt(), anyInt());
+    }
+
     @Test
     public void testDataType()
     {
@@ -309,6 +361,9 @@ public class TestOperatorUtils
         when(doubleVec.get(anyInt())).thenReturn(1d);
         when(doubleVec.getValuesNulls(anyInt(), anyInt())).thenReturn(new boolean[]{true});
         whenNew(DoubleVec.class).withAnyArguments().thenReturn(doubleVec);
+        doubleValuesBuffer = ByteBuffer.allocateDirect(Double.BYTES * 4);
+        mockStatic(JvmUtils.class);
+        when(JvmUtils.directBuffer(any())).thenReturn(doubleValuesBuffer);
         when(doubleArrayOmniBlock.getValues()).thenReturn(doubleVec);
 
         LongArrayOmniBlock longArrayOmniBlock = mock(LongArrayOmniBlock.class);